@@ -28,7 +28,9 @@ import com.guidebee.drawing.geometry.Polygon;
 import com.guidebee.drawing.geometry.Polyline;
 import com.guidebee.drawing.geometry.Rectangle;
 import com.guidebee.game.GameEngineRuntimeException;
+import com.guidebee.game.engine.drawing.core.FlattenedPathFP;
 import com.guidebee.game.engine.drawing.core.GraphicsFP;
+import com.guidebee.game.engine.drawing.core.GraphicsPathCacheFP;
 import com.guidebee.game.engine.drawing.core.GraphicsPathDasherFP;
 import com.guidebee.game.engine.drawing.core.GraphicsPathFP;
 import com.guidebee.game.engine.drawing.core.MatrixFP;
@@ -51,6 +53,22 @@ import com.guidebee.game.graphics.TextureData;
  */
 public final class Graphics2D implements TextureData {
 
+    /**
+     * scan buffer rasterizer (default), sorts all the edge crossings of a
+     * shape before merging its pixels.
+     */
+    public final static int RASTERIZER_SCANBUFFER = GraphicsFP.RASTERIZER_SCANBUFFER;
+
+    /**
+     * coverage rasterizer, walks the edges of a shape row by row, uses less
+     * memory and is faster on large anti-aliased fills.
+     */
+    public final static int RASTERIZER_COVERAGE = GraphicsFP.RASTERIZER_COVERAGE;
+
+    /**
+     * default max memory of the flattened path cache, in bytes.
+     */
+    public final static int DEFAULT_PATH_CACHE_SIZE = 512 * 1024;
 
 
     /**
@@ -133,6 +151,7 @@ public final class Graphics2D implements TextureData {
         }
         pixMap = new Pixmap(graphicsWidth, graphicsHeight, Pixmap.Format.RGBA8888);
         pixMap.drawRGB(getRGB(), graphicsWidth, graphicsHeight);
+        resetDirtyRegion();
         return pixMap;
     }
 
@@ -313,6 +332,7 @@ public final class Graphics2D implements TextureData {
         }
         synchronized (graphicsFP) {
             graphicsFP.drawPath(graphicsPathFP);
+            updateDirtyRegion();
         }
 
     }
@@ -333,55 +353,51 @@ public final class Graphics2D implements TextureData {
             defaultBrush = brush;
         }
 
-        IPathIterator pathIterator = shape.getPathIterator(null);
-        int[] coords = new int[6];
-        int type;
-        GraphicsPathFP graphicsPathFP = new GraphicsPathFP();
-        PointFP pointFP1 = new PointFP();
-        PointFP pointFPCtl1 = new PointFP();
-        PointFP pointFPCtl2 = new PointFP();
+        GraphicsPathFP graphicsPathFP = toGraphicsPathFP(shape);
+        synchronized (graphicsFP) {
+            graphicsFP.fillPath(graphicsPathFP);
+            updateDirtyRegion();
+        }
 
-        while (!pathIterator.isDone()) {
-            type = pathIterator.currentSegment(coords);
-            switch (type) {
-                case IPathIterator.SEG_MOVETO:
-                    pointFP1.reset(coords[0] << SingleFP.DECIMAL_BITS,
-                            coords[1] << SingleFP.DECIMAL_BITS);
-                    graphicsPathFP.addMoveTo(pointFP1);
-                    break;
-                case IPathIterator.SEG_CLOSE:
-                    graphicsPathFP.addClose();
-                    break;
-                case IPathIterator.SEG_LINETO:
-                    pointFP1.reset(coords[0] << SingleFP.DECIMAL_BITS,
-                            coords[1] << SingleFP.DECIMAL_BITS);
-                    graphicsPathFP.addLineTo(pointFP1);
-                    break;
-                case IPathIterator.SEG_QUADTO:
-                    pointFPCtl1.reset(coords[0] << SingleFP.DECIMAL_BITS,
-                            coords[1] << SingleFP.DECIMAL_BITS);
-                    pointFP1.reset(coords[2] << SingleFP.DECIMAL_BITS,
-                            coords[3] << SingleFP.DECIMAL_BITS);
-                    graphicsPathFP.addQuadTo(pointFPCtl1, pointFP1);
-                    break;
-                case IPathIterator.SEG_CUBICTO:
-                    pointFPCtl1.reset(coords[0] << SingleFP.DECIMAL_BITS,
-                            coords[1] << SingleFP.DECIMAL_BITS);
-                    pointFPCtl2.reset(coords[2] << SingleFP.DECIMAL_BITS,
-                            coords[3] << SingleFP.DECIMAL_BITS);
-                    pointFP1.reset(coords[4] << SingleFP.DECIMAL_BITS,
-                            coords[5] << SingleFP.DECIMAL_BITS);
-                    graphicsPathFP.addCurveTo(pointFPCtl1, pointFPCtl2, pointFP1);
-                    break;
+    }
 
-            }
-            pathIterator.next();
 
+    /**
+     * Fill a IShape transformed by given transform. the shape is flattened
+     * once for each scale, rotation and shear of the transform and kept in
+     * the path cache, drawing it again with only a different translation
+     * reuses the flattened path. shapes are cached by identity, call
+     * {@link #clearPathCache()} after modifying a shape already drawn.
+     *
+     * @param brush     the brush used to fill the shape.
+     * @param shape     the IShape to be rendered.
+     * @param transform the transform applied to the shape, can be null.
+     */
+    public final void fill(Brush brush, IShape shape, AffineTransform transform) {
+        if (brush != null) {
+            synchronized (graphicsFP) {
+                graphicsFP.setBrush(brush.wrappedBrushFP);
+            }
+            defaultBrush = brush;
+        }
+        if (transform == null) {
+            transform = new AffineTransform();
+        }
+        ShapeKey key = new ShapeKey(shape, transform);
+        FlattenedPathFP path = pathCache.get(key);
+        if (path == null) {
+            AffineTransform linear = new AffineTransform(key.m00, key.m10,
+                    key.m01, key.m11, 0, 0);
+            path = new FlattenedPathFP(
+                    toGraphicsPathFP(linear.createTransformedShape(shape)));
+            pathCache.put(key, path);
         }
         synchronized (graphicsFP) {
-            graphicsFP.fillPath(graphicsPathFP);
+            graphicsFP.fillPath(path,
+                    SingleFP.fromDouble(transform.getTranslateX()),
+                    SingleFP.fromDouble(transform.getTranslateY()));
+            updateDirtyRegion();
         }
-
     }
 
 
@@ -399,6 +415,7 @@ public final class Graphics2D implements TextureData {
         synchronized (graphicsFP) {
             graphicsFP.drawLine(x1 << SingleFP.DECIMAL_BITS, y1 << SingleFP.DECIMAL_BITS,
                     x2 << SingleFP.DECIMAL_BITS, y2 << SingleFP.DECIMAL_BITS);
+            updateDirtyRegion();
         }
     }
 
@@ -491,24 +508,100 @@ public final class Graphics2D implements TextureData {
     public void drawChars(VectorFont font, Brush brush, Pen pen, int fontSize,
                           char[] data, int offset,
                           int length, int x, int y, int tdir) {
-        AffineTransform transfrom = new AffineTransform();
-        transfrom.translate(x, y);
-        IShape[] shapes = font.getGlyphArray(fontSize, data, offset, length,
-                tdir, transfrom);
-        for (int j = 0; j < shapes.length; j++) {
-            if (shapes[j] != null) {
-                if (brush != null) {
-                    fill(brush, shapes[j]);
-                }
-                if (pen != null) {
-                    draw(pen, shapes[j]);
-                }
+        IShape[] shapes = null;
+        if (pen != null) {
+            AffineTransform transfrom = new AffineTransform();
+            transfrom.translate(x, y);
+            shapes = font.getGlyphArray(fontSize, data, offset, length,
+                    tdir, transfrom);
+        }
+        double scale = (double) fontSize / 256.0;
+        int startIndex = tdir == VectorFont.TEXT_DIR_RL ? offset + length - 1 : offset;
+        int step = tdir == VectorFont.TEXT_DIR_RL ? -1 : 1;
+        int offsetX = 0, offsetY = 0;
+        for (int j = 0, i = startIndex; j < length; j++, i += step) {
+            int advance = font.getGlyphAdvance(data[i]);
+            if (advance < 0) {
+                continue;
+            }
+            if (brush != null) {
+                fillGlyph(font, brush, fontSize, data[i],
+                        x + scale * offsetX, y - scale * offsetY);
+            }
+            if (pen != null && shapes[j] != null) {
+                draw(pen, shapes[j]);
+            }
+            if (tdir == VectorFont.TEXT_DIR_TB) {
+                offsetX = 0;
+                offsetY -= 256;
+            } else {
+                offsetX += advance;
+                offsetY = 0;
             }
         }
 
     }
 
 
+    /**
+     * Set the max memory used by the flattened path cache shared by all the
+     * graphics objects. glyphs and shapes filled with a transform are cached.
+     *
+     * @param maxMemory max memory in bytes.
+     */
+    public static void setPathCacheSize(int maxMemory) {
+        pathCache.setMaxMemory(maxMemory);
+    }
+
+
+    /**
+     * Get the max memory used by the flattened path cache.
+     *
+     * @return max memory in bytes.
+     */
+    public static int getPathCacheSize() {
+        return pathCache.getMaxMemory();
+    }
+
+
+    /**
+     * Get the memory currently used by the flattened path cache.
+     *
+     * @return memory in bytes.
+     */
+    public static int getPathCacheMemory() {
+        return pathCache.getMemory();
+    }
+
+
+    /**
+     * Get the number of draws which found their path in the cache.
+     *
+     * @return the hit count.
+     */
+    public static long getPathCacheHitCount() {
+        return pathCache.getHitCount();
+    }
+
+
+    /**
+     * Get the number of draws which had to flatten their path.
+     *
+     * @return the miss count.
+     */
+    public static long getPathCacheMissCount() {
+        return pathCache.getMissCount();
+    }
+
+
+    /**
+     * Remove all the paths from the flattened path cache.
+     */
+    public static void clearPathCache() {
+        pathCache.clear();
+    }
+
+
     /**
      * Set the default pen of the graphics
      *
@@ -618,6 +711,7 @@ public final class Graphics2D implements TextureData {
                     y << SingleFP.DECIMAL_BITS,
                     (x + width) << SingleFP.DECIMAL_BITS,
                     (y + height) << SingleFP.DECIMAL_BITS);
+            updateDirtyRegion();
         }
     }
 
@@ -638,6 +732,7 @@ public final class Graphics2D implements TextureData {
                     y << SingleFP.DECIMAL_BITS,
                     (x + width) << SingleFP.DECIMAL_BITS,
                     (y + height) << SingleFP.DECIMAL_BITS);
+            updateDirtyRegion();
         }
     }
 
@@ -748,6 +843,7 @@ public final class Graphics2D implements TextureData {
                 height + dstY);
         Rectangle rect = rect1.intersection(rect2);
         if (!rect.isEmpty()) {
+            addDirtyRectangle(dstX, dstY, width, height);
             int[] destBuffer = getRGB();
             int desWidth = graphicsWidth;
             int i;
@@ -813,6 +909,7 @@ public final class Graphics2D implements TextureData {
                 height + dstY);
         Rectangle rect = rect1.intersection(rect2);
         if (!rect.isEmpty()) {
+            addDirtyRectangle(dstX, dstY, width, height);
             int[] destBuffer = getRGB();
             int desWidth = graphicsWidth;
             int i;
@@ -854,6 +951,7 @@ public final class Graphics2D implements TextureData {
                 height + dstY);
         Rectangle rect = rect1.intersection(rect2);
         if (!rect.isEmpty()) {
+            addDirtyRectangle(dstX, dstY, width, height);
             int[] destBuffer = getRGB();
             int desWidth = graphicsWidth;
             int i;
@@ -912,10 +1010,235 @@ public final class Graphics2D implements TextureData {
     public void clear(int color) {
         synchronized (graphicsFP) {
             graphicsFP.clear(color);
+            updateDirtyRegion();
         }
     }
 
 
+    /**
+     * Get the number of horizontal bands a fill is split into.
+     *
+     * @return the number of bands.
+     */
+    public int getParallelism() {
+        synchronized (graphicsFP) {
+            return graphicsFP.getParallelism();
+        }
+    }
+
+
+    /**
+     * Set the number of horizontal bands a fill is split into. the bands are
+     * rasterized in parallel by a shared pool of threads, which speeds up
+     * large fills with a solid brush. fills with gradient or texture brushes
+     * are always rasterized by the calling thread.
+     *
+     * @param bands the number of bands, 1 (default) to disable.
+     */
+    public void setParallelism(int bands) {
+        synchronized (graphicsFP) {
+            graphicsFP.setParallelism(bands);
+        }
+    }
+
+
+    /**
+     * Get the rasterizer used to fill shapes.
+     *
+     * @return {@link #RASTERIZER_SCANBUFFER} or {@link #RASTERIZER_COVERAGE}.
+     */
+    public int getRasterizer() {
+        synchronized (graphicsFP) {
+            return graphicsFP.getRasterizer();
+        }
+    }
+
+
+    /**
+     * Set the rasterizer used to fill shapes. both rasterizers produce the
+     * same pixels.
+     *
+     * @param rasterizer {@link #RASTERIZER_SCANBUFFER} or
+     *                   {@link #RASTERIZER_COVERAGE}.
+     */
+    public void setRasterizer(int rasterizer) {
+        synchronized (graphicsFP) {
+            graphicsFP.setRasterizer(rasterizer);
+        }
+    }
+
+
+    /**
+     * Clear an area with given color, the clip is not changed.
+     *
+     * @param color  the clear color.
+     * @param x      the x coordinate of the area.
+     * @param y      the y coordinate of the area.
+     * @param width  the width of the area.
+     * @param height the height of the area.
+     */
+    public void clear(int color, int x, int y, int width, int height) {
+        synchronized (graphicsFP) {
+            graphicsFP.clear(color, x, y, width, height);
+            updateDirtyRegion();
+        }
+    }
+
+
+    /**
+     * Start redrawing an area: the area is cleared with given color and the
+     * clip is set to it, so the following draw and fill calls only rasterize
+     * the rows and merge the pixels inside the area. call
+     * {@link #endUpdate()} to restore the clip.
+     * <p/>
+     * typical use is to redraw each of the rectangles returned by
+     * {@link #getDirtyRectangles()} after the content under them changed.
+     *
+     * @param x      the x coordinate of the area.
+     * @param y      the y coordinate of the area.
+     * @param width  the width of the area.
+     * @param height the height of the area.
+     * @param color  the clear color.
+     */
+    public void beginUpdate(int x, int y, int width, int height, int color) {
+        synchronized (graphicsFP) {
+            savedClip = getClip();
+            clear(color, x, y, width, height);
+            // the clip of the renderer includes its right and bottom edges.
+            setClip(x, y, width - 1, height - 1);
+        }
+    }
+
+
+    /**
+     * End redrawing an area, restore the clip set before
+     * {@link #beginUpdate(int, int, int, int, int)}.
+     */
+    public void endUpdate() {
+        synchronized (graphicsFP) {
+            if (savedClip != null) {
+                setClip(savedClip);
+                savedClip = null;
+            }
+        }
+    }
+
+
+    /**
+     * Check if any pixel has changed since the content was last consumed
+     * or the dirty region was reset.
+     *
+     * @return true if some pixels have changed.
+     */
+    public boolean isDirty() {
+        synchronized (graphicsFP) {
+            return dirtyCount > 0;
+        }
+    }
+
+
+    /**
+     * Get the rectangles covering the pixels which have changed since the
+     * content was last consumed or the dirty region was reset. at most
+     * {@link #MAX_DIRTY_RECTANGLES} rectangles are kept, they don't overlap.
+     *
+     * @return the dirty rectangles, an empty array if nothing has changed.
+     */
+    public Rectangle[] getDirtyRectangles() {
+        synchronized (graphicsFP) {
+            Rectangle[] rectangles = new Rectangle[dirtyCount];
+            for (int i = 0; i < dirtyCount; i++) {
+                int[] r = dirtyRectangles[i];
+                rectangles[i] = new Rectangle(r[0], r[1], r[2] - r[0], r[3] - r[1]);
+            }
+            return rectangles;
+        }
+    }
+
+
+    /**
+     * Get the bounds of the dirty region.
+     *
+     * @return the bounds of all the dirty rectangles, null if nothing has
+     * changed.
+     */
+    public Rectangle getDirtyBounds() {
+        synchronized (graphicsFP) {
+            if (dirtyCount == 0) return null;
+            int x1 = Integer.MAX_VALUE, y1 = Integer.MAX_VALUE;
+            int x2 = Integer.MIN_VALUE, y2 = Integer.MIN_VALUE;
+            for (int i = 0; i < dirtyCount; i++) {
+                int[] r = dirtyRectangles[i];
+                x1 = Math.min(x1, r[0]);
+                y1 = Math.min(y1, r[1]);
+                x2 = Math.max(x2, r[2]);
+                y2 = Math.max(y2, r[3]);
+            }
+            return new Rectangle(x1, y1, x2 - x1, y2 - y1);
+        }
+    }
+
+
+    /**
+     * Get the number of pixels covered by the dirty region.
+     *
+     * @return the number of dirty pixels.
+     */
+    public int getDirtyPixelCount() {
+        synchronized (graphicsFP) {
+            int count = 0;
+            for (int i = 0; i < dirtyCount; i++) {
+                int[] r = dirtyRectangles[i];
+                count += (r[2] - r[0]) * (r[3] - r[1]);
+            }
+            return count;
+        }
+    }
+
+
+    /**
+     * Mark all the pixels as clean, for example after the dirty rectangles
+     * were uploaded to a texture.
+     */
+    public void resetDirtyRegion() {
+        synchronized (graphicsFP) {
+            dirtyCount = 0;
+            graphicsFP.resetChangedBounds();
+        }
+    }
+
+
+    /**
+     * Copy an area of the content, for example a dirty rectangle to be
+     * uploaded as a sub image of a texture.
+     *
+     * @param x      the x coordinate of the area.
+     * @param y      the y coordinate of the area.
+     * @param width  the width of the area.
+     * @param height the height of the area.
+     * @param out    the array receiving the ARGB values, row by row, null to
+     *               allocate a new one.
+     * @return the ARGB array of the area.
+     */
+    public int[] getRGB(int x, int y, int width, int height, int[] out) {
+        if (x < 0 || y < 0 || width < 0 || height < 0
+                || x + width > graphicsWidth || y + height > graphicsHeight) {
+            throw new IllegalArgumentException("Area outside of the graphics");
+        }
+        if (out == null || out.length < width * height) {
+            out = new int[width * height];
+        }
+        synchronized (graphicsFP) {
+            int[] rgb = graphicsFP.getRGB();
+            for (int row = 0; row < height; row++) {
+                System.arraycopy(rgb, (y + row) * graphicsWidth + x, out,
+                        row * width, width);
+            }
+        }
+        return out;
+    }
+
+
     /**
      * Returns the content of this image as ARGB array.
      *
@@ -927,8 +1250,87 @@ public final class Graphics2D implements TextureData {
         }
     }
 
+    /**
+     * max number of dirty rectangles, beyond that rectangles are merged.
+     */
+    public static final int MAX_DIRTY_RECTANGLES = 8;
+
+    /**
+     * cache key of a glyph, for a given font size.
+     */
+    private static final class GlyphKey {
+        final VectorFont font;
+        final int fontSize;
+        final char ch;
+
+        GlyphKey(VectorFont font, int fontSize, char ch) {
+            this.font = font;
+            this.fontSize = fontSize;
+            this.ch = ch;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof GlyphKey)) return false;
+            GlyphKey other = (GlyphKey) o;
+            return font == other.font && fontSize == other.fontSize
+                    && ch == other.ch;
+        }
+
+        public int hashCode() {
+            return (System.identityHashCode(font) * 31 + fontSize) * 31 + ch;
+        }
+    }
+
+    /**
+     * cache key of a shape, for the non translational part of a transform.
+     */
+    private static final class ShapeKey {
+        final IShape shape;
+        final double m00, m10, m01, m11;
+
+        ShapeKey(IShape shape, AffineTransform transform) {
+            this.shape = shape;
+            m00 = transform.getScaleX();
+            m10 = transform.getShearY();
+            m01 = transform.getShearX();
+            m11 = transform.getScaleY();
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof ShapeKey)) return false;
+            ShapeKey other = (ShapeKey) o;
+            return shape == other.shape && m00 == other.m00
+                    && m10 == other.m10 && m01 == other.m01
+                    && m11 == other.m11;
+        }
+
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(m00)
+                    + 31 * Double.doubleToLongBits(m10)
+                    + 961 * Double.doubleToLongBits(m01)
+                    + 29791 * Double.doubleToLongBits(m11);
+            return System.identityHashCode(shape) * 31
+                    + (int) (bits ^ (bits >>> 32));
+        }
+    }
+
+    /**
+     * flattened paths of glyphs and transformed shapes, shared by all the
+     * graphics objects.
+     */
+    private static final GraphicsPathCacheFP pathCache
+            = new GraphicsPathCacheFP(DEFAULT_PATH_CACHE_SIZE);
+
     private boolean isPrepared = false;
 
+    /**
+     * dirty rectangles, as x1, y1, x2, y2 (excluded).
+     */
+    private final int[][] dirtyRectangles = new int[MAX_DIRTY_RECTANGLES + 1][4];
+    private int dirtyCount = 0;
+    private final int[] changedBounds = new int[4];
+    private Rectangle savedClip = null;
+
     private Pixmap pixMap=null;
     /**
      * graphics width
@@ -994,6 +1396,191 @@ public final class Graphics2D implements TextureData {
     }
 
 
+    /**
+     * fill a glyph from the path cache.
+     */
+    private void fillGlyph(VectorFont font, Brush brush, int fontSize, char ch,
+                           double x, double y) {
+        GlyphKey key = new GlyphKey(font, fontSize, ch);
+        FlattenedPathFP path = pathCache.get(key);
+        if (path == null) {
+            IShape glyph = font.getGlyph(fontSize, ch);
+            if (glyph == null) return;
+            path = new FlattenedPathFP(toGraphicsPathFP(glyph));
+            pathCache.put(key, path);
+        }
+        synchronized (graphicsFP) {
+            graphicsFP.setBrush(brush.wrappedBrushFP);
+            graphicsFP.fillPath(path, SingleFP.fromDouble(x),
+                    SingleFP.fromDouble(y));
+            updateDirtyRegion();
+        }
+        defaultBrush = brush;
+    }
+
+
+    /**
+     * convert a shape to a fixed point path.
+     */
+    private static GraphicsPathFP toGraphicsPathFP(IShape shape) {
+        IPathIterator pathIterator = shape.getPathIterator(null);
+        int[] coords = new int[6];
+        int type;
+        GraphicsPathFP graphicsPathFP = new GraphicsPathFP();
+        PointFP pointFP1 = new PointFP();
+        PointFP pointFPCtl1 = new PointFP();
+        PointFP pointFPCtl2 = new PointFP();
+
+        while (!pathIterator.isDone()) {
+            type = pathIterator.currentSegment(coords);
+            switch (type) {
+                case IPathIterator.SEG_MOVETO:
+                    pointFP1.reset(coords[0] << SingleFP.DECIMAL_BITS,
+                            coords[1] << SingleFP.DECIMAL_BITS);
+                    graphicsPathFP.addMoveTo(pointFP1);
+                    break;
+                case IPathIterator.SEG_CLOSE:
+                    graphicsPathFP.addClose();
+                    break;
+                case IPathIterator.SEG_LINETO:
+                    pointFP1.reset(coords[0] << SingleFP.DECIMAL_BITS,
+                            coords[1] << SingleFP.DECIMAL_BITS);
+                    graphicsPathFP.addLineTo(pointFP1);
+                    break;
+                case IPathIterator.SEG_QUADTO:
+                    pointFPCtl1.reset(coords[0] << SingleFP.DECIMAL_BITS,
+                            coords[1] << SingleFP.DECIMAL_BITS);
+                    pointFP1.reset(coords[2] << SingleFP.DECIMAL_BITS,
+                            coords[3] << SingleFP.DECIMAL_BITS);
+                    graphicsPathFP.addQuadTo(pointFPCtl1, pointFP1);
+                    break;
+                case IPathIterator.SEG_CUBICTO:
+                    pointFPCtl1.reset(coords[0] << SingleFP.DECIMAL_BITS,
+                            coords[1] << SingleFP.DECIMAL_BITS);
+                    pointFPCtl2.reset(coords[2] << SingleFP.DECIMAL_BITS,
+                            coords[3] << SingleFP.DECIMAL_BITS);
+                    pointFP1.reset(coords[4] << SingleFP.DECIMAL_BITS,
+                            coords[5] << SingleFP.DECIMAL_BITS);
+                    graphicsPathFP.addCurveTo(pointFPCtl1, pointFPCtl2, pointFP1);
+                    break;
+
+            }
+            pathIterator.next();
+
+        }
+        return graphicsPathFP;
+    }
+
+
+    /**
+     * add the pixels changed by the last drawing call to the dirty region.
+     */
+    private void updateDirtyRegion() {
+        if (graphicsFP.getChangedBounds(changedBounds)) {
+            graphicsFP.resetChangedBounds();
+            addDirtyRectangle(changedBounds[0], changedBounds[1],
+                    changedBounds[2], changedBounds[3]);
+        }
+    }
+
+
+    /**
+     * add an area to the dirty region. overlapping rectangles are merged,
+     * and when there are too many rectangles the two whose union wastes
+     * the least area are merged.
+     */
+    private void addDirtyRectangle(int x, int y, int width, int height) {
+        int x1 = Math.max(0, x);
+        int y1 = Math.max(0, y);
+        int x2 = Math.min(graphicsWidth, x + width);
+        int y2 = Math.min(graphicsHeight, y + height);
+        if (x1 >= x2 || y1 >= y2) return;
+        synchronized (graphicsFP) {
+            int[] r = dirtyRectangles[dirtyCount];
+            r[0] = x1;
+            r[1] = y1;
+            r[2] = x2;
+            r[3] = y2;
+            dirtyCount++;
+            // merge the new rectangle with the ones it overlaps, repeatedly
+            // as the union may overlap others.
+            boolean merged = true;
+            while (merged) {
+                merged = false;
+                int[] last = dirtyRectangles[dirtyCount - 1];
+                for (int i = 0; i < dirtyCount - 1; i++) {
+                    int[] other = dirtyRectangles[i];
+                    if (other[0] < last[2] && last[0] < other[2]
+                            && other[1] < last[3] && last[1] < other[3]) {
+                        unionDirtyRectangles(i, dirtyCount - 1);
+                        merged = true;
+                        break;
+                    }
+                }
+            }
+            if (dirtyCount > MAX_DIRTY_RECTANGLES) {
+                int best1 = 0;
+                int best2 = 1;
+                long bestWaste = Long.MAX_VALUE;
+                for (int i = 0; i < dirtyCount; i++) {
+                    for (int j = i + 1; j < dirtyCount; j++) {
+                        int[] a = dirtyRectangles[i];
+                        int[] b = dirtyRectangles[j];
+                        long union = (long) (Math.max(a[2], b[2]) - Math.min(a[0], b[0]))
+                                * (Math.max(a[3], b[3]) - Math.min(a[1], b[1]));
+                        long waste = union - (long) (a[2] - a[0]) * (a[3] - a[1])
+                                - (long) (b[2] - b[0]) * (b[3] - b[1]);
+                        if (waste < bestWaste) {
+                            bestWaste = waste;
+                            best1 = i;
+                            best2 = j;
+                        }
+                    }
+                }
+                unionDirtyRectangles(best1, best2);
+                // the union may now overlap other rectangles.
+                int[] last = dirtyRectangles[--dirtyCount];
+                addDirtyRectangle(last[0], last[1], last[2] - last[0],
+                        last[3] - last[1]);
+            }
+        }
+    }
+
+
+    /**
+     * replace two dirty rectangles with their union, which becomes the last
+     * rectangle.
+     */
+    private void unionDirtyRectangles(int i, int j) {
+        int[] a = dirtyRectangles[i];
+        int[] b = dirtyRectangles[j];
+        int x1 = Math.min(a[0], b[0]);
+        int y1 = Math.min(a[1], b[1]);
+        int x2 = Math.max(a[2], b[2]);
+        int y2 = Math.max(a[3], b[3]);
+        // remove both (higher index first), keeping the arrays for reuse.
+        int hi = Math.max(i, j);
+        int lo = Math.min(i, j);
+        removeDirtyRectangle(hi);
+        removeDirtyRectangle(lo);
+        int[] r = dirtyRectangles[dirtyCount];
+        r[0] = x1;
+        r[1] = y1;
+        r[2] = x2;
+        r[3] = y2;
+        dirtyCount++;
+    }
+
+
+    private void removeDirtyRectangle(int index) {
+        int[] removed = dirtyRectangles[index];
+        System.arraycopy(dirtyRectangles, index + 1, dirtyRectangles, index,
+                dirtyCount - index - 1);
+        dirtyRectangles[dirtyCount - 1] = removed;
+        dirtyCount--;
+    }
+
+
     /**
      * set graphics pen attribute.
      *
@@ -243,6 +243,46 @@ public class VectorFont implements Disposable{
         return retVal;
     }
 
+    /**
+     * Return the shape of a character with its origin at (0,0), this is the
+     * shape {@link #getGlyphArray(int, char[], int, int, int, AffineTransform)}
+     * translates to the position of the character.
+     *
+     * @param fontSize the size of the font.
+     * @param ch       the character.
+     * @return the shape of the character, null if the font doesn't have it.
+     */
+    public IShape getGlyph(int fontSize, char ch) {
+        if (this != VectorFont.systemFont) {
+            loadGlyph(ch);
+        }
+        Glyph glyph = (Glyph) glyphs.get(Integer.valueOf(ch));
+        if (glyph == null) {
+            return null;
+        }
+        double scale = (double) fontSize / 256.0;
+        AffineTransform matrix = new AffineTransform();
+        matrix.scale(scale, -scale);
+        matrix.translate(0, -200);
+        return matrix.createTransformedShape(glyph.path);
+    }
+
+
+    /**
+     * Return the advance of a character in font units, the font size is
+     * 256 font units.
+     *
+     * @param ch the character.
+     * @return the advance of the character, -1 if the font doesn't have it.
+     */
+    public int getGlyphAdvance(char ch) {
+        if (this != VectorFont.systemFont) {
+            loadGlyph(ch);
+        }
+        Glyph glyph = (Glyph) glyphs.get(Integer.valueOf(ch));
+        return glyph != null ? glyph.width : -1;
+    }
+
     protected static int CACHE_SIZE = 256;
     protected final static PathParser pathParser = new PathParser();
     protected final Hashtable glyphs = new Hashtable(CACHE_SIZE);
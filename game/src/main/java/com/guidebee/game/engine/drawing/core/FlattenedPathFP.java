@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.engine.drawing.core;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * A path whose curves were already flattened into lines, stored as compact
+ * fixed point arrays. the flattening is exactly the one the renderer applies
+ * to a {@link GraphicsPathFP}, and flattening commutes with a translation,
+ * so drawing the flattened path with an offset gives the same pixels as
+ * drawing the translated path, without walking and subdividing the curves
+ * again.
+ * This class cannot be inherited.
+ *
+ * @author James Shen.
+ */
+public final class FlattenedPathFP {
+
+
+    /**
+     * Flatten a path.
+     *
+     * @param path the path to be flattened.
+     */
+    public FlattenedPathFP(GraphicsPathFP path) {
+        Recorder recorder = new Recorder();
+        path.visit(recorder);
+        cmdsSize = recorder.cmdsSize;
+        cmds = new byte[cmdsSize];
+        System.arraycopy(recorder.cmds, 0, cmds, 0, cmdsSize);
+        coords = new int[cmdsSize * 2];
+        System.arraycopy(recorder.coords, 0, coords, 0, cmdsSize * 2);
+    }
+
+
+    /**
+     * get the number of points in the path.
+     *
+     * @return the number of points.
+     */
+    public int getPointCount() {
+        return cmdsSize;
+    }
+
+
+    /**
+     * get the approximate memory used by the path, in bytes.
+     *
+     * @return the memory size.
+     */
+    public int getMemorySize() {
+        return OBJECT_OVERHEAD + cmds.length + coords.length * 4;
+    }
+
+
+    /**
+     * replay the path to an iterator, translated by given offset.
+     *
+     * @param iterator the iterator.
+     * @param ff_dx    the x offset.
+     * @param ff_dy    the y offset.
+     */
+    void visit(IGraphicsPathIteratorFP iterator, int ff_dx, int ff_dy) {
+        PointFP point = new PointFP();
+        iterator.begin();
+        for (int i = 0, j = 0; i < cmdsSize; i++, j += 2) {
+            point.reset(coords[j] + ff_dx, coords[j + 1] + ff_dy);
+            if (cmds[i] == CMD_MOVETO) {
+                iterator.moveTo(point);
+            } else {
+                iterator.lineTo(point);
+            }
+        }
+        iterator.end();
+    }
+
+
+    /**
+     * records the moves and lines the sketch produces for a path, curves and
+     * closes included.
+     */
+    private static class Recorder extends GraphicsPathSketchFP {
+
+        byte[] cmds = new byte[64];
+        int[] coords = new int[128];
+        int cmdsSize = 0;
+
+        public void moveTo(PointFP point) {
+            add(CMD_MOVETO, point);
+            super.moveTo(point);
+        }
+
+        public void lineTo(PointFP point) {
+            add(CMD_LINETO, point);
+            super.lineTo(point);
+        }
+
+        private void add(byte cmd, PointFP point) {
+            if (cmdsSize == cmds.length) {
+                byte[] newCmds = new byte[cmdsSize * 2];
+                System.arraycopy(cmds, 0, newCmds, 0, cmdsSize);
+                cmds = newCmds;
+                int[] newCoords = new int[cmdsSize * 4];
+                System.arraycopy(coords, 0, newCoords, 0, cmdsSize * 2);
+                coords = newCoords;
+            }
+            cmds[cmdsSize] = cmd;
+            coords[cmdsSize * 2] = point.x;
+            coords[cmdsSize * 2 + 1] = point.y;
+            cmdsSize++;
+        }
+    }
+
+    private static final byte CMD_MOVETO = 0;
+    private static final byte CMD_LINETO = 1;
+    private static final int OBJECT_OVERHEAD = 48;
+
+    private final byte[] cmds;
+    private final int[] coords;
+    private final int cmdsSize;
+}
@@ -39,6 +39,19 @@ public final class GraphicsFP {
     public final static int MODE_ZERO = GraphicsPathRendererFP.MODE_ZERO;
 
 
+    /**
+     * scan buffer rasterizer.
+     */
+    public final static int RASTERIZER_SCANBUFFER
+            = GraphicsPathRendererFP.RASTERIZER_SCANBUFFER;
+
+    /**
+     * coverage rasterizer.
+     */
+    public final static int RASTERIZER_COVERAGE
+            = GraphicsPathRendererFP.RASTERIZER_COVERAGE;
+
+
     /**
      * Default Constructor.
      */
@@ -147,6 +160,48 @@ public final class GraphicsFP {
     }
 
 
+    /**
+     * Get the number of bands a path fill is split into.
+     *
+     * @return the number of bands.
+     */
+    public int getParallelism() {
+        return renderer.getParallelism();
+    }
+
+
+    /**
+     * Set the number of horizontal bands a path fill is split into, bands
+     * are rasterized in parallel.
+     *
+     * @param bands the number of bands, 1 to disable.
+     */
+    public void setParallelism(int bands) {
+        renderer.setParallelism(bands);
+    }
+
+
+    /**
+     * Get the rasterizer.
+     *
+     * @return the rasterizer.
+     */
+    public int getRasterizer() {
+        return renderer.getRasterizer();
+    }
+
+
+    /**
+     * Set the rasterizer used to fill paths.
+     *
+     * @param value {@link #RASTERIZER_SCANBUFFER} or
+     *              {@link #RASTERIZER_COVERAGE}.
+     */
+    public void setRasterizer(int value) {
+        renderer.setRasterizer(value);
+    }
+
+
     /**
      * resize the graphics object.
      *
@@ -168,6 +223,40 @@ public final class GraphicsFP {
     }
 
 
+    /**
+     * Clear an area with given color, the clip is not changed.
+     *
+     * @param color  the clear color.
+     * @param x      the x coordinate of the area.
+     * @param y      the y coordinate of the area.
+     * @param width  the width of the area.
+     * @param height the height of the area.
+     */
+    public void clear(int color, int x, int y, int width, int height) {
+        renderer.clear(color, x, y, width, height);
+    }
+
+
+    /**
+     * Get the bounds of the pixels which may have changed since last call
+     * to {@link #resetChangedBounds()}.
+     *
+     * @param bounds receives x, y, width and height of the bounds.
+     * @return false if no pixel has changed.
+     */
+    public boolean getChangedBounds(int[] bounds) {
+        return renderer.getChangedBounds(bounds);
+    }
+
+
+    /**
+     * Forget the changed pixels.
+     */
+    public void resetChangedBounds() {
+        renderer.resetChangedBounds();
+    }
+
+
     /**
      * Draw a line.
      *
@@ -432,6 +521,19 @@ public final class GraphicsFP {
     }
 
 
+    /**
+     * Fill a flattened path translated by given offset, with current brush.
+     * the offset is applied before the graphics matrix.
+     *
+     * @param path  the flattened path.
+     * @param ff_dx the x offset.
+     * @param ff_dy the y offset.
+     */
+    public void fillPath(FlattenedPathFP path, int ff_dx, int ff_dy) {
+        renderer.drawPath(path, ff_dx, ff_dy, matrix, fillStyle, paintMode);
+    }
+
+
     /**
      * get the clip height.
      *
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.engine.drawing.core;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Least recently used cache of flattened paths, bounded by the memory the
+ * paths use. the key is anything identifying the geometry of the path
+ * before its translation, for example a glyph and a font size, so the same
+ * flattened path can be drawn at any position.
+ * the methods of the cache are thread safe.
+ *
+ * @author James Shen.
+ */
+public final class GraphicsPathCacheFP {
+
+
+    /**
+     * Constructor.
+     *
+     * @param maxMemory max memory used by the cached paths, in bytes.
+     */
+    public GraphicsPathCacheFP(int maxMemory) {
+        setMaxMemory(maxMemory);
+    }
+
+
+    /**
+     * get a path from the cache, the hit or miss is counted.
+     *
+     * @param key the key of the path.
+     * @return the path, null if it's not in the cache.
+     */
+    public synchronized FlattenedPathFP get(Object key) {
+        FlattenedPathFP path = paths.get(key);
+        if (path != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return path;
+    }
+
+
+    /**
+     * add a path to the cache, the least recently used paths are evicted
+     * when the cache is full. a path larger than the cache is not added.
+     *
+     * @param key  the key of the path.
+     * @param path the flattened path.
+     */
+    public synchronized void put(Object key, FlattenedPathFP path) {
+        int size = path.getMemorySize();
+        if (size > maxMemory) return;
+        FlattenedPathFP old = paths.put(key, path);
+        if (old != null) {
+            memory -= old.getMemorySize();
+        }
+        memory += size;
+        trim(maxMemory);
+    }
+
+
+    /**
+     * remove a path from the cache.
+     *
+     * @param key the key of the path.
+     */
+    public synchronized void remove(Object key) {
+        FlattenedPathFP old = paths.remove(key);
+        if (old != null) {
+            memory -= old.getMemorySize();
+        }
+    }
+
+
+    /**
+     * remove all paths from the cache, the counters are kept.
+     */
+    public synchronized void clear() {
+        paths.clear();
+        memory = 0;
+    }
+
+
+    /**
+     * set the max memory used by the cached paths, paths are evicted if
+     * the cache is over the new limit.
+     *
+     * @param maxMemory max memory in bytes.
+     */
+    public synchronized void setMaxMemory(int maxMemory) {
+        if (maxMemory < 0) {
+            throw new IllegalArgumentException("maxMemory must be >= 0");
+        }
+        this.maxMemory = maxMemory;
+        trim(maxMemory);
+    }
+
+
+    /**
+     * get the max memory used by the cached paths.
+     *
+     * @return max memory in bytes.
+     */
+    public synchronized int getMaxMemory() {
+        return maxMemory;
+    }
+
+
+    /**
+     * get the memory currently used by the cached paths.
+     *
+     * @return memory in bytes.
+     */
+    public synchronized int getMemory() {
+        return memory;
+    }
+
+
+    /**
+     * get the number of cached paths.
+     *
+     * @return number of paths.
+     */
+    public synchronized int size() {
+        return paths.size();
+    }
+
+
+    /**
+     * get the number of lookups which found the path.
+     *
+     * @return the hit count.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+
+    /**
+     * get the number of lookups which didn't find the path.
+     *
+     * @return the miss count.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+
+    /**
+     * get the number of paths evicted to keep the cache under its limit.
+     *
+     * @return the eviction count.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+
+    /**
+     * reset the hit, miss and eviction counters.
+     */
+    public synchronized void resetCounters() {
+        hitCount = missCount = evictionCount = 0;
+    }
+
+
+    private void trim(int limit) {
+        Iterator<Map.Entry<Object, FlattenedPathFP>> iterator
+                = paths.entrySet().iterator();
+        while (memory > limit && iterator.hasNext()) {
+            memory -= iterator.next().getValue().getMemorySize();
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    private final LinkedHashMap<Object, FlattenedPathFP> paths
+            = new LinkedHashMap<Object, FlattenedPathFP>(64, 0.75f, true);
+    private int maxMemory;
+    private int memory;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+}
@@ -0,0 +1,320 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.engine.drawing.core;
+
+//--------------------------------- IMPORTS ------------------------------------
+import java.util.Arrays;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Active edge table scan converter, the coverage rasterizer of
+ * {@link GraphicsPathRendererFP}.
+ * <p/>
+ * instead of storing an entry for each edge crossing of each sub-scanline and
+ * sorting all of them, the edges of the path are kept in a table sorted by
+ * their top. rows are walked from top to bottom with a list of active edges,
+ * the crossings of a row are accumulated into per-cell winding and coverage
+ * arrays which are reused for every row, so the memory used is proportional
+ * to the number of edges plus the width of the canvas. the pixels produced
+ * are the same as the ones of the scan buffer rasterizer.
+ *
+ * @author James Shen.
+ */
+class GraphicsPathCoverageFP {
+
+    /**
+     * Constructor.
+     *
+     * @param renderer the renderer which merges the pixels.
+     */
+    GraphicsPathCoverageFP(GraphicsPathRendererFP renderer) {
+        this.renderer = renderer;
+    }
+
+
+    /**
+     * remove all the edges.
+     */
+    void reset() {
+        edgeCount = 0;
+    }
+
+
+    /**
+     * get the number of edges.
+     *
+     * @return the number of edges.
+     */
+    int getEdgeCount() {
+        return edgeCount;
+    }
+
+
+    /**
+     * add an edge. the parameters are the ones of the sub-scanline walk of
+     * {@link GraphicsPathRendererFP}, in sub pixels.
+     *
+     * @param ymin   top sub-scanline.
+     * @param ystart first sub-scanline inside the canvas and the clip.
+     * @param ymax   bottom sub-scanline (excluded), clipped to the canvas and
+     *               the clip.
+     * @param x      x of the top sub-scanline.
+     * @param incx   x step direction.
+     * @param n      width of the edge.
+     * @param d      height of the edge.
+     * @param dire   1 if the edge goes down, 0 if it goes up.
+     */
+    void addEdge(int ymin, int ystart, int ymax, int x, int incx, int n, int d,
+                 int dire) {
+        if (edgeCount == edgeYmin.length) {
+            int size = edgeCount * 2;
+            edgeYmin = grow(edgeYmin, size);
+            edgeYstart = grow(edgeYstart, size);
+            edgeYmax = grow(edgeYmax, size);
+            edgeX = grow(edgeX, size);
+            edgeInc = grow(edgeInc, size);
+            edgeN = grow(edgeN, size);
+            edgeD = grow(edgeD, size);
+            edgeDir = grow(edgeDir, size);
+        }
+        edgeYmin[edgeCount] = ymin;
+        edgeYstart[edgeCount] = ystart;
+        edgeYmax[edgeCount] = ymax;
+        edgeX[edgeCount] = x;
+        edgeInc[edgeCount] = incx;
+        edgeN[edgeCount] = n;
+        edgeD[edgeCount] = d;
+        edgeDir[edgeCount] = dire;
+        edgeCount++;
+    }
+
+
+    /**
+     * sort the edge table, must be called once all the edges were added.
+     */
+    void sort() {
+        if (order.length < edgeCount) {
+            order = new long[MathFP.max(edgeCount, order.length * 2)];
+        }
+        firstRow = Integer.MAX_VALUE;
+        lastRow = -1;
+        for (int i = 0; i < edgeCount; i++) {
+            int ystart = edgeYstart[i];
+            order[i] = ((long) ystart << 32) | i;
+            firstRow = MathFP.min(firstRow, ystart / FRAC_Y);
+            lastRow = MathFP.max(lastRow, (edgeYmax[i] - 1) / FRAC_Y);
+        }
+        Arrays.sort(order, 0, edgeCount);
+    }
+
+
+    /**
+     * get the first row covered by the edges.
+     *
+     * @return the first row.
+     */
+    int getFirstRow() {
+        return firstRow;
+    }
+
+
+    /**
+     * get the last row covered by the edges.
+     *
+     * @return the last row.
+     */
+    int getLastRow() {
+        return lastRow;
+    }
+
+
+    /**
+     * draw the rows of a band, a band keeps its own accumulators so bands
+     * can be drawn in parallel.
+     *
+     * @param band    the band index.
+     * @param width   width of the canvas.
+     * @param fromRow first row of the band.
+     * @param toRow   end row of the band (excluded).
+     */
+    void drawBand(int band, int width, int fromRow, int toRow) {
+        getBand(band, width).draw(fromRow, toRow);
+    }
+
+
+    /**
+     * get the accumulators of a band, creating them when needed.
+     *
+     * @param band  the band index.
+     * @param width width of the canvas.
+     * @return the band.
+     */
+    private synchronized Band getBand(int band, int width) {
+        if (band >= bands.length) {
+            Band[] newBands = new Band[band + 1];
+            System.arraycopy(bands, 0, newBands, 0, bands.length);
+            bands = newBands;
+        }
+        if (bands[band] == null || bands[band].width != width) {
+            bands[band] = new Band(width);
+        }
+        return bands[band];
+    }
+
+
+    private static int[] grow(int[] array, int size) {
+        int[] newArray = new int[size];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+
+    /**
+     * row accumulators and active edge list of a band.
+     */
+    private class Band {
+        final int width;
+        final int[] winding;
+        final int[] coverUp;
+        final int[] coverDown;
+        final int[] hits;
+        int[] active = new int[64];
+        int[] activeX = new int[64];
+        int[] activeStep = new int[64];
+        int activeCount;
+
+        Band(int width) {
+            this.width = width;
+            winding = new int[width];
+            coverUp = new int[width];
+            coverDown = new int[width];
+            hits = new int[width];
+        }
+
+        void draw(int fromRow, int toRow) {
+            int next = 0;
+            int xmax = width * FRAC_X_FACTOR - 1;
+            activeCount = 0;
+            for (int row = fromRow; row < toRow; row++) {
+                int minCell = width;
+                int maxCell = -1;
+                for (int y = row * FRAC_Y; y < (row + 1) * FRAC_Y; y++) {
+                    while (next < edgeCount && (int) (order[next] >> 32) <= y) {
+                        int e = (int) order[next++];
+                        if (edgeYmax[e] > y) {
+                            if (activeCount == active.length) {
+                                active = grow(active, activeCount * 2);
+                                activeX = grow(activeX, activeCount * 2);
+                                activeStep = grow(activeStep, activeCount * 2);
+                            }
+                            // position of the edge after (y - ymin) steps of
+                            // the walk of the scan buffer rasterizer.
+                            long steps = (long) (y - edgeYmin[e]) * edgeN[e]
+                                    + edgeD[e] - 1;
+                            active[activeCount] = e;
+                            activeX[activeCount] = edgeX[e]
+                                    + edgeInc[e] * (int) (steps / edgeD[e]);
+                            activeStep[activeCount] = (int) (steps % edgeD[e]);
+                            activeCount++;
+                        }
+                    }
+                    int count = 0;
+                    for (int i = 0; i < activeCount; i++) {
+                        int e = active[i];
+                        if (edgeYmax[e] <= y) continue;
+                        int x = activeX[i];
+                        int step = activeStep[i] + edgeN[e];
+                        int d = edgeD[e];
+                        active[count] = e;
+                        if (step >= d) {
+                            int q = step / d;
+                            activeX[count] = x + edgeInc[e] * q;
+                            activeStep[count] = step - q * d;
+                        } else {
+                            activeX[count] = x;
+                            activeStep[count] = step;
+                        }
+                        count++;
+                        x = MathFP.max(0, MathFP.min(xmax, x));
+                        int cell = x >> FRAC_X;
+                        int cover = (~x) & FRAC_X_MASK;
+                        hits[cell]++;
+                        if (edgeDir[e] != 0) {
+                            winding[cell]++;
+                            coverUp[cell] += cover;
+                        } else {
+                            winding[cell]--;
+                            coverDown[cell] -= cover;
+                        }
+                        minCell = MathFP.min(minCell, cell);
+                        maxCell = MathFP.max(maxCell, cell);
+                    }
+                    activeCount = count;
+                }
+                sweep(row, minCell, maxCell);
+            }
+        }
+
+        /**
+         * merge the pixels of a row, the same way the scan buffer rasterizer
+         * does: each cell crossed by an edge is merged on its own, and the
+         * run of pixels up to the next crossed cell gets the winding after
+         * the cell.
+         */
+        private void sweep(int row, int minCell, int maxCell) {
+            int wind = 0;
+            int prev = -1;
+            for (int x = minCell; x <= maxCell; x++) {
+                if (hits[x] == 0) continue;
+                if (prev >= 0 && wind != 0 && x - prev > 1) {
+                    renderer.mergeCoverage(prev + 1, row, x - prev - 1,
+                            (256 * wind) / FRAC_Y);
+                }
+                int alp = (256 * wind) / FRAC_Y
+                        + (256 * coverUp[x]) / (FRAC_Y * (FRAC_X_FACTOR - 1))
+                        + (256 * coverDown[x]) / (FRAC_Y * (FRAC_X_FACTOR - 1));
+                renderer.mergeCoverage(x, row, 1, alp);
+                wind += winding[x];
+                hits[x] = 0;
+                winding[x] = 0;
+                coverUp[x] = 0;
+                coverDown[x] = 0;
+                prev = x;
+            }
+        }
+    }
+
+    private final static int FRAC_Y = GraphicsPathRendererFP.RENDERER_FRAC_Y;
+    private final static int FRAC_X = GraphicsPathRendererFP.RENDERER_FRAC_X;
+    private final static int FRAC_X_FACTOR = 1 << FRAC_X;
+    private final static int FRAC_X_MASK = FRAC_X_FACTOR - 1;
+    private final GraphicsPathRendererFP renderer;
+    private int edgeCount = 0;
+    private int[] edgeYmin = new int[64];
+    private int[] edgeYstart = new int[64];
+    private int[] edgeYmax = new int[64];
+    private int[] edgeX = new int[64];
+    private int[] edgeInc = new int[64];
+    private int[] edgeN = new int[64];
+    private int[] edgeD = new int[64];
+    private int[] edgeDir = new int[64];
+    private long[] order = new long[64];
+    private Band[] bands = new Band[0];
+    private int firstRow;
+    private int lastRow;
+}
@@ -17,11 +17,26 @@
 package com.guidebee.game.engine.drawing.core;
 
 //--------------------------------- IMPORTS ------------------------------------
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 //[------------------------------ MAIN CLASS ----------------------------------]
 
 /**
  * This class actually renders path in memory.
+ * <p/>
+ * the scanline buffers are owned by each renderer, so different renderers
+ * can be used from different threads at the same time. a renderer can also
+ * split the fill of a path into horizontal bands, rasterized in parallel, see
+ * {@link #setParallelism(int)}.
+ * <p/>
+ * two rasterizers are available: the scan buffer one stores and sorts an
+ * entry per edge crossing of each sub-scanline, the coverage one walks an
+ * active edge table and accumulates the crossings row by row, see
+ * {@link GraphicsPathCoverageFP}. both produce the same pixels.
  *
  * @author James Shen.
  */
@@ -36,6 +51,16 @@ class GraphicsPathRendererFP extends GraphicsPathSketchFP {
      */
     public final static int MODE_ZERO = 2;
 
+    /**
+     * scan buffer rasterizer, sorts all the edge crossings of the path.
+     */
+    public final static int RASTERIZER_SCANBUFFER = 0;
+
+    /**
+     * coverage rasterizer, walks the edges of the path row by row.
+     */
+    public final static int RASTERIZER_COVERAGE = 1;
+
 
     /**
      * default constructor.
@@ -63,6 +88,55 @@ class GraphicsPathRendererFP extends GraphicsPathSketchFP {
     }
 
 
+    /**
+     * get the number of bands the fill of a path is split into.
+     *
+     * @return the number of bands.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+
+    /**
+     * set the number of horizontal bands the fill of a path is split into.
+     * the bands are rasterized in parallel by a shared pool of threads, only
+     * paths filled with a mono color brush are split, other brushes keep
+     * state from pixel to pixel and are always rasterized by the calling
+     * thread.
+     *
+     * @param bands number of bands, 1 to rasterize on the calling thread only.
+     */
+    public void setParallelism(int bands) {
+        parallelism = MathFP.max(1, bands);
+    }
+
+
+    /**
+     * get the rasterizer.
+     *
+     * @return {@link #RASTERIZER_SCANBUFFER} or {@link #RASTERIZER_COVERAGE}.
+     */
+    public int getRasterizer() {
+        return rasterizer;
+    }
+
+
+    /**
+     * set the rasterizer. the coverage rasterizer uses less memory and is
+     * faster on large fills, the scan buffer one is faster on small ones.
+     *
+     * @param value {@link #RASTERIZER_SCANBUFFER} or
+     *              {@link #RASTERIZER_COVERAGE}.
+     */
+    public void setRasterizer(int value) {
+        if (value != RASTERIZER_SCANBUFFER && value != RASTERIZER_COVERAGE) {
+            throw new IllegalArgumentException("Unknown rasterizer: " + value);
+        }
+        rasterizer = value;
+    }
+
+
     /**
      * get the width of the graphics object.
      *
@@ -90,14 +164,55 @@ class GraphicsPathRendererFP extends GraphicsPathSketchFP {
      */
     public void drawPath(GraphicsPathFP path, BrushFP style, int mode) {
         scanIndex = 0;
+        coverage.reset();
         drawMode = mode;
         path.visit(this);
-        radixSort(scanbuf, scanbuf_tmp, scanIndex);
+        fillScans(style);
+    }
+
+
+    /**
+     * draw a flattened path, translated by given offset before the matrix
+     * is applied.
+     *
+     * @param path   the flattened path.
+     * @param ff_dx  the x offset.
+     * @param ff_dy  the y offset.
+     * @param matrix the transform matrix, can be null.
+     * @param style  the brush.
+     * @param mode   the paint mode.
+     */
+    public void drawPath(FlattenedPathFP path, int ff_dx, int ff_dy,
+                         MatrixFP matrix, BrushFP style, int mode) {
+        transformMatrix = matrix;
+        scanIndex = 0;
+        coverage.reset();
+        drawMode = mode;
+        path.visit(this, ff_dx, ff_dy);
+        fillScans(style);
+        transformMatrix = null;
+    }
+
+
+    /**
+     * fill the scan lines generated for the path.
+     */
+    private void fillScans(BrushFP style) {
+        if (rasterizer == RASTERIZER_SCANBUFFER) {
+            radixSort(scanbuf, scanbuf_tmp, scanIndex);
+        }
         fillStyle = style;
         if (transformMatrix != null) {
             fillStyle.setGraphicsMatrix(transformMatrix);
         }
-        drawBuffer();
+        if (rasterizer == RASTERIZER_COVERAGE) {
+            drawCoverage();
+        } else if (parallelism > 1 && fillStyle.isMonoColor()
+                && scanIndex >= MIN_PARALLEL_SIZE) {
+            drawBands();
+        } else {
+            drawBuffer(0, scanIndex);
+        }
         fillStyle = null;
     }
 
@@ -125,6 +240,7 @@ class GraphicsPathRendererFP extends GraphicsPathSketchFP {
         this.width = width;
         this.height = height;
         setClip(0, 0, width, height);
+        unionChangedBounds(0, 0, width - 1, height - 1);
     }
 
 
@@ -137,6 +253,56 @@ class GraphicsPathRendererFP extends GraphicsPathSketchFP {
             buffer[i] = color;
         }
         setClip(0, 0, width, height);
+        unionChangedBounds(0, 0, width - 1, height - 1);
+    }
+
+
+    /**
+     * clear an area of the buffer, the clip is not changed.
+     *
+     * @param color  the clear color.
+     * @param x      x of the area.
+     * @param y      y of the area.
+     * @param width  width of the area.
+     * @param height height of the area.
+     */
+    public void clear(int color, int x, int y, int width, int height) {
+        int x1 = MathFP.max(0, x);
+        int y1 = MathFP.max(0, y);
+        int x2 = MathFP.min(this.width, x + width);
+        int y2 = MathFP.min(this.height, y + height);
+        if (x1 >= x2 || y1 >= y2) return;
+        for (int row = y1; row < y2; row++) {
+            Arrays.fill(buffer, row * this.width + x1, row * this.width + x2,
+                    color);
+        }
+        unionChangedBounds(x1, y1, x2 - 1, y2 - 1);
+    }
+
+
+    /**
+     * get the bounds of the pixels which may have changed since last call to
+     * {@link #resetChangedBounds()}.
+     *
+     * @param bounds receives x, y, width and height of the bounds.
+     * @return false if no pixel has changed.
+     */
+    public boolean getChangedBounds(int[] bounds) {
+        if (changedMaxX < changedMinX) return false;
+        bounds[0] = changedMinX;
+        bounds[1] = changedMinY;
+        bounds[2] = changedMaxX - changedMinX + 1;
+        bounds[3] = changedMaxY - changedMinY + 1;
+        return true;
+    }
+
+
+    /**
+     * forget the changed pixels.
+     */
+    public void resetChangedBounds() {
+        changedMinX = changedMinY = Integer.MAX_VALUE;
+        changedMaxX = changedMaxY = -1;
     }
 
 
@@ -145,6 +311,7 @@ class GraphicsPathRendererFP extends GraphicsPathSketchFP {
      */
     public void finalizeBuffer(int color) {
         backGroundColor = color;
+        addChangedBounds(0, 0, width - 1, height - 1);
         ColorFP bk = ColorFP.fromArgb(color);
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
@@ -222,6 +389,29 @@ class GraphicsPathRendererFP extends GraphicsPathSketchFP {
     }
 
 
+    /**
+     * add an area to the changed pixels, clipped to the clip and the canvas.
+     */
+    private void addChangedBounds(int minX, int minY, int maxX, int maxY) {
+        unionChangedBounds(MathFP.max(minX, MathFP.max(0, clipX)),
+                MathFP.max(minY, MathFP.max(0, clipY)),
+                MathFP.min(maxX, MathFP.min(width - 1, clipX + clipWidth)),
+                MathFP.min(maxY, MathFP.min(height - 1, clipY + clipHeight)));
+    }
+
+
+    /**
+     * add an area to the changed pixels.
+     */
+    private void unionChangedBounds(int minX, int minY, int maxX, int maxY) {
+        if (minX > maxX || minY > maxY) return;
+        changedMinX = MathFP.min(changedMinX, minX);
+        changedMinY = MathFP.min(changedMinY, minY);
+        changedMaxX = MathFP.max(changedMaxX, maxX);
+        changedMaxY = MathFP.max(changedMaxY, maxY);
+    }
+
+
     /**
      * Check to see if this rectangle contains given point.
      *
@@ -236,8 +426,8 @@ class GraphicsPathRendererFP extends GraphicsPathSketchFP {
 
     int[] buffer = null;
     int backGroundColor = 0x00FFFFFF;
-    private final static int RENDERER_FRAC_Y = 4;
-    private final static int RENDERER_FRAC_X = 4;
+    final static int RENDERER_FRAC_Y = 4;
+    final static int RENDERER_FRAC_X = 4;
     private final static int RENDERER_REAL_X = 12;
     private final static int RENDERER_REAL_Y = 11;
     private final static int BUFFERSIZE = 2048;
@@ -247,10 +437,15 @@ class GraphicsPathRendererFP extends GraphicsPathSketchFP {
     private final static int RENDERER_FRAC_X_MASK = (1 << RENDERER_FRAC_X) - 1;
     private MatrixFP transformMatrix = null;
     private BrushFP fillStyle = null;
-    private static int[] scanbuf = null;
-    private static int[] scanbuf_tmp = null;
-    private static int[] counts = new int[256];
-    private static int[] index = new int[256];
+    private final static int MIN_PARALLEL_SIZE = 4096;
+    private int[] scanbuf = null;
+    private int[] scanbuf_tmp = null;
+    private final int[] counts = new int[256];
+    private final int[] index = new int[256];
+    private int parallelism = 1;
+    private int rasterizer = RASTERIZER_SCANBUFFER;
+    private final GraphicsPathCoverageFP coverage = new GraphicsPathCoverageFP(this);
+    private static ExecutorService executor = null;
     private PointFP transformedPoint;
     private int width = 0;
     private int height = 0;
@@ -266,7 +461,12 @@ class GraphicsPathRendererFP extends GraphicsPathSketchFP {
     int clipWidth = 0;
     int clipHeight = 0;
 
-    private static void radixSort(int[] data_src, int[] data_tmp, int num) {
+    private int changedMinX = Integer.MAX_VALUE;
+    private int changedMinY = Integer.MAX_VALUE;
+    private int changedMaxX = -1;
+    private int changedMaxY = -1;
+
+    private void radixSort(int[] data_src, int[] data_tmp, int num) {
         int shift, i;
         int[] src = data_src;
         int[] dst = data_tmp;
@@ -293,7 +493,177 @@ class GraphicsPathRendererFP extends GraphicsPathSketchFP {
         }
     }
 
-    private void drawBuffer() {
+    /**
+     * get the shared pool of threads which rasterize the bands.
+     *
+     * @return the executor.
+     */
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(
+                    Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r,
+                                    "GraphicsPathRenderer-Thread");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return executor;
+    }
+
+
+    /**
+     * split the sorted scan buffer into bands of rows, and draw them in
+     * parallel. the first band is drawn by the calling thread.
+     */
+    private void drawBands() {
+        int bands = parallelism;
+        int[] bounds = new int[bands + 1];
+        int last = row(scanbuf[scanIndex - 1]);
+        int first = row(scanbuf[0]);
+        bounds[bands] = scanIndex;
+        for (int b = 1; b < bands; b++) {
+            bounds[b] = findRow(first + (last - first + 1) * b / bands,
+                    bounds[b - 1]);
+        }
+        runBands(bounds, false);
+    }
+
+
+    /**
+     * draw the edges of the coverage rasterizer, split into bands of rows
+     * drawn in parallel when possible.
+     */
+    private void drawCoverage() {
+        if (coverage.getEdgeCount() == 0) return;
+        coverage.sort();
+        int first = coverage.getFirstRow();
+        int rows = coverage.getLastRow() - first + 1;
+        int bands = 1;
+        if (parallelism > 1 && fillStyle.isMonoColor()
+                && coverage.getEdgeCount() * rows >= MIN_PARALLEL_SIZE) {
+            bands = MathFP.min(parallelism, rows);
+        }
+        int[] bounds = new int[bands + 1];
+        for (int b = 0; b <= bands; b++) {
+            bounds[b] = first + rows * b / bands;
+        }
+        if (bands == 1) {
+            coverage.drawBand(0, width, bounds[0], bounds[1]);
+        } else {
+            runBands(bounds, true);
+        }
+    }
+
+
+    /**
+     * draw the bands in parallel, the first band is drawn by the calling
+     * thread.
+     *
+     * @param bounds   the bounds of the bands, entries of the scan buffer or
+     *                 rows of the coverage rasterizer.
+     * @param useCoverage true to draw with the coverage rasterizer.
+     */
+    private void runBands(final int[] bounds, final boolean useCoverage) {
+        int bands = bounds.length - 1;
+        final CountDownLatch done = new CountDownLatch(bands - 1);
+        final RuntimeException[] error = new RuntimeException[1];
+        ExecutorService pool = getExecutor();
+        for (int b = 1; b < bands; b++) {
+            final int band = b;
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        drawBand(band, bounds, useCoverage);
+                    } catch (RuntimeException e) {
+                        error[0] = e;
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        // the pool threads write into the shared buffers until they count
+        // down, so wait for them even if band 0 fails or we are interrupted.
+        boolean interrupted = false;
+        try {
+            drawBand(0, bounds, useCoverage);
+        } finally {
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (error[0] != null) {
+            throw error[0];
+        }
+    }
+
+
+    private void drawBand(int band, int[] bounds, boolean useCoverage) {
+        if (useCoverage) {
+            coverage.drawBand(band, width, bounds[band], bounds[band + 1]);
+        } else {
+            drawBuffer(bounds[band], bounds[band + 1]);
+        }
+    }
+
+
+    /**
+     * get the row of an entry of the scan buffer.
+     *
+     * @param curs the entry.
+     * @return the row.
+     */
+    private static int row(int curs) {
+        return (curs >> (RENDERER_REAL_X + RENDERER_FRAC_X + 1))
+                & RENDERER_REAL_Y_MASK;
+    }
+
+
+    /**
+     * find the first entry of the sorted scan buffer at or below given row.
+     *
+     * @param y    the row.
+     * @param from the index to start from.
+     * @return the index of the entry, or scanIndex if none.
+     */
+    private int findRow(int y, int from) {
+        int low = from;
+        int high = scanIndex;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (row(scanbuf[mid]) < y) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+
+    /**
+     * draw the entries of the sorted scan buffer in given range, the range
+     * must start at the first entry of a row and end at the first entry of
+     * another row (or at the end of the buffer).
+     *
+     * @param from the first entry.
+     * @param to   the end of the range.
+     */
+    private void drawBuffer(int from, int to) {
         int curd = 0;
         int cure = 0;
         int cura = 0;
@@ -301,11 +671,14 @@ class GraphicsPathRendererFP extends GraphicsPathSketchFP {
         int cury = 0;
         int curx = 0;
         int curs = 0;
-        int count = scanIndex;
-        for (int c = 0; c <= count; c++) {
-            curs = c == count ? 0 : scanbuf[c];
-
-            int newy = ((curs >> (RENDERER_REAL_X + RENDERER_FRAC_X + 1))
+        int count = to;
+        for (int c = from; c <= count; c++) {
+            curs = c == scanIndex ? 0 : scanbuf[c];
+
+            // the end of the buffer is a row of its own, so that the last
+            // pixel is merged even if it's the top left one.
+            int newy = c == scanIndex ? -1
+                    : ((curs >> (RENDERER_REAL_X + RENDERER_FRAC_X + 1))
                     & RENDERER_REAL_Y_MASK);
             int newx = ((curs >> (RENDERER_FRAC_X + 1)) & RENDERER_REAL_X_MASK);
             if ((newx != curx) || (newy != cury)) {
@@ -391,31 +764,44 @@ class GraphicsPathRendererFP extends GraphicsPathSketchFP {
         int d = MathFP.abs(ymax - ymin);
         int i = d;
 
-        ymax = MathFP.min(ymax, height * RENDERER_FRAC_Y);
-
-        for (int y = ymin; y < ymax; y++) {
-            if (y >= 0) {
-                if (scanIndex >= scanbuf.length) {
-                    int bufSize = scanIndex / BUFFERSIZE;
-                    if ((scanIndex + 1) % BUFFERSIZE != 0) {
-                        bufSize += 1;
-                    }
-                    scanbuf_tmp = new int[bufSize * BUFFERSIZE];
-                    System.arraycopy(scanbuf, 0, scanbuf_tmp, 0, scanIndex);
-                    scanbuf = new int[bufSize * BUFFERSIZE];
-
-
-                    System.arraycopy(scanbuf_tmp, 0, scanbuf, 0, scanIndex);
-                    System.gc();
-                    System.gc();
-
-                }
-                scanbuf[scanIndex++] = ((y / RENDERER_FRAC_Y)
-                        << (RENDERER_REAL_X + RENDERER_FRAC_X + 1))
-                        | (MathFP.max(0, MathFP.min((width *
-                        RENDERER_FRAC_X_FACTOR) - 1, x)) << 1) | dire;
+        // only the sub-scanlines of the rows inside the clip are walked.
+        int rowStart = MathFP.max(0, clipY) * RENDERER_FRAC_Y;
+        int rowEnd = MathFP.min(height, clipY + clipHeight + 1)
+                * RENDERER_FRAC_Y;
+        ymax = MathFP.min(ymax, rowEnd);
+        int ystart = MathFP.max(ymin, rowStart);
+        if (ystart >= ymax) {
+            return;
+        }
+        int xlimit = width * RENDERER_FRAC_X_FACTOR - 1;
+        addChangedBounds(MathFP.max(0, MathFP.min(xlimit, xmin))
+                        >> RENDERER_FRAC_X,
+                ystart / RENDERER_FRAC_Y,
+                MathFP.max(0, MathFP.min(xlimit, xmax)) >> RENDERER_FRAC_X,
+                (ymax - 1) / RENDERER_FRAC_Y);
+
+        if (rasterizer == RASTERIZER_COVERAGE) {
+            coverage.addEdge(ymin, ystart, ymax, x, incx, n, d, dire);
+            return;
+        }
 
+        if (ystart > ymin) {
+            // skip the sub-scanlines above the clip in one step.
+            long steps = (long) (ystart - ymin) * n + d - 1;
+            x += incx * (int) (steps / d);
+            i = (int) (steps % d) + 1;
+        }
+        for (int y = ystart; y < ymax; y++) {
+            if (scanIndex >= scanbuf.length) {
+                int bufSize = scanbuf.length * 2 + BUFFERSIZE;
+                int[] newbuf = new int[bufSize];
+                System.arraycopy(scanbuf, 0, newbuf, 0, scanIndex);
+                scanbuf = newbuf;
+                scanbuf_tmp = new int[bufSize];
             }
+            scanbuf[scanIndex++] = ((y / RENDERER_FRAC_Y)
+                    << (RENDERER_REAL_X + RENDERER_FRAC_X + 1))
+                    | (MathFP.max(0, MathFP.min(xlimit, x)) << 1) | dire;
             i += n;
             if (i > d) {
                 int idivd = (i - 1) / d;
@@ -426,6 +812,30 @@ class GraphicsPathRendererFP extends GraphicsPathSketchFP {
     }
 
 
+    /**
+     * merge a run of pixels with the coverage computed by the coverage
+     * rasterizer, as drawBuffer() does.
+     *
+     * @param x     x of the first pixel.
+     * @param y     y of the pixels.
+     * @param count number of pixels.
+     * @param alp   the coverage.
+     */
+    void mergeCoverage(int x, int y, int count, int alp) {
+        if (alp != 0) {
+            if (drawMode == MODE_XOR) {
+                alp = (alp & 0x100) != 0
+                        ? (0xFF - (alp & 0xFF)) : (alp & 0xFF);
+            } else {
+                alp = MathFP.min(255, MathFP.abs(alp));
+            }
+            if (alp != 0) {
+                mergePixels(x, y, count, alp);
+            }
+        }
+    }
+
+
     /**
      * @param x
      * @param y
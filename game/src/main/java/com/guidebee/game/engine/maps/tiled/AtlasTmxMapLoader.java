@@ -37,6 +37,7 @@ import com.guidebee.game.maps.objects.EllipseMapObject;
 import com.guidebee.game.maps.objects.PolygonMapObject;
 import com.guidebee.game.maps.objects.PolylineMapObject;
 import com.guidebee.game.maps.objects.RectangleMapObject;
+import com.guidebee.game.maps.tiled.ChunkedTiledMapTileLayer;
 import com.guidebee.game.maps.tiled.TiledMap;
 import com.guidebee.game.maps.tiled.TiledMapTile;
 import com.guidebee.game.maps.tiled.TiledMapTileLayer;
@@ -92,6 +93,25 @@ public class AtlasTmxMapLoader extends
          * Whether to convert the objects' pixel position and size to the equivalent in tile space. *
          */
         public boolean convertObjectToTileSpace = false;
+        /**
+         * Whether to store the tile layers in chunks which are decoded on
+         * demand, see {@link ChunkedTiledMapTileLayer}.
+         * <p>
+         * <b>Breaking change for code keeping Cells:</b> the Cells of a
+         * chunked layer are only tied to it while their chunk stays loaded.
+         * Once it is unloaded, getCell returns a new Cell for the same tile,
+         * and changes made to a Cell kept from before are lost; use setCell,
+         * or read the Cell again. *
+         */
+        public boolean chunkedLayers = false;
+        /**
+         * Chunk width and height, in tiles, of the chunked layers. *
+         */
+        public int chunkSize = 32;
+        /**
+         * Number of chunks each chunked layer keeps loaded. *
+         */
+        public int loadedChunkBudget = 256;
     }
 
     protected static final int FLAG_FLIP_HORIZONTALLY = 0x80000000;
@@ -102,6 +122,9 @@ public class AtlasTmxMapLoader extends
     protected XmlReader xml = new XmlReader();
     protected XmlReader.Element root;
     protected boolean convertObjectToTileSpace;
+    protected boolean chunkedLayers;
+    protected int chunkSize;
+    protected int loadedChunkBudget;
 
     protected int mapTileWidth;
     protected int mapTileHeight;
@@ -184,8 +207,12 @@ public class AtlasTmxMapLoader extends
         try {
             if (parameter != null) {
                 convertObjectToTileSpace = parameter.convertObjectToTileSpace;
+                chunkedLayers = parameter.chunkedLayers;
+                chunkSize = parameter.chunkSize;
+                loadedChunkBudget = parameter.loadedChunkBudget;
             } else {
                 convertObjectToTileSpace = false;
+                chunkedLayers = false;
             }
 
             FileHandle tmxFile = resolve(fileName);
@@ -254,8 +281,12 @@ public class AtlasTmxMapLoader extends
 
         if (parameter != null) {
             convertObjectToTileSpace = parameter.convertObjectToTileSpace;
+            chunkedLayers = parameter.chunkedLayers;
+            chunkSize = parameter.chunkSize;
+            loadedChunkBudget = parameter.loadedChunkBudget;
         } else {
             convertObjectToTileSpace = false;
+            chunkedLayers = false;
         }
 
         try {
@@ -473,25 +504,35 @@ public class AtlasTmxMapLoader extends
             int tileHeight = element.getParent().getIntAttribute("tileheight", 0);
             boolean visible = element.getIntAttribute("visible", 1) == 1;
             float opacity = element.getFloatAttribute("opacity", 1.0f);
-            TiledMapTileLayer layer = new TiledMapTileLayer(width, height, tileWidth, tileHeight);
+            TiledMapTileSets tilesets = map.getTileSets();
+            TiledMapTileLayer layer;
+            if (chunkedLayers) {
+                layer = new ChunkedTiledMapTileLayer(width, height, tileWidth, tileHeight,
+                        tilesets, chunkSize, loadedChunkBudget);
+            } else {
+                layer = new TiledMapTileLayer(width, height, tileWidth, tileHeight);
+            }
             layer.setVisible(visible);
             layer.setOpacity(opacity);
             layer.setName(name);
 
-            int[] ids = TmxMapHelper.getTileIds(element, width, height);
-            TiledMapTileSets tilesets = map.getTileSets();
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    int id = ids[y * width + x];
-                    boolean flipHorizontally = ((id & FLAG_FLIP_HORIZONTALLY) != 0);
-                    boolean flipVertically = ((id & FLAG_FLIP_VERTICALLY) != 0);
-                    boolean flipDiagonally = ((id & FLAG_FLIP_DIAGONALLY) != 0);
-
-                    TiledMapTile tile = tilesets.getTile(id & ~MASK_CLEAR);
-                    if (tile != null) {
-                        Cell cell = createTileLayerCell(flipHorizontally, flipVertically, flipDiagonally);
-                        cell.setTile(tile);
-                        layer.setCell(x, height - 1 - y, cell);
+            if (chunkedLayers) {
+                TmxMapHelper.readTileIds(element, (ChunkedTiledMapTileLayer) layer);
+            } else {
+                int[] ids = TmxMapHelper.getTileIds(element, width, height);
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        int id = ids[y * width + x];
+                        boolean flipHorizontally = ((id & FLAG_FLIP_HORIZONTALLY) != 0);
+                        boolean flipVertically = ((id & FLAG_FLIP_VERTICALLY) != 0);
+                        boolean flipDiagonally = ((id & FLAG_FLIP_DIAGONALLY) != 0);
+
+                        TiledMapTile tile = tilesets.getTile(id & ~MASK_CLEAR);
+                        if (tile != null) {
+                            Cell cell = createTileLayerCell(flipHorizontally, flipVertically, flipDiagonally);
+                            cell.setTile(tile);
+                            layer.setCell(x, height - 1 - y, cell);
+                        }
                     }
                 }
             }
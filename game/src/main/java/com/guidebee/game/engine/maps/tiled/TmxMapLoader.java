@@ -39,6 +39,7 @@ import com.guidebee.game.maps.objects.EllipseMapObject;
 import com.guidebee.game.maps.objects.PolygonMapObject;
 import com.guidebee.game.maps.objects.PolylineMapObject;
 import com.guidebee.game.maps.objects.RectangleMapObject;
+import com.guidebee.game.maps.tiled.ChunkedTiledMapTileLayer;
 import com.guidebee.game.maps.tiled.TiledMap;
 import com.guidebee.game.maps.tiled.TiledMapTile;
 import com.guidebee.game.maps.tiled.TiledMapTileLayer;
@@ -88,6 +89,25 @@ public class TmxMapLoader
          * to the equivalent in tile space. *
          */
         public boolean convertObjectToTileSpace = false;
+        /**
+         * Whether to store the tile layers in chunks which are decoded on
+         * demand, see {@link ChunkedTiledMapTileLayer}.
+         * <p>
+         * <b>Breaking change for code keeping Cells:</b> the Cells of a
+         * chunked layer are only tied to it while their chunk stays loaded.
+         * Once it is unloaded, getCell returns a new Cell for the same tile,
+         * and changes made to a Cell kept from before are lost; use setCell,
+         * or read the Cell again. *
+         */
+        public boolean chunkedLayers = false;
+        /**
+         * Chunk width and height, in tiles, of the chunked layers. *
+         */
+        public int chunkSize = 32;
+        /**
+         * Number of chunks each chunked layer keeps loaded. *
+         */
+        public int loadedChunkBudget = 256;
     }
 
     protected static final int FLAG_FLIP_HORIZONTALLY = 0x80000000;
@@ -98,6 +118,9 @@ public class TmxMapLoader
     protected XmlReader xml = new XmlReader();
     protected XmlReader.Element root;
     protected boolean convertObjectToTileSpace;
+    protected boolean chunkedLayers;
+    protected int chunkSize;
+    protected int loadedChunkBudget;
 
     protected int mapTileWidth;
     protected int mapTileHeight;
@@ -145,6 +168,9 @@ public class TmxMapLoader
     public TiledMap load(String fileName, TmxMapLoader.Parameters parameters) {
         try {
             this.convertObjectToTileSpace = parameters.convertObjectToTileSpace;
+            this.chunkedLayers = parameters.chunkedLayers;
+            this.chunkSize = parameters.chunkSize;
+            this.loadedChunkBudget = parameters.loadedChunkBudget;
             FileHandle tmxFile = resolve(fileName);
             root = xml.parse(tmxFile);
             ObjectMap<String, Texture> textures = new ObjectMap<String, Texture>();
@@ -170,8 +196,12 @@ public class TmxMapLoader
 
         if (parameter != null) {
             convertObjectToTileSpace = parameter.convertObjectToTileSpace;
+            chunkedLayers = parameter.chunkedLayers;
+            chunkSize = parameter.chunkSize;
+            loadedChunkBudget = parameter.loadedChunkBudget;
         } else {
             convertObjectToTileSpace = false;
+            chunkedLayers = false;
         }
         try {
             map = loadTilemap(root, tmxFile, new AssetManagerImageResolver(manager));
@@ -483,26 +513,36 @@ public class TmxMapLoader
             int tileHeight = element.getParent().getIntAttribute("tileheight", 0);
             boolean visible = element.getIntAttribute("visible", 1) == 1;
             float opacity = element.getFloatAttribute("opacity", 1.0f);
-            TiledMapTileLayer layer = new TiledMapTileLayer(width, height, tileWidth, tileHeight);
+            TiledMapTileSets tilesets = map.getTileSets();
+            TiledMapTileLayer layer;
+            if (chunkedLayers) {
+                layer = new ChunkedTiledMapTileLayer(width, height, tileWidth, tileHeight,
+                        tilesets, chunkSize, loadedChunkBudget);
+            } else {
+                layer = new TiledMapTileLayer(width, height, tileWidth, tileHeight);
+            }
             layer.setVisible(visible);
             layer.setOpacity(opacity);
             layer.setName(name);
 
-            int[] ids = TmxMapHelper.getTileIds(element, width, height);
-            TiledMapTileSets tilesets = map.getTileSets();
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    int id = ids[y * width + x];
-                    boolean flipHorizontally = ((id & FLAG_FLIP_HORIZONTALLY) != 0);
-                    boolean flipVertically = ((id & FLAG_FLIP_VERTICALLY) != 0);
-                    boolean flipDiagonally = ((id & FLAG_FLIP_DIAGONALLY) != 0);
-
-                    TiledMapTile tile = tilesets.getTile(id & ~MASK_CLEAR);
-                    if (tile != null) {
-                        TiledMapTileLayer.Cell cell = createTileLayerCell(flipHorizontally,
-                                flipVertically, flipDiagonally);
-                        cell.setTile(tile);
-                        layer.setCell(x, height - 1 - y, cell);
+            if (chunkedLayers) {
+                TmxMapHelper.readTileIds(element, (ChunkedTiledMapTileLayer) layer);
+            } else {
+                int[] ids = TmxMapHelper.getTileIds(element, width, height);
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        int id = ids[y * width + x];
+                        boolean flipHorizontally = ((id & FLAG_FLIP_HORIZONTALLY) != 0);
+                        boolean flipVertically = ((id & FLAG_FLIP_VERTICALLY) != 0);
+                        boolean flipDiagonally = ((id & FLAG_FLIP_DIAGONALLY) != 0);
+
+                        TiledMapTile tile = tilesets.getTile(id & ~MASK_CLEAR);
+                        if (tile != null) {
+                            TiledMapTileLayer.Cell cell = createTileLayerCell(flipHorizontally,
+                                    flipVertically, flipDiagonally);
+                            cell.setTile(tile);
+                            layer.setCell(x, height - 1 - y, cell);
+                        }
                     }
                 }
             }
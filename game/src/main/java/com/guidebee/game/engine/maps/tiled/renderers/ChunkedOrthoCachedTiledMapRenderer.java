@@ -0,0 +1,691 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.engine.maps.tiled.renderers;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.GameEngine;
+import com.guidebee.game.GameEngineRuntimeException;
+import com.guidebee.game.camera.OrthographicCamera;
+import com.guidebee.game.engine.graphics.opengles.IGL20;
+import com.guidebee.game.engine.maps.tiled.TiledMapRenderer;
+import com.guidebee.game.graphics.Batch;
+import com.guidebee.game.graphics.Color;
+import com.guidebee.game.graphics.SpriteCache;
+import com.guidebee.game.graphics.Texture;
+import com.guidebee.game.graphics.TextureRegion;
+import com.guidebee.game.maps.MapLayer;
+import com.guidebee.game.maps.MapLayers;
+import com.guidebee.game.maps.MapObject;
+import com.guidebee.game.maps.tiled.ChunkedTiledMapTileLayer;
+import com.guidebee.game.maps.tiled.TiledMap;
+import com.guidebee.game.maps.tiled.TiledMapTile;
+import com.guidebee.game.maps.tiled.TiledMapTileLayer;
+import com.guidebee.math.Matrix4;
+import com.guidebee.math.geometry.Rectangle;
+import com.guidebee.utils.Disposable;
+import com.guidebee.utils.collections.Array;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Renders ortho tiles by caching geometry on the GPU, one cache per chunk of
+ * {@link #getChunkSize()} x {@link #getChunkSize()} tiles of each layer.
+ * <p/>
+ * A chunk is cached the first time it comes into view and is then only drawn,
+ * so moving the view doesn't rebuild anything, and only the chunks
+ * overlapping the view are drawn. The chunks of a
+ * {@link ChunkedTiledMapTileLayer} are the chunks of the layer, and its empty
+ * chunks are skipped without being loaded.
+ * <p/>
+ * After {@link TiledMapTileLayer#setCell(int, int, TiledMapTileLayer.Cell)},
+ * call {@link #invalidateCell(TiledMapTileLayer, int, int)} so only the
+ * chunk of the cell is rebuilt. If the modification count of a layer changed
+ * and no cell of it was invalidated, all its chunks are rebuilt. Changes made
+ * to a cell without setCell need {@link #invalidateCell} too.
+ * <p/>
+ * When the {@link SpriteCache} is full, it is cleared and only the chunks in
+ * view are cached again.
+ */
+public class ChunkedOrthoCachedTiledMapRenderer implements TiledMapRenderer, Disposable {
+    static private final int NOT_CACHED = -1;
+    static private final int EMPTY = -2;
+
+    protected final TiledMap map;
+    protected final SpriteCache spriteCache;
+    protected final int cacheSize;
+    protected final int chunkSize;
+    protected final float[] vertices = new float[20];
+    protected boolean blending;
+
+    protected float unitScale;
+    protected final Rectangle viewBounds = new Rectangle();
+    protected float maxTileWidth, maxTileHeight;
+
+    /**
+     * Number of tiles stored in the sprite cache, including the space of
+     * chunks which were moved to a larger cache.
+     */
+    protected int usedSize;
+
+    /**
+     * Id of the last cache created in the sprite cache, the only one which
+     * can be redefined with more tiles, or -1 when it is empty.
+     */
+    protected int lastCacheId = -1;
+    protected int renderedTiles;
+    protected int cachedTiles;
+
+    private final Array<ChunkGrid> grids = new Array<ChunkGrid>();
+    private float[] chunkVertices = new float[0];
+    private Texture[] chunkTextures = new Texture[0];
+
+    /**
+     * Creates a renderer with a unit scale of 1, a cache size of 5460 and
+     * chunks of 16 x 16 tiles.
+     */
+    public ChunkedOrthoCachedTiledMapRenderer(TiledMap map) {
+        this(map, 1, 5460, 16);
+    }
+
+    /**
+     * Creates a renderer with a cache size of 5460 and chunks of 16 x 16
+     * tiles.
+     */
+    public ChunkedOrthoCachedTiledMapRenderer(TiledMap map, float unitScale) {
+        this(map, unitScale, 5460, 16);
+    }
+
+    /**
+     * @param cacheSize The maximum number of tiles that can be cached, at
+     *                  most 5460.
+     * @param chunkSize The width and height of a chunk in tiles, for layers
+     *                  other than {@link ChunkedTiledMapTileLayer}.
+     */
+    public ChunkedOrthoCachedTiledMapRenderer(TiledMap map, float unitScale, int cacheSize,
+                                              int chunkSize) {
+        this(map, unitScale, new SpriteCache(cacheSize, true), cacheSize, chunkSize);
+    }
+
+    /**
+     * @param spriteCache the cache the chunks are stored in, used only by this
+     *                    renderer.
+     * @param cacheSize   the maximum number of tiles spriteCache can hold.
+     * @param chunkSize   The width and height of a chunk in tiles, for layers
+     *                    other than {@link ChunkedTiledMapTileLayer}.
+     */
+    public ChunkedOrthoCachedTiledMapRenderer(TiledMap map, float unitScale,
+                                              SpriteCache spriteCache, int cacheSize,
+                                              int chunkSize) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize must be > 0.");
+        this.map = map;
+        this.unitScale = unitScale;
+        this.spriteCache = spriteCache;
+        this.cacheSize = cacheSize;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void setView(OrthographicCamera camera) {
+        spriteCache.setProjectionMatrix(camera.combined);
+        float width = camera.viewportWidth * camera.zoom
+                + maxTileWidth * 2 * unitScale;
+        float height = camera.viewportHeight * camera.zoom
+                + maxTileHeight * 2 * unitScale;
+        viewBounds.set(camera.position.x - width / 2,
+                camera.position.y - height / 2, width, height);
+    }
+
+    @Override
+    public void setView(Matrix4 projection, float x, float y, float width, float height) {
+        spriteCache.setProjectionMatrix(projection);
+        x -= maxTileWidth * unitScale;
+        y -= maxTileHeight * unitScale;
+        width += maxTileWidth * 2 * unitScale;
+        height += maxTileHeight * 2 * unitScale;
+        viewBounds.set(x, y, width, height);
+    }
+
+    @Override
+    public void render() {
+        MapLayers mapLayers = map.getLayers();
+        syncGrids(mapLayers);
+        cachedTiles = 0;
+        if (!cacheVisibleLayers(null)) {
+            clearCache();
+            if (!cacheVisibleLayers(null)) throw cacheFull();
+        }
+
+        if (blending) {
+            GameEngine.gl.glEnable(IGL20.GL_BLEND);
+            GameEngine.gl.glBlendFunc(IGL20.GL_SRC_ALPHA, IGL20.GL_ONE_MINUS_SRC_ALPHA);
+        }
+        renderedTiles = 0;
+        spriteCache.begin();
+        for (int i = 0, j = mapLayers.getCount(); i < j; i++) {
+            MapLayer layer = mapLayers.get(i);
+            if (layer.isVisible()) {
+                ChunkGrid grid = grids.get(i);
+                if (grid != null) drawVisibleChunks(grid);
+                for (MapObject object : layer.getObjects()) {
+                    renderObject(object);
+                }
+            }
+        }
+        spriteCache.end();
+        if (blending) GameEngine.gl.glDisable(IGL20.GL_BLEND);
+    }
+
+    @Override
+    public void render(int[] layers) {
+        MapLayers mapLayers = map.getLayers();
+        syncGrids(mapLayers);
+        cachedTiles = 0;
+        if (!cacheVisibleLayers(layers)) {
+            clearCache();
+            if (!cacheVisibleLayers(layers)) throw cacheFull();
+        }
+
+        if (blending) {
+            GameEngine.gl.glEnable(IGL20.GL_BLEND);
+            GameEngine.gl.glBlendFunc(IGL20.GL_SRC_ALPHA, IGL20.GL_ONE_MINUS_SRC_ALPHA);
+        }
+        renderedTiles = 0;
+        spriteCache.begin();
+        for (int i : layers) {
+            MapLayer layer = mapLayers.get(i);
+            if (layer.isVisible()) {
+                ChunkGrid grid = grids.get(i);
+                if (grid != null) drawVisibleChunks(grid);
+                for (MapObject object : layer.getObjects()) {
+                    renderObject(object);
+                }
+            }
+        }
+        spriteCache.end();
+        if (blending) GameEngine.gl.glDisable(IGL20.GL_BLEND);
+    }
+
+    @Override
+    public void renderObject(MapObject object) {
+    }
+
+    /**
+     * Caches the chunks of the layer in view which are not cached yet or were
+     * invalidated. Drawing is done by {@link #render()}.
+     */
+    @Override
+    public void renderTileLayer(TiledMapTileLayer layer) {
+        syncGrids(map.getLayers());
+        for (int i = 0; i < grids.size; i++) {
+            ChunkGrid grid = grids.get(i);
+            if (grid == null || grid.layer != layer) continue;
+            if (!cacheVisibleChunks(grid)) {
+                clearCache();
+                if (!cacheVisibleChunks(grid)) throw cacheFull();
+            }
+        }
+    }
+
+    /**
+     * Causes the chunk holding the cell at (x, y) of the layer to be rebuilt
+     * the next time it is rendered.
+     */
+    public void invalidateCell(TiledMapTileLayer layer, int x, int y) {
+        for (int i = 0; i < grids.size; i++) {
+            ChunkGrid grid = grids.get(i);
+            if (grid == null || grid.layer != layer) continue;
+            if (x < 0 || x >= layer.getWidth() || y < 0 || y >= layer.getHeight()) return;
+            grid.dirty[(y / grid.chunkSize) * grid.chunksX + x / grid.chunkSize] = true;
+            grid.invalidated = true;
+        }
+    }
+
+    /**
+     * Causes all the chunks to be rebuilt the next time they are rendered.
+     */
+    public void invalidateCache() {
+        clearCache();
+        for (int i = 0; i < grids.size; i++) {
+            ChunkGrid grid = grids.get(i);
+            if (grid != null) grid.reset();
+        }
+    }
+
+    /**
+     * @return the width and height of a chunk in tiles, for layers other than
+     * {@link ChunkedTiledMapTileLayer}.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return the number of tiles drawn by the last render.
+     */
+    public int getRenderedTileCount() {
+        return renderedTiles;
+    }
+
+    /**
+     * @return the number of tiles cached by the last render, for the chunks
+     * coming into view and the invalidated ones.
+     */
+    public int getCachedTileCount() {
+        return cachedTiles;
+    }
+
+    /**
+     * Expands the view size in each direction, ensuring that tiles of this
+     * size or smaller are never culled from the visible portion of the view.
+     * Default is 0,0.
+     */
+    public void setMaxTileSize(float maxPixelWidth, float maxPixelHeight) {
+        this.maxTileWidth = maxPixelWidth;
+        this.maxTileHeight = maxPixelHeight;
+    }
+
+    public void setBlending(boolean blending) {
+        this.blending = blending;
+    }
+
+    public SpriteCache getSpriteCache() {
+        return spriteCache;
+    }
+
+    @Override
+    public void dispose() {
+        spriteCache.dispose();
+    }
+
+    /**
+     * Clears the sprite cache. Chunks with tiles have to be cached again,
+     * empty chunks stay empty.
+     */
+    protected void clearCache() {
+        spriteCache.clear();
+        usedSize = 0;
+        lastCacheId = -1;
+        for (int i = 0; i < grids.size; i++) {
+            ChunkGrid grid = grids.get(i);
+            if (grid == null) continue;
+            int[] cacheIds = grid.cacheIds;
+            for (int j = 0; j < cacheIds.length; j++) {
+                if (cacheIds[j] >= 0) cacheIds[j] = NOT_CACHED;
+            }
+        }
+    }
+
+    private void syncGrids(MapLayers mapLayers) {
+        int count = mapLayers.getCount();
+        if (grids.size > count) grids.truncate(count);
+        for (int i = 0; i < count; i++) {
+            MapLayer layer = mapLayers.get(i);
+            TiledMapTileLayer tileLayer = layer instanceof TiledMapTileLayer
+                    ? (TiledMapTileLayer) layer : null;
+            if (i == grids.size) {
+                grids.add(tileLayer != null ? new ChunkGrid(tileLayer) : null);
+            } else {
+                ChunkGrid grid = grids.get(i);
+                if ((grid == null ? null : grid.layer) != tileLayer) {
+                    grids.set(i, tileLayer != null ? new ChunkGrid(tileLayer) : null);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param layers indices of the layers, null for all the layers.
+     * @return false if the sprite cache is full.
+     */
+    private boolean cacheVisibleLayers(int[] layers) {
+        MapLayers mapLayers = map.getLayers();
+        int count = layers != null ? layers.length : mapLayers.getCount();
+        for (int i = 0; i < count; i++) {
+            int index = layers != null ? layers[i] : i;
+            ChunkGrid grid = grids.get(index);
+            if (grid == null || !grid.layer.isVisible()) continue;
+            if (!cacheVisibleChunks(grid)) return false;
+        }
+        return true;
+    }
+
+    private boolean cacheVisibleChunks(ChunkGrid grid) {
+        TiledMapTileLayer layer = grid.layer;
+        int modificationCount = layer.getModificationCount();
+        if (modificationCount != grid.modificationCount) {
+            if (!grid.invalidated) {
+                boolean[] dirty = grid.dirty;
+                for (int i = 0; i < dirty.length; i++)
+                    dirty[i] = true;
+            }
+            grid.modificationCount = modificationCount;
+        }
+        grid.invalidated = false;
+
+        if (!grid.setVisibleChunks()) return true;
+        for (int chunkY = grid.chunkY2; chunkY >= grid.chunkY1; chunkY--) {
+            for (int chunkX = grid.chunkX1; chunkX <= grid.chunkX2; chunkX++) {
+                int index = chunkY * grid.chunksX + chunkX;
+                if (grid.cacheIds[index] != NOT_CACHED && !grid.dirty[index]) continue;
+                if (!cacheChunk(grid, chunkX, chunkY)) return false;
+                grid.dirty[index] = false;
+            }
+        }
+        return true;
+    }
+
+    private GameEngineRuntimeException cacheFull() {
+        return new GameEngineRuntimeException(
+                "The tiles in view don't fit in a cache of " + cacheSize + " tiles.");
+    }
+
+    private void drawVisibleChunks(ChunkGrid grid) {
+        if (!grid.setVisibleChunks()) return;
+        for (int chunkY = grid.chunkY2; chunkY >= grid.chunkY1; chunkY--) {
+            for (int chunkX = grid.chunkX1; chunkX <= grid.chunkX2; chunkX++) {
+                int index = chunkY * grid.chunksX + chunkX;
+                int cacheId = grid.cacheIds[index];
+                // a chunk emptied after it was cached keeps its cache, to
+                // reuse the space when it gets tiles again.
+                if (cacheId < 0 || grid.tileCounts[index] == 0) continue;
+                spriteCache.draw(cacheId);
+                renderedTiles += grid.tileCounts[index];
+            }
+        }
+    }
+
+    /**
+     * Caches the tiles of a chunk, in its current cache if they fit.
+     *
+     * @return false if the sprite cache is full.
+     */
+    private boolean cacheChunk(ChunkGrid grid, int chunkX, int chunkY) {
+        int index = chunkY * grid.chunksX + chunkX;
+        TiledMapTileLayer layer = grid.layer;
+        int count = 0;
+        if (!(layer instanceof ChunkedTiledMapTileLayer)
+                || !((ChunkedTiledMapTileLayer) layer).isChunkEmpty(chunkX, chunkY)) {
+            count = buildChunk(grid, chunkX, chunkY);
+        }
+
+        int cacheId = grid.cacheIds[index];
+        if (cacheId < 0) {
+            if (count == 0) {
+                grid.cacheIds[index] = EMPTY;
+                grid.tileCounts[index] = 0;
+                return true;
+            }
+        } else {
+            // The last cache can grow in place, the others can only be
+            // redefined with as many tiles as they were created with.
+            boolean last = cacheId == lastCacheId;
+            if (count <= grid.capacities[index]
+                    || (last && grid.offsets[index] + count <= cacheSize)) {
+                spriteCache.beginCache(cacheId);
+                addChunk(count);
+                spriteCache.endCache();
+                if (last) {
+                    usedSize = grid.offsets[index] + count;
+                    grid.capacities[index] = count;
+                }
+                grid.tileCounts[index] = count;
+                cachedTiles += count;
+                return true;
+            }
+        }
+        if (usedSize + count > cacheSize) return false;
+        spriteCache.beginCache();
+        addChunk(count);
+        lastCacheId = spriteCache.endCache();
+        grid.cacheIds[index] = lastCacheId;
+        grid.offsets[index] = usedSize;
+        grid.capacities[index] = count;
+        grid.tileCounts[index] = count;
+        usedSize += count;
+        cachedTiles += count;
+        return true;
+    }
+
+    private void addChunk(int count) {
+        float[] chunkVertices = this.chunkVertices;
+        Texture[] chunkTextures = this.chunkTextures;
+        for (int i = 0; i < count; ) {
+            Texture texture = chunkTextures[i];
+            int end = i + 1;
+            while (end < count && chunkTextures[end] == texture) end++;
+            spriteCache.add(texture, chunkVertices, i * 20, (end - i) * 20);
+            i = end;
+        }
+    }
+
+    /**
+     * Computes the vertices of the tiles of a chunk, from the top row down.
+     *
+     * @return the number of tiles.
+     */
+    private int buildChunk(ChunkGrid grid, int chunkX, int chunkY) {
+        TiledMapTileLayer layer = grid.layer;
+        final float color = Color.toFloatBits(1, 1, 1, layer.getOpacity());
+
+        final float layerTileWidth = layer.getTileWidth() * unitScale;
+        final float layerTileHeight = layer.getTileHeight() * unitScale;
+
+        final int col1 = chunkX * grid.chunkSize;
+        final int col2 = Math.min(layer.getWidth(), col1 + grid.chunkSize);
+        final int row1 = chunkY * grid.chunkSize;
+        final int row2 = Math.min(layer.getHeight(), row1 + grid.chunkSize) - 1;
+
+        int size = grid.chunkSize * grid.chunkSize;
+        if (chunkTextures.length < size) {
+            chunkTextures = new Texture[size];
+            chunkVertices = new float[size * 20];
+        }
+
+        float[] vertices = this.vertices;
+        int count = 0;
+        for (int row = row2; row >= row1; row--) {
+            for (int col = col1; col < col2; col++) {
+                final TiledMapTileLayer.Cell cell = layer.getCell(col, row);
+                if (cell == null) continue;
+
+                final TiledMapTile tile = cell.getTile();
+                if (tile == null) continue;
+
+                final boolean flipX = cell.getFlipHorizontally();
+                final boolean flipY = cell.getFlipVertically();
+                final int rotations = cell.getRotation();
+
+                final TextureRegion region = tile.getTextureRegion();
+                final Texture texture = region.getTexture();
+
+                final float x1 = col * layerTileWidth + tile.getOffsetX() * unitScale;
+                final float y1 = row * layerTileHeight + tile.getOffsetY() * unitScale;
+                final float x2 = x1 + region.getRegionWidth() * unitScale;
+                final float y2 = y1 + region.getRegionHeight() * unitScale;
+
+                final float adjustX = 0.5f / texture.getWidth();
+                final float adjustY = 0.5f / texture.getHeight();
+                final float u1 = region.getU() + adjustX;
+                final float v1 = region.getV2() - adjustY;
+                final float u2 = region.getU2() - adjustX;
+                final float v2 = region.getV() + adjustY;
+
+                vertices[Batch.X1] = x1;
+                vertices[Batch.Y1] = y1;
+                vertices[Batch.C1] = color;
+                vertices[Batch.U1] = u1;
+                vertices[Batch.V1] = v1;
+
+                vertices[Batch.X2] = x1;
+                vertices[Batch.Y2] = y2;
+                vertices[Batch.C2] = color;
+                vertices[Batch.U2] = u1;
+                vertices[Batch.V2] = v2;
+
+                vertices[Batch.X3] = x2;
+                vertices[Batch.Y3] = y2;
+                vertices[Batch.C3] = color;
+                vertices[Batch.U3] = u2;
+                vertices[Batch.V3] = v2;
+
+                vertices[Batch.X4] = x2;
+                vertices[Batch.Y4] = y1;
+                vertices[Batch.C4] = color;
+                vertices[Batch.U4] = u2;
+                vertices[Batch.V4] = v1;
+
+                if (flipX) {
+                    float temp = vertices[Batch.U1];
+                    vertices[Batch.U1] = vertices[Batch.U3];
+                    vertices[Batch.U3] = temp;
+                    temp = vertices[Batch.U2];
+                    vertices[Batch.U2] = vertices[Batch.U4];
+                    vertices[Batch.U4] = temp;
+                }
+                if (flipY) {
+                    float temp = vertices[Batch.V1];
+                    vertices[Batch.V1] = vertices[Batch.V3];
+                    vertices[Batch.V3] = temp;
+                    temp = vertices[Batch.V2];
+                    vertices[Batch.V2] = vertices[Batch.V4];
+                    vertices[Batch.V4] = temp;
+                }
+                if (rotations != 0) {
+                    switch (rotations) {
+                        case TiledMapTileLayer.Cell.ROTATE_90: {
+                            float tempV = vertices[Batch.V1];
+                            vertices[Batch.V1] = vertices[Batch.V2];
+                            vertices[Batch.V2] = vertices[Batch.V3];
+                            vertices[Batch.V3] = vertices[Batch.V4];
+                            vertices[Batch.V4] = tempV;
+
+                            float tempU = vertices[Batch.U1];
+                            vertices[Batch.U1] = vertices[Batch.U2];
+                            vertices[Batch.U2] = vertices[Batch.U3];
+                            vertices[Batch.U3] = vertices[Batch.U4];
+                            vertices[Batch.U4] = tempU;
+                            break;
+                        }
+                        case TiledMapTileLayer.Cell.ROTATE_180: {
+                            float tempU = vertices[Batch.U1];
+                            vertices[Batch.U1] = vertices[Batch.U3];
+                            vertices[Batch.U3] = tempU;
+                            tempU = vertices[Batch.U2];
+                            vertices[Batch.U2] = vertices[Batch.U4];
+                            vertices[Batch.U4] = tempU;
+                            float tempV = vertices[Batch.V1];
+                            vertices[Batch.V1] = vertices[Batch.V3];
+                            vertices[Batch.V3] = tempV;
+                            tempV = vertices[Batch.V2];
+                            vertices[Batch.V2] = vertices[Batch.V4];
+                            vertices[Batch.V4] = tempV;
+                            break;
+                        }
+                        case TiledMapTileLayer.Cell.ROTATE_270: {
+                            float tempV = vertices[Batch.V1];
+                            vertices[Batch.V1] = vertices[Batch.V4];
+                            vertices[Batch.V4] = vertices[Batch.V3];
+                            vertices[Batch.V3] = vertices[Batch.V2];
+                            vertices[Batch.V2] = tempV;
+
+                            float tempU = vertices[Batch.U1];
+                            vertices[Batch.U1] = vertices[Batch.U4];
+                            vertices[Batch.U4] = vertices[Batch.U3];
+                            vertices[Batch.U3] = vertices[Batch.U2];
+                            vertices[Batch.U2] = tempU;
+                            break;
+                        }
+                    }
+                }
+                System.arraycopy(vertices, 0, chunkVertices, count * 20, 20);
+                chunkTextures[count++] = texture;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Cache ids of the chunks of one layer.
+     */
+    private class ChunkGrid {
+        final TiledMapTileLayer layer;
+        final int chunkSize;
+        final int chunksX, chunksY;
+        final int[] cacheIds;
+        final int[] tileCounts;
+        /**
+         * Position and size of the cache of each chunk in the sprite cache,
+         * in tiles.
+         */
+        final int[] offsets, capacities;
+        final boolean[] dirty;
+        int modificationCount;
+        boolean invalidated;
+        int chunkX1, chunkY1, chunkX2, chunkY2;
+
+        ChunkGrid(TiledMapTileLayer layer) {
+            this.layer = layer;
+            chunkSize = layer instanceof ChunkedTiledMapTileLayer
+                    ? ((ChunkedTiledMapTileLayer) layer).getChunkSize()
+                    : ChunkedOrthoCachedTiledMapRenderer.this.chunkSize;
+            chunksX = (layer.getWidth() + chunkSize - 1) / chunkSize;
+            chunksY = (layer.getHeight() + chunkSize - 1) / chunkSize;
+            int size = chunksX * chunksY;
+            cacheIds = new int[size];
+            tileCounts = new int[size];
+            offsets = new int[size];
+            capacities = new int[size];
+            dirty = new boolean[size];
+            modificationCount = layer.getModificationCount();
+            reset();
+        }
+
+        void reset() {
+            for (int i = 0; i < cacheIds.length; i++) {
+                cacheIds[i] = NOT_CACHED;
+                dirty[i] = false;
+            }
+            modificationCount = layer.getModificationCount();
+            invalidated = false;
+        }
+
+        /**
+         * Computes the range of chunks overlapping the view.
+         *
+         * @return false if no chunk overlaps the view.
+         */
+        boolean setVisibleChunks() {
+            final float layerTileWidth = layer.getTileWidth() * unitScale;
+            final float layerTileHeight = layer.getTileHeight() * unitScale;
+
+            final int col1 = Math.max(0, (int) (viewBounds.x / layerTileWidth));
+            final int col2 = Math.min(layer.getWidth(),
+                    (int) ((viewBounds.x + viewBounds.width + layerTileWidth) / layerTileWidth));
+            final int row1 = Math.max(0, (int) (viewBounds.y / layerTileHeight));
+            final int row2 = Math.min(layer.getHeight(),
+                    (int) ((viewBounds.y + viewBounds.height + layerTileHeight) / layerTileHeight));
+            if (col1 >= col2 || row1 >= row2) return false;
+
+            chunkX1 = col1 / chunkSize;
+            chunkX2 = (col2 - 1) / chunkSize;
+            chunkY1 = row1 / chunkSize;
+            chunkY2 = (row2 - 1) / chunkSize;
+            return true;
+        }
+    }
+}
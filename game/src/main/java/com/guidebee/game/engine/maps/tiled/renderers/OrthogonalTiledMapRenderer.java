@@ -22,6 +22,7 @@ import com.guidebee.game.graphics.Batch;
 import com.guidebee.game.graphics.Color;
 import com.guidebee.game.graphics.TextureRegion;
 import com.guidebee.game.maps.MapObject;
+import com.guidebee.game.maps.tiled.ChunkedTiledMapTileLayer;
 import com.guidebee.game.maps.tiled.TiledMap;
 import com.guidebee.game.maps.tiled.TiledMapTile;
 import com.guidebee.game.maps.tiled.TiledMapTileLayer;
@@ -33,6 +34,12 @@ import com.guidebee.game.maps.tiled.TiledMapTileLayer;
  */
 public class OrthogonalTiledMapRenderer extends BatchTiledMapRenderer {
 
+    /**
+     * Number of chunks loaded around the view of a
+     * {@link ChunkedTiledMapTileLayer} before it is rendered.
+     */
+    protected int chunkMargin = 1;
+
     public OrthogonalTiledMapRenderer(TiledMap map) {
         super(map);
     }
@@ -56,6 +63,12 @@ public class OrthogonalTiledMapRenderer extends BatchTiledMapRenderer {
 
     @Override
     public void renderTileLayer(TiledMapTileLayer layer) {
+        if (layer instanceof ChunkedTiledMapTileLayer) {
+            ((ChunkedTiledMapTileLayer) layer).loadView(viewBounds.x / unitScale,
+                    viewBounds.y / unitScale, viewBounds.width / unitScale,
+                    viewBounds.height / unitScale, chunkMargin);
+        }
+
         final Color batchColor = spriteBatch.getColor();
         final float color = Color.toFloatBits(batchColor.r, batchColor.g, batchColor.b,
                 batchColor.a * layer.getOpacity());
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.entity;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.engine.utils.reflect.ArrayReflection;
+import com.guidebee.game.entity.utils.ImmutableArray;
+import com.guidebee.utils.collections.Array;
+import com.guidebee.utils.collections.Bits;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * The set of entities of an {@link EntityEngine} having exactly the same
+ * {@link DataTrait} types. Entities are packed in {@link ArchetypeChunk}s of
+ * {@link #CHUNK_CAPACITY} rows, removing an entity moves the last entity of
+ * the archetype into its row so the chunks stay dense. Only used when the
+ * engine was created with archetype storage.
+ */
+public final class Archetype {
+    /**
+     * Number of entities per chunk.
+     */
+    public static final int CHUNK_CAPACITY = 128;
+
+    /**
+     * The dataTrait types of the archetype
+     */
+    private final Bits dataTraitBits;
+    /**
+     * The dataTrait class stored in each column
+     */
+    private final Class<? extends DataTrait>[] dataTraitClasses;
+    /**
+     * The dataTrait type index stored in each column
+     */
+    private final int[] dataTraitTypes;
+    /**
+     * Column of each dataTrait type index, -1 if not in the archetype
+     */
+    private final int[] columnsByType;
+    private final Array<ArchetypeChunk> chunks;
+    private final ImmutableArray<ArchetypeChunk> immutableChunks;
+    private int entityCount;
+
+    /**
+     * Creates the archetype of the dataTraits an entity currently has.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Archetype(Entity entity) {
+        ImmutableArray<DataTrait> dataTraits = entity.getDataTraits();
+        int count = dataTraits.size();
+        dataTraitBits = new Bits();
+        dataTraitClasses = new Class[count];
+        dataTraitTypes = new int[count];
+        int maxType = -1;
+        for (int i = 0; i < count; i++) {
+            Class<? extends DataTrait> dataTraitClass = dataTraits.get(i).getClass();
+            int type = DataTraitType.getIndexFor(dataTraitClass);
+            // insertion sort, columns are ordered by type index
+            int j = i;
+            while (j > 0 && dataTraitTypes[j - 1] > type) {
+                dataTraitTypes[j] = dataTraitTypes[j - 1];
+                dataTraitClasses[j] = dataTraitClasses[j - 1];
+                j--;
+            }
+            dataTraitTypes[j] = type;
+            dataTraitClasses[j] = dataTraitClass;
+            dataTraitBits.set(type);
+            maxType = Math.max(maxType, type);
+        }
+        columnsByType = new int[maxType + 1];
+        for (int i = 0; i <= maxType; i++) {
+            columnsByType[i] = -1;
+        }
+        for (int i = 0; i < count; i++) {
+            columnsByType[dataTraitTypes[i]] = i;
+        }
+        chunks = new Array<ArchetypeChunk>(false, 4);
+        immutableChunks = new ImmutableArray<ArchetypeChunk>(chunks);
+    }
+
+    /**
+     * @return Bits describing the dataTrait types of this archetype.
+     */
+    public Bits getDataTraitBits() {
+        return dataTraitBits;
+    }
+
+    /**
+     * @return The chunks holding the entities of this archetype, all of them
+     * hold at least one entity.
+     */
+    public ImmutableArray<ArchetypeChunk> getChunks() {
+        return immutableChunks;
+    }
+
+    /**
+     * @return The number of entities in this archetype.
+     */
+    public int getEntityCount() {
+        return entityCount;
+    }
+
+    /**
+     * @return The column of the dataTrait type in the chunks, -1 if this
+     * archetype doesn't contain it.
+     */
+    int getColumn(DataTraitType dataTraitType) {
+        int type = dataTraitType.getIndex();
+        return type < columnsByType.length ? columnsByType[type] : -1;
+    }
+
+    /**
+     * @return Whether the entity has exactly the dataTrait types of this archetype.
+     */
+    boolean matches(Bits bits) {
+        return dataTraitBits.containsAll(bits) && bits.containsAll(dataTraitBits);
+    }
+
+    void add(Entity entity) {
+        ArchetypeChunk chunk = chunks.size > 0 ? chunks.peek() : null;
+        if (chunk == null || chunk.size == CHUNK_CAPACITY) {
+            DataTrait[][] columns = new DataTrait[dataTraitClasses.length][];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = (DataTrait[]) ArrayReflection.newInstance(
+                        dataTraitClasses[i], CHUNK_CAPACITY);
+            }
+            chunk = new ArchetypeChunk(this, columns);
+            chunks.add(chunk);
+        }
+        int row = chunk.size++;
+        chunk.entities[row] = entity;
+        entity.chunk = chunk;
+        entity.chunkRow = row;
+        update(entity);
+        entityCount++;
+    }
+
+    /**
+     * Copies the current dataTraits of the entity into its row.
+     */
+    void update(Entity entity) {
+        ArchetypeChunk chunk = entity.chunk;
+        int row = entity.chunkRow;
+        for (int i = 0; i < dataTraitTypes.length; i++) {
+            chunk.columns[i][row] = entity.getDataTraitByIndex(dataTraitTypes[i]);
+        }
+    }
+
+    void remove(Entity entity) {
+        ArchetypeChunk chunk = entity.chunk;
+        int row = entity.chunkRow;
+        ArchetypeChunk last = chunks.peek();
+        int lastRow = last.size - 1;
+        if (chunk != last || row != lastRow) {
+            Entity moved = last.entities[lastRow];
+            chunk.entities[row] = moved;
+            for (int i = 0; i < dataTraitTypes.length; i++) {
+                chunk.columns[i][row] = last.columns[i][lastRow];
+            }
+            moved.chunk = chunk;
+            moved.chunkRow = row;
+        }
+        last.entities[lastRow] = null;
+        for (int i = 0; i < dataTraitTypes.length; i++) {
+            last.columns[i][lastRow] = null;
+        }
+        last.size--;
+        if (last.size == 0) {
+            chunks.pop();
+        }
+        entity.chunk = null;
+        entity.chunkRow = -1;
+        entityCount--;
+    }
+}
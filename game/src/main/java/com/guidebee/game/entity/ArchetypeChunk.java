@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.entity;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * A fixed size block of the entities of one {@link Archetype}. The entities
+ * and each of their {@link DataTrait} types are stored in parallel arrays,
+ * row i of every array belongs to the same entity, so a director can walk
+ * the traits of a chunk sequentially instead of looking them up entity by
+ * entity. Only the first {@link #size()} rows are valid.
+ */
+public final class ArchetypeChunk {
+    final Archetype archetype;
+    final Entity[] entities;
+    final DataTrait[][] columns;
+    int size;
+
+    ArchetypeChunk(Archetype archetype, DataTrait[][] columns) {
+        this.archetype = archetype;
+        this.entities = new Entity[Archetype.CHUNK_CAPACITY];
+        this.columns = columns;
+    }
+
+    /**
+     * @return The {@link Archetype} this chunk belongs to.
+     */
+    public Archetype getArchetype() {
+        return archetype;
+    }
+
+    /**
+     * @return The number of entities stored in this chunk.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The entity stored at the given row.
+     */
+    public Entity getEntity(int row) {
+        return entities[row];
+    }
+
+    /**
+     * @return The entities of this chunk, valid up to {@link #size()}. Do not modify.
+     */
+    public Entity[] getEntities() {
+        return entities;
+    }
+
+    /**
+     * @return The {@link DataTrait}s of the mapper's type for all the rows of
+     * this chunk, valid up to {@link #size()}, or null if the archetype doesn't
+     * contain that type. The array is typed with the dataTrait class. Do not modify.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends DataTrait> T[] getDataTraits(DataTraitMapper<T> mapper) {
+        int column = archetype.getColumn(mapper.getDataTraitType());
+        return column < 0 ? null : (T[]) columns[column];
+    }
+
+    /**
+     * @return The {@link DataTrait}s of the specified class for all the rows
+     * of this chunk, valid up to {@link #size()}, or null if the archetype
+     * doesn't contain that class. Do not modify.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends DataTrait> T[] getDataTraits(Class<T> dataTraitClass) {
+        int column = archetype.getColumn(DataTraitType.getFor(dataTraitClass));
+        return column < 0 ? null : (T[]) columns[column];
+    }
+}
@@ -52,6 +52,10 @@ public final class DataTraitMapper<T extends DataTrait> {
         return entity.hasDataTrait(dataTraitType);
     }
 
+    DataTraitType getDataTraitType() {
+        return dataTraitType;
+    }
+
     private DataTraitMapper(Class<T> dataTraitClass) {
         dataTraitType
                 = DataTraitType.getFor(dataTraitClass);
@@ -79,6 +79,24 @@ public class Entity {
 
     DataTraitOperationHandler dataTraitOperationHandler;
 
+    /**
+     * The archetype chunk holding this entity and its row in it, only used
+     * with archetype storage.
+     */
+    ArchetypeChunk chunk;
+    int chunkRow = -1;
+
+    /**
+     * The index of this entity in the engine entities and in the entities of
+     * each family it belongs to, for constant time removal.
+     */
+    int engineSlot = -1;
+    private int[] familySlots = new int[8];
+    /**
+     * The type index of the last dataTrait added or removed.
+     */
+    int lastDataTraitType = -1;
+
     private Object userObject;
 
     /**
@@ -192,6 +210,28 @@ public class Entity {
         }
     }
 
+    /**
+     * Internal use.
+     *
+     * @return The {@link DataTrait} with the specified type index, null
+     * if the Entity does not have it.
+     */
+    DataTrait getDataTraitByIndex(int dataTraitTypeIndex) {
+        if (dataTraitTypeIndex < dataTraits.getCapacity()) {
+            return dataTraits.get(dataTraitTypeIndex);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * @return The {@link Archetype} this entity is stored in, null if the
+     * entity is not in an engine using archetype storage.
+     */
+    public Archetype getArchetype() {
+        return chunk != null ? chunk.archetype : null;
+    }
+
     /**
      * Internal use.
      *
@@ -220,6 +260,19 @@ public class Entity {
         return familyBits;
     }
 
+    int getFamilySlot(int familyIndex) {
+        return familySlots[familyIndex];
+    }
+
+    void setFamilySlot(int familyIndex, int slot) {
+        if (familyIndex >= familySlots.length) {
+            int[] newSlots = new int[Math.max(familyIndex + 1, familySlots.length << 1)];
+            System.arraycopy(familySlots, 0, newSlots, 0, familySlots.length);
+            familySlots = newSlots;
+        }
+        familySlots[familyIndex] = slot;
+    }
+
     Entity addInternal(DataTrait dataTrait) {
         Class<? extends DataTrait> dataTraitClass = dataTrait.getClass();
 
@@ -237,6 +290,7 @@ public class Entity {
 
         dataTraitBits.set(dataTraitTypeIndex);
 
+        lastDataTraitType = dataTraitTypeIndex;
         dataTraitAdded.dispatch(this);
         return this;
     }
@@ -251,6 +305,7 @@ public class Entity {
             dataTraitsArray.removeValue(removeDataTrait, true);
             dataTraitBits.clear(dataTraitTypeIndex);
 
+            lastDataTraitType = dataTraitTypeIndex;
             dataTraitRemoved.dispatch(this);
         }
 
@@ -22,8 +22,11 @@ import com.guidebee.game.entity.directors.Director;
 import com.guidebee.game.entity.signals.Listener;
 import com.guidebee.game.entity.signals.Signal;
 import com.guidebee.game.entity.utils.ImmutableArray;
+import com.guidebee.game.entity.utils.WorkerPool;
 import com.guidebee.utils.Pool;
 import com.guidebee.utils.collections.Array;
+import com.guidebee.utils.collections.Bits;
+import com.guidebee.utils.collections.IntMap;
 import com.guidebee.utils.collections.ObjectMap;
 import com.guidebee.utils.collections.ObjectMap.Entry;
 import com.guidebee.utils.collections.SnapshotArray;
@@ -77,19 +80,57 @@ public class EntityEngine {
     /**
      * A hashmap that organises all entities into family buckets
      */
-    private ObjectMap<Role, Array<Entity>> families;
+    private ObjectMap<Role, Family> families;
     /**
-     * A hashmap that organises all entities into immutable family buckets
+     * The family buckets by family index
      */
-    private ObjectMap<Role, ImmutableArray<Entity>> immutableFamilies;
+    private IntMap<Family> familiesByIndex;
+    /**
+     * The family buckets whose role mentions a dataTrait type, by type
+     * index. Only these can change when a dataTrait of that type is added
+     * or removed
+     */
+    private Array<Array<Family>> familiesByDataTraitType;
+    /**
+     * The family buckets whose role requires no dataTrait type, they have
+     * to be checked for every entity
+     */
+    private Array<Family> familiesWithoutDataTraits;
+    /**
+     * The families matched by the last entity added by {@link #addEntities(Array)}
+     */
+    private final Array<Family> batchFamilies = new Array<Family>(false, 16);
+    /**
+     * The dataTrait types of the entities matching {@link #batchFamilies}
+     */
+    private final Bits batchBits = new Bits();
+    /**
+     * Incremented whenever a family is registered, to drop the
+     * {@link #batchFamilies} matched before
+     */
+    private int familiesVersion;
+    private int familyStamp;
     /**
      * A collection of entity added/removed event listeners
      */
     private SnapshotArray<EntityListener> listeners;
+
+    /**
+     * Whether entities are also stored in archetype chunks
+     */
+    private final boolean archetypeStorage;
+    /**
+     * A hashmap that organises archetypes by their dataTrait types
+     */
+    private ObjectMap<String, Archetype> archetypes;
     /**
-     * Entity added/removed event listeners per family
+     * A hashmap that keeps track of the archetypes matching each family
      */
-    private ObjectMap<Role, SnapshotArray<EntityListener>> familyListeners;
+    private ObjectMap<Role, Array<Archetype>> familyArchetypes;
+    /**
+     * A hashmap that keeps track of the immutable archetypes matching each family
+     */
+    private ObjectMap<Role, ImmutableArray<Archetype>> immutableFamilyArchetypes;
 
     /**
      * A listener for the Engine that's called every time a dataTrait is added.
@@ -114,28 +155,57 @@ public class EntityEngine {
     private Array<DataTraitOperation> dataTraitOperations;
     private DataTraitOperationHandler dataTraitOperationHandler;
 
+    /**
+     * Parallel update: worker threads, directors grouped into phases of
+     * non-conflicting directors, and the command buffer of the director
+     * running on each thread
+     */
+    private WorkerPool workerPool;
+    private Array<Director[]> phases;
+    private boolean phasesDirty;
+    private final Array<CommandBuffer> commandBuffers = new Array<CommandBuffer>(false, 16);
+    private final ThreadLocal<CommandBuffer> currentCommandBuffer = new ThreadLocal<CommandBuffer>();
+
     public EntityEngine() {
+        this(false);
+    }
+
+    /**
+     * Creates an engine.
+     *
+     * @param archetypeStorage whether entities are also stored in chunks of
+     *                         {@link Archetype}s, which directors can iterate with
+     *                         {@link com.guidebee.game.entity.directors.ChunkIteratingDirector}.
+     */
+    public EntityEngine(boolean archetypeStorage) {
+        this.archetypeStorage = archetypeStorage;
+        archetypes = new ObjectMap<String, Archetype>();
+        familyArchetypes = new ObjectMap<Role, Array<Archetype>>();
+        immutableFamilyArchetypes = new ObjectMap<Role, ImmutableArray<Archetype>>();
         entities = new Array<Entity>(false, 16);
         pendingRemovalEntities = new Array<Entity>(false, 16);
         directors = new Array<Director>(false, 16);
         immutableDirectors = new ImmutableArray<Director>(directors);
         directorsByClass = new ObjectMap<Class<?>, Director>();
-        families = new ObjectMap<Role, Array<Entity>>();
-        immutableFamilies = new ObjectMap<Role, ImmutableArray<Entity>>();
+        families = new ObjectMap<Role, Family>();
+        familiesByIndex = new IntMap<Family>();
+        familiesByDataTraitType = new Array<Array<Family>>();
+        familiesWithoutDataTraits = new Array<Family>(false, 16);
         listeners = new SnapshotArray<EntityListener>(false, 16);
-        familyListeners = new ObjectMap<Role, SnapshotArray<EntityListener>>();
 
         dataTraitAdded = new Listener<Entity>() {
             @Override
             public void receive(Signal<Entity> signal, Entity object) {
-                updateFamilyMembership(object);
+                updateArchetype(object);
+                updateFamilyMembership(object, object.lastDataTraitType);
             }
         };
 
         dataTraitRemoved = new Listener<Entity>() {
             @Override
             public void receive(Signal<Entity> signal, Entity object) {
-                updateFamilyMembership(object);
+                updateArchetype(object);
+                updateFamilyMembership(object, object.lastDataTraitType);
             }
         };
 
@@ -145,7 +215,10 @@ public class EntityEngine {
         dataTraitOperations = new Array<DataTraitOperation>();
         dataTraitOperationHandler = new DataTraitOperationHandler() {
             public void add(Entity entity, DataTrait dataTrait) {
-                if (updating) {
+                CommandBuffer buffer = updating ? currentCommandBuffer.get() : null;
+                if (buffer != null) {
+                    buffer.add(DataTraitOperation.Type.Add, entity, dataTrait, null);
+                } else if (updating) {
                     DataTraitOperation operation = dataTraitOperationsPool.obtain();
                     operation.makeAdd(entity, dataTrait);
                     dataTraitOperations.add(operation);
@@ -155,7 +228,10 @@ public class EntityEngine {
             }
 
             public void remove(Entity entity, Class<? extends DataTrait> dataTraitClass) {
-                if (updating) {
+                CommandBuffer buffer = updating ? currentCommandBuffer.get() : null;
+                if (buffer != null) {
+                    buffer.add(DataTraitOperation.Type.Remove, entity, null, dataTraitClass);
+                } else if (updating) {
                     DataTraitOperation operation = dataTraitOperationsPool.obtain();
                     operation.makeRemove(entity, dataTraitClass);
                     dataTraitOperations.add(operation);
@@ -170,8 +246,16 @@ public class EntityEngine {
      * Adds an entity to this Engine.
      */
     public void addEntity(Entity entity) {
+        CommandBuffer buffer = updating ? currentCommandBuffer.get() : null;
+        if (buffer != null) {
+            buffer.add(DataTraitOperation.Type.AddEntity, entity, null, null);
+            return;
+        }
+
+        entity.engineSlot = entities.size;
         entities.add(entity);
 
+        updateArchetype(entity);
         updateFamilyMembership(entity);
 
         entity.dataTraitAdded.add(dataTraitAdded);
@@ -190,13 +274,89 @@ public class EntityEngine {
      * Removes an entity from this Engine.
      */
     public void removeEntity(Entity entity) {
-        if (updating) {
+        CommandBuffer buffer = updating ? currentCommandBuffer.get() : null;
+        if (buffer != null) {
+            buffer.add(DataTraitOperation.Type.RemoveEntity, entity, null, null);
+        } else if (updating) {
             pendingRemovalEntities.add(entity);
         } else {
             removeEntityInternal(entity);
         }
     }
 
+    /**
+     * Adds entities to this Engine. Consecutive entities with the same
+     * dataTrait types, for example spawned from the same template, are
+     * matched against the families only once.
+     */
+    public void addEntities(Array<Entity> entities) {
+        if (updating && currentCommandBuffer.get() != null) {
+            for (int i = 0; i < entities.size; i++) {
+                addEntity(entities.get(i));
+            }
+            return;
+        }
+        this.entities.ensureCapacity(entities.size);
+        // listeners may register new families or change the dataTraits of
+        // the entities, so the match is kept on a copy of the bits and
+        // dropped when the families change
+        boolean batchValid = false;
+        int batchVersion = 0;
+
+        for (int i = 0; i < entities.size; i++) {
+            Entity entity = entities.get(i);
+            Bits bits = entity.getDataTraitBits();
+            entity.engineSlot = this.entities.size;
+            this.entities.add(entity);
+            updateArchetype(entity);
+
+            if (!batchValid || batchVersion != familiesVersion
+                    || !batchBits.containsAll(bits)
+                    || !bits.containsAll(batchBits)) {
+                updateFamilyMembership(entity);
+                batchBits.set(bits);
+                batchVersion = familiesVersion;
+                batchValid = true;
+                batchFamilies.clear();
+                for (int f = entity.getFamilyBits().nextSetBit(0); f >= 0;
+                     f = entity.getFamilyBits().nextSetBit(f + 1)) {
+                    batchFamilies.add(familiesByIndex.get(f));
+                }
+            } else {
+                for (int f = 0; f < batchFamilies.size; f++) {
+                    addToFamily(batchFamilies.get(f), entity);
+                }
+            }
+
+            entity.dataTraitAdded.add(dataTraitAdded);
+            entity.dataTraitRemoved.add(dataTraitRemoved);
+            entity.dataTraitOperationHandler = dataTraitOperationHandler;
+
+            Object[] items = listeners.begin();
+            for (int j = 0, n = listeners.size; j < n; j++) {
+                EntityListener listener = (EntityListener) items[j];
+                listener.entityAdded(entity);
+            }
+            listeners.end();
+        }
+        batchFamilies.clear();
+    }
+
+    /**
+     * Removes entities from this Engine.
+     */
+    public void removeEntities(Array<Entity> entities) {
+        if (updating) {
+            for (int i = 0; i < entities.size; i++) {
+                removeEntity(entities.get(i));
+            }
+        } else {
+            for (int i = 0; i < entities.size; i++) {
+                removeEntityInternal(entities.get(i));
+            }
+        }
+    }
+
     /**
      * Removes all entities registered with this Engine.
      */
@@ -218,6 +378,7 @@ public class EntityEngine {
             director.addedToEngine(this);
 
             directors.sort(comparator);
+            phasesDirty = true;
         }
     }
 
@@ -228,6 +389,7 @@ public class EntityEngine {
         if (directors.removeValue(director, true)) {
             directorsByClass.remove(director.getClass());
             director.removedFromEngine(this);
+            phasesDirty = true;
         }
     }
 
@@ -251,8 +413,43 @@ public class EntityEngine {
      * Will return the same instance every time.
      */
     public ImmutableArray<Entity> getEntitiesFor(Role role) {
-        registerFamily(role);
-        return immutableFamilies.get(role);
+        return registerFamily(role).immutableEntities;
+    }
+
+    /**
+     * @return Whether entities are stored in {@link Archetype} chunks.
+     */
+    public boolean isArchetypeStorage() {
+        return archetypeStorage;
+    }
+
+    /**
+     * Returns immutable collection of the {@link Archetype}s matching the
+     * specified {@link Role}, archetypes created later are added to it.
+     * Will return the same instance every time.
+     *
+     * @throws IllegalStateException if the engine doesn't use archetype storage.
+     */
+    public ImmutableArray<Archetype> getArchetypesFor(Role role) {
+        if (!archetypeStorage) {
+            throw new IllegalStateException("Archetype storage is not enabled.");
+        }
+        ImmutableArray<Archetype> immutableArchetypes = immutableFamilyArchetypes.get(role);
+
+        if (immutableArchetypes == null) {
+            Array<Archetype> roleArchetypes = new Array<Archetype>(false, 16);
+            immutableArchetypes = new ImmutableArray<Archetype>(roleArchetypes);
+            familyArchetypes.put(role, roleArchetypes);
+            immutableFamilyArchetypes.put(role, immutableArchetypes);
+
+            for (Archetype archetype : archetypes.values()) {
+                if (role.matches(archetype.getDataTraitBits())) {
+                    roleArchetypes.add(archetype);
+                }
+            }
+        }
+
+        return immutableArchetypes;
     }
 
     /**
@@ -270,15 +467,13 @@ public class EntityEngine {
      * The listener will be notified every time an entity is added/removed to/from the given family.
      */
     public void addEntityListener(Role role, EntityListener listener) {
-        registerFamily(role);
-        SnapshotArray<EntityListener> listeners = familyListeners.get(role);
+        Family family = registerFamily(role);
 
-        if (listeners == null) {
-            listeners = new SnapshotArray<EntityListener>(false, 16);
-            familyListeners.put(role, listeners);
+        if (family.listeners == null) {
+            family.listeners = new SnapshotArray<EntityListener>(false, 16);
         }
 
-        listeners.add(listener);
+        family.listeners.add(listener);
     }
 
     /**
@@ -287,8 +482,10 @@ public class EntityEngine {
     public void removeEntityListener(EntityListener listener) {
         listeners.removeValue(listener, true);
 
-        for (SnapshotArray<EntityListener> familyListenerArray : familyListeners.values()) {
-            familyListenerArray.removeValue(listener, true);
+        for (Family family : families.values()) {
+            if (family.listeners != null) {
+                family.listeners.removeValue(listener, true);
+            }
         }
     }
 
@@ -298,6 +495,10 @@ public class EntityEngine {
      * @param deltaTime The time passed since the last frame.
      */
     public void update(float deltaTime) {
+        if (workerPool != null) {
+            updateParallel(deltaTime);
+            return;
+        }
         updating = true;
         for (int i = 0; i < directors.size; i++) {
             if (directors.get(i).checkProcessing()) {
@@ -311,28 +512,292 @@ public class EntityEngine {
         updating = false;
     }
 
+    /**
+     * Sets the number of threads used to update the directors. With 1 (the
+     * default) directors run one after the other in priority order, and the
+     * dataTrait and entity changes they make are applied after each director.
+     * <p/>
+     * Above 1, directors which declared the dataTrait types they read and
+     * write (see {@link Director#conflictsWith(Director)}) are grouped into
+     * phases: a director runs in the phase after the last director of higher
+     * priority it conflicts with, and the directors of a phase run
+     * concurrently. Adding or removing entities and dataTraits while
+     * updating is recorded in a command buffer per director, the buffers are
+     * applied in priority order at the end of each phase. Directors may also
+     * split their own work with {@link #runParallel(int, WorkerPool.Task)}.
+     *
+     * @param threads number of threads, including the updating thread.
+     */
+    public void setParallelism(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be >= 1.");
+        }
+        if (updating) {
+            throw new IllegalStateException("Cannot change parallelism while updating.");
+        }
+        if (workerPool != null) {
+            workerPool.dispose();
+            workerPool = null;
+        }
+        if (threads > 1) {
+            workerPool = new WorkerPool(threads - 1);
+            phasesDirty = true;
+        }
+    }
+
+    /**
+     * @return The number of threads used to update the directors.
+     */
+    public int getParallelism() {
+        return workerPool == null ? 1 : workerPool.getThreads() + 1;
+    }
+
+    /**
+     * Runs task for each index from 0 to count - 1, on the worker threads
+     * when the parallelism is above 1. Changes made to entities by the task
+     * go to the command buffer of the calling director. Returns when all the
+     * indices are done.
+     */
+    public void runParallel(int count, final WorkerPool.Task task) {
+        if (workerPool == null || count < 2) {
+            for (int i = 0; i < count; i++) {
+                task.run(i);
+            }
+            return;
+        }
+        final CommandBuffer buffer = currentCommandBuffer.get();
+        workerPool.run(count, new WorkerPool.Task() {
+            @Override
+            public void run(int index) {
+                CommandBuffer previous = currentCommandBuffer.get();
+                currentCommandBuffer.set(buffer);
+                try {
+                    task.run(index);
+                } finally {
+                    currentCommandBuffer.set(previous);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The directors grouped into phases, see {@link #setParallelism(int)}.
+     */
+    public Array<Director[]> getDirectorPhases() {
+        if (phasesDirty || phases == null) {
+            buildPhases();
+        }
+        return phases;
+    }
+
+    private void buildPhases() {
+        int count = directors.size;
+        int[] levels = new int[count];
+        int levelCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            Director director = directors.get(i);
+            for (int j = 0; j < i; j++) {
+                if (levels[j] >= levels[i] && director.conflictsWith(directors.get(j))) {
+                    levels[i] = levels[j] + 1;
+                }
+            }
+            levelCount = Math.max(levelCount, levels[i] + 1);
+        }
+
+        phases = new Array<Director[]>(true, Math.max(levelCount, 1), Director[].class);
+        for (int level = 0; level < levelCount; level++) {
+            int size = 0;
+            for (int i = 0; i < count; i++) {
+                if (levels[i] == level) size++;
+            }
+            Director[] phase = new Director[size];
+            for (int i = 0, k = 0; i < count; i++) {
+                if (levels[i] == level) phase[k++] = directors.get(i);
+            }
+            phases.add(phase);
+        }
+        phasesDirty = false;
+    }
+
+    private void updateParallel(final float deltaTime) {
+        Array<Director[]> phases = getDirectorPhases();
+        updating = true;
+        try {
+            for (int p = 0; p < phases.size; p++) {
+                final Director[] phase = phases.get(p);
+                while (commandBuffers.size < phase.length) {
+                    commandBuffers.add(new CommandBuffer());
+                }
+
+                workerPool.run(phase.length, new WorkerPool.Task() {
+                    @Override
+                    public void run(int index) {
+                        Director director = phase[index];
+                        if (director.checkProcessing()) {
+                            currentCommandBuffer.set(commandBuffers.get(index));
+                            try {
+                                director.direct(deltaTime);
+                            } finally {
+                                currentCommandBuffer.set(null);
+                            }
+                        }
+                    }
+                });
+
+                for (int i = 0; i < phase.length; i++) {
+                    applyCommandBuffer(commandBuffers.get(i));
+                }
+                processDataTraitOperations();
+                removePendingEntities();
+            }
+        } finally {
+            updating = false;
+        }
+    }
+
+    private void applyCommandBuffer(CommandBuffer buffer) {
+        Array<DataTraitOperation> operations = buffer.operations;
+
+        for (int i = 0; i < operations.size; ++i) {
+            DataTraitOperation operation = operations.get(i);
+
+            switch (operation.type) {
+                case Add:
+                    operation.entity.addInternal(operation.dataTrait);
+                    break;
+                case Remove:
+                    operation.entity.removeInternal(operation.dataTraitClass);
+                    break;
+                case AddEntity:
+                    addEntity(operation.entity);
+                    break;
+                case RemoveEntity:
+                    pendingRemovalEntities.add(operation.entity);
+                    break;
+            }
+
+            buffer.pool.free(operation);
+        }
+
+        operations.clear();
+    }
+
+    /**
+     * Checks all the families which may match the entity: the ones
+     * mentioning one of its dataTrait types and the ones without any.
+     */
     private void updateFamilyMembership(Entity entity) {
-        for (Entry<Role, Array<Entity>> entry : families.entries()) {
-            Role role = entry.key;
-            Array<Entity> entities = entry.value;
-            int familyIndex = role.getIndex();
+        Bits bits = entity.getDataTraitBits();
+        int stamp = ++familyStamp;
+
+        for (int type = bits.nextSetBit(0); type >= 0; type = bits.nextSetBit(type + 1)) {
+            if (type >= familiesByDataTraitType.size) break;
+            Array<Family> typeFamilies = familiesByDataTraitType.get(type);
+            if (typeFamilies == null) continue;
+            for (int i = 0; i < typeFamilies.size; i++) {
+                Family family = typeFamilies.get(i);
+                if (family.stamp != stamp) {
+                    family.stamp = stamp;
+                    updateFamilyMembership(entity, family);
+                }
+            }
+        }
+        for (int i = 0; i < familiesWithoutDataTraits.size; i++) {
+            updateFamilyMembership(entity, familiesWithoutDataTraits.get(i));
+        }
+    }
 
+    /**
+     * Checks the families which may have changed after a dataTrait of the
+     * given type was added or removed.
+     */
+    private void updateFamilyMembership(Entity entity, int dataTraitType) {
+        if (dataTraitType >= 0 && dataTraitType < familiesByDataTraitType.size) {
+            Array<Family> typeFamilies = familiesByDataTraitType.get(dataTraitType);
+            if (typeFamilies != null) {
+                for (int i = 0; i < typeFamilies.size; i++) {
+                    updateFamilyMembership(entity, typeFamilies.get(i));
+                }
+            }
+        }
+        for (int i = 0; i < familiesWithoutDataTraits.size; i++) {
+            updateFamilyMembership(entity, familiesWithoutDataTraits.get(i));
+        }
+    }
 
-            boolean belongsToFamily = entity.getFamilyBits().get(familyIndex);
-            boolean matches = role.matches(entity);
+    private void updateFamilyMembership(Entity entity, Family family) {
+        boolean belongsToFamily = entity.getFamilyBits().get(family.index);
+        boolean matches = family.role.matches(entity);
 
-            if (!belongsToFamily && matches) {
-                entities.add(entity);
-                entity.getFamilyBits().set(familyIndex);
+        if (!belongsToFamily && matches) {
+            addToFamily(family, entity);
+        } else if (belongsToFamily && !matches) {
+            removeFromFamily(family, entity);
+        }
+    }
+
+    private void addToFamily(Family family, Entity entity) {
+        entity.setFamilySlot(family.index, family.entities.size);
+        family.entities.add(entity);
+        entity.getFamilyBits().set(family.index);
+
+        notifyFamilyListenersAdd(family, entity);
+    }
+
+    /**
+     * Swaps the last entity of the family into the slot of the removed one.
+     */
+    private void removeFromFamily(Family family, Entity entity) {
+        int slot = entity.getFamilySlot(family.index);
+        Array<Entity> familyEntities = family.entities;
+        familyEntities.removeIndex(slot);
+        if (slot < familyEntities.size) {
+            familyEntities.get(slot).setFamilySlot(family.index, slot);
+        }
+        entity.getFamilyBits().clear(family.index);
+
+        notifyFamilyListenersRemove(family, entity);
+    }
 
-                notifyFamilyListenersAdd(role, entity);
-            } else if (belongsToFamily && !matches) {
-                entities.removeValue(entity, true);
-                entity.getFamilyBits().clear(familyIndex);
+    private void updateArchetype(Entity entity) {
+        if (!archetypeStorage) {
+            return;
+        }
+        Bits bits = entity.getDataTraitBits();
+        ArchetypeChunk chunk = entity.chunk;
 
-                notifyFamilyListenersRemove(role, entity);
+        if (chunk != null) {
+            if (chunk.archetype.matches(bits)) {
+                chunk.archetype.update(entity);
+                return;
             }
+            chunk.archetype.remove(entity);
         }
+
+        String key = getArchetypeKey(bits);
+        Archetype archetype = archetypes.get(key);
+        if (archetype == null) {
+            archetype = new Archetype(entity);
+            archetypes.put(key, archetype);
+
+            for (Entry<Role, Array<Archetype>> entry : familyArchetypes.entries()) {
+                if (entry.key.matches(bits)) {
+                    entry.value.add(archetype);
+                }
+            }
+        }
+        archetype.add(entity);
+    }
+
+    private static String getArchetypeKey(Bits bits) {
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            builder.append(i).append(',');
+        }
+
+        return builder.toString();
     }
 
     private void removePendingEntities() {
@@ -346,19 +811,23 @@ public class EntityEngine {
     }
 
     protected void removeEntityInternal(Entity entity) {
-        entities.removeValue(entity, true);
+        int slot = entity.engineSlot;
+        if (slot < 0 || slot >= entities.size || entities.get(slot) != entity) {
+            return;
+        }
+        entities.removeIndex(slot);
+        if (slot < entities.size) {
+            entities.get(slot).engineSlot = slot;
+        }
+        entity.engineSlot = -1;
 
-        if (!entity.getFamilyBits().isEmpty()) {
-            for (Entry<Role, Array<Entity>> entry : families.entries()) {
-                Role role = entry.key;
-                Array<Entity> entities = entry.value;
+        Bits familyBits = entity.getFamilyBits();
+        for (int i = familyBits.nextSetBit(0); i >= 0; i = familyBits.nextSetBit(i + 1)) {
+            removeFromFamily(familiesByIndex.get(i), entity);
+        }
 
-                if (role.matches(entity)) {
-                    entities.removeValue(entity, true);
-                    entity.getFamilyBits().clear(role.getIndex());
-                    notifyFamilyListenersRemove(role, entity);
-                }
-            }
+        if (entity.chunk != null) {
+            entity.chunk.archetype.remove(entity);
         }
 
         entity.dataTraitAdded.remove(dataTraitAdded);
@@ -372,8 +841,8 @@ public class EntityEngine {
         listeners.end();
     }
 
-    private void notifyFamilyListenersAdd(Role role, Entity entity) {
-        SnapshotArray<EntityListener> listeners = familyListeners.get(role);
+    private void notifyFamilyListenersAdd(Family family, Entity entity) {
+        SnapshotArray<EntityListener> listeners = family.listeners;
 
         if (listeners != null) {
             Object[] items = listeners.begin();
@@ -385,8 +854,8 @@ public class EntityEngine {
         }
     }
 
-    private void notifyFamilyListenersRemove(Role role, Entity entity) {
-        SnapshotArray<EntityListener> listeners = familyListeners.get(role);
+    private void notifyFamilyListenersRemove(Family family, Entity entity) {
+        SnapshotArray<EntityListener> listeners = family.listeners;
 
         if (listeners != null) {
             Object[] items = listeners.begin();
@@ -398,23 +867,53 @@ public class EntityEngine {
         }
     }
 
-    private Array<Entity> registerFamily(Role role) {
-        Array<Entity> entities = families.get(role);
+    private Family registerFamily(Role role) {
+        Family family = families.get(role);
 
-        if (entities == null) {
-            entities = new Array<Entity>(false, 16);
-            families.put(role, entities);
-            immutableFamilies.put(role, new ImmutableArray<Entity>(entities));
+        if (family == null) {
+            family = new Family(role);
+            families.put(role, family);
+            familiesByIndex.put(family.index, family);
+            familiesVersion++;
+
+            boolean withoutDataTraits = role.getAll().isEmpty() && role.getOne().isEmpty();
+            for (int i = role.getAll().nextSetBit(0); i >= 0; i = role.getAll().nextSetBit(i + 1)) {
+                addFamilyForType(i, family);
+            }
+            for (int i = role.getOne().nextSetBit(0); i >= 0; i = role.getOne().nextSetBit(i + 1)) {
+                addFamilyForType(i, family);
+            }
+            for (int i = role.getExclude().nextSetBit(0); i >= 0; i = role.getExclude().nextSetBit(i + 1)) {
+                addFamilyForType(i, family);
+            }
+            if (withoutDataTraits) {
+                familiesWithoutDataTraits.add(family);
+            }
 
             for (Entity e : this.entities) {
                 if (role.matches(e)) {
-                    entities.add(e);
-                    e.getFamilyBits().set(role.getIndex());
+                    e.setFamilySlot(family.index, family.entities.size);
+                    family.entities.add(e);
+                    e.getFamilyBits().set(family.index);
                 }
             }
         }
 
-        return entities;
+        return family;
+    }
+
+    private void addFamilyForType(int type, Family family) {
+        while (familiesByDataTraitType.size <= type) {
+            familiesByDataTraitType.add(null);
+        }
+        Array<Family> typeFamilies = familiesByDataTraitType.get(type);
+        if (typeFamilies == null) {
+            typeFamilies = new Array<Family>(false, 4);
+            familiesByDataTraitType.set(type, typeFamilies);
+        }
+        if (!typeFamilies.contains(family, true)) {
+            typeFamilies.add(family);
+        }
     }
 
     private void processDataTraitOperations() {
@@ -435,6 +934,23 @@ public class EntityEngine {
         dataTraitOperations.clear();
     }
 
+    /**
+     * The entities of a {@link Role} and its listeners.
+     */
+    private static class Family {
+        final Role role;
+        final int index;
+        final Array<Entity> entities = new Array<Entity>(false, 16);
+        final ImmutableArray<Entity> immutableEntities = new ImmutableArray<Entity>(entities);
+        SnapshotArray<EntityListener> listeners;
+        int stamp;
+
+        Family(Role role) {
+            this.role = role;
+            this.index = role.getIndex();
+        }
+    }
+
     static interface DataTraitOperationHandler {
         public void add(Entity entity, DataTrait dataTrait);
 
@@ -445,6 +961,8 @@ public class EntityEngine {
         public enum Type {
             Add,
             Remove,
+            AddEntity,
+            RemoveEntity,
         }
 
         public Type type;
@@ -467,6 +985,24 @@ public class EntityEngine {
         }
     }
 
+    /**
+     * Entity and dataTrait changes made by one director during a parallel update.
+     */
+    private static class CommandBuffer {
+        final Array<DataTraitOperation> operations = new Array<DataTraitOperation>();
+        final DataTraitOperationPool pool = new DataTraitOperationPool();
+
+        synchronized void add(DataTraitOperation.Type type, Entity entity,
+                              DataTrait dataTrait, Class<? extends DataTrait> dataTraitClass) {
+            DataTraitOperation operation = pool.obtain();
+            operation.type = type;
+            operation.entity = entity;
+            operation.dataTrait = dataTrait;
+            operation.dataTraitClass = dataTraitClass;
+            operations.add(operation);
+        }
+    }
+
     private static class DataTraitOperationPool extends Pool<DataTraitOperation> {
         @Override
         protected DataTraitOperation newObject() {
@@ -69,7 +69,27 @@ public class PooledEntityEngine extends EntityEngine {
                               int entityPoolMaxSize,
                               int dataTraitPoolInitialSize,
                               int dataTraitPoolMaxSize) {
-        super();
+        this(entityPoolInitialSize, entityPoolMaxSize, dataTraitPoolInitialSize,
+                dataTraitPoolMaxSize, false);
+    }
+
+    /**
+     * Creates new PooledEngine with the specified pools size configurations
+     * and storage mode.
+     *
+     * @param entityPoolInitialSize    initial number of pre-allocated entities.
+     * @param entityPoolMaxSize        maximum number of pooled entities.
+     * @param dataTraitPoolInitialSize initial size for each dataTrait type pool.
+     * @param dataTraitPoolMaxSize     maximum size for each dataTrait type pool.
+     * @param archetypeStorage         whether entities are also stored in
+     *                                 {@link Archetype} chunks.
+     */
+    public PooledEntityEngine(int entityPoolInitialSize,
+                              int entityPoolMaxSize,
+                              int dataTraitPoolInitialSize,
+                              int dataTraitPoolMaxSize,
+                              boolean archetypeStorage) {
+        super(archetypeStorage);
 
         entityPool = new EntityPool(entityPoolInitialSize, entityPoolMaxSize);
         dataTraitPools = new DataTraitPools(dataTraitPoolInitialSize, dataTraitPoolMaxSize);
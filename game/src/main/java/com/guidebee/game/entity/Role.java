@@ -77,12 +77,29 @@ public class Role {
         return this.index;
     }
 
+    Bits getAll() {
+        return all;
+    }
+
+    Bits getOne() {
+        return one;
+    }
+
+    Bits getExclude() {
+        return exclude;
+    }
+
     /**
      * @return Whether the entity matches the family requirements or not
      */
     public boolean matches(Entity entity) {
-        Bits entityDataTraitBits = entity.getDataTraitBits();
+        return matches(entity.getDataTraitBits());
+    }
 
+    /**
+     * @return Whether a set of dataTraits matches the family requirements or not
+     */
+    boolean matches(Bits entityDataTraitBits) {
         if (entityDataTraitBits.isEmpty())
             return false;
 
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.entity.directors;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.entity.Archetype;
+import com.guidebee.game.entity.ArchetypeChunk;
+import com.guidebee.game.entity.EntityEngine;
+import com.guidebee.game.entity.Role;
+import com.guidebee.game.entity.utils.ImmutableArray;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * A {@link Director} that iterates over the {@link ArchetypeChunk}s of the
+ * entities described by a {@link Role}, instead of over the entities one by
+ * one. The dataTraits of a chunk are read with
+ * {@link ArchetypeChunk#getDataTraits(com.guidebee.game.entity.DataTraitMapper)},
+ * for example:
+ * <pre>
+ * protected void processChunk(ArchetypeChunk chunk, float deltaTime) {
+ *     Position[] positions = chunk.getDataTraits(positionMapper);
+ *     Velocity[] velocities = chunk.getDataTraits(velocityMapper);
+ *     for (int i = 0, n = chunk.size(); i &lt; n; i++) {
+ *         positions[i].x += velocities[i].x * deltaTime;
+ *     }
+ * }
+ * </pre>
+ * The engine must be created with archetype storage.
+ */
+public abstract class ChunkIteratingDirector extends Director {
+    /**
+     * The family describing this directors entities
+     */
+    private Role role;
+    /**
+     * The archetypes matching the family
+     */
+    private ImmutableArray<Archetype> archetypes;
+
+    /**
+     * Instantiates a director that will iterate over the chunks of the entities
+     * described by the Family.
+     *
+     * @param role The family of entities iterated over in this Director
+     */
+    public ChunkIteratingDirector(Role role) {
+        this(role, 0);
+    }
+
+    /**
+     * Instantiates a director that will iterate over the chunks of the entities
+     * described by the Family, with a specific priority.
+     *
+     * @param role     The family of entities iterated over in this Director
+     * @param priority The priority to execute this director with (lower means higher priority)
+     */
+    public ChunkIteratingDirector(Role role, int priority) {
+        super(priority);
+
+        this.role = role;
+    }
+
+    @Override
+    public void addedToEngine(EntityEngine entityEngine) {
+        archetypes = entityEngine.getArchetypesFor(role);
+    }
+
+    @Override
+    public void removedFromEngine(EntityEngine entityEngine) {
+        archetypes = null;
+    }
+
+    @Override
+    public void direct(float deltaTime) {
+        for (int i = 0; i < archetypes.size(); ++i) {
+            ImmutableArray<ArchetypeChunk> chunks = archetypes.get(i).getChunks();
+            for (int j = 0; j < chunks.size(); ++j) {
+                processChunk(chunks.get(j), deltaTime);
+            }
+        }
+    }
+
+    /**
+     * This method is called on every chunk on every direct call of the EntityDirector.
+     * Override this to implement your director's specific processing.
+     *
+     * @param chunk     The current chunk being processed
+     * @param deltaTime The delta time between the last and current frame
+     */
+    protected abstract void processChunk(ArchetypeChunk chunk, float deltaTime);
+}
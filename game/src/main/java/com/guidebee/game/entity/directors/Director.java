@@ -20,7 +20,10 @@ package com.guidebee.game.entity.directors;
 
 //[------------------------------ MAIN CLASS ----------------------------------]
 
+import com.guidebee.game.entity.DataTrait;
+import com.guidebee.game.entity.DataTraitType;
 import com.guidebee.game.entity.EntityEngine;
+import com.guidebee.utils.collections.Bits;
 
 /**
  * Abstract class for processing sets of {@link com.guidebee.game.entity.Entity} objects.
@@ -36,6 +39,13 @@ public abstract class Director {
 
     private boolean processing;
 
+    /**
+     * The dataTrait types read and written by the director, see {@link #reads(Class[])}.
+     */
+    private final Bits readBits = new Bits();
+    private final Bits writeBits = new Bits();
+    private boolean accessDeclared;
+
     /**
      * Default constructor that will initialise an EntityDirector with priority 0.
      */
@@ -91,4 +101,52 @@ public abstract class Director {
     public void setProcessing(boolean processing) {
         this.processing = processing;
     }
+
+    /**
+     * Declares {@link DataTrait} types this director reads. Once a director
+     * declared what it reads and writes, an {@link EntityEngine} with a
+     * parallelism above 1 may run it concurrently with the directors it
+     * doesn't conflict with. A director which declared nothing never runs
+     * concurrently with another one. Call it in the constructor, before the
+     * director is added to the engine.
+     */
+    @SafeVarargs
+    protected final void reads(Class<? extends DataTrait>... dataTraitTypes) {
+        for (Class<? extends DataTrait> type : dataTraitTypes) {
+            readBits.set(DataTraitType.getIndexFor(type));
+        }
+        accessDeclared = true;
+    }
+
+    /**
+     * Declares {@link DataTrait} types this director writes, see {@link #reads(Class[])}.
+     */
+    @SafeVarargs
+    protected final void writes(Class<? extends DataTrait>... dataTraitTypes) {
+        for (Class<? extends DataTrait> type : dataTraitTypes) {
+            writeBits.set(DataTraitType.getIndexFor(type));
+        }
+        accessDeclared = true;
+    }
+
+    /**
+     * @return Whether the director declared the dataTrait types it reads and writes.
+     */
+    public boolean isAccessDeclared() {
+        return accessDeclared;
+    }
+
+    /**
+     * @return Whether this director and the other one can't run concurrently,
+     * because one of them writes a dataTrait type the other reads or writes,
+     * or one of them didn't declare its access.
+     */
+    public boolean conflictsWith(Director other) {
+        if (!accessDeclared || !other.accessDeclared) {
+            return true;
+        }
+        return writeBits.intersects(other.writeBits)
+                || writeBits.intersects(other.readBits)
+                || other.writeBits.intersects(readBits);
+    }
 }
@@ -22,6 +22,7 @@ import com.guidebee.game.entity.Entity;
 import com.guidebee.game.entity.EntityEngine;
 import com.guidebee.game.entity.Role;
 import com.guidebee.game.entity.utils.ImmutableArray;
+import com.guidebee.game.entity.utils.WorkerPool;
 
 //[------------------------------ MAIN CLASS ----------------------------------]
 
@@ -35,6 +36,12 @@ import com.guidebee.game.entity.utils.ImmutableArray;
  * @author Stefan Bachmann
  */
 public abstract class IteratingDirector extends Director {
+    /**
+     * Number of entities processed by one task when the entities are split
+     * across threads, see {@link #setParallel(boolean)}.
+     */
+    public static final int SLICE_SIZE = 256;
+
     /**
      * The family describing this directors entities
      */
@@ -43,6 +50,22 @@ public abstract class IteratingDirector extends Director {
      * The entities used by this director
      */
     private ImmutableArray<Entity> entities;
+    /**
+     * The engine, used to split the entities across its threads
+     */
+    private EntityEngine entityEngine;
+    private boolean parallel;
+    private float sliceDeltaTime;
+    private final WorkerPool.Task sliceTask = new WorkerPool.Task() {
+        @Override
+        public void run(int index) {
+            int from = index * SLICE_SIZE;
+            int to = Math.min(from + SLICE_SIZE, entities.size());
+            for (int i = from; i < to; ++i) {
+                processEntity(entities.get(i), sliceDeltaTime);
+            }
+        }
+    };
 
     /**
      * Instantiates a director that will iterate over the entities described by the Family.
@@ -69,15 +92,41 @@ public abstract class IteratingDirector extends Director {
     @Override
     public void addedToEngine(EntityEngine entityEngine) {
         entities = entityEngine.getEntitiesFor(role);
+        this.entityEngine = entityEngine;
     }
 
     @Override
     public void removedFromEngine(EntityEngine entityEngine) {
         entities = null;
+        this.entityEngine = null;
+    }
+
+    /**
+     * Sets whether the entities may be split into slices of {@link #SLICE_SIZE}
+     * processed concurrently, when the engine parallelism is above 1.
+     * {@link #processEntity(Entity, float)} must then be safe to call for
+     * different entities at the same time.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * @return Whether the entities may be processed concurrently.
+     */
+    public boolean isParallel() {
+        return parallel;
     }
 
     @Override
     public void direct(float deltaTime) {
+        if (parallel && entityEngine.getParallelism() > 1
+                && entities.size() > SLICE_SIZE) {
+            sliceDeltaTime = deltaTime;
+            entityEngine.runParallel((entities.size() + SLICE_SIZE - 1) / SLICE_SIZE,
+                    sliceTask);
+            return;
+        }
         for (int i = 0; i < entities.size(); ++i) {
             processEntity(entities.get(i), deltaTime);
         }
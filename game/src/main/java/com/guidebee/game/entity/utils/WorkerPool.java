@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.entity.utils;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.GameEngineRuntimeException;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Fixed pool of daemon threads running indexed tasks. The calling thread
+ * takes part in the work and only waits for the tasks already started by
+ * the workers, so a task may itself call {@link #run(int, Task)} without
+ * risking a deadlock when all the workers are busy.
+ */
+public final class WorkerPool {
+    /**
+     * A task run once for each index.
+     */
+    public interface Task {
+        public void run(int index);
+    }
+
+    private final int threads;
+    private final ExecutorService executor;
+
+    /**
+     * @param threads number of worker threads.
+     */
+    public WorkerPool(int threads) {
+        this(threads, "EntityEngine-Worker");
+    }
+
+    /**
+     * @param threads number of worker threads.
+     * @param name    name of the worker threads.
+     */
+    public WorkerPool(int threads, final String name) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be >= 1.");
+        }
+        this.threads = threads;
+        executor = new ThreadPoolExecutor(threads, threads, 0L,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * @return The number of worker threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Runs task for each index from 0 to count - 1 and returns when all of
+     * them are done. The first exception thrown by a task is rethrown.
+     */
+    public void run(final int count, final Task task) {
+        if (count <= 0) {
+            return;
+        }
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger done = new AtomicInteger();
+        final Throwable[] error = new Throwable[1];
+
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int index;
+                while ((index = next.getAndIncrement()) < count) {
+                    try {
+                        task.run(index);
+                    } catch (Throwable t) {
+                        synchronized (error) {
+                            if (error[0] == null) {
+                                error[0] = t;
+                            }
+                        }
+                    } finally {
+                        if (done.incrementAndGet() == count) {
+                            synchronized (done) {
+                                done.notifyAll();
+                            }
+                        }
+                    }
+                }
+            }
+        };
+
+        for (int i = Math.min(threads, count - 1); i > 0; i--) {
+            executor.execute(worker);
+        }
+        worker.run();
+
+        boolean interrupted = false;
+        synchronized (done) {
+            while (done.get() < count) {
+                try {
+                    done.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        Throwable t = error[0];
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new GameEngineRuntimeException(t);
+        }
+    }
+
+    /**
+     * Stops the worker threads once the queued tasks are done.
+     */
+    public void dispose() {
+        executor.shutdown();
+    }
+}
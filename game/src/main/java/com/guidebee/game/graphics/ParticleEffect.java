@@ -116,6 +116,14 @@ public class ParticleEffect implements Disposable {
             emitters.get(i).flipY();
     }
 
+    /**
+     * @see ParticleEmitter#setArrayStorage(boolean)
+     */
+    public void setArrayStorage(boolean arrayStorage) {
+        for (int i = 0, n = emitters.size; i < n; i++)
+            emitters.get(i).setArrayStorage(arrayStorage);
+    }
+
     public Array<ParticleEmitter> getEmitters() {
         return emitters;
     }
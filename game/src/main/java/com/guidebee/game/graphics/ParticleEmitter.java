@@ -26,11 +26,19 @@ import com.guidebee.math.geometry.Rectangle;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Random;
 
 //[------------------------------ MAIN CLASS ----------------------------------]
 
 /**
  * Particle Emitter.
+ * <p/>
+ * By default each live particle is a {@link Particle} sprite. With
+ * {@link #setArrayStorage(boolean)} the particle state is kept in parallel
+ * primitive arrays instead, updated one attribute at a time over all the
+ * particles, and the quads of all the particles are written into one vertex
+ * array drawn with a single {@link Batch#draw(Texture, float[], int, int)}
+ * call.
  */
 public class ParticleEmitter {
     static private final int UPDATE_SCALE = 1 << 0;
@@ -69,6 +77,8 @@ public class ParticleEmitter {
     private String imagePath;
     private int activeCount;
     private boolean[] active;
+    private ParticleArrays particleArrays;
+    private Random random;
     private boolean firstUpdate;
     private boolean flipX, flipY;
     private int updateFlags;
@@ -104,6 +114,7 @@ public class ParticleEmitter {
         name = emitter.name;
         imagePath = emitter.imagePath;
         setMaxParticleCount(emitter.maxParticleCount);
+        setArrayStorage(emitter.particleArrays != null);
         minParticleCount = emitter.minParticleCount;
         delayValue.load(emitter.delayValue);
         durationValue.load(emitter.durationValue);
@@ -146,11 +157,55 @@ public class ParticleEmitter {
         active = new boolean[maxParticleCount];
         activeCount = 0;
         particles = new Particle[maxParticleCount];
+        if (particleArrays != null) particleArrays = new ParticleArrays(maxParticleCount);
+    }
+
+    /**
+     * Sets whether the particles are stored in parallel primitive arrays
+     * instead of {@link Particle} objects. The array storage doesn't create
+     * particles with {@link #newParticle(Sprite)}. Active particles are
+     * removed when the storage changes.
+     */
+    public void setArrayStorage(boolean arrayStorage) {
+        if (arrayStorage == (particleArrays != null)) return;
+        particleArrays = arrayStorage ? new ParticleArrays(maxParticleCount) : null;
+        boolean[] active = this.active;
+        for (int i = 0, n = active.length; i < n; i++)
+            active[i] = false;
+        activeCount = 0;
+    }
+
+    public boolean isArrayStorage() {
+        return particleArrays != null;
+    }
+
+    /**
+     * Sets the random number generator used to spawn the particles. An
+     * emitter with its own generator gives the same particles whatever the
+     * other emitters do, and can be updated on any thread.
+     *
+     * @param random the generator, or null to use {@link MathUtils#random}.
+     */
+    public void setRandom(Random random) {
+        this.random = random;
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+
+    private Random random() {
+        return random != null ? random : MathUtils.random;
     }
 
     public void addParticle() {
         int activeCount = this.activeCount;
         if (activeCount == maxParticleCount) return;
+        if (particleArrays != null) {
+            this.activeCount = activeCount + 1;
+            activateArrayParticle(activeCount);
+            return;
+        }
         boolean[] active = this.active;
         for (int i = 0, n = active.length; i < n; i++) {
             if (!active[i]) {
@@ -165,6 +220,11 @@ public class ParticleEmitter {
     public void addParticles(int count) {
         count = Math.min(count, maxParticleCount - activeCount);
         if (count == 0) return;
+        if (particleArrays != null) {
+            for (int i = 0; i < count; i++)
+                activateArrayParticle(activeCount++);
+            return;
+        }
         boolean[] active = this.active;
         int index = 0, n = active.length;
         outer:
@@ -182,8 +242,38 @@ public class ParticleEmitter {
     }
 
     public void update(float delta) {
+        int deltaMillis = beginUpdate(delta);
+        if (deltaMillis == 0) return;
+
+        if (particleArrays != null) {
+            updateArrayParticles(0, activeCount, delta, deltaMillis);
+            return;
+        }
+
+        boolean[] active = this.active;
+        int activeCount = this.activeCount;
+        Particle[] particles = this.particles;
+        for (int i = 0, n = active.length; i < n; i++) {
+            if (active[i] && !updateParticle(particles[i], delta, deltaMillis)) {
+                active[i] = false;
+                activeCount--;
+            }
+        }
+        this.activeCount = activeCount;
+    }
+
+    /**
+     * Runs the emission part of {@link #update(float)}. With the array
+     * storage the expired particles are also removed, so the live particles
+     * can then be updated in independent ranges with
+     * {@link #updateArrayParticles(int, int, float, int)}.
+     *
+     * @return the elapsed milliseconds to update the particles with, or 0 if
+     * there is nothing to update.
+     */
+    int beginUpdate(float delta) {
         accumulator += delta * 1000;
-        if (accumulator < 1) return;
+        if (accumulator < 1) return 0;
         int deltaMillis = (int) accumulator;
         accumulator -= deltaMillis;
 
@@ -223,16 +313,8 @@ public class ParticleEmitter {
             }
         }
 
-        boolean[] active = this.active;
-        int activeCount = this.activeCount;
-        Particle[] particles = this.particles;
-        for (int i = 0, n = active.length; i < n; i++) {
-            if (active[i] && !updateParticle(particles[i], delta, deltaMillis)) {
-                active[i] = false;
-                activeCount--;
-            }
-        }
-        this.activeCount = activeCount;
+        if (particleArrays != null) removeExpiredArrayParticles(deltaMillis);
+        return deltaMillis;
     }
 
     public void draw(Batch batch) {
@@ -243,11 +325,14 @@ public class ParticleEmitter {
                 batch.setBlendFunction(IGL20.GL_SRC_ALPHA, IGL20.GL_ONE);
             }
         }
-        Particle[] particles = this.particles;
-        boolean[] active = this.active;
-
-        for (int i = 0, n = active.length; i < n; i++) {
-            if (active[i]) particles[i].draw(batch);
+        if (particleArrays != null) {
+            drawArrayParticles(batch);
+        } else {
+            Particle[] particles = this.particles;
+            boolean[] active = this.active;
+            for (int i = 0, n = active.length; i < n; i++) {
+                if (active[i]) particles[i].draw(batch);
+            }
         }
 
         if (additive || premultipliedAlpha) batch.setBlendFunction(IGL20.GL_SRC_ALPHA,
@@ -277,21 +362,27 @@ public class ParticleEmitter {
             }
         }
 
-        Particle[] particles = this.particles;
-        boolean[] active = this.active;
-        int activeCount = this.activeCount;
-        for (int i = 0, n = active.length; i < n; i++) {
-            if (active[i]) {
-                Particle particle = particles[i];
-                if (updateParticle(particle, delta, deltaMillis))
-                    particle.draw(batch);
-                else {
-                    active[i] = false;
-                    activeCount--;
+        if (particleArrays != null) {
+            removeExpiredArrayParticles(deltaMillis);
+            updateArrayParticles(0, activeCount, delta, deltaMillis);
+            drawArrayParticles(batch);
+        } else {
+            Particle[] particles = this.particles;
+            boolean[] active = this.active;
+            int activeCount = this.activeCount;
+            for (int i = 0, n = active.length; i < n; i++) {
+                if (active[i]) {
+                    Particle particle = particles[i];
+                    if (updateParticle(particle, delta, deltaMillis))
+                        particle.draw(batch);
+                    else {
+                        active[i] = false;
+                        activeCount--;
+                    }
                 }
             }
+            this.activeCount = activeCount;
         }
-        this.activeCount = activeCount;
 
         if (additive || premultipliedAlpha) batch.setBlendFunction(IGL20.GL_SRC_ALPHA,
                 IGL20.GL_ONE_MINUS_SRC_ALPHA);
@@ -346,30 +437,31 @@ public class ParticleEmitter {
     }
 
     private void restart() {
-        delay = delayValue.active ? delayValue.newLowValue() : 0;
+        Random random = random();
+        delay = delayValue.active ? delayValue.newLowValue(random) : 0;
         delayTimer = 0;
 
         durationTimer -= duration;
-        duration = durationValue.newLowValue();
+        duration = durationValue.newLowValue(random);
 
-        emission = (int) emissionValue.newLowValue();
-        emissionDiff = (int) emissionValue.newHighValue();
+        emission = (int) emissionValue.newLowValue(random);
+        emissionDiff = (int) emissionValue.newHighValue(random);
         if (!emissionValue.isRelative()) emissionDiff -= emission;
 
-        life = (int) lifeValue.newLowValue();
-        lifeDiff = (int) lifeValue.newHighValue();
+        life = (int) lifeValue.newLowValue(random);
+        lifeDiff = (int) lifeValue.newHighValue(random);
         if (!lifeValue.isRelative()) lifeDiff -= life;
 
-        lifeOffset = lifeOffsetValue.active ? (int) lifeOffsetValue.newLowValue() : 0;
-        lifeOffsetDiff = (int) lifeOffsetValue.newHighValue();
+        lifeOffset = lifeOffsetValue.active ? (int) lifeOffsetValue.newLowValue(random) : 0;
+        lifeOffsetDiff = (int) lifeOffsetValue.newHighValue(random);
         if (!lifeOffsetValue.isRelative()) lifeOffsetDiff -= lifeOffset;
 
-        spawnWidth = spawnWidthValue.newLowValue();
-        spawnWidthDiff = spawnWidthValue.newHighValue();
+        spawnWidth = spawnWidthValue.newLowValue(random);
+        spawnWidthDiff = spawnWidthValue.newHighValue(random);
         if (!spawnWidthValue.isRelative()) spawnWidthDiff -= spawnWidth;
 
-        spawnHeight = spawnHeightValue.newLowValue();
-        spawnHeightDiff = spawnHeightValue.newHighValue();
+        spawnHeight = spawnHeightValue.newLowValue(random);
+        spawnHeightDiff = spawnHeightValue.newHighValue(random);
         if (!spawnHeightValue.isRelative()) spawnHeightDiff -= spawnHeight;
 
         updateFlags = 0;
@@ -387,6 +479,7 @@ public class ParticleEmitter {
     }
 
     private void activateParticle(int index) {
+        Random random = random();
         Particle particle = particles[index];
         if (particle == null) {
             particles[index] = particle = newParticle(sprite);
@@ -399,13 +492,13 @@ public class ParticleEmitter {
         particle.currentLife = particle.life = life + (int) (lifeDiff * lifeValue.getScale(percent));
 
         if (velocityValue.active) {
-            particle.velocity = velocityValue.newLowValue();
-            particle.velocityDiff = velocityValue.newHighValue();
+            particle.velocity = velocityValue.newLowValue(random);
+            particle.velocityDiff = velocityValue.newHighValue(random);
             if (!velocityValue.isRelative()) particle.velocityDiff -= particle.velocity;
         }
 
-        particle.angle = angleValue.newLowValue();
-        particle.angleDiff = angleValue.newHighValue();
+        particle.angle = angleValue.newLowValue(random);
+        particle.angleDiff = angleValue.newHighValue(random);
         if (!angleValue.isRelative()) particle.angleDiff -= particle.angle;
         float angle = 0;
         if ((updateFlags & UPDATE_ANGLE) == 0) {
@@ -416,14 +509,14 @@ public class ParticleEmitter {
         }
 
         float spriteWidth = sprite.getWidth();
-        particle.scale = scaleValue.newLowValue() / spriteWidth;
-        particle.scaleDiff = scaleValue.newHighValue() / spriteWidth;
+        particle.scale = scaleValue.newLowValue(random) / spriteWidth;
+        particle.scaleDiff = scaleValue.newHighValue(random) / spriteWidth;
         if (!scaleValue.isRelative()) particle.scaleDiff -= particle.scale;
         particle.setScale(particle.scale + particle.scaleDiff * scaleValue.getScale(0));
 
         if (rotationValue.active) {
-            particle.rotation = rotationValue.newLowValue();
-            particle.rotationDiff = rotationValue.newHighValue();
+            particle.rotation = rotationValue.newLowValue(random);
+            particle.rotationDiff = rotationValue.newHighValue(random);
             if (!rotationValue.isRelative()) particle.rotationDiff -= particle.rotation;
             float rotation = particle.rotation + particle.rotationDiff * rotationValue.getScale(0);
             if (aligned) rotation += angle;
@@ -431,14 +524,14 @@ public class ParticleEmitter {
         }
 
         if (windValue.active) {
-            particle.wind = windValue.newLowValue();
-            particle.windDiff = windValue.newHighValue();
+            particle.wind = windValue.newLowValue(random);
+            particle.windDiff = windValue.newHighValue(random);
             if (!windValue.isRelative()) particle.windDiff -= particle.wind;
         }
 
         if (gravityValue.active) {
-            particle.gravity = gravityValue.newLowValue();
-            particle.gravityDiff = gravityValue.newHighValue();
+            particle.gravity = gravityValue.newLowValue(random);
+            particle.gravityDiff = gravityValue.newHighValue(random);
             if (!gravityValue.isRelative()) particle.gravityDiff -= particle.gravity;
         }
 
@@ -449,20 +542,20 @@ public class ParticleEmitter {
         color[1] = temp[1];
         color[2] = temp[2];
 
-        particle.transparency = transparencyValue.newLowValue();
-        particle.transparencyDiff = transparencyValue.newHighValue() - particle.transparency;
+        particle.transparency = transparencyValue.newLowValue(random);
+        particle.transparencyDiff = transparencyValue.newHighValue(random) - particle.transparency;
 
         // Spawn.
         float x = this.x;
-        if (xOffsetValue.active) x += xOffsetValue.newLowValue();
+        if (xOffsetValue.active) x += xOffsetValue.newLowValue(random);
         float y = this.y;
-        if (yOffsetValue.active) y += yOffsetValue.newLowValue();
+        if (yOffsetValue.active) y += yOffsetValue.newLowValue(random);
         switch (spawnShapeValue.shape) {
             case square: {
                 float width = spawnWidth + (spawnWidthDiff * spawnWidthValue.getScale(percent));
                 float height = spawnHeight + (spawnHeightDiff * spawnHeightValue.getScale(percent));
-                x += MathUtils.random(width) - width / 2;
-                y += MathUtils.random(height) - height / 2;
+                x += random.nextFloat() * width - width / 2;
+                y += random.nextFloat() * height - height / 2;
                 break;
             }
             case ellipse: {
@@ -476,13 +569,13 @@ public class ParticleEmitter {
                     float spawnAngle;
                     switch (spawnShapeValue.side) {
                         case top:
-                            spawnAngle = -MathUtils.random(179f);
+                            spawnAngle = -random.nextFloat() * 179f;
                             break;
                         case bottom:
-                            spawnAngle = MathUtils.random(179f);
+                            spawnAngle = random.nextFloat() * 179f;
                             break;
                         default:
-                            spawnAngle = MathUtils.random(360f);
+                            spawnAngle = random.nextFloat() * 360f;
                             break;
                     }
                     float cosDeg = MathUtils.cosDeg(spawnAngle);
@@ -497,8 +590,8 @@ public class ParticleEmitter {
                 } else {
                     float radius2 = radiusX * radiusX;
                     while (true) {
-                        float px = MathUtils.random(width) - radiusX;
-                        float py = MathUtils.random(width) - radiusX;
+                        float px = random.nextFloat() * width - radiusX;
+                        float py = random.nextFloat() * width - radiusX;
                         if (px * px + py * py <= radius2) {
                             x += px;
                             y += py / scaleY;
@@ -512,11 +605,11 @@ public class ParticleEmitter {
                 float width = spawnWidth + (spawnWidthDiff * spawnWidthValue.getScale(percent));
                 float height = spawnHeight + (spawnHeightDiff * spawnHeightValue.getScale(percent));
                 if (width != 0) {
-                    float lineX = width * MathUtils.random();
+                    float lineX = width * random.nextFloat();
                     x += lineX;
                     y += lineX * (height / (float) width);
                 } else
-                    y += height * MathUtils.random();
+                    y += height * random.nextFloat();
                 break;
             }
         }
@@ -601,13 +694,441 @@ public class ParticleEmitter {
         return true;
     }
 
+    private void activateArrayParticle(int index) {
+        Random random = random();
+        ParticleArrays p = particleArrays;
+        float percent = durationTimer / duration;
+        int updateFlags = this.updateFlags;
+
+        p.currentLife[index] = p.life[index] = life + (int) (lifeDiff * lifeValue.getScale(percent));
+
+        float velocity = 0, velocityDiff = 0;
+        if (velocityValue.active) {
+            velocity = velocityValue.newLowValue(random);
+            velocityDiff = velocityValue.newHighValue(random);
+            if (!velocityValue.isRelative()) velocityDiff -= velocity;
+        }
+        p.velocity[index] = velocity;
+        p.velocityDiff[index] = velocityDiff;
+
+        float angle = angleValue.newLowValue(random);
+        float angleDiff = angleValue.newHighValue(random);
+        if (!angleValue.isRelative()) angleDiff -= angle;
+        p.angleDiff[index] = angleDiff;
+        if ((updateFlags & UPDATE_ANGLE) == 0) {
+            angle = angle + angleDiff * angleValue.getScale(0);
+            p.angleCos[index] = MathUtils.cosDeg(angle);
+            p.angleSin[index] = MathUtils.sinDeg(angle);
+        }
+        p.angle[index] = angle;
+        float alignedAngle = (updateFlags & UPDATE_ANGLE) == 0 ? angle : 0;
+
+        float spriteWidth = sprite.getWidth();
+        float scale = scaleValue.newLowValue(random) / spriteWidth;
+        float scaleDiff = scaleValue.newHighValue(random) / spriteWidth;
+        if (!scaleValue.isRelative()) scaleDiff -= scale;
+        p.scale[index] = scale;
+        p.scaleDiff[index] = scaleDiff;
+        p.currentScale[index] = scale + scaleDiff * scaleValue.getScale(0);
+
+        float rotation = 0, rotationDiff = 0;
+        float currentRotation = sprite.getRotation();
+        if (rotationValue.active) {
+            rotation = rotationValue.newLowValue(random);
+            rotationDiff = rotationValue.newHighValue(random);
+            if (!rotationValue.isRelative()) rotationDiff -= rotation;
+            currentRotation = rotation + rotationDiff * rotationValue.getScale(0);
+            if (aligned) currentRotation += alignedAngle;
+        }
+        p.rotation[index] = rotation;
+        p.rotationDiff[index] = rotationDiff;
+        p.currentRotation[index] = currentRotation;
+
+        float wind = 0, windDiff = 0;
+        if (windValue.active) {
+            wind = windValue.newLowValue(random);
+            windDiff = windValue.newHighValue(random);
+            if (!windValue.isRelative()) windDiff -= wind;
+        }
+        p.wind[index] = wind;
+        p.windDiff[index] = windDiff;
+
+        float gravity = 0, gravityDiff = 0;
+        if (gravityValue.active) {
+            gravity = gravityValue.newLowValue(random);
+            gravityDiff = gravityValue.newHighValue(random);
+            if (!gravityValue.isRelative()) gravityDiff -= gravity;
+        }
+        p.gravity[index] = gravity;
+        p.gravityDiff[index] = gravityDiff;
+
+        float[] temp = tintValue.getColor(0);
+        int tintIndex = index * 3;
+        p.tint[tintIndex] = temp[0];
+        p.tint[tintIndex + 1] = temp[1];
+        p.tint[tintIndex + 2] = temp[2];
+
+        float transparency = transparencyValue.newLowValue(random);
+        p.transparency[index] = transparency;
+        p.transparencyDiff[index] = transparencyValue.newHighValue(random) - transparency;
+
+        // Spawn.
+        float x = this.x;
+        if (xOffsetValue.active) x += xOffsetValue.newLowValue(random);
+        float y = this.y;
+        if (yOffsetValue.active) y += yOffsetValue.newLowValue(random);
+        switch (spawnShapeValue.shape) {
+            case square: {
+                float width = spawnWidth + (spawnWidthDiff * spawnWidthValue.getScale(percent));
+                float height = spawnHeight + (spawnHeightDiff * spawnHeightValue.getScale(percent));
+                x += random.nextFloat() * width - width / 2;
+                y += random.nextFloat() * height - height / 2;
+                break;
+            }
+            case ellipse: {
+                float width = spawnWidth + (spawnWidthDiff * spawnWidthValue.getScale(percent));
+                float height = spawnHeight + (spawnHeightDiff * spawnHeightValue.getScale(percent));
+                float radiusX = width / 2;
+                float radiusY = height / 2;
+                if (radiusX == 0 || radiusY == 0) break;
+                float scaleY = radiusX / radiusY;
+                if (spawnShapeValue.edges) {
+                    float spawnAngle;
+                    switch (spawnShapeValue.side) {
+                        case top:
+                            spawnAngle = -random.nextFloat() * 179f;
+                            break;
+                        case bottom:
+                            spawnAngle = random.nextFloat() * 179f;
+                            break;
+                        default:
+                            spawnAngle = random.nextFloat() * 360f;
+                            break;
+                    }
+                    float cosDeg = MathUtils.cosDeg(spawnAngle);
+                    float sinDeg = MathUtils.sinDeg(spawnAngle);
+                    x += cosDeg * radiusX;
+                    y += sinDeg * radiusX / scaleY;
+                    if ((updateFlags & UPDATE_ANGLE) == 0) {
+                        p.angle[index] = spawnAngle;
+                        p.angleCos[index] = cosDeg;
+                        p.angleSin[index] = sinDeg;
+                    }
+                } else {
+                    float radius2 = radiusX * radiusX;
+                    while (true) {
+                        float px = random.nextFloat() * width - radiusX;
+                        float py = random.nextFloat() * width - radiusX;
+                        if (px * px + py * py <= radius2) {
+                            x += px;
+                            y += py / scaleY;
+                            break;
+                        }
+                    }
+                }
+                break;
+            }
+            case line: {
+                float width = spawnWidth + (spawnWidthDiff * spawnWidthValue.getScale(percent));
+                float height = spawnHeight + (spawnHeightDiff * spawnHeightValue.getScale(percent));
+                if (width != 0) {
+                    float lineX = width * random.nextFloat();
+                    x += lineX;
+                    y += lineX * (height / width);
+                } else
+                    y += height * random.nextFloat();
+                break;
+            }
+        }
+
+        p.x[index] = x - spriteWidth / 2;
+        p.y[index] = y - sprite.getHeight() / 2;
+
+        int offsetTime = (int) (lifeOffset + lifeOffsetDiff * lifeOffsetValue.getScale(percent));
+        if (offsetTime > 0) {
+            if (offsetTime >= p.currentLife[index]) offsetTime = p.currentLife[index] - 1;
+            updateArrayParticles(index, index + 1, offsetTime / 1000f, offsetTime);
+        } else {
+            updateArrayColors(index, index + 1, 0);
+        }
+    }
+
+    /**
+     * Removes the particles whose life ends within deltaMillis. The last live
+     * particle is moved into each hole, so the live particles stay packed but
+     * not in order.
+     */
+    private void removeExpiredArrayParticles(int deltaMillis) {
+        ParticleArrays p = particleArrays;
+        int[] currentLife = p.currentLife;
+        int n = activeCount;
+        for (int i = 0; i < n; ) {
+            if (currentLife[i] - deltaMillis > 0) {
+                i++;
+                continue;
+            }
+            n--;
+            if (i != n) p.move(n, i);
+        }
+        activeCount = n;
+    }
+
+    /**
+     * Updates the particles from start to end, which must all outlive
+     * deltaMillis. Each attribute is updated over all the particles before
+     * the next one.
+     */
+    void updateArrayParticles(int start, int end, float delta, int deltaMillis) {
+        ParticleArrays p = particleArrays;
+        int updateFlags = this.updateFlags;
+        float[] percents = p.percent;
+        int[] life = p.life;
+        int[] currentLife = p.currentLife;
+        for (int i = start; i < end; i++) {
+            int remaining = currentLife[i] - deltaMillis;
+            currentLife[i] = remaining;
+            percents[i] = 1 - remaining / (float) life[i];
+        }
+
+        if ((updateFlags & UPDATE_SCALE) != 0) {
+            float[] scale = p.scale, scaleDiff = p.scaleDiff, currentScale = p.currentScale;
+            for (int i = start; i < end; i++)
+                currentScale[i] = scale[i] + scaleDiff[i] * scaleValue.getScale(percents[i]);
+        }
+
+        float[] rotation = p.rotation, rotationDiff = p.rotationDiff;
+        float[] currentRotation = p.currentRotation;
+        if ((updateFlags & UPDATE_VELOCITY) != 0) {
+            float[] x = p.x, y = p.y;
+            float[] velocity = p.velocity, velocityDiff = p.velocityDiff;
+            float[] angle = p.angle, angleDiff = p.angleDiff;
+            float[] angleCos = p.angleCos, angleSin = p.angleSin;
+            boolean updateRotation = (updateFlags & UPDATE_ROTATION) != 0;
+            if ((updateFlags & UPDATE_ANGLE) != 0) {
+                for (int i = start; i < end; i++) {
+                    float percent = percents[i];
+                    float speed = (velocity[i] + velocityDiff[i] * velocityValue.getScale(percent)) * delta;
+                    float currentAngle = angle[i] + angleDiff[i] * angleValue.getScale(percent);
+                    x[i] += speed * MathUtils.cosDeg(currentAngle);
+                    y[i] += speed * MathUtils.sinDeg(currentAngle);
+                    if (updateRotation) {
+                        float r = rotation[i] + rotationDiff[i] * rotationValue.getScale(percent);
+                        currentRotation[i] = aligned ? r + currentAngle : r;
+                    }
+                }
+            } else {
+                for (int i = start; i < end; i++) {
+                    float percent = percents[i];
+                    float speed = (velocity[i] + velocityDiff[i] * velocityValue.getScale(percent)) * delta;
+                    x[i] += speed * angleCos[i];
+                    y[i] += speed * angleSin[i];
+                }
+                if (aligned || updateRotation) {
+                    for (int i = start; i < end; i++) {
+                        float r = rotation[i] + rotationDiff[i] * rotationValue.getScale(percents[i]);
+                        currentRotation[i] = aligned ? r + angle[i] : r;
+                    }
+                }
+            }
+
+            if ((updateFlags & UPDATE_WIND) != 0) {
+                float[] wind = p.wind, windDiff = p.windDiff;
+                for (int i = start; i < end; i++)
+                    x[i] += (wind[i] + windDiff[i] * windValue.getScale(percents[i])) * delta;
+            }
+
+            if ((updateFlags & UPDATE_GRAVITY) != 0) {
+                float[] gravity = p.gravity, gravityDiff = p.gravityDiff;
+                for (int i = start; i < end; i++)
+                    y[i] += (gravity[i] + gravityDiff[i] * gravityValue.getScale(percents[i])) * delta;
+            }
+        } else if ((updateFlags & UPDATE_ROTATION) != 0) {
+            for (int i = start; i < end; i++)
+                currentRotation[i] = rotation[i] + rotationDiff[i] * rotationValue.getScale(percents[i]);
+        }
+
+        updateArrayColors(start, end, -1);
+    }
+
+    /**
+     * Computes the packed colors of the particles from start to end.
+     *
+     * @param percent the life percent of all the particles, or -1 to use the
+     *                percent computed by the last update.
+     */
+    private void updateArrayColors(int start, int end, float percent) {
+        ParticleArrays p = particleArrays;
+        float[] percents = p.percent;
+        float[] tint = p.tint, color = p.color;
+        float[] transparency = p.transparency, transparencyDiff = p.transparencyDiff;
+        boolean updateTint = (updateFlags & UPDATE_TINT) != 0;
+        float[] tintTimeline = tintValue.timeline, tintColors = tintValue.getColors();
+        int tintCount = tintTimeline.length;
+        float alphaMultiplier = additive ? 0 : 1;
+        for (int i = start; i < end; i++) {
+            float particlePercent = percent < 0 ? percents[i] : percent;
+            float r, g, b;
+            if (updateTint) {
+                // Same as GradientColorValue#getColor, without the shared temp array.
+                int startIndex = 0, endIndex = -1;
+                for (int j = 1; j < tintCount; j++) {
+                    if (tintTimeline[j] > particlePercent) {
+                        endIndex = j;
+                        break;
+                    }
+                    startIndex = j;
+                }
+                int colorIndex = startIndex * 3;
+                r = tintColors[colorIndex];
+                g = tintColors[colorIndex + 1];
+                b = tintColors[colorIndex + 2];
+                if (endIndex != -1) {
+                    float startTime = tintTimeline[startIndex];
+                    float factor = (particlePercent - startTime)
+                            / (tintTimeline[endIndex] - startTime);
+                    int endColorIndex = endIndex * 3;
+                    r += (tintColors[endColorIndex] - r) * factor;
+                    g += (tintColors[endColorIndex + 1] - g) * factor;
+                    b += (tintColors[endColorIndex + 2] - b) * factor;
+                }
+            } else {
+                int tintIndex = i * 3;
+                r = tint[tintIndex];
+                g = tint[tintIndex + 1];
+                b = tint[tintIndex + 2];
+            }
+            float a = transparency[i] + transparencyDiff[i] * transparencyValue.getScale(particlePercent);
+            if (premultipliedAlpha)
+                color[i] = Color.toFloatBits(r * a, g * a, b * a, a * alphaMultiplier);
+            else
+                color[i] = Color.toFloatBits(r, g, b, a);
+        }
+    }
+
+    /**
+     * Writes the quads of the particles from start to end into vertices, in
+     * the {@link Sprite} vertex layout. The quad of particle i starts at
+     * i * {@link Sprite#SPRITE_SIZE}.
+     */
+    void computeArrayVertices(float[] vertices, int start, int end) {
+        ParticleArrays p = particleArrays;
+        Sprite sprite = this.sprite;
+        float width = sprite.getWidth();
+        float height = sprite.getHeight();
+        float originX = sprite.getOriginX();
+        float originY = sprite.getOriginY();
+        float u = sprite.getU(), v = sprite.getV(), u2 = sprite.getU2(), v2 = sprite.getV2();
+        if (flipX) {
+            float temp = u;
+            u = u2;
+            u2 = temp;
+        }
+        if (flipY) {
+            float temp = v;
+            v = v2;
+            v2 = temp;
+        }
+
+        float[] x = p.x, y = p.y, color = p.color;
+        float[] currentScale = p.currentScale, currentRotation = p.currentRotation;
+        for (int i = start, offset = start * Sprite.SPRITE_SIZE; i < end;
+             i++, offset += Sprite.SPRITE_SIZE) {
+            float scale = currentScale[i];
+            float localX = -originX * scale;
+            float localY = -originY * scale;
+            float localX2 = (width - originX) * scale;
+            float localY2 = (height - originY) * scale;
+            float worldOriginX = x[i] + originX;
+            float worldOriginY = y[i] + originY;
+            float rotation = currentRotation[i];
+            if (rotation != 0) {
+                float cos = MathUtils.cosDeg(rotation);
+                float sin = MathUtils.sinDeg(rotation);
+                float x1 = localX * cos - localY * sin + worldOriginX;
+                float y1 = localY * cos + localX * sin + worldOriginY;
+                float x2 = localX * cos - localY2 * sin + worldOriginX;
+                float y2 = localY2 * cos + localX * sin + worldOriginY;
+                float x3 = localX2 * cos - localY2 * sin + worldOriginX;
+                float y3 = localY2 * cos + localX2 * sin + worldOriginY;
+                vertices[offset + Batch.X1] = x1;
+                vertices[offset + Batch.Y1] = y1;
+                vertices[offset + Batch.X2] = x2;
+                vertices[offset + Batch.Y2] = y2;
+                vertices[offset + Batch.X3] = x3;
+                vertices[offset + Batch.Y3] = y3;
+                vertices[offset + Batch.X4] = x1 + (x3 - x2);
+                vertices[offset + Batch.Y4] = y3 - (y2 - y1);
+            } else {
+                float x1 = localX + worldOriginX;
+                float y1 = localY + worldOriginY;
+                float x2 = localX2 + worldOriginX;
+                float y2 = localY2 + worldOriginY;
+                vertices[offset + Batch.X1] = x1;
+                vertices[offset + Batch.Y1] = y1;
+                vertices[offset + Batch.X2] = x1;
+                vertices[offset + Batch.Y2] = y2;
+                vertices[offset + Batch.X3] = x2;
+                vertices[offset + Batch.Y3] = y2;
+                vertices[offset + Batch.X4] = x2;
+                vertices[offset + Batch.Y4] = y1;
+            }
+            float c = color[i];
+            vertices[offset + Batch.C1] = c;
+            vertices[offset + Batch.C2] = c;
+            vertices[offset + Batch.C3] = c;
+            vertices[offset + Batch.C4] = c;
+            vertices[offset + Batch.U1] = u;
+            vertices[offset + Batch.V1] = v2;
+            vertices[offset + Batch.U2] = u;
+            vertices[offset + Batch.V2] = v;
+            vertices[offset + Batch.U3] = u2;
+            vertices[offset + Batch.V3] = v;
+            vertices[offset + Batch.U4] = u2;
+            vertices[offset + Batch.V4] = v2;
+        }
+    }
+
+    /**
+     * Copies the quads of the active {@link Particle} sprites into vertices,
+     * packed in slot order.
+     *
+     * @return the number of floats written.
+     */
+    int copyParticleVertices(float[] vertices) {
+        Particle[] particles = this.particles;
+        boolean[] active = this.active;
+        int offset = 0;
+        for (int i = 0, n = active.length; i < n; i++) {
+            if (active[i]) {
+                System.arraycopy(particles[i].getVertices(), 0, vertices, offset,
+                        Sprite.SPRITE_SIZE);
+                offset += Sprite.SPRITE_SIZE;
+            }
+        }
+        return offset;
+    }
+
+    private void drawArrayParticles(Batch batch) {
+        if (activeCount == 0) return;
+        computeArrayVertices(particleArrays.vertices, 0, activeCount);
+        batch.draw(sprite.getTexture(), particleArrays.vertices, 0, activeCount * Sprite.SPRITE_SIZE);
+    }
+
     public void setPosition(float x, float y) {
         if (attached) {
             float xAmount = x - this.x;
             float yAmount = y - this.y;
-            boolean[] active = this.active;
-            for (int i = 0, n = active.length; i < n; i++)
-                if (active[i]) particles[i].translate(xAmount, yAmount);
+            if (particleArrays != null) {
+                float[] particleX = particleArrays.x, particleY = particleArrays.y;
+                for (int i = 0, n = activeCount; i < n; i++) {
+                    particleX[i] += xAmount;
+                    particleY[i] += yAmount;
+                }
+            } else {
+                boolean[] active = this.active;
+                for (int i = 0, n = active.length; i < n; i++)
+                    if (active[i]) particles[i].translate(xAmount, yAmount);
+            }
         }
         this.x = x;
         this.y = y;
@@ -849,6 +1370,13 @@ public class ParticleEmitter {
         BoundingBox bounds = this.bounds;
 
         bounds.inf();
+        if (particleArrays != null) {
+            float[] vertices = particleArrays.vertices;
+            computeArrayVertices(vertices, 0, activeCount);
+            for (int i = 0, n = activeCount * Sprite.SPRITE_SIZE; i < n; i += Sprite.VERTEX_SIZE)
+                bounds.ext(vertices[i + Batch.X1], vertices[i + Batch.Y1], 0);
+            return bounds;
+        }
         for (int i = 0, n = active.length; i < n; i++)
             if (active[i]) {
                 Rectangle r = particles[i].getBoundingRectangle();
@@ -1019,6 +1547,91 @@ public class ParticleEmitter {
         }
     }
 
+    /**
+     * Particle state of the array storage. The live particles are packed at
+     * the start of the arrays, in no particular order.
+     */
+    static private class ParticleArrays {
+        final int[] life, currentLife;
+        final float[] scale, scaleDiff, currentScale;
+        final float[] rotation, rotationDiff, currentRotation;
+        final float[] velocity, velocityDiff;
+        final float[] angle, angleDiff, angleCos, angleSin;
+        final float[] transparency, transparencyDiff;
+        final float[] wind, windDiff;
+        final float[] gravity, gravityDiff;
+        final float[] x, y;
+        /**
+         * Red, green and blue of each particle.
+         */
+        final float[] tint;
+        /**
+         * Packed color of each particle.
+         */
+        final float[] color;
+        /**
+         * Life percent of each particle, computed by each update.
+         */
+        final float[] percent;
+        final float[] vertices;
+
+        ParticleArrays(int capacity) {
+            life = new int[capacity];
+            currentLife = new int[capacity];
+            scale = new float[capacity];
+            scaleDiff = new float[capacity];
+            currentScale = new float[capacity];
+            rotation = new float[capacity];
+            rotationDiff = new float[capacity];
+            currentRotation = new float[capacity];
+            velocity = new float[capacity];
+            velocityDiff = new float[capacity];
+            angle = new float[capacity];
+            angleDiff = new float[capacity];
+            angleCos = new float[capacity];
+            angleSin = new float[capacity];
+            transparency = new float[capacity];
+            transparencyDiff = new float[capacity];
+            wind = new float[capacity];
+            windDiff = new float[capacity];
+            gravity = new float[capacity];
+            gravityDiff = new float[capacity];
+            x = new float[capacity];
+            y = new float[capacity];
+            tint = new float[capacity * 3];
+            color = new float[capacity];
+            percent = new float[capacity];
+            vertices = new float[capacity * Sprite.SPRITE_SIZE];
+        }
+
+        void move(int from, int to) {
+            life[to] = life[from];
+            currentLife[to] = currentLife[from];
+            scale[to] = scale[from];
+            scaleDiff[to] = scaleDiff[from];
+            currentScale[to] = currentScale[from];
+            rotation[to] = rotation[from];
+            rotationDiff[to] = rotationDiff[from];
+            currentRotation[to] = currentRotation[from];
+            velocity[to] = velocity[from];
+            velocityDiff[to] = velocityDiff[from];
+            angle[to] = angle[from];
+            angleDiff[to] = angleDiff[from];
+            angleCos[to] = angleCos[from];
+            angleSin[to] = angleSin[from];
+            transparency[to] = transparency[from];
+            transparencyDiff[to] = transparencyDiff[from];
+            wind[to] = wind[from];
+            windDiff[to] = windDiff[from];
+            gravity[to] = gravity[from];
+            gravityDiff[to] = gravityDiff[from];
+            x[to] = x[from];
+            y[to] = y[from];
+            System.arraycopy(tint, from * 3, tint, to * 3, 3);
+            color[to] = color[from];
+        }
+    }
+
     /**
      * Particle Value.
      */
@@ -1101,7 +1714,11 @@ public class ParticleEmitter {
         private float lowMin, lowMax;
 
         public float newLowValue() {
-            return lowMin + (lowMax - lowMin) * MathUtils.random();
+            return newLowValue(MathUtils.random);
+        }
+
+        public float newLowValue(Random random) {
+            return lowMin + (lowMax - lowMin) * random.nextFloat();
         }
 
         public void setLow(float value) {
@@ -1161,7 +1778,11 @@ public class ParticleEmitter {
         private boolean relative;
 
         public float newHighValue() {
-            return highMin + (highMax - highMin) * MathUtils.random();
+            return newHighValue(MathUtils.random);
+        }
+
+        public float newHighValue(Random random) {
+            return highMin + (highMax - highMin) * random.nextFloat();
         }
 
         public void setHigh(float value) {
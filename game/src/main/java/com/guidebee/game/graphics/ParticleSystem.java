@@ -0,0 +1,358 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.graphics;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.engine.graphics.opengles.IGL20;
+import com.guidebee.game.engine.utils.async.AsyncExecutor;
+import com.guidebee.game.engine.utils.async.AsyncResult;
+import com.guidebee.game.engine.utils.async.AsyncTask;
+import com.guidebee.game.entity.utils.WorkerPool;
+import com.guidebee.game.graphics.ParticleEffectPool.PooledEffect;
+import com.guidebee.math.RandomXS128;
+import com.guidebee.utils.Disposable;
+import com.guidebee.utils.collections.Array;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Updates a set of {@link ParticleEffect}s on worker threads.
+ * <p/>
+ * {@link #update(float)} starts stepping all the registered effects and
+ * returns; the step runs while the caller draws. Each step writes the quads
+ * of every emitter into a back buffer, and the buffers are swapped when the
+ * step is waited for, so {@link #draw(Batch)} only reads finished quads and
+ * stays on the GL thread. What is drawn is therefore one step behind the
+ * simulation.
+ * <p/>
+ * Effects are stepped in parallel, one task per effect. Emitters using
+ * {@link ParticleEmitter#setArrayStorage(boolean) array storage} with more
+ * than {@link #SLICE_SIZE} particles are also split into slices after their
+ * emission is done.
+ * <p/>
+ * Each registered emitter gets its own random number generator, seeded from
+ * the system seed and the registration order, so the particles are the same
+ * whatever the number of threads.
+ * <p/>
+ * Registered effects must not be changed while a step runs; call
+ * {@link #sync()} first. {@link #add(ParticleEffect)},
+ * {@link #remove(ParticleEffect)} and {@link #removeCompleted()} do it.
+ */
+public class ParticleSystem implements Disposable {
+    /**
+     * Number of particles updated by one task of a sliced emitter.
+     */
+    static public final int SLICE_SIZE = 4096;
+
+    private final Array<ParticleEffect> effects = new Array<ParticleEffect>();
+    private final Array<EmitterState[]> effectEmitters = new Array<EmitterState[]>();
+    private final Array<EmitterState> emitters = new Array<EmitterState>();
+    private final Array<Slice> slices = new Array<Slice>();
+    private int sliceCount;
+    private final long seed;
+    private long streams;
+    private final WorkerPool workerPool;
+    private final AsyncExecutor executor;
+    private AsyncResult<Void> pendingStep;
+    private boolean stepped;
+    private float delta;
+
+    private final WorkerPool.Task effectTask = new WorkerPool.Task() {
+        @Override
+        public void run(int index) {
+            stepEmitters(effectEmitters.get(index));
+        }
+    };
+
+    private final WorkerPool.Task sliceTask = new WorkerPool.Task() {
+        @Override
+        public void run(int index) {
+            Slice slice = slices.get(index);
+            EmitterState state = slice.state;
+            state.emitter.updateArrayParticles(slice.start, slice.end, delta,
+                    state.deltaMillis);
+            state.emitter.computeArrayVertices(state.back.vertices, slice.start,
+                    slice.end);
+        }
+    };
+
+    private final AsyncTask<Void> stepTask = new AsyncTask<Void>() {
+        @Override
+        public Void call() throws Exception {
+            step();
+            return null;
+        }
+    };
+
+    /**
+     * Creates a system that steps the effects on the calling thread.
+     */
+    public ParticleSystem(long seed) {
+        this(0, seed);
+    }
+
+    /**
+     * @param threads number of worker threads, 0 to step the effects on the
+     *                thread calling {@link #update(float)}.
+     * @param seed    seed of the random number generators of the emitters.
+     */
+    public ParticleSystem(int threads, long seed) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("threads must be >= 0.");
+        }
+        this.seed = seed;
+        if (threads > 0) {
+            workerPool = new WorkerPool(threads, "ParticleSystem-Worker");
+            executor = new AsyncExecutor(1);
+        } else {
+            workerPool = null;
+            executor = null;
+        }
+    }
+
+    /**
+     * Registers an effect. Its emitters get their random number generators,
+     * so an effect should be registered before it is started. Emitters added
+     * to the effect later are not stepped.
+     */
+    public void add(ParticleEffect effect) {
+        sync();
+        Array<ParticleEmitter> effectEmitters = effect.getEmitters();
+        EmitterState[] states = new EmitterState[effectEmitters.size];
+        for (int i = 0; i < states.length; i++) {
+            ParticleEmitter emitter = effectEmitters.get(i);
+            emitter.setRandom(new RandomXS128(seed + streams++ * 0x9E3779B97F4A7C15L));
+            states[i] = new EmitterState(effect, emitter);
+            emitters.add(states[i]);
+        }
+        effects.add(effect);
+        this.effectEmitters.add(states);
+    }
+
+    /**
+     * Unregisters an effect.
+     *
+     * @return false if the effect wasn't registered.
+     */
+    public boolean remove(ParticleEffect effect) {
+        sync();
+        int index = effects.indexOf(effect, true);
+        if (index == -1) return false;
+        effects.removeIndex(index);
+        effectEmitters.removeIndex(index);
+        for (int i = emitters.size - 1; i >= 0; i--) {
+            if (emitters.get(i).effect == effect) emitters.removeIndex(i);
+        }
+        return true;
+    }
+
+    /**
+     * Unregisters the completed effects, and frees the ones obtained from a
+     * {@link ParticleEffectPool}.
+     */
+    public void removeCompleted() {
+        sync();
+        for (int i = effects.size - 1; i >= 0; i--) {
+            ParticleEffect effect = effects.get(i);
+            if (!effect.isComplete()) continue;
+            remove(effect);
+            if (effect instanceof PooledEffect) ((PooledEffect) effect).free();
+        }
+    }
+
+    public Array<ParticleEffect> getEffects() {
+        return effects;
+    }
+
+    /**
+     * Waits for the running step, if any, then starts stepping all the
+     * effects by delta seconds.
+     */
+    public void update(float delta) {
+        sync();
+        this.delta = delta;
+        if (executor != null) {
+            pendingStep = executor.submit(stepTask);
+        } else {
+            step();
+        }
+        stepped = true;
+    }
+
+    /**
+     * Waits for the running step, if any, and makes its quads the ones
+     * drawn by {@link #draw(Batch)}. The effects can be changed until the
+     * next {@link #update(float)}.
+     */
+    public void sync() {
+        if (pendingStep != null) {
+            AsyncResult<Void> result = pendingStep;
+            pendingStep = null;
+            result.get();
+        }
+        if (stepped) {
+            stepped = false;
+            for (int i = 0, n = emitters.size; i < n; i++)
+                emitters.get(i).swap();
+        }
+    }
+
+    /**
+     * Draws the quads of the last finished step. Doesn't wait for the
+     * running step.
+     */
+    public void draw(Batch batch) {
+        for (int i = 0, n = emitters.size; i < n; i++) {
+            Frame frame = emitters.get(i).front;
+            if (frame.count == 0) continue;
+            if (frame.premultipliedAlpha) {
+                batch.setBlendFunction(IGL20.GL_ONE, IGL20.GL_ONE_MINUS_SRC_ALPHA);
+            } else if (frame.additive) {
+                batch.setBlendFunction(IGL20.GL_SRC_ALPHA, IGL20.GL_ONE);
+            }
+            batch.draw(frame.texture, frame.vertices, 0, frame.count);
+            if (frame.additive || frame.premultipliedAlpha) {
+                batch.setBlendFunction(IGL20.GL_SRC_ALPHA, IGL20.GL_ONE_MINUS_SRC_ALPHA);
+            }
+        }
+    }
+
+    /**
+     * Waits for the running step and stops the worker threads.
+     */
+    @Override
+    public void dispose() {
+        sync();
+        if (workerPool != null) {
+            workerPool.dispose();
+            executor.dispose();
+        }
+    }
+
+    private void step() {
+        sliceCount = 0;
+        if (workerPool != null) {
+            workerPool.run(effects.size, effectTask);
+        } else {
+            for (int i = 0, n = effects.size; i < n; i++)
+                effectTask.run(i);
+        }
+
+        // Emitters are only sliced once all the emissions are done, so the
+        // slices are the same whatever the number of threads.
+        for (int i = 0, n = emitters.size; i < n; i++) {
+            EmitterState state = emitters.get(i);
+            if (!state.sliced) continue;
+            for (int start = 0, end = state.emitter.getActiveCount(); start < end;
+                 start += SLICE_SIZE) {
+                Slice slice;
+                if (sliceCount < slices.size) {
+                    slice = slices.get(sliceCount);
+                } else {
+                    slice = new Slice();
+                    slices.add(slice);
+                }
+                sliceCount++;
+                slice.state = state;
+                slice.start = start;
+                slice.end = Math.min(start + SLICE_SIZE, end);
+            }
+        }
+        if (workerPool != null) {
+            workerPool.run(sliceCount, sliceTask);
+        } else {
+            for (int i = 0; i < sliceCount; i++)
+                sliceTask.run(i);
+        }
+    }
+
+    private void stepEmitters(EmitterState[] states) {
+        for (int i = 0; i < states.length; i++) {
+            EmitterState state = states[i];
+            ParticleEmitter emitter = state.emitter;
+            Frame back = state.back;
+            back.texture = emitter.getSprite().getTexture();
+            back.additive = emitter.isAdditive();
+            back.premultipliedAlpha = emitter.isPremultipliedAlpha();
+            state.sliced = false;
+            if (emitter.isArrayStorage()) {
+                state.deltaMillis = emitter.beginUpdate(delta);
+                int activeCount = emitter.getActiveCount();
+                back.ensureCapacity(activeCount);
+                back.count = activeCount * Sprite.SPRITE_SIZE;
+                if (state.deltaMillis == 0) {
+                    emitter.computeArrayVertices(back.vertices, 0, activeCount);
+                } else if (activeCount > SLICE_SIZE) {
+                    state.sliced = true;
+                } else {
+                    emitter.updateArrayParticles(0, activeCount, delta, state.deltaMillis);
+                    emitter.computeArrayVertices(back.vertices, 0, activeCount);
+                }
+            } else {
+                emitter.update(delta);
+                back.ensureCapacity(emitter.getActiveCount());
+                back.count = emitter.copyParticleVertices(back.vertices);
+            }
+        }
+    }
+
+    /**
+     * Quads of one emitter.
+     */
+    static private class Frame {
+        float[] vertices = new float[0];
+        int count;
+        Texture texture;
+        boolean additive, premultipliedAlpha;
+
+        void ensureCapacity(int particles) {
+            int size = particles * Sprite.SPRITE_SIZE;
+            if (vertices.length < size) vertices = new float[Math.max(size, vertices.length * 2)];
+        }
+    }
+
+    /**
+     * Registered emitter with its front and back quads.
+     */
+    static private class EmitterState {
+        final ParticleEffect effect;
+        final ParticleEmitter emitter;
+        Frame front = new Frame(), back = new Frame();
+        int deltaMillis;
+        boolean sliced;
+
+        EmitterState(ParticleEffect effect, ParticleEmitter emitter) {
+            this.effect = effect;
+            this.emitter = emitter;
+        }
+
+        void swap() {
+            Frame temp = front;
+            front = back;
+            back = temp;
+        }
+    }
+
+    /**
+     * Range of particles of a sliced emitter.
+     */
+    static private class Slice {
+        EmitterState state;
+        int start, end;
+    }
+}
@@ -31,6 +31,8 @@ import java.util.Iterator;
 public class MapLayers implements Iterable<MapLayer> {
     private Array<MapLayer> layers = new Array<MapLayer>();
 
+    private int modificationCount;
+
     /**
      * @param index
      * @return the MapLayer at the specified index
@@ -60,11 +62,20 @@ public class MapLayers implements Iterable<MapLayer> {
         return layers.size;
     }
 
+    /**
+     * @return number of times layers were added or removed, can be used to
+     * invalidate data computed from the layers.
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
     /**
      * @param layer layer to be added to the set
      */
     public void add(MapLayer layer) {
         this.layers.add(layer);
+        modificationCount++;
     }
 
     /**
@@ -72,13 +83,16 @@ public class MapLayers implements Iterable<MapLayer> {
      */
     public void remove(int index) {
         layers.removeIndex(index);
+        modificationCount++;
     }
 
     /**
      * @param layer layer to be removed
      */
     public void remove(MapLayer layer) {
-        layers.removeValue(layer, true);
+        if (layers.removeValue(layer, true)) {
+            modificationCount++;
+        }
     }
 
     /**
@@ -137,7 +137,7 @@ public abstract class MapObject implements Collidable {
             float[] vertices = new float[]{boundingRect.x, boundingRect.y,
                     boundingRect.x + boundingRect.width, boundingRect.y,
                     boundingRect.x + boundingRect.width,
-                    boundingRect.y + boundingRect.height, boundingRect.y,
+                    boundingRect.y + boundingRect.height, boundingRect.x,
                     boundingRect.y + boundingRect.height};
             boundingPolygon.setVertices(vertices);
             return boundingPolygon;
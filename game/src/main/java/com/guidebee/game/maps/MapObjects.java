@@ -32,6 +32,8 @@ public class MapObjects implements Iterable<MapObject> {
 
     private Array<MapObject> objects;
 
+    private int modificationCount;
+
     /**
      * Creates and empty set of MapObject instances
      */
@@ -67,6 +69,7 @@ public class MapObjects implements Iterable<MapObject> {
      */
     public void add(MapObject object) {
         this.objects.add(object);
+        modificationCount++;
     }
 
     /**
@@ -74,13 +77,16 @@ public class MapObjects implements Iterable<MapObject> {
      */
     public void remove(int index) {
         objects.removeIndex(index);
+        modificationCount++;
     }
 
     /**
      * @param object instance to be removed
      */
     public void remove(MapObject object) {
-        objects.removeValue(object, true);
+        if (objects.removeValue(object, true)) {
+            modificationCount++;
+        }
     }
 
     /**
@@ -90,6 +96,14 @@ public class MapObjects implements Iterable<MapObject> {
         return objects.size;
     }
 
+    /**
+     * @return number of times objects were added or removed, can be used to
+     * invalidate data computed from the objects.
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
     /**
      * @param type class of the objects we want to retrieve
      * @return array filled with all the objects in the collection matching type
@@ -0,0 +1,455 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.maps.tiled;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.GameEngineRuntimeException;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Tile layer stored in chunks of {@link #getChunkSize()} x
+ * {@link #getChunkSize()} tiles, for large layers which are mostly empty or
+ * too large to keep in memory.
+ * <p>
+ * Each chunk keeps its tiles as packed int ids (see
+ * {@link #packId(int, boolean, boolean, int)}), deflated while the chunk is
+ * not loaded. Empty chunks take no memory. A chunk is inflated when one of
+ * its cells is read or set, and the least recently used chunks are
+ * deflated again when more than {@link #getLoadedChunkBudget()} chunks are
+ * loaded. {@link #loadView(float, float, float, float, int)} loads the chunks
+ * around the camera ahead of rendering.
+ * </p>
+ * <p>
+ * {@link #getCell(int, int)} creates the {@link Cell}s from the ids and
+ * returns the same Cell while its chunk stays loaded; changes made to it are
+ * kept when the chunk is unloaded. A chunk holding a cell which can't be
+ * packed, because its tile is null or doesn't belong to the tile sets, is
+ * never unloaded.
+ * </p>
+ * <p>
+ * <b>Unlike {@link TiledMapTileLayer}, a Cell is only tied to the layer while
+ * its chunk stays loaded.</b> Once the chunk is unloaded, getCell returns a
+ * new Cell, and changes made afterwards to a Cell read before are lost. Don't
+ * keep Cells across frames or across reads of other chunks: read the Cell
+ * again, or change it with {@link #setCell(int, int, Cell)}.
+ * </p>
+ */
+public class ChunkedTiledMapTileLayer extends TiledMapTileLayer {
+
+    /**
+     * mask of the tile id in a packed id.
+     */
+    public static final int ID_MASK = 0x0FFFFFFF;
+
+    /**
+     * horizontal flip bit of a packed id.
+     */
+    public static final int FLIP_HORIZONTALLY = 0x80000000;
+
+    /**
+     * vertical flip bit of a packed id.
+     */
+    public static final int FLIP_VERTICALLY = 0x40000000;
+
+    private static final int ROTATION_SHIFT = 28;
+
+    private final TiledMapTileSets tileSets;
+    private final int chunkSize;
+    private final int chunksX;
+    private final int chunksY;
+    private final Chunk[] chunks;
+    private int loadedChunkBudget;
+    private int loadedChunks;
+
+    /**
+     * least recently used loaded chunk, head of the loaded chunk list.
+     */
+    private Chunk oldest;
+
+    /**
+     * most recently used loaded chunk, tail of the loaded chunk list.
+     */
+    private Chunk newest;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+    private byte[] buffer;
+
+    /**
+     * a chunk, either loaded with its ids or holding its deflated ids.
+     */
+    private static class Chunk {
+        final int index;
+        byte[] deflated;
+        int[] ids;
+        Cell[] cells;
+        Chunk previous, next;
+
+        Chunk(int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * Creates an empty chunked layer.
+     *
+     * @param width             layer width in tiles
+     * @param height            layer height in tiles
+     * @param tileWidth         tile width in pixels
+     * @param tileHeight        tile height in pixels
+     * @param tileSets          tile sets resolving the tile ids
+     * @param chunkSize         chunk width and height, in tiles
+     * @param loadedChunkBudget number of chunks kept loaded
+     */
+    public ChunkedTiledMapTileLayer(int width, int height, int tileWidth, int tileHeight,
+                                    TiledMapTileSets tileSets, int chunkSize,
+                                    int loadedChunkBudget) {
+        super(width, height, tileWidth, tileHeight, false);
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be >= 1.");
+        }
+        this.tileSets = tileSets;
+        this.chunkSize = chunkSize;
+        this.chunksX = (width + chunkSize - 1) / chunkSize;
+        this.chunksY = (height + chunkSize - 1) / chunkSize;
+        this.chunks = new Chunk[chunksX * chunksY];
+        this.buffer = new byte[chunkSize * chunkSize * 4];
+        setLoadedChunkBudget(loadedChunkBudget);
+    }
+
+    /**
+     * Packs a tile id with its flip and rotation bits.
+     *
+     * @param tileId   tile id, at most {@link #ID_MASK}
+     * @param rotation one of the Cell ROTATE_ constants
+     */
+    public static int packId(int tileId, boolean flipHorizontally, boolean flipVertically,
+                             int rotation) {
+        int id = (tileId & ID_MASK) | (rotation & 3) << ROTATION_SHIFT;
+        if (flipHorizontally) id |= FLIP_HORIZONTALLY;
+        if (flipVertically) id |= FLIP_VERTICALLY;
+        return id;
+    }
+
+    /**
+     * @return the chunk width and height, in tiles
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return the tile sets resolving the tile ids
+     */
+    public TiledMapTileSets getTileSets() {
+        return tileSets;
+    }
+
+    /**
+     * @return number of chunks kept loaded
+     */
+    public int getLoadedChunkBudget() {
+        return loadedChunkBudget;
+    }
+
+    /**
+     * Sets the number of chunks kept loaded, which should cover the chunks
+     * drawn in one frame. Each loaded chunk takes about
+     * 8 * chunkSize * chunkSize bytes, plus the cells read from it.
+     */
+    public void setLoadedChunkBudget(int loadedChunkBudget) {
+        if (loadedChunkBudget < 1) {
+            throw new IllegalArgumentException("loadedChunkBudget must be >= 1.");
+        }
+        this.loadedChunkBudget = loadedChunkBudget;
+        unloadOverBudget();
+    }
+
+    /**
+     * @return number of chunks currently loaded
+     */
+    public int getLoadedChunkCount() {
+        return loadedChunks;
+    }
+
+    /**
+     * @return whether the chunk at the given chunk coordinates has no tile.
+     */
+    public boolean isChunkEmpty(int chunkX, int chunkY) {
+        if (chunkX < 0 || chunkX >= chunksX || chunkY < 0 || chunkY >= chunksY) return true;
+        return chunks[chunkY * chunksX + chunkX] == null;
+    }
+
+    /**
+     * Loads the chunks overlapping the given area, in pixels, plus margin
+     * chunks around it, so they are not unloaded before the chunks out of
+     * view.
+     */
+    public void loadView(float x, float y, float width, float height, int margin) {
+        float chunkWidth = chunkSize * getTileWidth();
+        float chunkHeight = chunkSize * getTileHeight();
+        int minX = Math.max(0, (int) Math.floor(x / chunkWidth) - margin);
+        int minY = Math.max(0, (int) Math.floor(y / chunkHeight) - margin);
+        int maxX = Math.min(chunksX - 1, (int) Math.floor((x + width) / chunkWidth) + margin);
+        int maxY = Math.min(chunksY - 1, (int) Math.floor((y + height) / chunkHeight) + margin);
+        for (int chunkY = minY; chunkY <= maxY; chunkY++) {
+            for (int chunkX = minX; chunkX <= maxX; chunkX++) {
+                Chunk chunk = chunks[chunkY * chunksX + chunkX];
+                if (chunk != null) load(chunk);
+            }
+        }
+    }
+
+    /**
+     * Packed id at (x, y), without creating a {@link Cell}.
+     *
+     * @return the packed id, or 0 if there is no tile or the cell can't be
+     * packed.
+     */
+    public int getPackedId(int x, int y) {
+        if (x < 0 || x >= getWidth()) return 0;
+        if (y < 0 || y >= getHeight()) return 0;
+        Chunk chunk = chunks[(y / chunkSize) * chunksX + x / chunkSize];
+        if (chunk == null) return 0;
+        load(chunk);
+        int local = (y % chunkSize) * chunkSize + x % chunkSize;
+        Cell cell = chunk.cells != null ? chunk.cells[local] : null;
+        if (cell != null) {
+            int id = pack(cell);
+            if (id != -1) return id;
+        }
+        return chunk.ids[local];
+    }
+
+    /**
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @return {@link Cell} at (x, y), only tied to the layer while its chunk
+     * stays loaded
+     */
+    @Override
+    public Cell getCell(int x, int y) {
+        if (x < 0 || x >= getWidth()) return null;
+        if (y < 0 || y >= getHeight()) return null;
+        Chunk chunk = chunks[(y / chunkSize) * chunksX + x / chunkSize];
+        if (chunk == null) return null;
+        load(chunk);
+        int local = (y % chunkSize) * chunkSize + x % chunkSize;
+        if (chunk.cells == null) chunk.cells = new Cell[chunkSize * chunkSize];
+        Cell cell = chunk.cells[local];
+        if (cell == null) {
+            int id = chunk.ids[local];
+            if (id == 0) return null;
+            TiledMapTile tile = tileSets.getTile(id & ID_MASK);
+            if (tile == null) return null;
+            cell = new Cell();
+            cell.setTile(tile);
+            cell.setFlipHorizontally((id & FLIP_HORIZONTALLY) != 0);
+            cell.setFlipVertically((id & FLIP_VERTICALLY) != 0);
+            cell.setRotation((id >>> ROTATION_SHIFT) & 3);
+            chunk.cells[local] = cell;
+        }
+        return cell;
+    }
+
+    @Override
+    public void setCell(int x, int y, Cell cell) {
+        if (x < 0 || x >= getWidth()) return;
+        if (y < 0 || y >= getHeight()) return;
+        int index = (y / chunkSize) * chunksX + x / chunkSize;
+        Chunk chunk = chunks[index];
+        if (chunk == null) {
+            if (cell == null) {
+                cellSet(x, y, null);
+                return;
+            }
+            chunk = new Chunk(index);
+            chunk.ids = new int[chunkSize * chunkSize];
+            chunks[index] = chunk;
+            link(chunk);
+            unloadOverBudget();
+        } else {
+            load(chunk);
+        }
+        int local = (y % chunkSize) * chunkSize + x % chunkSize;
+        if (chunk.cells == null) chunk.cells = new Cell[chunkSize * chunkSize];
+        chunk.cells[local] = cell;
+        int id = cell != null ? pack(cell) : 0;
+        chunk.ids[local] = id != -1 ? id : 0;
+        cellSet(x, y, cell);
+    }
+
+    /**
+     * Sets the packed ids of a chunk which isn't loaded, as read by a map
+     * loader. Doesn't change the modification count.
+     *
+     * @param ids chunkSize * chunkSize packed ids, row by row from the
+     *            bottom.
+     */
+    void setChunkIds(int chunkX, int chunkY, int[] ids) {
+        int index = chunkY * chunksX + chunkX;
+        Chunk chunk = chunks[index];
+        if (chunk != null && chunk.ids != null) unlink(chunk);
+        byte[] deflated = deflate(ids);
+        if (deflated == null) {
+            chunks[index] = null;
+            return;
+        }
+        chunk = new Chunk(index);
+        chunk.deflated = deflated;
+        chunks[index] = chunk;
+    }
+
+    /**
+     * @return the packed id of the cell, or -1 if it can't be packed.
+     */
+    private int pack(Cell cell) {
+        TiledMapTile tile = cell.getTile();
+        if (tile == null) return -1;
+        int id = tile.getId();
+        if ((id & ~ID_MASK) != 0 || tileSets.getTile(id) != tile) return -1;
+        return packId(id, cell.getFlipHorizontally(), cell.getFlipVertically(),
+                cell.getRotation());
+    }
+
+    private void load(Chunk chunk) {
+        if (chunk.ids != null) {
+            if (chunk != newest) {
+                unlink(chunk);
+                link(chunk);
+            }
+            return;
+        }
+        chunk.ids = inflate(chunk.deflated);
+        chunk.deflated = null;
+        link(chunk);
+        unloadOverBudget();
+    }
+
+    private void unloadOverBudget() {
+        Chunk chunk = oldest;
+        // chunks holding cells which can't be packed are skipped.
+        while (loadedChunks > loadedChunkBudget && chunk != null && chunk != newest) {
+            Chunk next = chunk.next;
+            unload(chunk);
+            chunk = next;
+        }
+    }
+
+    private void unload(Chunk chunk) {
+        int[] ids = chunk.ids;
+        Cell[] cells = chunk.cells;
+        if (cells != null) {
+            for (int i = 0; i < cells.length; i++) {
+                if (cells[i] == null) continue;
+                int id = pack(cells[i]);
+                if (id == -1) return;
+                ids[i] = id;
+            }
+        }
+        unlink(chunk);
+        chunk.deflated = deflate(ids);
+        chunk.ids = null;
+        chunk.cells = null;
+        if (chunk.deflated == null) chunks[chunk.index] = null;
+    }
+
+    private void link(Chunk chunk) {
+        chunk.previous = newest;
+        chunk.next = null;
+        if (newest != null) newest.next = chunk;
+        else oldest = chunk;
+        newest = chunk;
+        loadedChunks++;
+    }
+
+    private void unlink(Chunk chunk) {
+        if (chunk.previous != null) chunk.previous.next = chunk.next;
+        else oldest = chunk.next;
+        if (chunk.next != null) chunk.next.previous = chunk.previous;
+        else newest = chunk.previous;
+        chunk.previous = null;
+        chunk.next = null;
+        loadedChunks--;
+    }
+
+    /**
+     * @return the deflated ids, or null if they are all 0.
+     */
+    private byte[] deflate(int[] ids) {
+        byte[] bytes = buffer;
+        boolean empty = true;
+        for (int i = 0, j = 0; i < ids.length; i++, j += 4) {
+            int id = ids[i];
+            if (id != 0) empty = false;
+            bytes[j] = (byte) id;
+            bytes[j + 1] = (byte) (id >> 8);
+            bytes[j + 2] = (byte) (id >> 16);
+            bytes[j + 3] = (byte) (id >> 24);
+        }
+        if (empty) return null;
+        deflater.reset();
+        deflater.setInput(bytes, 0, ids.length * 4);
+        deflater.finish();
+        byte[] output = new byte[64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == output.length) {
+                byte[] newOutput = new byte[output.length << 1];
+                System.arraycopy(output, 0, newOutput, 0, length);
+                output = newOutput;
+            }
+            length += deflater.deflate(output, length, output.length - length);
+        }
+        byte[] deflated = new byte[length];
+        System.arraycopy(output, 0, deflated, 0, length);
+        return deflated;
+    }
+
+    private int[] inflate(byte[] deflated) {
+        int[] ids = new int[chunkSize * chunkSize];
+        byte[] bytes = buffer;
+        inflater.reset();
+        inflater.setInput(deflated);
+        try {
+            int length = 0;
+            while (length < ids.length * 4 && !inflater.finished()) {
+                int read = inflater.inflate(bytes, length, ids.length * 4 - length);
+                if (read == 0 && inflater.needsInput()) break;
+                length += read;
+            }
+            if (length != ids.length * 4) {
+                throw new GameEngineRuntimeException("Corrupted tile layer chunk");
+            }
+        } catch (DataFormatException e) {
+            throw new GameEngineRuntimeException("Corrupted tile layer chunk", e);
+        }
+        for (int i = 0, j = 0; i < ids.length; i++, j += 4) {
+            ids[i] = (bytes[j] & 0xFF)
+                    | (bytes[j + 1] & 0xFF) << 8
+                    | (bytes[j + 2] & 0xFF) << 16
+                    | (bytes[j + 3] & 0xFF) << 24;
+        }
+        return ids;
+    }
+}
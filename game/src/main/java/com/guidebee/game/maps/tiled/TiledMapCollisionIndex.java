@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.maps.tiled;
+
+//--------------------------------- IMPORTS ------------------------------------
+import com.guidebee.game.Collidable;
+import com.guidebee.game.maps.MapLayer;
+import com.guidebee.game.maps.MapLayers;
+import com.guidebee.game.maps.MapObject;
+import com.guidebee.game.maps.MapObjects;
+import com.guidebee.game.scene.collision.UniformGridBroadPhase;
+import com.guidebee.math.geometry.Rectangle;
+import com.guidebee.utils.collections.Array;
+import com.guidebee.utils.collections.ObjectSet;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Spatial index of the collidable tiles and map objects of a tiled map. the
+ * cells of each tile layer are bucketed into chunks of
+ * {@link #CHUNK_SIZE} x {@link #CHUNK_SIZE} tiles, so a query only visits the
+ * cells under the query area. the index of a layer is built on first use and
+ * only rebuilt after {@link TiledMapTileLayer#setCell(int, int,
+ * TiledMapTileLayer.Cell)} was called on it, or after layers or map objects
+ * were added or removed. the collision enabled flag of tiles and map objects
+ * is checked at query time, so changing it doesn't need a rebuild.
+ */
+public class TiledMapCollisionIndex {
+
+    /**
+     * chunk size, in tiles.
+     */
+    public static final int CHUNK_SIZE = 16;
+
+    /**
+     * a chunk of a tile layer, stores the cells which have a tile.
+     */
+    private static class Chunk {
+        int count;
+        short[] cells = new short[16];
+        TiledMapTile[] tiles = new TiledMapTile[16];
+        final Array<TiledMapTile> distinctTiles = new Array<TiledMapTile>(false, 4);
+
+        void add(int localX, int localY, TiledMapTile tile) {
+            if (count == cells.length) {
+                short[] newCells = new short[count << 1];
+                System.arraycopy(cells, 0, newCells, 0, count);
+                cells = newCells;
+                TiledMapTile[] newTiles = new TiledMapTile[count << 1];
+                System.arraycopy(tiles, 0, newTiles, 0, count);
+                tiles = newTiles;
+            }
+            cells[count] = (short) (localY * CHUNK_SIZE + localX);
+            tiles[count] = tile;
+            count++;
+            if (!distinctTiles.contains(tile, true)) {
+                distinctTiles.add(tile);
+            }
+        }
+    }
+
+    /**
+     * index of one map layer.
+     */
+    private static class LayerIndex {
+        MapLayer layer;
+        int modificationCount;
+        int chunksX;
+        int chunksY;
+        Chunk[] chunks;
+        final Array<MapObject> mapObjects = new Array<MapObject>(false, 16);
+        final Array<TiledMapTile> distinctTiles = new Array<TiledMapTile>(false, 16);
+
+        void build() {
+            mapObjects.clear();
+            distinctTiles.clear();
+            chunks = null;
+            if (layer instanceof TiledMapTileLayer) {
+                TiledMapTileLayer tileLayer = (TiledMapTileLayer) layer;
+                modificationCount = tileLayer.getModificationCount();
+                int width = tileLayer.getWidth();
+                int height = tileLayer.getHeight();
+                chunksX = (width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+                chunksY = (height + CHUNK_SIZE - 1) / CHUNK_SIZE;
+                chunks = new Chunk[chunksX * chunksY];
+                ObjectSet<TiledMapTile> tileSet = new ObjectSet<TiledMapTile>();
+                for (int x = 0; x < width; x++) {
+                    for (int y = 0; y < height; y++) {
+                        TiledMapTileLayer.Cell cell = tileLayer.getCell(x, y);
+                        if (cell == null) continue;
+                        TiledMapTile tile = cell.getTile();
+                        if (tile == null) continue;
+                        int index = (y / CHUNK_SIZE) * chunksX + x / CHUNK_SIZE;
+                        Chunk chunk = chunks[index];
+                        if (chunk == null) {
+                            chunk = new Chunk();
+                            chunks[index] = chunk;
+                        }
+                        chunk.add(x % CHUNK_SIZE, y % CHUNK_SIZE, tile);
+                        if (tileSet.add(tile)) {
+                            distinctTiles.add(tile);
+                        }
+                    }
+                }
+            } else {
+                MapObjects objects = layer.getObjects();
+                modificationCount = objects.getModificationCount();
+                for (MapObject mapObject : objects) {
+                    mapObjects.add(mapObject);
+                }
+            }
+        }
+
+        boolean isValid() {
+            if (layer instanceof TiledMapTileLayer) {
+                return ((TiledMapTileLayer) layer).getModificationCount() == modificationCount;
+            }
+            return layer.getObjects().getModificationCount() == modificationCount;
+        }
+    }
+
+    private final TiledMap tiledMap;
+    private final Array<LayerIndex> layerIndices = new Array<LayerIndex>();
+    private int layersModificationCount = -1;
+    private final ObjectSet<Collidable> visited = new ObjectSet<Collidable>();
+    private final Rectangle queryArea = new Rectangle();
+    private final Rectangle objectBounds = new Rectangle();
+
+    /**
+     * Constructor.
+     * @param tiledMap the tiled map to index.
+     */
+    public TiledMapCollisionIndex(TiledMap tiledMap) {
+        this.tiledMap = tiledMap;
+    }
+
+    /**
+     * rebuild the index of the layers which have changed since last call.
+     */
+    public void validate() {
+        MapLayers mapLayers = tiledMap.getLayers();
+        if (mapLayers.getModificationCount() != layersModificationCount) {
+            layersModificationCount = mapLayers.getModificationCount();
+            layerIndices.clear();
+            for (MapLayer mapLayer : mapLayers) {
+                LayerIndex layerIndex = new LayerIndex();
+                layerIndex.layer = mapLayer;
+                layerIndex.build();
+                layerIndices.add(layerIndex);
+            }
+        } else {
+            for (int i = 0, n = layerIndices.size; i < n; i++) {
+                LayerIndex layerIndex = layerIndices.get(i);
+                if (!layerIndex.isValid()) {
+                    layerIndex.build();
+                }
+            }
+        }
+    }
+
+    /**
+     * get all enabled collidable objects, each tile is returned only once even
+     * if it's used by many cells.
+     * @param out the array to add the collidable objects to.
+     * @return the out array.
+     */
+    public Array<Collidable> getAllCollidables(Array<Collidable> out) {
+        validate();
+        visited.clear();
+        for (int i = 0, n = layerIndices.size; i < n; i++) {
+            LayerIndex layerIndex = layerIndices.get(i);
+            Array<TiledMapTile> tiles = layerIndex.distinctTiles;
+            for (int j = 0, m = tiles.size; j < m; j++) {
+                TiledMapTile tile = tiles.get(j);
+                if (tile.isEnabled() && visited.add(tile)) {
+                    out.add(tile);
+                }
+            }
+            addMapObjects(layerIndex, null, 0, out);
+        }
+        return out;
+    }
+
+    /**
+     * get enabled collidable objects under the bounds of the given objects,
+     * each object is returned only once. the bounds are the ones the broad
+     * phase uses for the collision type, see
+     * {@link UniformGridBroadPhase#computeBounds(Collidable, int, Rectangle)}.
+     * @param objects objects to query around.
+     * @param collisionType collision type, decide which bounds are used.
+     * @param out the array to add the collidable objects to.
+     * @return the out array.
+     */
+    public Array<Collidable> getCollidables(Array<? extends Collidable> objects,
+                                            int collisionType,
+                                            Array<Collidable> out) {
+        validate();
+        visited.clear();
+        Rectangle area = queryArea;
+        for (int i = 0, n = objects.size; i < n; i++) {
+            if (UniformGridBroadPhase.computeBounds(objects.get(i), collisionType, area)) {
+                query(area, collisionType, out);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * get enabled collidable objects under given area, each object is
+     * returned only once.
+     * @param area the query area.
+     * @param out the array to add the collidable objects to.
+     * @return the out array.
+     */
+    public Array<Collidable> getCollidables(Rectangle area, Array<Collidable> out) {
+        validate();
+        visited.clear();
+        query(area, Collidable.BOUNDING_RECT, out);
+        return out;
+    }
+
+    private void query(Rectangle area, int collisionType, Array<Collidable> out) {
+        for (int i = 0, n = layerIndices.size; i < n; i++) {
+            LayerIndex layerIndex = layerIndices.get(i);
+            if (layerIndex.chunks == null) {
+                addMapObjects(layerIndex, area, collisionType, out);
+                continue;
+            }
+            TiledMapTileLayer tileLayer = (TiledMapTileLayer) layerIndex.layer;
+            float tileWidth = tileLayer.getTileWidth();
+            float tileHeight = tileLayer.getTileHeight();
+            int minX = Math.max(0, (int) Math.floor(area.x / tileWidth));
+            int minY = Math.max(0, (int) Math.floor(area.y / tileHeight));
+            int maxX = Math.min(tileLayer.getWidth() - 1,
+                    (int) Math.floor((area.x + area.width) / tileWidth));
+            int maxY = Math.min(tileLayer.getHeight() - 1,
+                    (int) Math.floor((area.y + area.height) / tileHeight));
+            if (minX > maxX || minY > maxY) continue;
+
+            for (int chunkY = minY / CHUNK_SIZE; chunkY <= maxY / CHUNK_SIZE; chunkY++) {
+                for (int chunkX = minX / CHUNK_SIZE; chunkX <= maxX / CHUNK_SIZE; chunkX++) {
+                    Chunk chunk = layerIndex.chunks[chunkY * layerIndex.chunksX + chunkX];
+                    if (chunk == null) continue;
+                    int originX = chunkX * CHUNK_SIZE;
+                    int originY = chunkY * CHUNK_SIZE;
+                    if (minX <= originX && originX + CHUNK_SIZE - 1 <= maxX
+                            && minY <= originY && originY + CHUNK_SIZE - 1 <= maxY) {
+                        Array<TiledMapTile> tiles = chunk.distinctTiles;
+                        for (int j = 0, m = tiles.size; j < m; j++) {
+                            TiledMapTile tile = tiles.get(j);
+                            if (tile.isEnabled() && visited.add(tile)) {
+                                out.add(tile);
+                            }
+                        }
+                        continue;
+                    }
+                    for (int j = 0; j < chunk.count; j++) {
+                        int x = originX + chunk.cells[j] % CHUNK_SIZE;
+                        int y = originY + chunk.cells[j] / CHUNK_SIZE;
+                        if (x < minX || x > maxX || y < minY || y > maxY) continue;
+                        TiledMapTile tile = chunk.tiles[j];
+                        if (tile.isEnabled() && visited.add(tile)) {
+                            out.add(tile);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void addMapObjects(LayerIndex layerIndex, Rectangle area,
+                               int collisionType, Array<Collidable> out) {
+        Array<MapObject> mapObjects = layerIndex.mapObjects;
+        Rectangle bounds = objectBounds;
+        for (int j = 0, m = mapObjects.size; j < m; j++) {
+            MapObject mapObject = mapObjects.get(j);
+            if (!mapObject.isEnabled()) continue;
+            if (area != null) {
+                if (!UniformGridBroadPhase.computeBounds(mapObject, collisionType, bounds)
+                        || bounds.x > area.x + area.width
+                        || bounds.x + bounds.width < area.x
+                        || bounds.y > area.y + area.height
+                        || bounds.y + bounds.height < area.y) {
+                    continue;
+                }
+            }
+            if (visited.add(mapObject)) {
+                out.add(mapObject);
+            }
+        }
+    }
+}
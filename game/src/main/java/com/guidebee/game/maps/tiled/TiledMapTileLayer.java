@@ -36,6 +36,8 @@ public class TiledMapTileLayer extends MapLayer {
 
     private Cell[][] cells;
 
+    private int modificationCount;
+
     /**
      * @return layer's width in tiles
      */
@@ -64,6 +66,14 @@ public class TiledMapTileLayer extends MapLayer {
         return tileHeight;
     }
 
+    /**
+     * @return number of times cells were set, can be used to invalidate data
+     * computed from the cells.
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
     /**
      * Creates TiledMap layer
      *
@@ -73,12 +83,29 @@ public class TiledMapTileLayer extends MapLayer {
      * @param tileHeight tile height in pixels
      */
     public TiledMapTileLayer(int width, int height, int tileWidth, int tileHeight) {
+        this(width, height, tileWidth, tileHeight, true);
+    }
+
+    /**
+     * Creates TiledMap layer, for subclasses which store the cells
+     * themselves.
+     *
+     * @param width      layer width in tiles
+     * @param height     layer height in tiles
+     * @param tileWidth  tile width in pixels
+     * @param tileHeight tile height in pixels
+     * @param allocateCells whether to allocate the cell array used by
+     *                      {@link #getCell(int, int)} and
+     *                      {@link #setCell(int, int, Cell)}
+     */
+    protected TiledMapTileLayer(int width, int height, int tileWidth, int tileHeight,
+                                boolean allocateCells) {
         super();
         this.width = width;
         this.height = height;
         this.tileWidth = tileWidth;
         this.tileHeight = tileHeight;
-        this.cells = new Cell[width][height];
+        if (allocateCells) this.cells = new Cell[width][height];
     }
 
     /**
@@ -103,10 +130,21 @@ public class TiledMapTileLayer extends MapLayer {
         if (x < 0 || x >= width) return;
         if (y < 0 || y >= height) return;
         cells[x][y] = cell;
-        TiledMapTile tiledMapTile = cell.getTile();
-        tiledMapTile.setBoundingRect(new Rectangle(x * getTileWidth(), y * getTileHeight(),
-                x * getTileWidth() + getTileWidth(),
-                y * getTileHeight() + getTileHeight()));
+        cellSet(x, y, cell);
+    }
+
+    /**
+     * Updates the modification count and the tile bounding rectangle after a
+     * cell was set, to be called by subclasses overriding
+     * {@link #setCell(int, int, Cell)}.
+     */
+    protected void cellSet(int x, int y, Cell cell) {
+        modificationCount++;
+        TiledMapTile tiledMapTile = cell != null ? cell.getTile() : null;
+        if (tiledMapTile != null) {
+            tiledMapTile.setBoundingRect(new Rectangle(x * getTileWidth(), y * getTileHeight(),
+                    getTileWidth(), getTileHeight()));
+        }
     }
 
     /**
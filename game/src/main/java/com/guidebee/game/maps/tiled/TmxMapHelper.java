@@ -26,6 +26,7 @@ import com.guidebee.utils.XmlReader.Element;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.InflaterInputStream;
 
@@ -45,17 +46,49 @@ public final class TmxMapHelper {
 
     }
 
-    static public int[] getTileIds(Element element, int width, int height) {
+    /**
+     * Receives the tile ids of a TMX layer one row at a time.
+     */
+    public interface TileRowListener {
+        /**
+         * @param y   row index, 0 being the top row of the TMX data
+         * @param ids the tile ids of the row, only valid during the call
+         */
+        public void row(int y, int[] ids);
+    }
+
+    static public int[] getTileIds(Element element, final int width, int height) {
+        final int[] ids = new int[width * height];
+        readTileIds(element, width, height, new TileRowListener() {
+            @Override
+            public void row(int y, int[] row) {
+                System.arraycopy(row, 0, ids, y * width, width);
+            }
+        });
+        return ids;
+    }
+
+    /**
+     * Reads the tile ids of a TMX layer row by row, without holding all of
+     * them in memory.
+     */
+    static public void readTileIds(Element element, int width, int height,
+                                   TileRowListener listener) {
         Element data = element.getChildByName("data");
         String encoding = data.getAttribute("encoding", null);
         if (encoding == null) { // no 'encoding' attribute means that the encoding is XML
             throw new GameEngineRuntimeException("Unsupported encoding (XML) for TMX Layer Data");
         }
-        int[] ids = new int[width * height];
+        int[] row = new int[width];
         if (encoding.equals("csv")) {
             String[] array = data.getText().split(",");
-            for (int i = 0; i < array.length; i++)
-                ids[i] = (int) Long.parseLong(array[i].trim());
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int i = y * width + x;
+                    row[x] = i < array.length ? (int) Long.parseLong(array[i].trim()) : 0;
+                }
+                listener.row(y, row);
+            }
         } else {
             if (true)
                 if (encoding.equals("base64")) {
@@ -73,23 +106,24 @@ public final class TmxMapHelper {
                             throw new GameEngineRuntimeException("Unrecognised compression ("
                                     + compression + ") for TMX Layer Data");
 
-                        byte[] temp = new byte[4];
+                        byte[] temp = new byte[width * 4];
                         for (int y = 0; y < height; y++) {
-                            for (int x = 0; x < width; x++) {
-                                int read = is.read(temp);
-                                while (read < temp.length) {
-                                    int curr = is.read(temp, read, temp.length - read);
-                                    if (curr == -1) break;
-                                    read += curr;
-                                }
-                                if (read != temp.length)
-                                    throw new GameEngineRuntimeException(
-                                            "Error Reading TMX Layer Data: Premature end of tile data");
-                                ids[y * width + x] = unsignedByteToInt(temp[0])
-                                        | unsignedByteToInt(temp[1]) << 8
-                                        | unsignedByteToInt(temp[2]) << 16
-                                        | unsignedByteToInt(temp[3]) << 24;
+                            int read = 0;
+                            while (read < temp.length) {
+                                int curr = is.read(temp, read, temp.length - read);
+                                if (curr == -1) break;
+                                read += curr;
                             }
+                            if (read != temp.length)
+                                throw new GameEngineRuntimeException(
+                                        "Error Reading TMX Layer Data: Premature end of tile data");
+                            for (int x = 0, i = 0; x < width; x++, i += 4) {
+                                row[x] = unsignedByteToInt(temp[i])
+                                        | unsignedByteToInt(temp[i + 1]) << 8
+                                        | unsignedByteToInt(temp[i + 2]) << 16
+                                        | unsignedByteToInt(temp[i + 3]) << 24;
+                            }
+                            listener.row(y, row);
                         }
                     } catch (IOException e) {
                         throw new GameEngineRuntimeException(
@@ -106,7 +140,63 @@ public final class TmxMapHelper {
                             + encoding + ") for TMX Layer Data");
                 }
         }
-        return ids;
+    }
+
+    /**
+     * Reads the tile ids of a TMX layer into a {@link ChunkedTiledMapTileLayer}
+     * of the same size, one row of chunks at a time.
+     */
+    static public void readTileIds(Element element, final ChunkedTiledMapTileLayer layer) {
+        final int width = layer.getWidth();
+        final int height = layer.getHeight();
+        final int chunkSize = layer.getChunkSize();
+        final int[][] band = new int[(width + chunkSize - 1) / chunkSize][chunkSize * chunkSize];
+        readTileIds(element, width, height, new TileRowListener() {
+            @Override
+            public void row(int y, int[] ids) {
+                // TMX rows go down, layer rows go up.
+                int layerY = height - 1 - y;
+                int offset = (layerY % chunkSize) * chunkSize;
+                for (int x = 0; x < width; x++)
+                    band[x / chunkSize][offset + x % chunkSize] = toPackedId(ids[x]);
+                if (layerY % chunkSize == 0) {
+                    for (int chunkX = 0; chunkX < band.length; chunkX++) {
+                        layer.setChunkIds(chunkX, layerY / chunkSize, band[chunkX]);
+                        Arrays.fill(band[chunkX], 0);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Converts a TMX tile id with its flip flags to a
+     * {@link ChunkedTiledMapTileLayer} packed id, flipping and rotating like
+     * the cells created by the map loaders.
+     */
+    static public int toPackedId(int id) {
+        int tileId = id & ~MASK_CLEAR;
+        if (tileId == 0) return 0;
+        boolean flipHorizontally = ((id & FLAG_FLIP_HORIZONTALLY) != 0);
+        boolean flipVertically = ((id & FLAG_FLIP_VERTICALLY) != 0);
+        boolean flipDiagonally = ((id & FLAG_FLIP_DIAGONALLY) != 0);
+        if (flipDiagonally) {
+            if (flipHorizontally && flipVertically) {
+                return ChunkedTiledMapTileLayer.packId(tileId, true, false,
+                        TiledMapTileLayer.Cell.ROTATE_270);
+            } else if (flipHorizontally) {
+                return ChunkedTiledMapTileLayer.packId(tileId, false, false,
+                        TiledMapTileLayer.Cell.ROTATE_270);
+            } else if (flipVertically) {
+                return ChunkedTiledMapTileLayer.packId(tileId, false, false,
+                        TiledMapTileLayer.Cell.ROTATE_90);
+            } else {
+                return ChunkedTiledMapTileLayer.packId(tileId, false, true,
+                        TiledMapTileLayer.Cell.ROTATE_270);
+            }
+        }
+        return ChunkedTiledMapTileLayer.packId(tileId, flipHorizontally, flipVertically,
+                TiledMapTileLayer.Cell.ROTATE_0);
     }
 
     static public int unsignedByteToInt(byte b) {
@@ -232,7 +232,7 @@ public class AnimatedTiledMapTile implements TiledMapTile {
             float[] vertices = new float[]{boundingRect.x, boundingRect.y,
                     boundingRect.x + boundingRect.width, boundingRect.y,
                     boundingRect.x + boundingRect.width,
-                    boundingRect.y + boundingRect.height, boundingRect.y,
+                    boundingRect.y + boundingRect.height, boundingRect.x,
                     boundingRect.y + boundingRect.height};
             boundingPolygon.setVertices(vertices);
             return boundingPolygon;
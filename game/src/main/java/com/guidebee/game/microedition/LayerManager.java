@@ -23,6 +23,7 @@ import com.guidebee.game.camera.viewports.Viewport;
 import com.guidebee.game.graphics.Batch;
 import com.guidebee.game.scene.Stage;
 import com.guidebee.math.Vector3;
+import com.guidebee.math.geometry.Rectangle;
 
 //[------------------------------ MAIN CLASS ----------------------------------]
 
@@ -129,6 +130,40 @@ public class LayerManager extends Stage {
 
 
 
+    private final Rectangle viewWindow = new Rectangle();
+
+    /**
+     * Gets the view window, the region of the LayerManager's coordinate
+     * system seen by the camera when the layers were last drawn.
+     * {@link TiledLayer}s only draw the cells inside it.
+     *
+     * @return the view window, empty before the first draw.
+     */
+    public Rectangle getViewWindow() {
+        return viewWindow;
+    }
+
+    /**
+     * Updates the view window from the camera and draws the layers.
+     */
+    @Override
+    public void draw() {
+        Camera camera = getCamera();
+        camera.update();
+        Vector3[] planePoints = camera.frustum.planePoints;
+        float minX = planePoints[0].x, maxX = minX;
+        float minY = planePoints[0].y, maxY = minY;
+        for (int i = 1; i < planePoints.length; i++) {
+            Vector3 point = planePoints[i];
+            minX = Math.min(minX, point.x);
+            maxX = Math.max(maxX, point.x);
+            minY = Math.min(minY, point.y);
+            maxY = Math.max(maxY, point.y);
+        }
+        viewWindow.set(minX, minY, maxX - minX, maxY - minY);
+        super.draw();
+    }
+
     private final Vector3 oldCameraPos=new Vector3();
     /**
      * Renders the LayerManager's current view window at the specified location.
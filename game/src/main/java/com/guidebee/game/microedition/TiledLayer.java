@@ -20,6 +20,8 @@ package com.guidebee.game.microedition;
 
 import com.guidebee.game.graphics.Batch;
 import com.guidebee.game.graphics.TextureRegion;
+import com.guidebee.game.scene.Stage;
+import com.guidebee.math.Vector2;
 import com.guidebee.math.geometry.Rectangle;
 
 //[------------------------------ MAIN CLASS ----------------------------------]
@@ -222,8 +224,8 @@ public class TiledLayer extends Layer {
             // the tiledLayer is filled with tiles with index 0
 
             this.numStaticTiles = newNumStaticTiles;
-            this.animatedTiles = new int[5];
             this.numAnimatedTiles = 0;
+            this.animatedTiles = new int[5];
             this.fillCells(0, 0, getColumns(), getRows(), 0);
         }
     }
@@ -297,79 +299,132 @@ public class TiledLayer extends Layer {
     }
 
 
-    Rectangle srcRect = new Rectangle(0, 0, 0, 0);
-    Rectangle dstRect = new Rectangle(0, 0, 0, 0);
-
     @Override
     public void draw(Batch batch, float alpha) {
         paint(batch);
     }
 
     /**
-     * Draws the TiledLayer. The entire TiledLayer is rendered subject to the
-     * clip region of the Graphics object. The TiledLayer's upper left corner
+     * Draws the TiledLayer. When the TiledLayer is in a {@link LayerManager},
+     * only the cells inside the LayerManager's
+     * {@link LayerManager#getViewWindow() view window} are drawn, otherwise
+     * the entire TiledLayer is drawn. The TiledLayer's upper left corner
      * is rendered at the TiledLayer's current position relative to the origin
      * of the Graphics object. The current position of the TiledLayer's
      * upper-left corner can be retrieved by calling Layer.getX()
-     * and Layer.getY(). The appropriate use of a clip region and/or
-     * translation allows an arbitrary region of the TiledLayer to be rendered.
+     * and Layer.getY().
+     * <p/>
+     * Painting doesn't lock the TiledLayer. Cells and animated tiles changed
+     * by another thread while painting show in this frame or the next one.
      *
      * @param g the graphics object to draw the TiledLayer
      */
     public final void paint(Batch g) {
-        synchronized (this) {
-            if (!this.isVisible())
+        if (!this.isVisible())
+            return;
+
+        Stage stage = getStage();
+        if (stage instanceof LayerManager) {
+            Rectangle viewWindow = ((LayerManager) stage).getViewWindow();
+            if (viewWindow.width > 0 && viewWindow.height > 0) {
+                Vector2 corner = tempCorner;
+                corner.set(viewWindow.x, viewWindow.y);
+                stageToLocalCoordinates(corner);
+                float x1 = corner.x, y1 = corner.y;
+                corner.set(viewWindow.x + viewWindow.width, viewWindow.y + viewWindow.height);
+                stageToLocalCoordinates(corner);
+                paintArea(g, Math.min(x1, corner.x), Math.min(y1, corner.y),
+                        Math.max(x1, corner.x), Math.max(y1, corner.y));
                 return;
+            }
+        }
+        paintCells(g, 0, 0, getColumns(), getRows(), getCellWidth(), getCellHeight());
+    }
+
+    /**
+     * Draws the cells of the TiledLayer inside the clip rectangle. The clip
+     * rectangle is in the painter's coordinate system, the one of Layer.getX()
+     * and Layer.getY().
+     *
+     * @param g    the graphics object to draw the TiledLayer
+     * @param clip the region to draw
+     */
+    public final void paint(Batch g, Rectangle clip) {
+        if (!this.isVisible())
+            return;
+
+        float x = getX();
+        float y = getY();
+        paintArea(g, clip.x - x, clip.y - y, clip.x + clip.width - x,
+                clip.y + clip.height - y);
+    }
 
-            int x = (int) getX();
-            int y = (int) getY();
-
-            int c0 = 0;
-            int r0 = 0;
-            int cMax = getColumns();
-            int rMax = getRows();
-
-            int tW = getCellWidth();
-            int tH = getCellHeight();
-
-
-            //y += tH * rMax;
-
-            int x0 = x;
-            int imgCols = img.getRegionWidth() / tW;
-            for (int r = r0; r < rMax; r++, y += tH) {
-                x = x0;
-                for (int c = c0; c < cMax; c++, x += tW) {
-                    int tile = getCell(c, r);
-                    if (tile < 0)
-                        tile = getAnimatedTile(tile);
-                    if (tile == 0)
-                        continue;
-
-                    tile--;
-
-                    int xSrc = tW * (tile % imgCols);
-                    int ySrc = (tile / imgCols) * tH;
-                    //Rectangle srcRect = new Rectangle(xSrc, ySrc, tW, tH);
-                    //Rectangle dstRect = new Rectangle(x, y, tW, tH);
-                    srcRect.x = xSrc;
-                    srcRect.y = ySrc;
-                    srcRect.width = tW;
-                    srcRect.height = tH;
-                    dstRect.x = x;
-                    dstRect.y = y;
-                    dstRect.width = tW;
-                    dstRect.height = tH;
-                    int xIndex=tile % tileCols  ;
-                    int yIndex=tile / tileCols ;
-
-                    TextureRegion newRegion=tilesTextRegions[yIndex][xIndex];
-                    g.draw(newRegion,dstRect.x, dstRect.y,dstRect.width, dstRect.height);
+    /**
+     * Draws the cells overlapping the area from (x1, y1) to (x2, y2), relative
+     * to the TiledLayer's position.
+     */
+    private void paintArea(Batch g, float x1, float y1, float x2, float y2) {
+        // cells are drawn from the truncated position
+        float fracX = getX() - (int) getX();
+        float fracY = getY() - (int) getY();
+        x1 += fracX;
+        x2 += fracX;
+        y1 += fracY;
+        y2 += fracY;
+        int tW = getCellWidth();
+        int tH = getCellHeight();
+        int c0 = Math.max(0, (int) Math.floor(x1 / tW));
+        int r0 = Math.max(0, (int) Math.floor(y1 / tH));
+        int cMax = Math.min(getColumns(), (int) Math.ceil(x2 / tW));
+        int rMax = Math.min(getRows(), (int) Math.ceil(y2 / tH));
+        paintCells(g, c0, r0, cMax, rMax, tW, tH);
+    }
+
+    private void paintCells(Batch g, int c0, int r0, int cMax, int rMax,
+                            int tW, int tH) {
+        if (c0 >= cMax || r0 >= rMax)
+            return;
+
+        // resolve the animated tiles once for the frame, the count is read
+        // first so the array holds at least that many tiles.
+        int numAnimated = numAnimatedTiles;
+        int[] animated = animatedTiles;
+        numAnimated = Math.min(numAnimated, animated.length);
+        if (frameAnimatedTiles.length < numAnimated)
+            frameAnimatedTiles = new int[animated.length];
+        int[] frameTiles = frameAnimatedTiles;
+        System.arraycopy(animated, 0, frameTiles, 0, numAnimated);
+
+        int[][] tiles = this.tiles;
+        TextureRegion[][] tilesTextRegions = this.tilesTextRegions;
+        int tileCols = this.tileCols;
+        int x0 = (int) getX() + c0 * tW;
+        int y = (int) getY() + r0 * tH;
+        for (int r = r0; r < rMax; r++, y += tH) {
+            int[] row = tiles[r];
+            int x = x0;
+            for (int c = c0; c < cMax; c++, x += tW) {
+                int tile = row[c];
+                if (tile < 0) {
+                    int index = -tile - 1;
+                    // animated tile created while painting
+                    tile = index < numAnimated ? frameTiles[index] : getAnimatedTile(tile);
                 }
+                if (tile == 0)
+                    continue;
+
+                tile--;
+                int xIndex = tile % tileCols;
+                int yIndex = tile / tileCols;
+
+                TextureRegion newRegion = tilesTextRegions[yIndex][xIndex];
+                g.draw(newRegion, x, y, tW, tH);
             }
         }
     }
 
+    private final Vector2 tempCorner = new Vector2();
+    private int[] frameAnimatedTiles = new int[0];
 
     private final int rows, cols;
     // package access for collision detection
@@ -387,8 +442,9 @@ public class TiledLayer extends Layer {
     // into the first position in the array (index 0)
     // so to access the correct tile use animatedTiles[-n-1]
     int[] animatedTiles;
-    // the ammount of animated tiles
-    int numAnimatedTiles;
+    // the ammount of animated tiles, written after animatedTiles so
+    // paint can read them without locking
+    volatile int numAnimatedTiles;
 
     private final TextureRegion[][] tilesTextRegions;
 }
@@ -1509,7 +1509,7 @@ public class Actor implements Collidable {
                 getX()+getWidth(),getY()+getHeight(),getX(),getY()+getHeight()};
         boundingPolygon.setVertices(vertices);
         boundingPolygon.setOrigin(getX()+getWidth()/2,getY()+getHeight()/2);
-        boundingPolygon.rotate(getRotation());
+        boundingPolygon.setRotation(getRotation());
         return boundingPolygon;
      }
 
@@ -23,10 +23,8 @@ import com.guidebee.game.GameEngine;
 import com.guidebee.game.engine.maps.tiled.TiledMapRenderer;
 import com.guidebee.game.engine.maps.tiled.renderers.IsometricTiledMapRenderer;
 import com.guidebee.game.engine.maps.tiled.renderers.OrthogonalTiledMapRenderer;
-import com.guidebee.game.maps.MapLayer;
-import com.guidebee.game.maps.MapLayers;
-import com.guidebee.game.maps.MapObject;
 import com.guidebee.game.maps.tiled.TiledMap;
+import com.guidebee.game.maps.tiled.TiledMapCollisionIndex;
 import com.guidebee.game.maps.tiled.TiledMapTile;
 import com.guidebee.game.maps.tiled.TiledMapTileLayer;
 import com.guidebee.game.physics.Body;
@@ -67,6 +65,10 @@ public class Scenery implements Disposable {
 
     protected int[] foreGroundLayers;
 
+    protected final TiledMapCollisionIndex collisionIndex;
+
+    private final Array<Collidable> collidables = new Array<Collidable>(false, 32);
+
     /**
      * Constructor.
      *
@@ -85,6 +87,7 @@ public class Scenery implements Disposable {
     public Scenery(TiledMap map, MapType mapType) {
         this.tiledMap = map;
         this.mapType = mapType;
+        this.collisionIndex = map != null ? new TiledMapCollisionIndex(map) : null;
     }
 
 
@@ -152,48 +155,55 @@ public class Scenery implements Disposable {
 
 
     /**
-     * get all collidable object in the background.
+     * get all collidable object in the background. each tile is returned
+     * only once even if it's used by many cells. the result is computed from
+     * a cached index of the map, which is only rebuilt after cells are set or
+     * layers and map objects are added or removed.
      *
-     * @return
+     * @return all collidable objects, the returned array is reused by the
+     * next call.
      */
     public Array<Collidable> getAllCollidables() {
-        Array<Collidable> collidables = new Array<Collidable>(false, 32);
-        if (tiledMap != null) {
-            MapLayers mapLayers = tiledMap.getLayers();
-            for (MapLayer mapLayer : mapLayers) {
-                if (mapLayer instanceof TiledMapTileLayer) {
-                    TiledMapTileLayer tiledMapTileLayer = (TiledMapTileLayer) mapLayer;
-                    int tilesX =tiledMapTileLayer.getWidth();
-                    int tilesY = tiledMapTileLayer.getHeight();
-                    for (int i = 0; i < tilesX; i++) {
-                        for (int j = 0; j < tilesY; j++) {
-                            TiledMapTileLayer.Cell cell = tiledMapTileLayer.getCell(i, j);
-                            if (cell != null) {
-                                TiledMapTile tiledMapTile = cell.getTile();
-                                if (tiledMapTile != null) {
-                                    if (tiledMapTile.isEnabled()) {
-                                        collidables.add(tiledMapTile);
-                                    }
-                                }
-
-                            }
-                        }
-                    }
-
-
-                }else if(mapLayer instanceof MapLayer){
-                    for(MapObject mapObject: mapLayer.getObjects()){
-                        if(mapObject.isEnabled()){
-                            collidables.add(mapObject);
-                        }
-
-                    }
-                }
-            }
+        collidables.clear();
+        if (collisionIndex != null) {
+            collisionIndex.getAllCollidables(collidables);
         }
         return collidables;
     }
 
+    /**
+     * get collidable objects in the background under given area.
+     *
+     * @param area the area.
+     * @param out  the array to add the collidable objects to.
+     * @return the out array.
+     */
+    public Array<Collidable> getCollidables(Rectangle area, Array<Collidable> out) {
+        if (collisionIndex != null) {
+            collisionIndex.getCollidables(area, out);
+        }
+        return out;
+    }
+
+    /**
+     * get collidable objects in the background under the bounds of given
+     * objects, each collidable object is returned only once.
+     *
+     * @param objects       objects to query around.
+     * @param collisionType collision type, decide which bounds of the objects
+     *                      are used.
+     * @param out           the array to add the collidable objects to.
+     * @return the out array.
+     */
+    public Array<Collidable> getCollidables(Array<? extends Collidable> objects,
+                                            int collisionType,
+                                            Array<Collidable> out) {
+        if (collisionIndex != null) {
+            collisionIndex.getCollidables(objects, collisionType, out);
+        }
+        return out;
+    }
+
     /**
      * initialize box2d bodies.
      *
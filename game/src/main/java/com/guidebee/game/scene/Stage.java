@@ -45,9 +45,13 @@ import com.guidebee.game.physics.Filter;
 import com.guidebee.game.physics.Fixture;
 import com.guidebee.game.physics.Manifold;
 import com.guidebee.game.physics.World;
+import com.guidebee.game.scene.collision.BroadPhase;
 import com.guidebee.game.scene.collision.Collision;
+import com.guidebee.game.scene.collision.CollisionBatchListener;
 import com.guidebee.game.scene.collision.CollisionListener;
+import com.guidebee.game.scene.collision.CollisionPairCache;
 import com.guidebee.game.scene.collision.SensorListener;
+import com.guidebee.game.scene.collision.UniformGridBroadPhase;
 import com.guidebee.game.ui.GameController;
 import com.guidebee.game.ui.Stack;
 import com.guidebee.game.ui.Table;
@@ -57,6 +61,7 @@ import com.guidebee.game.ui.UIWindow;
 import com.guidebee.game.ui.Widget;
 import com.guidebee.game.ui.WidgetGroup;
 import com.guidebee.game.ui.actions.Action;
+import com.guidebee.math.Intersector;
 import com.guidebee.math.Matrix4;
 import com.guidebee.math.Vector2;
 import com.guidebee.math.geometry.Rectangle;
@@ -169,6 +174,16 @@ public class Stage extends InputAdapter implements Disposable {
         }
     }
 
+    private class NarrowPhaseMonitor implements BroadPhase.PairListener {
+
+        @Override
+        public void candidatePair(Collidable objectA, Collidable objectB) {
+            if (collisionQuery(objectA, objectB, collisionType)) {
+                collisionPairCache.add(objectA, objectB, collisionType);
+            }
+        }
+    }
+
     protected Array<Body> bodiesTobeDeleted = new Array<Body>();
 
     /**
@@ -207,11 +222,27 @@ public class Stage extends InputAdapter implements Disposable {
 
     protected ContactMonitor contactMonitor = new ContactMonitor();
 
+    /**
+     * broad phase for non box2d collision checking.
+     */
+    protected BroadPhase broadPhase = new UniformGridBroadPhase();
+
+    protected NarrowPhaseMonitor narrowPhaseMonitor = new NarrowPhaseMonitor();
+
+    /**
+     * tracks the colliding pairs between frames for non box2d collision checking.
+     */
+    protected CollisionPairCache collisionPairCache = new CollisionPairCache();
+
     protected Scenery scenery;
 
 
     protected int collisionType=Collidable.BOUNDING_RECT;
 
+    private final Array<Collidable> actorCollidables = new Array<Collidable>(false, 32);
+
+    private final Array<Collidable> mapCollidables = new Array<Collidable>(false, 32);
+
 
     /**
      * Creates a stage with a {@link com.guidebee.game.camera.viewports.ScalingViewport}
@@ -277,15 +308,69 @@ public class Stage extends InputAdapter implements Disposable {
                     Collidable.BOUNDING_CIRCLE |
                     Collidable.BOUNDING_RECT;
             if ((collisionType & allOtherTypes) !=0) {
-                Array<Collidable> collidables=getAllCollidables();
-                collisionQuery((Collidable[])collidables.toArray(Collidable.class)
-                        ,collisionType,collisionListener);
+                Array<Collidable> collidables=actorCollidables;
+                collidables.clear();
+                getActorCollidables(collidables);
+                if (scenery != null) {
+                    // only the map collidables under the actors are checked.
+                    mapCollidables.clear();
+                    scenery.getCollidables(collidables, collisionType,
+                            mapCollidables);
+                    collidables.addAll(mapCollidables);
+                }
+                broadPhase.update(collidables, collisionType);
+                collisionPairCache.begin();
+                broadPhase.queryPairs(narrowPhaseMonitor);
+                dispatchCollisions(collisionPairCache.end());
 
             }
         }
     }
 
 
+    /**
+     * set the broad phase used for non box2d collision checking. only the
+     * candidate pairs reported by the broad phase are passed to
+     * {@link #collisionQuery(Collidable, Collidable, int)}.
+     * @param broadPhase broad phase, can't be null.
+     */
+    public void setBroadPhase(BroadPhase broadPhase) {
+        if (broadPhase == null) throw new IllegalArgumentException("broadPhase cannot be null.");
+        this.broadPhase.clear();
+        this.broadPhase = broadPhase;
+    }
+
+    /**
+     * get the broad phase used for non box2d collision checking.
+     * @return the broad phase.
+     */
+    public BroadPhase getBroadPhase() {
+        return broadPhase;
+    }
+
+
+    /**
+     * deliver the collisions of a frame. a {@link CollisionBatchListener}
+     * gets them in one batch, including the ended ones, any other listener
+     * is called for each pair still colliding.
+     * @param collisions collisions of the frame.
+     */
+    protected void dispatchCollisions(Array<Collision> collisions) {
+        if (collisionListener instanceof CollisionBatchListener) {
+            if (collisions.size > 0) {
+                ((CollisionBatchListener) collisionListener).collisionsDetected(collisions);
+            }
+        } else if (collisionListener != null) {
+            for (int i = 0, n = collisions.size; i < n; i++) {
+                Collision collision = collisions.get(i);
+                if (collision.getState() != Collision.END) {
+                    collisionListener.collisionDetected(collision);
+                }
+            }
+        }
+    }
+
+
     public void setSensorListener(SensorListener listener){
         boolean existingMonitor=sensorListener!=null || collisionListener!=null;
         sensorListener=listener;
@@ -328,6 +413,9 @@ public class Stage extends InputAdapter implements Disposable {
 
             }
         }
+        if (this.collisionListener != listener || this.collisionType != type) {
+            collisionPairCache.clear();
+        }
         this.collisionListener=listener;
         this.collisionType=type;
     }
@@ -383,9 +471,22 @@ public class Stage extends InputAdapter implements Disposable {
      */
     public Array<Collidable>  getAllCollidables(){
         Array<Collidable> collidables=new Array<Collidable>(false,32);
-        Array<Actor> actors=getActors();
-        for(Actor actor:actors){
-            if(actor.isEnabled()){
+        getActorCollidables(collidables);
+
+        Array<Collidable> tiles=getAllMapCollidables();
+        collidables.addAll(tiles);
+        return collidables;
+    }
+
+
+    protected void getActorCollidables(Array<Collidable> collidables){
+        Array<UIComponent> components=internalStage.getComponents();
+        if(components==null){
+            return;
+        }
+        for(int i=0,n=components.size;i<n;i++){
+            Actor actor=(Actor)components.get(i).getUserObject();
+            if(actor!=null && actor.isEnabled()){
                 if(actor instanceof Group){
                     getAllCollidables((Group)actor,collidables);
 
@@ -394,10 +495,6 @@ public class Stage extends InputAdapter implements Disposable {
                 }
             }
         }
-
-        Array<Collidable> tiles=getAllMapCollidables();
-        collidables.addAll(tiles);
-        return collidables;
     }
 
 
@@ -413,7 +510,8 @@ public class Stage extends InputAdapter implements Disposable {
 
     protected void getAllCollidables(Group group,Array<Collidable> collidables){
         SnapshotArray<Actor> actors=group.getChildren();
-        for(Actor actor:actors){
+        for(int i=0,n=actors.size;i<n;i++){
+            Actor actor=actors.get(i);
             if(actor.isEnabled()){
                 if(actor instanceof Group){
                     getAllCollidables((Group)actor,collidables);
@@ -701,6 +799,8 @@ public class Stage extends InputAdapter implements Disposable {
     public void clear() {
         entityEngine.removeAllEntities();
         internalStage.clear();
+        broadPhase.clear();
+        collisionPairCache.clear();
     }
 
     public void clearHUDComponents(){
@@ -982,6 +1082,22 @@ public class Stage extends InputAdapter implements Disposable {
 
     public final static boolean collisionQuery(Collidable collidable,
                                                Collidable otherCollidable, int collisionType) {
+        return collisionQuery(collidable, otherCollidable, collisionType, null);
+    }
+
+    /**
+     * check whether two collidable objects collide.
+     * @param collidable first collidable object.
+     * @param otherCollidable second collidable object.
+     * @param collisionType collision type.
+     * @param mtv if not null and the bounding polygons of two convex objects
+     *            overlap, filled with the contact normal (pointing from the
+     *            second object to the first one) and the penetration depth.
+     * @return true if two objects collide.
+     */
+    public final static boolean collisionQuery(Collidable collidable,
+                                               Collidable otherCollidable, int collisionType,
+                                               Intersector.MinimumTranslationVector mtv) {
 
         boolean result = true;
         if (collidable.isEnabled() && otherCollidable.isEnabled()) {
@@ -991,35 +1107,17 @@ public class Stage extends InputAdapter implements Disposable {
             if ((collisionType & Collidable.BOUNDING_CIRCLE) == Collidable.BOUNDING_CIRCLE) {
                 result &= collidable.getBoundingCircle().overlaps(otherCollidable.getBoundingCircle());
             }
-            if (((collisionType & Collidable.BOUNDING_AREA) == Collidable.BOUNDING_AREA)
-                    || ((collisionType & Collidable.BOX2D_CONTACT) == Collidable.BOX2D_CONTACT)) {
-                float[] vertices1 = collidable.getBoundingPolygon().getVertices();
-                float[] vertices2 = otherCollidable.getBoundingPolygon().getVertices();
-
-                int[] xpoints1 = new int[vertices1.length / 2];
-                int[] xpoints2 = new int[vertices1.length / 2];
-                int[] ypoints1 = new int[vertices1.length / 2];
-                int[] ypoints2 = new int[vertices1.length / 2];
-
-                for (int i = 0; i < vertices1.length / 2; i++) {
-                    xpoints1[i] = Math.round(vertices1[i * 2]);
-                    ypoints1[i] = Math.round(vertices1[i * 2 + 1]);
-                    xpoints2[i] = Math.round(vertices2[i * 2]);
-                    ypoints2[i] = Math.round(vertices2[i * 2 + 1]);
+            if (result && (((collisionType & Collidable.BOUNDING_AREA) == Collidable.BOUNDING_AREA)
+                    || ((collisionType & Collidable.BOX2D_CONTACT) == Collidable.BOX2D_CONTACT))) {
+                float[] vertices1 = collidable.getBoundingPolygon().getTransformedVertices();
+                float[] vertices2 = otherCollidable.getBoundingPolygon().getTransformedVertices();
+
+                if (Intersector.isConvexPolygon(vertices1)
+                        && Intersector.isConvexPolygon(vertices2)) {
+                    result &= Intersector.intersectConvexPolygons(vertices1, vertices2, mtv);
+                } else {
+                    result &= intersectArea(vertices1, vertices2);
                 }
-
-                com.guidebee.drawing.geometry.Polygon polygon1
-                        = new com.guidebee.drawing.geometry.Polygon(xpoints1, ypoints1, xpoints1.length);
-
-                com.guidebee.drawing.geometry.Polygon polygon2
-                        = new com.guidebee.drawing.geometry.Polygon(xpoints2, ypoints2, xpoints2.length);
-
-                Area area1 = new Area(polygon1);
-                Area area2 = new Area(polygon2);
-
-                area1.intersect(area2);
-
-                result &= !area1.isEmpty();
             }
         } else {
             result = false;
@@ -1029,4 +1127,36 @@ public class Stage extends InputAdapter implements Disposable {
 
     }
 
+    /**
+     * fallback for concave polygons, check the intersection with {@link Area}.
+     */
+    private static boolean intersectArea(float[] vertices1, float[] vertices2) {
+        int[] xpoints1 = new int[vertices1.length / 2];
+        int[] ypoints1 = new int[vertices1.length / 2];
+        int[] xpoints2 = new int[vertices2.length / 2];
+        int[] ypoints2 = new int[vertices2.length / 2];
+
+        for (int i = 0; i < xpoints1.length; i++) {
+            xpoints1[i] = Math.round(vertices1[i * 2]);
+            ypoints1[i] = Math.round(vertices1[i * 2 + 1]);
+        }
+        for (int i = 0; i < xpoints2.length; i++) {
+            xpoints2[i] = Math.round(vertices2[i * 2]);
+            ypoints2[i] = Math.round(vertices2[i * 2 + 1]);
+        }
+
+        com.guidebee.drawing.geometry.Polygon polygon1
+                = new com.guidebee.drawing.geometry.Polygon(xpoints1, ypoints1, xpoints1.length);
+
+        com.guidebee.drawing.geometry.Polygon polygon2
+                = new com.guidebee.drawing.geometry.Polygon(xpoints2, ypoints2, xpoints2.length);
+
+        Area area1 = new Area(polygon1);
+        Area area2 = new Area(polygon2);
+
+        area1.intersect(area2);
+
+        return !area1.isEmpty();
+    }
+
 }
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.scene.collision;
+
+//--------------------------------- IMPORTS ------------------------------------
+import com.guidebee.game.Collidable;
+import com.guidebee.utils.collections.Array;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Broad phase of the non-box2d collision detection. a broad phase keeps a
+ * spatial index of the collidable objects and reports only the pairs whose
+ * bounds may overlap, so the (expensive) narrow phase test is not run for
+ * every pair of objects in the stage.
+ */
+public interface BroadPhase {
+
+    /**
+     * Pair listener, get notified for each candidate pair found by the broad
+     * phase.
+     */
+    public interface PairListener {
+
+        /**
+         * candidate pair found, the two objects' bounds overlap.
+         * @param objectA first collidable object.
+         * @param objectB second collidable object.
+         */
+        void candidatePair(Collidable objectA, Collidable objectB);
+    }
+
+    /**
+     * synchronize the spatial index with given collidable objects. objects
+     * not in the list are removed from the index, new objects are added and
+     * moved objects are updated.
+     * @param collidables collidable objects in current frame.
+     * @param collisionType collision type, decide which bounds are indexed.
+     */
+    void update(Array<Collidable> collidables, int collisionType);
+
+    /**
+     * report all candidate pairs, each pair is reported once.
+     * @param listener pair listener.
+     */
+    void queryPairs(PairListener listener);
+
+    /**
+     * remove all objects from the index.
+     */
+    void clear();
+}
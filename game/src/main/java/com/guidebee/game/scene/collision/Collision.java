@@ -21,17 +21,46 @@ import com.guidebee.game.Collidable;
 import com.guidebee.game.physics.Body;
 import com.guidebee.game.physics.Contact;
 import com.guidebee.game.physics.Fixture;
+import com.guidebee.utils.Pool;
 
 //[------------------------------ MAIN CLASS ----------------------------------]
 
 /**
  * define collision object. a collision involves two objects.
  */
-public class Collision {
+public class Collision implements Pool.Poolable {
+
+    /**
+     * two objects start touching in this frame.
+     */
+    public static final int BEGIN = 0x1;
+
+    /**
+     * two objects were already touching in last frame and still touch.
+     */
+    public static final int PERSIST = 0x2;
+
+    /**
+     * two objects touched in last frame and no longer touch.
+     */
+    public static final int END = 0x4;
+
     private Collidable objectA;
     private Collidable objectB;
     private boolean isTouching;
     private int collisionType;
+    private int state = BEGIN;
+
+    /**
+     * last frame the collision was seen by {@link CollisionPairCache}.
+     */
+    int frame;
+
+    /**
+     * Constructor, used by pools.
+     */
+    public Collision() {
+    }
 
     /**
      * Constructor.
@@ -98,5 +127,44 @@ public class Collision {
         return collisionType;
     }
 
+    /**
+     * get collision state, one of {@link #BEGIN}, {@link #PERSIST} and
+     * {@link #END}. collisions created from box2d contacts and by the
+     * constructor are always {@link #BEGIN}.
+     * @return
+     */
+    public int getState() {
+        return state;
+    }
+
+    /**
+     * set collision objects and type.
+     * @param obj1
+     * @param obj2
+     * @param type
+     */
+    public void set(Collidable obj1, Collidable obj2, int type) {
+        objectA = obj1;
+        objectB = obj2;
+        isTouching = true;
+        collisionType = type;
+        state = BEGIN;
+    }
+
+    void setState(int state) {
+        this.state = state;
+        isTouching = state != END;
+    }
+
+    @Override
+    public void reset() {
+        objectA = null;
+        objectB = null;
+        isTouching = false;
+        collisionType = 0;
+        state = BEGIN;
+        frame = 0;
+    }
+
 
 }
@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.scene.collision;
+
+//--------------------------------- IMPORTS ------------------------------------
+import com.guidebee.utils.collections.Array;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Collision listener which gets all the collisions of a frame in one batch.
+ * set to the stage like any {@link CollisionListener}, it gets the batch of
+ * the non-box2d collision checking instead of one
+ * {@link CollisionListener#collisionDetected} call per collision. box2d
+ * contacts are still reported one by one to
+ * {@link CollisionListener#collisionDetected}.
+ */
+public interface CollisionBatchListener extends CollisionListener {
+
+    /**
+     * collisions detected in one frame. each collision has a state of
+     * {@link Collision#BEGIN}, {@link Collision#PERSIST} or
+     * {@link Collision#END}.
+     * <p/>
+     * the collision objects are pooled. a colliding pair keeps the same
+     * collision object from the frame it is reported as
+     * {@link Collision#BEGIN}, through the {@link Collision#PERSIST} frames,
+     * up to the frame it is reported as {@link Collision#END}. after that
+     * frame (or when the stage is cleared) the object is returned to the pool
+     * and reused for other pairs, so a reference kept by the listener must be
+     * dropped when its state is {@link Collision#END}. the array itself is
+     * reused each frame and is only valid during this call.
+     * @param collisions collisions of the frame.
+     */
+    void collisionsDetected(Array<Collision> collisions);
+}
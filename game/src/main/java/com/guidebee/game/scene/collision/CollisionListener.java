@@ -26,7 +26,8 @@ package com.guidebee.game.scene.collision;
 public interface CollisionListener {
 
     /**
-     * collision detected.
+     * collision detected. collision objects of the non-box2d collision
+     * checking are pooled, don't keep a reference after this call.
      * @param collision collision object.
      */
     void collisionDetected(Collision collision);
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.scene.collision;
+
+//--------------------------------- IMPORTS ------------------------------------
+import com.guidebee.game.Collidable;
+import com.guidebee.utils.Pool;
+import com.guidebee.utils.collections.Array;
+import com.guidebee.utils.collections.IdentityMap;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Contact pair cache for the non-box2d collision checking. it remembers the
+ * colliding pairs of last frame, keyed by the identity of the collidable
+ * objects, so each collision of a frame can be marked as
+ * {@link Collision#BEGIN} or {@link Collision#PERSIST}, and pairs no longer
+ * colliding are reported once as {@link Collision#END}. collision objects are
+ * pooled.
+ * <p/>
+ * usage per frame: {@link #begin()}, {@link #add(Collidable, Collidable, int)}
+ * for each colliding pair, then {@link #end()} to get the batch.
+ */
+public class CollisionPairCache {
+
+    private final IdentityMap<Collidable, Array<Collision>> contacts
+            = new IdentityMap<Collidable, Array<Collision>>();
+    private final Array<Collision> activeCollisions = new Array<Collision>(false, 32);
+    private final Array<Collision> endedCollisions = new Array<Collision>(false, 16);
+    private final Array<Collision> batch = new Array<Collision>(false, 32);
+
+    private final Pool<Collision> collisionPool = new Pool<Collision>() {
+        @Override
+        protected Collision newObject() {
+            return new Collision();
+        }
+    };
+
+    private final Pool<Array<Collision>> listPool = new Pool<Array<Collision>>() {
+        @Override
+        protected Array<Collision> newObject() {
+            return new Array<Collision>(false, 4);
+        }
+    };
+
+    private int frame;
+
+    /**
+     * start a new frame. collisions ended in last frame are returned to the
+     * pool.
+     */
+    public void begin() {
+        for (int i = 0, n = endedCollisions.size; i < n; i++) {
+            collisionPool.free(endedCollisions.get(i));
+        }
+        endedCollisions.clear();
+        batch.clear();
+        frame++;
+    }
+
+    /**
+     * add a colliding pair found in current frame.
+     * @param objectA first collidable object.
+     * @param objectB second collidable object.
+     * @param collisionType collision type.
+     * @return the collision object.
+     */
+    public Collision add(Collidable objectA, Collidable objectB, int collisionType) {
+        Collision collision = find(objectA, objectB);
+        if (collision == null) {
+            collision = find(objectB, objectA);
+        }
+        if (collision != null) {
+            if (collision.frame == frame) return collision;
+            collision.setState(Collision.PERSIST);
+        } else {
+            collision = collisionPool.obtain();
+            collision.set(objectA, objectB, collisionType);
+            Array<Collision> list = contacts.get(objectA);
+            if (list == null) {
+                list = listPool.obtain();
+                contacts.put(objectA, list);
+            }
+            list.add(collision);
+            activeCollisions.add(collision);
+        }
+        collision.frame = frame;
+        batch.add(collision);
+        return collision;
+    }
+
+    /**
+     * end current frame. pairs which collided in last frame but were not
+     * added in this frame are marked as {@link Collision#END}.
+     * @return all the collisions of the frame, valid until next
+     * {@link #begin()}.
+     */
+    public Array<Collision> end() {
+        for (int i = activeCollisions.size - 1; i >= 0; i--) {
+            Collision collision = activeCollisions.get(i);
+            if (collision.frame == frame) continue;
+            collision.setState(Collision.END);
+            removeContact(collision);
+            activeCollisions.removeIndex(i);
+            endedCollisions.add(collision);
+            batch.add(collision);
+        }
+        return batch;
+    }
+
+    /**
+     * get number of pairs currently colliding.
+     * @return the number of pairs.
+     */
+    public int getActiveCount() {
+        return activeCollisions.size;
+    }
+
+    /**
+     * remove all pairs without reporting them as ended.
+     */
+    public void clear() {
+        for (int i = 0, n = activeCollisions.size; i < n; i++) {
+            collisionPool.free(activeCollisions.get(i));
+        }
+        for (int i = 0, n = endedCollisions.size; i < n; i++) {
+            collisionPool.free(endedCollisions.get(i));
+        }
+        for (Array<Collision> list : contacts.values()) {
+            list.clear();
+            listPool.free(list);
+        }
+        contacts.clear();
+        activeCollisions.clear();
+        endedCollisions.clear();
+        batch.clear();
+    }
+
+    private Collision find(Collidable objectA, Collidable objectB) {
+        Array<Collision> list = contacts.get(objectA);
+        if (list == null) return null;
+        for (int i = 0, n = list.size; i < n; i++) {
+            Collision collision = list.get(i);
+            if (collision.getObjectB() == objectB) return collision;
+        }
+        return null;
+    }
+
+    private void removeContact(Collision collision) {
+        Collidable objectA = collision.getObjectA();
+        Array<Collision> list = contacts.get(objectA);
+        if (list == null) return;
+        list.removeValue(collision, true);
+        if (list.size == 0) {
+            contacts.remove(objectA);
+            listPool.free(list);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.scene.collision;
+
+//--------------------------------- IMPORTS ------------------------------------
+import com.guidebee.game.Collidable;
+import com.guidebee.math.geometry.Circle;
+import com.guidebee.math.geometry.Polygon;
+import com.guidebee.math.geometry.Rectangle;
+import com.guidebee.utils.Pool;
+import com.guidebee.utils.collections.Array;
+import com.guidebee.utils.collections.IdentityMap;
+import com.guidebee.utils.collections.LongMap;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Broad phase based on a uniform grid (spatial hash). each collidable object
+ * is put into all the grid cells its bounds cover, candidate pairs are only
+ * generated for objects sharing a cell. the grid is updated incrementally,
+ * an object is only moved between cells when the range of cells it covers
+ * changes.
+ */
+public class UniformGridBroadPhase implements BroadPhase {
+
+    /**
+     * default grid cell size, in world units.
+     */
+    public static final float DEFAULT_CELL_SIZE = 128f;
+
+    /**
+     * proxy of a collidable object in the grid.
+     */
+    private static class Proxy {
+        Collidable collidable;
+        int id;
+        int stamp;
+        int minX, minY, maxX, maxY;
+        float x, y, x2, y2;
+    }
+
+    /**
+     * grid cell.
+     */
+    private static class Cell {
+        int x, y;
+        int index;
+        final Array<Proxy> proxies = new Array<Proxy>(false, 8);
+    }
+
+    private final float cellSize;
+    private final float invCellSize;
+
+    private final IdentityMap<Collidable, Proxy> proxies
+            = new IdentityMap<Collidable, Proxy>();
+    private final Array<Proxy> proxyList = new Array<Proxy>(false, 64);
+    private final LongMap<Cell> cells = new LongMap<Cell>();
+    private final Array<Cell> cellList = new Array<Cell>(false, 64);
+
+    private final Pool<Proxy> proxyPool = new Pool<Proxy>() {
+        @Override
+        protected Proxy newObject() {
+            return new Proxy();
+        }
+    };
+
+    private final Pool<Cell> cellPool = new Pool<Cell>() {
+        @Override
+        protected Cell newObject() {
+            return new Cell();
+        }
+    };
+
+    private final Rectangle bounds = new Rectangle();
+    private int stamp;
+    private int nextId;
+
+    /**
+     * Constructor, use default cell size.
+     */
+    public UniformGridBroadPhase() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * @param cellSize grid cell size, in world units. best to be close to the
+     *                 size of a typical collidable object.
+     */
+    public UniformGridBroadPhase(float cellSize) {
+        if (cellSize <= 0) throw new IllegalArgumentException("cellSize must be > 0.");
+        this.cellSize = cellSize;
+        this.invCellSize = 1f / cellSize;
+    }
+
+    /**
+     * get grid cell size.
+     * @return cell size in world units.
+     */
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * get number of objects in the grid.
+     * @return the number of objects.
+     */
+    public int getProxyCount() {
+        return proxyList.size;
+    }
+
+    /**
+     * get number of non empty cells in the grid.
+     * @return the number of cells.
+     */
+    public int getCellCount() {
+        return cellList.size;
+    }
+
+    @Override
+    public void update(Array<Collidable> collidables, int collisionType) {
+        stamp++;
+        for (int i = 0, n = collidables.size; i < n; i++) {
+            Collidable collidable = collidables.get(i);
+            if (!collidable.isEnabled()) continue;
+            if (!computeBounds(collidable, collisionType, bounds)) continue;
+
+            Proxy proxy = proxies.get(collidable);
+            if (proxy != null && proxy.stamp == stamp) continue;
+
+            float x = bounds.x;
+            float y = bounds.y;
+            float x2 = bounds.x + bounds.width;
+            float y2 = bounds.y + bounds.height;
+            int minX = (int) Math.floor(x * invCellSize);
+            int minY = (int) Math.floor(y * invCellSize);
+            int maxX = (int) Math.floor(x2 * invCellSize);
+            int maxY = (int) Math.floor(y2 * invCellSize);
+
+            if (proxy == null) {
+                proxy = proxyPool.obtain();
+                proxy.collidable = collidable;
+                proxy.id = nextId++;
+                proxies.put(collidable, proxy);
+                proxyList.add(proxy);
+                setCells(proxy, minX, minY, maxX, maxY);
+                insert(proxy);
+            } else if (proxy.minX != minX || proxy.minY != minY
+                    || proxy.maxX != maxX || proxy.maxY != maxY) {
+                remove(proxy);
+                setCells(proxy, minX, minY, maxX, maxY);
+                insert(proxy);
+            }
+            proxy.x = x;
+            proxy.y = y;
+            proxy.x2 = x2;
+            proxy.y2 = y2;
+            proxy.stamp = stamp;
+        }
+
+        for (int i = proxyList.size - 1; i >= 0; i--) {
+            Proxy proxy = proxyList.get(i);
+            if (proxy.stamp != stamp) {
+                remove(proxy);
+                proxyList.removeIndex(i);
+                proxies.remove(proxy.collidable);
+                proxy.collidable = null;
+                proxyPool.free(proxy);
+            }
+        }
+    }
+
+    @Override
+    public void queryPairs(PairListener listener) {
+        for (int c = 0, cellCount = cellList.size; c < cellCount; c++) {
+            Cell cell = cellList.get(c);
+            Array<Proxy> cellProxies = cell.proxies;
+            for (int i = 0, n = cellProxies.size; i < n - 1; i++) {
+                Proxy proxy1 = cellProxies.get(i);
+                for (int j = i + 1; j < n; j++) {
+                    Proxy proxy2 = cellProxies.get(j);
+                    // a pair sharing more than one cell is only reported
+                    // from the first cell they share.
+                    if (Math.max(proxy1.minX, proxy2.minX) != cell.x
+                            || Math.max(proxy1.minY, proxy2.minY) != cell.y) {
+                        continue;
+                    }
+                    if (proxy1.x > proxy2.x2 || proxy2.x > proxy1.x2
+                            || proxy1.y > proxy2.y2 || proxy2.y > proxy1.y2) {
+                        continue;
+                    }
+                    if (proxy1.id < proxy2.id) {
+                        listener.candidatePair(proxy1.collidable, proxy2.collidable);
+                    } else {
+                        listener.candidatePair(proxy2.collidable, proxy1.collidable);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0, n = proxyList.size; i < n; i++) {
+            Proxy proxy = proxyList.get(i);
+            proxy.collidable = null;
+            proxyPool.free(proxy);
+        }
+        for (int i = 0, n = cellList.size; i < n; i++) {
+            Cell cell = cellList.get(i);
+            cell.proxies.clear();
+            cellPool.free(cell);
+        }
+        proxyList.clear();
+        proxies.clear();
+        cellList.clear();
+        cells.clear();
+    }
+
+    /**
+     * compute the bounds used to index the collidable object, the bounds
+     * covers all the shapes the narrow phase may test for given collision type.
+     * @param collidable collidable object.
+     * @param collisionType collision type.
+     * @param out the bounds.
+     * @return false if the object has no bounds.
+     */
+    public static boolean computeBounds(Collidable collidable, int collisionType,
+                                        Rectangle out) {
+        Rectangle aabb = collidable.getBoundingAABB();
+        if (aabb == null) return false;
+        out.set(aabb);
+
+        if ((collisionType & Collidable.BOUNDING_CIRCLE) == Collidable.BOUNDING_CIRCLE) {
+            Circle circle = collidable.getBoundingCircle();
+            if (circle != null) {
+                out.merge(circle.x - circle.radius, circle.y - circle.radius);
+                out.merge(circle.x + circle.radius, circle.y + circle.radius);
+            }
+        }
+        if (((collisionType & Collidable.BOUNDING_AREA) == Collidable.BOUNDING_AREA)
+                || ((collisionType & Collidable.BOX2D_CONTACT) == Collidable.BOX2D_CONTACT)) {
+            Polygon polygon = collidable.getBoundingPolygon();
+            if (polygon != null) {
+                float[] vertices = polygon.getTransformedVertices();
+                for (int i = 0; i < vertices.length - 1; i += 2) {
+                    out.merge(vertices[i], vertices[i + 1]);
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void setCells(Proxy proxy, int minX, int minY, int maxX, int maxY) {
+        proxy.minX = minX;
+        proxy.minY = minY;
+        proxy.maxX = maxX;
+        proxy.maxY = maxY;
+    }
+
+    private static long cellKey(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    private void insert(Proxy proxy) {
+        for (int x = proxy.minX; x <= proxy.maxX; x++) {
+            for (int y = proxy.minY; y <= proxy.maxY; y++) {
+                long key = cellKey(x, y);
+                Cell cell = cells.get(key);
+                if (cell == null) {
+                    cell = cellPool.obtain();
+                    cell.x = x;
+                    cell.y = y;
+                    cell.index = cellList.size;
+                    cells.put(key, cell);
+                    cellList.add(cell);
+                }
+                cell.proxies.add(proxy);
+            }
+        }
+    }
+
+    private void remove(Proxy proxy) {
+        for (int x = proxy.minX; x <= proxy.maxX; x++) {
+            for (int y = proxy.minY; y <= proxy.maxY; y++) {
+                long key = cellKey(x, y);
+                Cell cell = cells.get(key);
+                if (cell == null) continue;
+                cell.proxies.removeValue(proxy, true);
+                if (cell.proxies.size == 0) {
+                    cells.remove(key);
+                    Cell last = cellList.pop();
+                    if (last != cell) {
+                        last.index = cell.index;
+                        cellList.set(cell.index, last);
+                    }
+                    cellPool.free(cell);
+                }
+            }
+        }
+    }
+}
@@ -1229,6 +1229,163 @@ public final class Intersector {
         return true;
     }
 
+    /**
+     * @see #intersectConvexPolygons(float[], int, int, float[], int, int,
+     * MinimumTranslationVector)
+     */
+    public static boolean intersectConvexPolygons(float[] verts1, float[] verts2,
+                                                  MinimumTranslationVector mtv) {
+        return intersectConvexPolygons(verts1, 0, verts1.length, verts2, 0,
+                verts2.length, mtv);
+    }
+
+    /**
+     * Check whether the convex polygons defined by the given vertex arrays
+     * overlap, using the separating axis theorem. Unlike
+     * {@link #overlapConvexPolygons(float[], int, int, float[], int, int,
+     * MinimumTranslationVector)} the polygons can be wound in either
+     * direction, and polygons only touching at an edge or a vertex are not
+     * considered overlapping. This method does not allocate.
+     * If they do overlap, optionally obtain a Minimum Translation Vector, its
+     * normal is the contact normal pointing from the second polygon to the
+     * first one, and its depth is the penetration depth, i.e. the minimum
+     * distance to move the first polygon along the normal to separate them.
+     *
+     * @param verts1 Vertices of the first polygon.
+     * @param verts2 Vertices of the second polygon.
+     * @param mtv    A Minimum Translation Vector to fill in the case of a
+     *               collision, or null (optional).
+     * @return Whether polygons overlap.
+     */
+    public static boolean intersectConvexPolygons(float[] verts1, int offset1,
+                                                  int count1, float[] verts2,
+                                                  int offset2, int count2,
+                                                  MinimumTranslationVector mtv) {
+        if (count1 < 6 || count2 < 6) return false;
+        float overlap = Float.MAX_VALUE;
+        float smallestAxisX = 0;
+        float smallestAxisY = 0;
+
+        for (int pass = 0; pass < 2; pass++) {
+            final float[] verts = pass == 0 ? verts1 : verts2;
+            final int offset = pass == 0 ? offset1 : offset2;
+            final int end = offset + (pass == 0 ? count1 : count2);
+
+            for (int i = offset; i < end; i += 2) {
+                int next = i + 2 < end ? i + 2 : offset;
+                float axisX = verts[i + 1] - verts[next + 1];
+                float axisY = verts[next] - verts[i];
+                final float length = (float) Math.sqrt(axisX * axisX + axisY * axisY);
+                if (length == 0) continue;
+                axisX /= length;
+                axisY /= length;
+
+                // Project polygon1 onto this axis
+                float min1 = Float.MAX_VALUE;
+                float max1 = -Float.MAX_VALUE;
+                for (int j = offset1, end1 = offset1 + count1; j < end1; j += 2) {
+                    float p = axisX * verts1[j] + axisY * verts1[j + 1];
+                    if (p < min1) min1 = p;
+                    if (p > max1) max1 = p;
+                }
+
+                // Project polygon2 onto this axis
+                float min2 = Float.MAX_VALUE;
+                float max2 = -Float.MAX_VALUE;
+                for (int j = offset2, end2 = offset2 + count2; j < end2; j += 2) {
+                    float p = axisX * verts2[j] + axisY * verts2[j + 1];
+                    if (p < min2) min2 = p;
+                    if (p > max2) max2 = p;
+                }
+
+                if (max1 <= min2 || max2 <= min1) return false;
+
+                // Distance to push polygon1 along the axis, or against it.
+                float forward = max2 - min1;
+                float backward = max1 - min2;
+                if (forward < overlap) {
+                    overlap = forward;
+                    smallestAxisX = axisX;
+                    smallestAxisY = axisY;
+                }
+                if (backward < overlap) {
+                    overlap = backward;
+                    smallestAxisX = -axisX;
+                    smallestAxisY = -axisY;
+                }
+            }
+        }
+
+        if (mtv != null) {
+            mtv.normal.set(smallestAxisX, smallestAxisY);
+            mtv.depth = overlap;
+        }
+        return true;
+    }
+
+    /**
+     * @see #isConvexPolygon(float[], int, int)
+     */
+    public static boolean isConvexPolygon(float[] vertices) {
+        return isConvexPolygon(vertices, 0, vertices.length);
+    }
+
+    /**
+     * Check whether the polygon defined by the given vertex array is convex,
+     * in either winding. Collinear vertices are allowed.
+     *
+     * @param vertices Vertices of the polygon.
+     * @param offset   offset of the first vertex.
+     * @param count    number of floats of the vertices.
+     * @return Whether the polygon is convex.
+     */
+    public static boolean isConvexPolygon(float[] vertices, int offset, int count) {
+        if (count < 6) return false;
+        final int end = offset + count;
+        int sign = 0;
+        int xFlips = 0;
+        int yFlips = 0;
+        float lastX = vertices[end - 2] - vertices[end - 4];
+        float lastY = vertices[end - 1] - vertices[end - 3];
+        int lastSignX = lastX > 0 ? 1 : lastX < 0 ? -1 : 0;
+        int lastSignY = lastY > 0 ? 1 : lastY < 0 ? -1 : 0;
+        for (int i = offset; i < end; i += 2) {
+            int previous = i == offset ? end - 2 : i - 2;
+            float edgeX = vertices[i] - vertices[previous];
+            float edgeY = vertices[i + 1] - vertices[previous + 1];
+
+            float cross = lastX * edgeY - lastY * edgeX;
+            if (cross != 0) {
+                int s = cross > 0 ? 1 : -1;
+                if (sign == 0) {
+                    sign = s;
+                } else if (sign != s) {
+                    return false;
+                }
+            }
+
+            // A convex polygon changes direction at most twice on each axis,
+            // this rejects self-intersecting polygons like a pentagram.
+            int signX = edgeX > 0 ? 1 : edgeX < 0 ? -1 : 0;
+            int signY = edgeY > 0 ? 1 : edgeY < 0 ? -1 : 0;
+            if (signX != 0) {
+                if (lastSignX != 0 && signX != lastSignX) xFlips++;
+                lastSignX = signX;
+            }
+            if (signY != 0) {
+                if (lastSignY != 0 && signY != lastSignY) yFlips++;
+                lastSignY = signY;
+            }
+            if (xFlips > 2 || yFlips > 2) return false;
+
+            if (edgeX != 0 || edgeY != 0) {
+                lastX = edgeX;
+                lastY = edgeY;
+            }
+        }
+        return sign != 0;
+    }
+
     /**
      * Splits the triangle by the plane. The result is stored in the SplitTriangle
      * instance. Depending on where the triangle is
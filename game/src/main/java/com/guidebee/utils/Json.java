@@ -24,13 +24,13 @@ import com.guidebee.game.engine.utils.reflect.Constructor;
 import com.guidebee.game.engine.utils.reflect.Field;
 import com.guidebee.game.engine.utils.reflect.ReflectionException;
 import com.guidebee.game.files.FileHandle;
+import com.guidebee.utils.JsonPullParser.Token;
 import com.guidebee.utils.JsonValue.PrettyPrintSettings;
 import com.guidebee.utils.JsonWriter.OutputType;
 import com.guidebee.utils.collections.Array;
 import com.guidebee.utils.collections.ArrayMap;
 import com.guidebee.utils.collections.ObjectMap;
 import com.guidebee.utils.collections.ObjectMap.Entry;
-import com.guidebee.utils.collections.ObjectMap.Values;
 import com.guidebee.utils.collections.OrderedMap;
 
 import java.io.IOException;
@@ -63,6 +63,8 @@ public class Json {
     private OutputType outputType;
     private final ObjectMap<Class, ObjectMap<String, FieldMetadata>>
             typeToFields = new ObjectMap();
+    private final ObjectMap<Class<?>, FieldMetadata[]> typeToFieldArray
+            = new ObjectMap<Class<?>, FieldMetadata[]>();
     private final ObjectMap<String, Class> tagToClass
             = new ObjectMap();
     private final ObjectMap<Class, String> classToTag
@@ -173,10 +175,29 @@ public class Json {
 
             nameToField.put(field.getName(), new FieldMetadata(field));
         }
+        FieldMetadata[] fieldArray = new FieldMetadata[nameToField.size];
+        int i = 0;
+        for (FieldMetadata metadata : nameToField.values()) {
+            fieldArray[i++] = metadata;
+        }
         typeToFields.put(type, nameToField);
+        typeToFieldArray.put(type, fieldArray);
         return nameToField;
     }
 
+    /**
+     * @return the fields of the type, in the order the default values
+     * are stored.
+     */
+    FieldMetadata[] getFieldArray(Class<?> type) {
+        FieldMetadata[] fields = typeToFieldArray.get(type);
+        if (fields == null) {
+            cacheFields(type);
+            fields = typeToFieldArray.get(type);
+        }
+        return fields;
+    }
+
     public String toJson(Object object) {
         return toJson(object, object == null ? null : object.getClass(), (Class) null);
     }
@@ -270,15 +291,14 @@ public class Json {
 
         Object[] defaultValues = getDefaultValues(type);
 
-        ObjectMap<String, FieldMetadata> fields = typeToFields.get(type);
-        if (fields == null) fields = cacheFields(type);
-        int i = 0;
-        for (FieldMetadata metadata : new Values<FieldMetadata>(fields)) {
+        FieldMetadata[] fields = getFieldArray(type);
+        for (int i = 0, n = fields.length; i < n; i++) {
+            FieldMetadata metadata = fields[i];
             Field field = metadata.field;
             try {
                 Object value = field.get(object);
                 if (defaultValues != null) {
-                    Object defaultValue = defaultValues[i++];
+                    Object defaultValue = defaultValues[i];
                     if (value == null && defaultValue == null) continue;
                     if (value != null && defaultValue != null
                             && value.equals(defaultValue)) continue;
@@ -313,17 +333,15 @@ public class Json {
             return null;
         }
 
-        ObjectMap<String, FieldMetadata> fields = typeToFields.get(type);
-        if (fields == null) fields = cacheFields(type);
+        FieldMetadata[] fields = getFieldArray(type);
 
-        Object[] values = new Object[fields.size];
+        Object[] values = new Object[fields.length];
         classToDefaultValues.put(type, values);
 
-        int i = 0;
-        for (FieldMetadata metadata : fields.values()) {
-            Field field = metadata.field;
+        for (int i = 0, n = fields.length; i < n; i++) {
+            Field field = fields[i].field;
             try {
-                values[i++] = field.get(object);
+                values[i] = field.get(object);
             } catch (ReflectionException ex) {
                 throw new SerializationException("Error accessing field: "
                         + field.getName() + " (" + type.getName() + ")", ex);
@@ -813,6 +831,31 @@ public class Json {
         return (T) readValue(type, elementType, new JsonReader().parse(json));
     }
 
+    /**
+     * Reads the document without building a {@link JsonValue} DOM, see
+     * {@link #readValue(Class, Class, JsonPullParser)}. The parser is closed.
+     *
+     * @param type May be null if the type is unknown.
+     * @return May be null.
+     */
+    public <T> T fromJson(Class<T> type, JsonPullParser parser) {
+        return fromJson(type, null, parser);
+    }
+
+    /**
+     * @param type        May be null if the type is unknown.
+     * @param elementType May be null if the type is unknown.
+     * @return May be null.
+     */
+    public <T> T fromJson(Class<T> type, Class<?> elementType, JsonPullParser parser) {
+        try {
+            if (parser.next() == Token.end) return null;
+            return readValue(type, elementType, parser);
+        } finally {
+            parser.close();
+        }
+    }
+
     public void readField(Object object, String name, JsonValue jsonData) {
         readField(object, name, name, null, jsonData);
     }
@@ -892,6 +935,69 @@ public class Json {
         }
     }
 
+    /**
+     * Reads the field named by the current token of the parser with
+     * reflection.
+     */
+    void readUnknownField(Object object, JsonPullParser parser) {
+        Class<?> type = object.getClass();
+        String name = parser.getName();
+        if (typeName != null && typeName.equals(name))
+            throw new SerializationException("The " + typeName
+                    + " field must be the first field (" + type.getName() + ")");
+        ObjectMap<String, FieldMetadata> fields = typeToFields.get(type);
+        if (fields == null) fields = cacheFields(type);
+        FieldMetadata metadata = fields.get(name);
+        if (metadata == null) {
+            if (ignoreUnknownFields) {
+                if (debug)
+                    System.out.println("Ignoring unknown field: " + name + " (" + type.getName() + ")");
+                parser.skipValue();
+                return;
+            }
+            throw new SerializationException("Field not found: " + name + " (" + type.getName() + ")");
+        }
+        Field field = metadata.field;
+        Class<?> fieldType = field.getType();
+        try {
+            field.set(object, readValue(fieldType, metadata.elementType, parser));
+        } catch (ReflectionException ex) {
+            throw new SerializationException("Error accessing field: "
+                    + field.getName() + " (" + type.getName() + ")", ex);
+        } catch (SerializationException ex) {
+            ex.addTrace(field.getName() + " (" + type.getName() + ")");
+            throw ex;
+        } catch (RuntimeException runtimeEx) {
+            SerializationException ex = new SerializationException(runtimeEx);
+            ex.addTrace(field.getName() + " (" + type.getName() + ")");
+            throw ex;
+        }
+    }
+
+    /**
+     * Reads a field not handled by an {@link AccessorSerializer} with
+     * reflection.
+     */
+    void readUnknownField(Object object, JsonValue jsonData) {
+        Class<?> type = object.getClass();
+        ObjectMap<String, FieldMetadata> fields = typeToFields.get(type);
+        if (fields == null) fields = cacheFields(type);
+        FieldMetadata metadata = fields.get(jsonData.name());
+        if (metadata == null) {
+            if (ignoreUnknownFields) return;
+            throw new SerializationException("Field not found: "
+                    + jsonData.name() + " (" + type.getName() + ")");
+        }
+        Field field = metadata.field;
+        Class<?> fieldType = field.getType();
+        try {
+            field.set(object, readValue(fieldType, metadata.elementType, jsonData));
+        } catch (ReflectionException ex) {
+            throw new SerializationException("Error accessing field: "
+                    + field.getName() + " (" + type.getName() + ")", ex);
+        }
+    }
+
     /**
      * @param type May be null if the type is unknown.
      * @return May be null.
@@ -942,6 +1048,108 @@ public class Json {
         return (T) readValue(type, elementType, jsonData);
     }
 
+    /**
+     * Reads the value at the current token of the parser. Objects, arrays
+     * and maps are read directly from the parser, a {@link JsonValue} DOM
+     * is only built for the values read by a {@link Serializer} other than
+     * {@link AccessorSerializer}, by a {@link Serializable} or for objects
+     * of unknown type. The class of an object is only read from the first
+     * field, where it's written by {@link #writeValue(Object, Class, Class)}.
+     *
+     * @param type        May be null if the type is unknown.
+     * @param elementType May be null if the type is unknown.
+     * @return May be null.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T readValue(Class<T> type, Class<?> elementType, JsonPullParser parser) {
+        Token token = parser.getToken();
+        if (token == Token.startObject) return (T) readObject(type, elementType, parser);
+        if (token != Token.startArray || (type != null && classToSerializer.get(type) != null))
+            return readValue(type, elementType, parser.readValue());
+
+        if ((type == null || type == Object.class)
+                || ClassReflection.isAssignableFrom(Array.class, type)) {
+            Array<Object> newArray = (type == null || type == Object.class)
+                    ? new Array<Object>() : (Array<Object>) newInstance(type);
+            while (parser.next() != Token.endArray)
+                newArray.add(readValue(elementType, null, parser));
+            return (T) newArray;
+        }
+        if (ClassReflection.isAssignableFrom(List.class, type)) {
+            List<Object> newArray = type.isInterface()
+                    ? new ArrayList<Object>() : (List<Object>) newInstance(type);
+            while (parser.next() != Token.endArray)
+                newArray.add(readValue(elementType, null, parser));
+            return (T) newArray;
+        }
+        if (type.isArray()) {
+            Class<?> componentType = type.getComponentType();
+            if (elementType == null) elementType = componentType;
+            Array<Object> values = new Array<Object>();
+            while (parser.next() != Token.endArray)
+                values.add(readValue(elementType, null, parser));
+            Object newArray = ArrayReflection.newInstance(componentType, values.size);
+            for (int i = 0; i < values.size; i++)
+                ArrayReflection.set(newArray, i, values.get(i));
+            return (T) newArray;
+        }
+        throw new SerializationException("Unable to convert value to required type: array ("
+                + type.getName() + ")");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object readObject(Class<?> type, Class<?> elementType, JsonPullParser parser) {
+        Token token = parser.next();
+        if (token != Token.endObject && typeName != null && typeName.equals(parser.getName())) {
+            String className = parser.asString();
+            try {
+                type = ClassReflection.forName(className);
+            } catch (ReflectionException ex) {
+                type = tagToClass.get(className);
+                if (type == null) throw new SerializationException(ex);
+            }
+            token = parser.next();
+        }
+
+        Serializer<?> serializer = type == null ? null : classToSerializer.get(type);
+        if (serializer instanceof AccessorSerializer)
+            return ((AccessorSerializer<?>) serializer).read(this, parser);
+        if (type == null || serializer != null || type == String.class
+                || type == Integer.class || type == Boolean.class
+                || type == Float.class || type == Long.class
+                || type == Double.class || type == Short.class
+                || type == Byte.class || type == Character.class
+                || ClassReflection.isAssignableFrom(Enum.class, type)
+                || ClassReflection.isAssignableFrom(Serializable.class, type)) {
+            JsonValue jsonData = new JsonValue(JsonValue.ValueType.object);
+            if (token != Token.endObject) {
+                JsonValue child = parser.readValue();
+                jsonData.child = child;
+                jsonData.size = 1;
+                parser.readChildren(jsonData);
+            }
+            return readValue(type, elementType, jsonData);
+        }
+
+        Object object = newInstance(type);
+        if (object instanceof HashMap) {
+            HashMap<String, Object> result = (HashMap<String, Object>) object;
+            for (; token != Token.endObject; token = parser.next())
+                result.put(parser.getName(), readValue(elementType, null, parser));
+            return result;
+        }
+        if (object instanceof ObjectMap) {
+            ObjectMap<String, Object> result = (ObjectMap<String, Object>) object;
+            for (; token != Token.endObject; token = parser.next())
+                result.put(parser.getName(), readValue(elementType, null, parser));
+            return result;
+        }
+        for (; token != Token.endObject; token = parser.next()) {
+            readUnknownField(object, parser);
+        }
+        return object;
+    }
+
     /**
      * @param type May be null if the type is unknown.
      * @return May be null.
@@ -1155,7 +1363,7 @@ public class Json {
         return new JsonReader().parse(json).prettyPrint(settings);
     }
 
-    static private class FieldMetadata {
+    static class FieldMetadata {
         Field field;
         Class elementType;
 
@@ -1180,6 +1388,337 @@ public class Json {
         abstract public T read(Json json, JsonValue jsonData, Class type);
     }
 
+    /**
+     * Reads and writes one field of an object without reflection, used by
+     * {@link AccessorSerializer}. Subclasses are usually anonymous classes
+     * accessing the field directly.
+     */
+    static abstract public class FieldAccessor<T> {
+        final String name;
+        final Class<?> type;
+        final Class<?> elementType;
+
+        /**
+         * @param type the declared type of the field.
+         */
+        public FieldAccessor(String name, Class<?> type) {
+            this(name, type, null);
+        }
+
+        /**
+         * @param elementType May be null if the type is unknown.
+         */
+        public FieldAccessor(String name, Class<?> type, Class<?> elementType) {
+            this.name = name;
+            this.type = type;
+            this.elementType = elementType;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        abstract public Object get(T object);
+
+        abstract public void set(T object, Object value);
+
+        boolean isDefault(T object, T prototype) {
+            Object value = get(object);
+            Object defaultValue = get(prototype);
+            if (value == null) return defaultValue == null;
+            return value.equals(defaultValue);
+        }
+
+        void write(Json json, T object) {
+            json.writeValue(name, get(object), type, elementType);
+        }
+
+        void read(Json json, T object, JsonValue jsonData) {
+            set(object, json.readValue(type, elementType, jsonData));
+        }
+
+        void read(Json json, T object, JsonPullParser parser) {
+            set(object, json.readValue(type, elementType, parser));
+        }
+    }
+
+    static abstract public class IntAccessor<T> extends FieldAccessor<T> {
+        public IntAccessor(String name) {
+            super(name, int.class);
+        }
+
+        abstract public int getInt(T object);
+
+        abstract public void setInt(T object, int value);
+
+        public Object get(T object) {
+            return getInt(object);
+        }
+
+        public void set(T object, Object value) {
+            setInt(object, (Integer) value);
+        }
+
+        boolean isDefault(T object, T prototype) {
+            return getInt(object) == getInt(prototype);
+        }
+
+        void read(Json json, T object, JsonValue jsonData) {
+            setInt(object, jsonData.asInt());
+        }
+
+        void read(Json json, T object, JsonPullParser parser) {
+            setInt(object, parser.asInt());
+        }
+    }
+
+    static abstract public class LongAccessor<T> extends FieldAccessor<T> {
+        public LongAccessor(String name) {
+            super(name, long.class);
+        }
+
+        abstract public long getLong(T object);
+
+        abstract public void setLong(T object, long value);
+
+        public Object get(T object) {
+            return getLong(object);
+        }
+
+        public void set(T object, Object value) {
+            setLong(object, (Long) value);
+        }
+
+        boolean isDefault(T object, T prototype) {
+            return getLong(object) == getLong(prototype);
+        }
+
+        void read(Json json, T object, JsonValue jsonData) {
+            setLong(object, jsonData.asLong());
+        }
+
+        void read(Json json, T object, JsonPullParser parser) {
+            setLong(object, parser.asLong());
+        }
+    }
+
+    static abstract public class FloatAccessor<T> extends FieldAccessor<T> {
+        public FloatAccessor(String name) {
+            super(name, float.class);
+        }
+
+        abstract public float getFloat(T object);
+
+        abstract public void setFloat(T object, float value);
+
+        public Object get(T object) {
+            return getFloat(object);
+        }
+
+        public void set(T object, Object value) {
+            setFloat(object, (Float) value);
+        }
+
+        boolean isDefault(T object, T prototype) {
+            return Float.floatToIntBits(getFloat(object))
+                    == Float.floatToIntBits(getFloat(prototype));
+        }
+
+        void read(Json json, T object, JsonValue jsonData) {
+            setFloat(object, jsonData.asFloat());
+        }
+
+        void read(Json json, T object, JsonPullParser parser) {
+            setFloat(object, parser.asFloat());
+        }
+    }
+
+    static abstract public class DoubleAccessor<T> extends FieldAccessor<T> {
+        public DoubleAccessor(String name) {
+            super(name, double.class);
+        }
+
+        abstract public double getDouble(T object);
+
+        abstract public void setDouble(T object, double value);
+
+        public Object get(T object) {
+            return getDouble(object);
+        }
+
+        public void set(T object, Object value) {
+            setDouble(object, (Double) value);
+        }
+
+        boolean isDefault(T object, T prototype) {
+            return Double.doubleToLongBits(getDouble(object))
+                    == Double.doubleToLongBits(getDouble(prototype));
+        }
+
+        void read(Json json, T object, JsonValue jsonData) {
+            setDouble(object, jsonData.asDouble());
+        }
+
+        void read(Json json, T object, JsonPullParser parser) {
+            setDouble(object, parser.asDouble());
+        }
+    }
+
+    static abstract public class BooleanAccessor<T> extends FieldAccessor<T> {
+        public BooleanAccessor(String name) {
+            super(name, boolean.class);
+        }
+
+        abstract public boolean getBoolean(T object);
+
+        abstract public void setBoolean(T object, boolean value);
+
+        public Object get(T object) {
+            return getBoolean(object);
+        }
+
+        public void set(T object, Object value) {
+            setBoolean(object, (Boolean) value);
+        }
+
+        boolean isDefault(T object, T prototype) {
+            return getBoolean(object) == getBoolean(prototype);
+        }
+
+        void read(Json json, T object, JsonValue jsonData) {
+            setBoolean(object, jsonData.asBoolean());
+        }
+
+        void read(Json json, T object, JsonPullParser parser) {
+            setBoolean(object, parser.asBoolean());
+        }
+    }
+
+    /**
+     * Serializer built once per type from {@link FieldAccessor}s, it reads
+     * and writes the same fields as the reflection based
+     * {@link #writeFields(Object)}/{@link #readFields(Object, JsonValue)},
+     * in accessor order, without looking up or invoking reflection fields.
+     * Fields without an accessor are not written, and are read through
+     * reflection.
+     * <p/>
+     * Register it with {@link #setSerializer(Class, Serializer)}, override
+     * {@link #newObject()} to also create the objects without reflection.
+     */
+    static public class AccessorSerializer<T> implements Serializer<T> {
+        private final Class<T> type;
+        private final FieldAccessor<T>[] accessors;
+        private final ObjectMap<String, FieldAccessor<T>> nameToAccessor
+                = new ObjectMap<String, FieldAccessor<T>>();
+        private T prototype;
+        private boolean prototypeCreated;
+
+        // the accessors are only read, never stored into
+        @SafeVarargs
+        @SuppressWarnings("varargs")
+        public AccessorSerializer(Class<T> type, FieldAccessor<T>... accessors) {
+            this.type = type;
+            this.accessors = accessors;
+            for (FieldAccessor<T> accessor : accessors) {
+                nameToAccessor.put(accessor.name, accessor);
+            }
+        }
+
+        /**
+         * @return a new object, or null to create it with reflection.
+         */
+        protected T newObject() {
+            return null;
+        }
+
+        private T create(Json json) {
+            T object = newObject();
+            if (object == null) object = type.cast(json.newInstance(type));
+            return object;
+        }
+
+        private T getPrototype(Json json) {
+            if (!prototypeCreated) {
+                prototypeCreated = true;
+                try {
+                    prototype = create(json);
+                } catch (Exception ex) {
+                    prototype = null;
+                }
+            }
+            return prototype;
+        }
+
+        public void write(Json json, T object, Class knownType) {
+            json.writeObjectStart(object.getClass(), knownType);
+            T defaults = json.usePrototypes ? getPrototype(json) : null;
+            FieldAccessor<T>[] accessors = this.accessors;
+            for (int i = 0, n = accessors.length; i < n; i++) {
+                FieldAccessor<T> accessor = accessors[i];
+                try {
+                    if (defaults != null && accessor.isDefault(object, defaults)) continue;
+                    accessor.write(json, object);
+                } catch (SerializationException ex) {
+                    ex.addTrace(accessor.name + " (" + type.getName() + ")");
+                    throw ex;
+                } catch (RuntimeException runtimeEx) {
+                    SerializationException ex = new SerializationException(runtimeEx);
+                    ex.addTrace(accessor.name + " (" + type.getName() + ")");
+                    throw ex;
+                }
+            }
+            json.writeObjectEnd();
+        }
+
+        public T read(Json json, JsonValue jsonData, Class type) {
+            T object = create(json);
+            for (JsonValue child = jsonData.child; child != null; child = child.next) {
+                FieldAccessor<T> accessor = nameToAccessor.get(child.name());
+                if (accessor == null) {
+                    json.readUnknownField(object, child);
+                    continue;
+                }
+                try {
+                    accessor.read(json, object, child);
+                } catch (SerializationException ex) {
+                    ex.addTrace(accessor.name + " (" + this.type.getName() + ")");
+                    throw ex;
+                } catch (RuntimeException runtimeEx) {
+                    SerializationException ex = new SerializationException(runtimeEx);
+                    ex.addTrace(accessor.name + " (" + this.type.getName() + ")");
+                    throw ex;
+                }
+            }
+            return object;
+        }
+
+        /**
+         * Reads the object from the parser, positioned at the first field or
+         * at the end of the object.
+         */
+        T read(Json json, JsonPullParser parser) {
+            T object = create(json);
+            for (Token token = parser.getToken(); token != Token.endObject; token = parser.next()) {
+                FieldAccessor<T> accessor = nameToAccessor.get(parser.getName());
+                if (accessor == null) {
+                    json.readUnknownField(object, parser);
+                    continue;
+                }
+                try {
+                    accessor.read(json, object, parser);
+                } catch (SerializationException ex) {
+                    ex.addTrace(accessor.name + " (" + type.getName() + ")");
+                    throw ex;
+                } catch (RuntimeException runtimeEx) {
+                    SerializationException ex = new SerializationException(runtimeEx);
+                    ex.addTrace(accessor.name + " (" + type.getName() + ")");
+                    throw ex;
+                }
+            }
+            return object;
+        }
+    }
+
     static public interface Serializable {
         public void write(Json json);
 
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.utils;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.utils.JsonValue.ValueType;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Pull style JSON parser, the document is read incrementally one token at a
+ * time instead of being parsed into a {@link JsonValue} DOM, so the memory
+ * used doesn't depend on the size of the document. Subtrees which are not
+ * needed can be skipped with {@link #skipValue()}, or read as a DOM with
+ * {@link #readValue()}. Objects can be read directly with
+ * {@link Json#fromJson(Class, JsonPullParser)}.
+ * <p/>
+ * <pre>
+ * JsonPullParser parser = new JsonStreamReader(reader);
+ * while (parser.next() != Token.end) {
+ *     if (parser.getToken() == Token.startObject &amp;&amp; "skipped".equals(parser.getName()))
+ *         parser.skipValue();
+ * }
+ * </pre>
+ *
+ * @see JsonStreamReader
+ * @see UBJsonStreamReader
+ */
+public abstract class JsonPullParser {
+
+    /**
+     * Tokens returned by {@link JsonPullParser#next()}.
+     */
+    static public enum Token {
+        startObject, endObject, startArray, endArray,
+        stringValue, doubleValue, longValue, booleanValue, nullValue,
+        /**
+         * The end of the document.
+         */
+        end
+    }
+
+    protected Token token;
+    protected String name;
+    /**
+     * The number of objects and arrays the current token is in, a start token
+     * is counted in its own container.
+     */
+    protected int depth;
+    /**
+     * Set while skipping, names and string values need not be created.
+     */
+    protected boolean skipping;
+    /**
+     * The current scalar value.
+     */
+    protected final JsonValue value = new JsonValue(ValueType.nullValue);
+
+    /**
+     * Advances to the next token.
+     *
+     * @return the new current token, {@link Token#end} when the document is
+     * read.
+     * @throws SerializationException if the document is malformed.
+     */
+    abstract public Token next();
+
+    /**
+     * Closes the underlying reader or stream.
+     */
+    abstract public void close();
+
+    /**
+     * @return the current token, null before the first call to
+     * {@link #next()}.
+     */
+    public Token getToken() {
+        return token;
+    }
+
+    /**
+     * @return the name of the current value if it's in an object, else null.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return true if the current token is a string, number, boolean or null.
+     */
+    public boolean isScalar() {
+        return token != null && token.ordinal() >= Token.stringValue.ordinal()
+                && token != Token.end;
+    }
+
+    /**
+     * @return the current scalar value as a string, may be null.
+     */
+    public String asString() {
+        checkScalar();
+        return value.asString();
+    }
+
+    public float asFloat() {
+        checkScalar();
+        return value.asFloat();
+    }
+
+    public double asDouble() {
+        checkScalar();
+        return value.asDouble();
+    }
+
+    public long asLong() {
+        checkScalar();
+        return value.asLong();
+    }
+
+    public int asInt() {
+        checkScalar();
+        return value.asInt();
+    }
+
+    public boolean asBoolean() {
+        checkScalar();
+        return value.asBoolean();
+    }
+
+    /**
+     * Skips the current value. If the current token starts an object or an
+     * array, all tokens up to its end are read without creating names or
+     * strings, else nothing is done.
+     */
+    public void skipValue() {
+        if (token != Token.startObject && token != Token.startArray) return;
+        int targetDepth = depth - 1;
+        skipping = true;
+        try {
+            while (true) {
+                Token next = next();
+                if (next == Token.end)
+                    throw new SerializationException("Error parsing JSON, unexpected end of document.");
+                if (depth == targetDepth && (next == Token.endObject || next == Token.endArray)) break;
+            }
+        } finally {
+            skipping = false;
+        }
+    }
+
+    /**
+     * Reads the current value as a DOM. If the current token starts an
+     * object or an array, all tokens up to its end are read.
+     *
+     * @return the value, named with the current name.
+     */
+    public JsonValue readValue() {
+        if (token == null || token == Token.end)
+            throw new SerializationException("No value to read, call next() first.");
+        String valueName = name;
+        JsonValue result;
+        switch (token) {
+            case startObject:
+                result = new JsonValue(ValueType.object);
+                readChildren(result);
+                break;
+            case startArray:
+                result = new JsonValue(ValueType.array);
+                readChildren(result);
+                break;
+            case stringValue:
+                result = new JsonValue(value.asString());
+                break;
+            case doubleValue:
+                result = new JsonValue(value.asDouble());
+                break;
+            case longValue:
+                result = new JsonValue(value.asLong());
+                break;
+            case booleanValue:
+                result = new JsonValue(value.asBoolean());
+                break;
+            case nullValue:
+                result = new JsonValue(ValueType.nullValue);
+                break;
+            default:
+                throw new SerializationException("Expected a value: " + token);
+        }
+        result.setName(valueName);
+        return result;
+    }
+
+    /**
+     * Reads the remaining values of the current object or array and adds
+     * them to the parent.
+     */
+    void readChildren(JsonValue parent) {
+        JsonValue last = parent.child;
+        while (last != null && last.next != null) last = last.next;
+        while (true) {
+            Token next = next();
+            if (next == Token.endObject || next == Token.endArray) break;
+            if (next == Token.end)
+                throw new SerializationException("Error parsing JSON, unexpected end of document.");
+            JsonValue child = readValue();
+            if (last == null) {
+                parent.child = child;
+            } else {
+                last.next = child;
+                child.prev = last;
+            }
+            last = child;
+            parent.size++;
+        }
+    }
+
+    private void checkScalar() {
+        if (!isScalar())
+            throw new IllegalStateException("Current token is not a value: " + token);
+    }
+}
@@ -0,0 +1,901 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.utils;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.engine.utils.reflect.ArrayReflection;
+import com.guidebee.game.engine.utils.reflect.ClassReflection;
+import com.guidebee.game.engine.utils.reflect.ReflectionException;
+import com.guidebee.utils.Json.FieldMetadata;
+import com.guidebee.utils.collections.Array;
+import com.guidebee.utils.collections.ObjectMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Compact binary format for the object graphs {@link Json} serializes, for
+ * save games and state sync. The field layout of each class is written once
+ * per snapshot as a schema, objects are then written as positional fields,
+ * integers are varint packed and repeated strings are written once.
+ * <p/>
+ * Fields are matched by name when reading, fields added to or removed from
+ * a class since the snapshot was written are ignored. Types with a
+ * {@link Json.Serializer} or implementing {@link Json.Serializable} are
+ * stored as JSON text.
+ * <p/>
+ * {@link #writeDelta(Object)} only writes the fields which changed since the
+ * last snapshot written, the reader must have read that snapshot last.
+ * A JsonSnapshot keeps the last snapshot written and the last snapshot read,
+ * use one instance per stream.
+ */
+public class JsonSnapshot {
+    private static final int MAGIC = 0x4753;
+    private static final int VERSION = 1;
+    private static final int FLAG_DELTA = 1;
+
+    private static final int NULL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int INT = 3;
+    private static final int LONG = 4;
+    private static final int FLOAT = 5;
+    private static final int DOUBLE = 6;
+    private static final int STRING = 7;
+    private static final int STRING_REF = 8;
+    private static final int ENUM = 9;
+    private static final int OBJECT = 10;
+    private static final int ARRAY = 11;
+    private static final int MAP = 12;
+    private static final int JSON = 13;
+    private static final int UNCHANGED = 14;
+
+    private final Json json;
+
+    private Object lastWritten;
+    private int writeSequence;
+    private Object lastRead;
+    private int readSequence = -1;
+
+    private byte[] bytes = new byte[256];
+    private int position;
+    private int limit;
+    private boolean delta;
+
+    private final ObjectMap<String, Integer> stringIds = new ObjectMap<String, Integer>();
+    private final Array<String> strings = new Array<String>();
+    private final ObjectMap<Class<?>, Integer> classIds = new ObjectMap<Class<?>, Integer>();
+    private final Array<ClassInfo> classes = new Array<ClassInfo>();
+
+    /**
+     * @param json the field layouts, class tags, serializers and element types
+     *             of this json are used.
+     */
+    public JsonSnapshot(Json json) {
+        this.json = json;
+    }
+
+    /**
+     * Writes a full snapshot, which becomes the base of the next delta.
+     */
+    public byte[] write(Object object) {
+        return write(object, false);
+    }
+
+    /**
+     * Writes only what changed since the last snapshot written, or a full
+     * snapshot if none was written yet.
+     */
+    public byte[] writeDelta(Object object) {
+        return write(object, lastWritten != null);
+    }
+
+    public void write(Object object, OutputStream output) {
+        writeBytes(write(object), output);
+    }
+
+    public void writeDelta(Object object, OutputStream output) {
+        writeBytes(writeDelta(object), output);
+    }
+
+    /**
+     * Reads a full or delta snapshot.
+     *
+     * @param type May be null if the type is unknown.
+     * @throws SerializationException if a delta doesn't follow the last
+     *                                snapshot read, or the data is truncated
+     *                                or corrupt.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T read(Class<T> type, byte[] data) {
+        bytes = data;
+        position = 0;
+        limit = data.length;
+        try {
+            if (readUnsignedShort() != MAGIC)
+                throw new SerializationException("Not a snapshot.");
+            int version = readByte();
+            if (version != VERSION)
+                throw new SerializationException("Unsupported snapshot version: " + version);
+            delta = (readByte() & FLAG_DELTA) != 0;
+            int sequence = readVarInt();
+            if (delta && readVarInt() != readSequence)
+                throw new SerializationException("Delta snapshot " + sequence
+                        + " doesn't follow the last snapshot read: " + readSequence);
+            Object root = readValue(delta ? lastRead : null);
+            T result = (T) toObject(root, type, null);
+            lastRead = root;
+            readSequence = sequence;
+            return result;
+        } catch (SerializationException ex) {
+            throw ex;
+        } catch (RuntimeException ex) {
+            throw new SerializationException("Invalid snapshot.", ex);
+        } finally {
+            bytes = new byte[256];
+            limit = 0;
+            strings.clear();
+            classes.clear();
+        }
+    }
+
+    public <T> T read(Class<T> type, InputStream input) {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            int count;
+            while ((count = input.read(chunk)) != -1) buffer.write(chunk, 0, count);
+            return read(type, buffer.toByteArray());
+        } catch (IOException ex) {
+            throw new SerializationException(ex);
+        } finally {
+            StreamUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Forgets the last snapshots written and read.
+     */
+    public void reset() {
+        lastWritten = null;
+        lastRead = null;
+        readSequence = -1;
+    }
+
+    private byte[] write(Object object, boolean delta) {
+        this.delta = delta;
+        position = 0;
+        try {
+            Object base = delta ? lastWritten : null;
+            Object root = toNode(object, null, base);
+            writeShort(MAGIC);
+            writeByte(VERSION);
+            writeByte(delta ? FLAG_DELTA : 0);
+            int sequence = writeSequence + 1;
+            writeVarInt(sequence);
+            if (delta) writeVarInt(writeSequence);
+            writeValue(root, base);
+            // only a snapshot fully written becomes the base of the next one
+            writeSequence = sequence;
+            lastWritten = root;
+            byte[] result = new byte[position];
+            System.arraycopy(bytes, 0, result, 0, position);
+            return result;
+        } finally {
+            stringIds.clear();
+            classIds.clear();
+        }
+    }
+
+    private static void writeBytes(byte[] data, OutputStream output) {
+        try {
+            output.write(data);
+        } catch (IOException ex) {
+            throw new SerializationException(ex);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // object graph to nodes
+
+    /**
+     * Values are stored as nodes, so the last snapshot can be compared with
+     * after the objects were modified.
+     */
+    private static abstract class Node {
+        Class<?> type;
+        /**
+         * Whether the node differs from the node it was built against.
+         */
+        boolean changed = true;
+    }
+
+    private static class ObjectNode extends Node {
+        /**
+         * The local fields matching the values, set when read.
+         */
+        FieldMetadata[] fields;
+        Object[] values;
+    }
+
+    private static class ArrayNode extends Node {
+        Object[] items;
+    }
+
+    private static class MapNode extends Node {
+        String[] keys;
+        Object[] values;
+        ObjectMap<String, Object> byKey;
+
+        Object get(String key) {
+            if (byKey == null) {
+                byKey = new ObjectMap<String, Object>(keys.length);
+                for (int i = 0; i < keys.length; i++) byKey.put(keys[i], values[i]);
+            }
+            return byKey.get(key);
+        }
+    }
+
+    private static class JsonNode extends Node {
+        String text;
+    }
+
+    private static boolean same(Object node, Object previous) {
+        if (node instanceof Node) return !((Node) node).changed;
+        if (node == null) return previous == null;
+        return previous != null && node.getClass() == previous.getClass() && node.equals(previous);
+    }
+
+    private Object toNode(Object value, Class<?> elementType, Object previous) {
+        if (value == null) return null;
+        Class<?> type = value.getClass();
+        if (type == String.class || type == Boolean.class || type == Integer.class
+                || type == Long.class || type == Float.class || type == Double.class
+                || value instanceof Enum) {
+            return value;
+        }
+        if (type == Short.class || type == Byte.class) return ((Number) value).intValue();
+        if (type == Character.class) return (int) (Character) value;
+
+        if (value instanceof Json.Serializable || json.getSerializer(type) != null) {
+            JsonNode node = new JsonNode();
+            node.type = type;
+            node.text = json.toJson(value, type);
+            if (previous instanceof JsonNode) {
+                JsonNode previousNode = (JsonNode) previous;
+                node.changed = previousNode.type != type || !previousNode.text.equals(node.text);
+            }
+            return node;
+        }
+
+        if (value instanceof Array || value instanceof Collection || type.isArray()) {
+            int size = value instanceof Array ? ((Array<?>) value).size
+                    : value instanceof Collection ? ((Collection<?>) value).size()
+                    : ArrayReflection.getLength(value);
+            ArrayNode node = new ArrayNode();
+            node.type = type;
+            node.items = new Object[size];
+            ArrayNode previousNode = previous instanceof ArrayNode
+                    && ((ArrayNode) previous).type == type ? (ArrayNode) previous : null;
+            boolean changed = previousNode == null || previousNode.items.length != size;
+            Iterator<?> iterator = value instanceof Collection ? ((Collection<?>) value).iterator() : null;
+            for (int i = 0; i < size; i++) {
+                Object item = value instanceof Array ? ((Array<?>) value).get(i)
+                        : iterator != null ? iterator.next() : ArrayReflection.get(value, i);
+                Object previousItem = previousNode != null && i < previousNode.items.length
+                        ? previousNode.items[i] : null;
+                Object itemNode = toNode(item, elementType, previousItem);
+                node.items[i] = itemNode;
+                if (!changed && !same(itemNode, previousItem)) changed = true;
+            }
+            node.changed = changed;
+            return node;
+        }
+
+        if (value instanceof ObjectMap || value instanceof Map) {
+            MapNode node = new MapNode();
+            node.type = type;
+            MapNode previousNode = previous instanceof MapNode
+                    && ((MapNode) previous).type == type ? (MapNode) previous : null;
+            int size = value instanceof ObjectMap ? ((ObjectMap<?, ?>) value).size : ((Map<?, ?>) value).size();
+            node.keys = new String[size];
+            node.values = new Object[size];
+            boolean changed = previousNode == null || previousNode.keys.length != size;
+            int i = 0;
+            if (value instanceof ObjectMap) {
+                for (ObjectMap.Entry<?, ?> entry : ((ObjectMap<?, ?>) value).entries()) {
+                    changed |= putEntry(node, i++, entry.key, entry.value, elementType, previousNode);
+                }
+            } else {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    changed |= putEntry(node, i++, entry.getKey(), entry.getValue(), elementType, previousNode);
+                }
+            }
+            node.changed = changed;
+            return node;
+        }
+
+        FieldMetadata[] fields = json.getFieldArray(type);
+        ObjectNode node = new ObjectNode();
+        node.type = type;
+        node.values = new Object[fields.length];
+        ObjectNode previousNode = previous instanceof ObjectNode
+                && ((ObjectNode) previous).type == type ? (ObjectNode) previous : null;
+        boolean changed = previousNode == null;
+        for (int i = 0; i < fields.length; i++) {
+            FieldMetadata metadata = fields[i];
+            Object fieldValue;
+            try {
+                fieldValue = metadata.field.get(value);
+            } catch (ReflectionException ex) {
+                throw new SerializationException("Error accessing field: "
+                        + metadata.field.getName() + " (" + type.getName() + ")", ex);
+            }
+            Object previousValue = previousNode != null ? previousNode.values[i] : null;
+            Object child = toNode(fieldValue, metadata.elementType, previousValue);
+            node.values[i] = child;
+            if (!changed && !same(child, previousValue)) changed = true;
+        }
+        node.changed = changed;
+        return node;
+    }
+
+    private boolean putEntry(MapNode node, int index, Object key, Object value,
+                             Class<?> elementType, MapNode previousNode) {
+        String name = String.valueOf(key);
+        Object previousValue = previousNode != null ? previousNode.get(name) : null;
+        Object child = toNode(value, elementType, previousValue);
+        node.keys[index] = name;
+        node.values[index] = child;
+        return previousNode == null || !same(child, previousValue);
+    }
+
+    // ------------------------------------------------------------------------
+    // encoding
+
+    private void writeValue(Object value, Object previous) {
+        if (value == null) {
+            writeByte(NULL);
+        } else if (value instanceof Node) {
+            writeNode((Node) value, previous);
+        } else if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof Integer) {
+            writeByte(INT);
+            int v = (Integer) value;
+            writeVarInt((v << 1) ^ (v >> 31));
+        } else if (value instanceof Long) {
+            writeByte(LONG);
+            long v = (Long) value;
+            writeVarLong((v << 1) ^ (v >> 63));
+        } else if (value instanceof Float) {
+            writeByte(FLOAT);
+            writeInt(Float.floatToIntBits((Float) value));
+        } else if (value instanceof Double) {
+            writeByte(DOUBLE);
+            long bits = Double.doubleToLongBits((Double) value);
+            writeInt((int) (bits >>> 32));
+            writeInt((int) bits);
+        } else if (value instanceof Boolean) {
+            writeByte((Boolean) value ? TRUE : FALSE);
+        } else {
+            Enum<?> constant = (Enum<?>) value;
+            writeByte(ENUM);
+            writeClass(constant.getDeclaringClass(), false);
+            writeString(constant.name());
+        }
+    }
+
+    private void writeNode(Node node, Object previous) {
+        if (node instanceof ObjectNode) {
+            ObjectNode objectNode = (ObjectNode) node;
+            writeByte(OBJECT);
+            writeClass(node.type, true);
+            Object[] values = objectNode.values;
+            if (delta && previous instanceof ObjectNode && ((ObjectNode) previous).type == node.type) {
+                Object[] previousValues = ((ObjectNode) previous).values;
+                writeChangedMask(values, previousValues, values.length);
+                for (int i = 0; i < values.length; i++) {
+                    if (!same(values[i], previousValues[i])) writeValue(values[i], previousValues[i]);
+                }
+            } else {
+                for (int i = 0; i < values.length; i++) writeValue(values[i], null);
+            }
+        } else if (node instanceof ArrayNode) {
+            Object[] items = ((ArrayNode) node).items;
+            writeByte(ARRAY);
+            writeClass(node.type, false);
+            writeVarInt(items.length);
+            int common = 0;
+            Object[] previousItems = null;
+            if (delta && previous instanceof ArrayNode && ((ArrayNode) previous).type == node.type) {
+                previousItems = ((ArrayNode) previous).items;
+                common = Math.min(items.length, previousItems.length);
+                writeChangedMask(items, previousItems, common);
+            }
+            for (int i = 0; i < items.length; i++) {
+                if (i < common) {
+                    if (!same(items[i], previousItems[i])) writeValue(items[i], previousItems[i]);
+                } else {
+                    writeValue(items[i], null);
+                }
+            }
+        } else if (node instanceof MapNode) {
+            MapNode mapNode = (MapNode) node;
+            writeByte(MAP);
+            writeClass(node.type, false);
+            writeVarInt(mapNode.keys.length);
+            MapNode previousNode = delta && previous instanceof MapNode
+                    && ((MapNode) previous).type == node.type ? (MapNode) previous : null;
+            for (int i = 0; i < mapNode.keys.length; i++) {
+                writeString(mapNode.keys[i]);
+                Object previousValue = previousNode != null ? previousNode.get(mapNode.keys[i]) : null;
+                if (previousNode != null && previousValue != null && same(mapNode.values[i], previousValue)) {
+                    writeByte(UNCHANGED);
+                } else {
+                    writeValue(mapNode.values[i], previousValue);
+                }
+            }
+        } else {
+            writeByte(JSON);
+            writeClass(node.type, false);
+            writeString(((JsonNode) node).text);
+        }
+    }
+
+    private void writeChangedMask(Object[] values, Object[] previousValues, int count) {
+        int mask = 0;
+        for (int i = 0; i < count; i++) {
+            if (!same(values[i], previousValues[i])) mask |= 1 << (i & 7);
+            if ((i & 7) == 7) {
+                writeByte(mask);
+                mask = 0;
+            }
+        }
+        if ((count & 7) != 0) writeByte(mask);
+    }
+
+    /**
+     * Writes the id of the class, the first time a class is written its
+     * name, and for objects its field names, follow.
+     */
+    private void writeClass(Class<?> type, boolean withFields) {
+        Integer id = classIds.get(type);
+        if (id != null) {
+            writeVarInt(id);
+            return;
+        }
+        writeVarInt(classIds.size);
+        classIds.put(type, classIds.size);
+        writeString(json.getTag(type));
+        if (withFields) {
+            FieldMetadata[] fields = json.getFieldArray(type);
+            writeVarInt(fields.length);
+            for (int i = 0; i < fields.length; i++) writeString(fields[i].field.getName());
+        }
+    }
+
+    private void writeString(String value) {
+        Integer id = stringIds.get(value);
+        if (id != null) {
+            writeByte(STRING_REF);
+            writeVarInt(id);
+            return;
+        }
+        stringIds.put(value, stringIds.size);
+        writeByte(STRING);
+        int length = value.length();
+        ensureCapacity(5 + length * 3);
+        writeVarInt(length);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes[position++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[position++] = (byte) (0xC0 | (c >> 6));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                bytes[position++] = (byte) (0xE0 | (c >> 12));
+                bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (position + count > bytes.length) {
+            byte[] newBytes = new byte[Math.max(position + count, bytes.length << 1)];
+            System.arraycopy(bytes, 0, newBytes, 0, position);
+            bytes = newBytes;
+        }
+    }
+
+    private void writeByte(int value) {
+        if (position == bytes.length) ensureCapacity(1);
+        bytes[position++] = (byte) value;
+    }
+
+    private void writeShort(int value) {
+        writeByte(value >> 8);
+        writeByte(value);
+    }
+
+    private void writeInt(int value) {
+        ensureCapacity(4);
+        bytes[position++] = (byte) (value >> 24);
+        bytes[position++] = (byte) (value >> 16);
+        bytes[position++] = (byte) (value >> 8);
+        bytes[position++] = (byte) value;
+    }
+
+    private void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+    }
+
+    private void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+    }
+
+    // ------------------------------------------------------------------------
+    // decoding
+
+    /**
+     * A class read from a snapshot, with the local fields matching its
+     * fields.
+     */
+    private static class ClassInfo {
+        Class<?> type;
+        String[] fieldNames;
+        FieldMetadata[] fields;
+    }
+
+    private Object readValue(Object previous) {
+        int tag = readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            case INT: {
+                int v = readVarInt();
+                return (v >>> 1) ^ -(v & 1);
+            }
+            case LONG: {
+                long v = readVarLong();
+                return (v >>> 1) ^ -(v & 1);
+            }
+            case FLOAT:
+                return Float.intBitsToFloat(readInt());
+            case DOUBLE: {
+                long high = readInt();
+                long low = readInt() & 0xFFFFFFFFL;
+                return Double.longBitsToDouble((high << 32) | low);
+            }
+            case STRING:
+            case STRING_REF:
+                return readString(tag);
+            case ENUM: {
+                Class<?> type = readClass(false).type;
+                return enumValue(type, readString(readByte()));
+            }
+            case OBJECT:
+                return readObject(previous);
+            case ARRAY:
+                return readArray(previous);
+            case MAP:
+                return readMap(previous);
+            case JSON: {
+                JsonNode node = new JsonNode();
+                node.type = readClass(false).type;
+                node.text = readString(readByte());
+                return node;
+            }
+            case UNCHANGED:
+                return previous;
+        }
+        throw new SerializationException("Unknown snapshot value type: " + tag);
+    }
+
+    private ObjectNode readObject(Object previous) {
+        ClassInfo info = readClass(true);
+        ObjectNode node = new ObjectNode();
+        node.type = info.type;
+        node.fields = info.fields;
+        int count = info.fieldNames.length;
+        node.values = new Object[count];
+        if (delta && previous instanceof ObjectNode && ((ObjectNode) previous).type == info.type) {
+            ObjectNode previousNode = (ObjectNode) previous;
+            if (previousNode.values.length != count)
+                throw new SerializationException("Delta snapshot doesn't match its base: " + info.type.getName());
+            readChangedMask(node.values, previousNode.values, count);
+            for (int i = 0; i < count; i++) {
+                if (node.values[i] == CHANGED) node.values[i] = readValue(previousNode.values[i]);
+            }
+        } else {
+            for (int i = 0; i < count; i++) node.values[i] = readValue(null);
+        }
+        return node;
+    }
+
+    private ArrayNode readArray(Object previous) {
+        ArrayNode node = new ArrayNode();
+        node.type = readClass(false).type;
+        Object[] previousItems = null;
+        if (delta && previous instanceof ArrayNode && ((ArrayNode) previous).type == node.type) {
+            previousItems = ((ArrayNode) previous).items;
+        }
+        // unchanged items of the base take no bytes
+        int count = readCount(previousItems != null ? previousItems.length : 0);
+        node.items = new Object[count];
+        int common = previousItems != null ? Math.min(count, previousItems.length) : 0;
+        readChangedMask(node.items, previousItems, common);
+        for (int i = 0; i < count; i++) {
+            if (i < common) {
+                if (node.items[i] == CHANGED) node.items[i] = readValue(previousItems[i]);
+            } else {
+                node.items[i] = readValue(null);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Marks the values to read after their change mask.
+     */
+    private static final Object CHANGED = new Object();
+
+    /**
+     * Copies the unchanged values and marks the changed ones with
+     * {@link #CHANGED}.
+     */
+    private void readChangedMask(Object[] values, Object[] previousValues, int count) {
+        int mask = 0;
+        for (int i = 0; i < count; i++) {
+            if ((i & 7) == 0) mask = readByte();
+            values[i] = (mask & (1 << (i & 7))) != 0 ? CHANGED : previousValues[i];
+        }
+    }
+
+    private MapNode readMap(Object previous) {
+        MapNode node = new MapNode();
+        node.type = readClass(false).type;
+        int count = readCount(0);
+        node.keys = new String[count];
+        node.values = new Object[count];
+        MapNode previousNode = delta && previous instanceof MapNode
+                && ((MapNode) previous).type == node.type ? (MapNode) previous : null;
+        for (int i = 0; i < count; i++) {
+            node.keys[i] = readString(readByte());
+            node.values[i] = readValue(previousNode != null ? previousNode.get(node.keys[i]) : null);
+        }
+        return node;
+    }
+
+    private ClassInfo readClass(boolean withFields) {
+        int id = readVarInt();
+        if (id >= 0 && id < classes.size) {
+            ClassInfo info = classes.get(id);
+            if (withFields && info.fieldNames == null)
+                throw new SerializationException("Invalid snapshot class id: " + id);
+            return info;
+        }
+        if (id != classes.size) throw new SerializationException("Invalid snapshot class id: " + id);
+        ClassInfo info = new ClassInfo();
+        classes.add(info);
+        info.type = json.getClass(readString(readByte()));
+        if (withFields) {
+            int count = readCount(0);
+            info.fieldNames = new String[count];
+            info.fields = new FieldMetadata[count];
+            FieldMetadata[] localFields = json.getFieldArray(info.type);
+            for (int i = 0; i < count; i++) {
+                String name = readString(readByte());
+                info.fieldNames[i] = name;
+                for (int j = 0; j < localFields.length; j++) {
+                    if (localFields[j].field.getName().equals(name)) {
+                        info.fields[i] = localFields[j];
+                        break;
+                    }
+                }
+            }
+        }
+        return info;
+    }
+
+    private String readString(int tag) {
+        if (tag == STRING_REF) {
+            int id = readVarInt();
+            if (id < 0 || id >= strings.size)
+                throw new SerializationException("Invalid snapshot string id: " + id);
+            return strings.get(id);
+        }
+        if (tag != STRING) throw new SerializationException("Snapshot string expected: " + tag);
+        int length = readCount(0);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            int c = readByte();
+            if (c >= 0xE0) {
+                c = ((c & 0x0F) << 12) | ((readByte() & 0x3F) << 6) | (readByte() & 0x3F);
+            } else if (c >= 0xC0) {
+                c = ((c & 0x1F) << 6) | (readByte() & 0x3F);
+            }
+            chars[i] = (char) c;
+        }
+        String value = new String(chars);
+        strings.add(value);
+        return value;
+    }
+
+    /**
+     * Reads the number of items of a string, array, map or field list. Each
+     * item but the free ones takes at least one byte, so a corrupt count is
+     * caught before allocating for it.
+     */
+    private int readCount(int free) {
+        int count = readVarInt();
+        if (count < 0 || count - free > limit - position)
+            throw new SerializationException("Invalid snapshot length: " + count);
+        return count;
+    }
+
+    private int readByte() {
+        if (position == limit) throw new SerializationException("Unexpected end of snapshot.");
+        return bytes[position++] & 0xFF;
+    }
+
+    private int readUnsignedShort() {
+        return (readByte() << 8) | readByte();
+    }
+
+    private int readInt() {
+        return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+    }
+
+    private int readVarInt() {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new SerializationException("Malformed snapshot varint.");
+    }
+
+    private long readVarLong() {
+        long result = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new SerializationException("Malformed snapshot varint.");
+    }
+
+    // ------------------------------------------------------------------------
+    // nodes to object graph
+
+    @SuppressWarnings("unchecked")
+    private Object toObject(Object value, Class<?> type, Class<?> elementType) {
+        if (value == null) return null;
+        if (value instanceof Number) return convert((Number) value, type);
+        if (!(value instanceof Node)) return value;
+
+        Node node = (Node) value;
+        if (node instanceof JsonNode) return json.fromJson(node.type, ((JsonNode) node).text);
+
+        if (node instanceof ArrayNode) {
+            Object[] items = ((ArrayNode) node).items;
+            if (node.type.isArray()) {
+                Class<?> componentType = node.type.getComponentType();
+                Object array = ArrayReflection.newInstance(componentType, items.length);
+                for (int i = 0; i < items.length; i++) {
+                    Object item = toObject(items[i], componentType, null);
+                    if (item != null || !componentType.isPrimitive()) ArrayReflection.set(array, i, item);
+                }
+                return array;
+            }
+            if (ClassReflection.isAssignableFrom(Array.class, node.type)) {
+                Array<Object> array = (Array<Object>) json.newInstance(node.type);
+                array.ensureCapacity(items.length);
+                for (int i = 0; i < items.length; i++) array.add(toObject(items[i], elementType, null));
+                return array;
+            }
+            Collection<Object> collection = (Collection<Object>) json.newInstance(node.type);
+            for (int i = 0; i < items.length; i++) collection.add(toObject(items[i], elementType, null));
+            return collection;
+        }
+
+        if (node instanceof MapNode) {
+            MapNode mapNode = (MapNode) node;
+            Object map = json.newInstance(node.type);
+            for (int i = 0; i < mapNode.keys.length; i++) {
+                Object item = toObject(mapNode.values[i], elementType, null);
+                if (map instanceof ObjectMap)
+                    ((ObjectMap<String, Object>) map).put(mapNode.keys[i], item);
+                else
+                    ((Map<String, Object>) map).put(mapNode.keys[i], item);
+            }
+            return map;
+        }
+
+        ObjectNode objectNode = (ObjectNode) node;
+        Object object = json.newInstance(node.type);
+        FieldMetadata[] fields = objectNode.fields;
+        for (int i = 0; i < fields.length; i++) {
+            FieldMetadata metadata = fields[i];
+            if (metadata == null) continue;
+            Class<?> fieldType = metadata.field.getType();
+            Object fieldValue = toObject(objectNode.values[i], fieldType, metadata.elementType);
+            if (fieldValue == null && fieldType.isPrimitive()) continue;
+            try {
+                metadata.field.set(object, fieldValue);
+            } catch (ReflectionException ex) {
+                throw new SerializationException("Error accessing field: "
+                        + metadata.field.getName() + " (" + node.type.getName() + ")", ex);
+            } catch (RuntimeException runtimeEx) {
+                SerializationException ex = new SerializationException(runtimeEx);
+                ex.addTrace(metadata.field.getName() + " (" + node.type.getName() + ")");
+                throw ex;
+            }
+        }
+        return object;
+    }
+
+    private static Object enumValue(Class<?> type, String name) {
+        Object[] constants = type.getEnumConstants();
+        if (constants != null) {
+            for (Object constant : constants) {
+                if (((Enum<?>) constant).name().equals(name)) return constant;
+            }
+        }
+        throw new SerializationException("Invalid snapshot enum: " + name + " (" + type.getName() + ")");
+    }
+
+    private static Object convert(Number value, Class<?> type) {
+        if (type == null || type == Object.class || type == value.getClass()) return value;
+        if (type == int.class || type == Integer.class) return value.intValue();
+        if (type == long.class || type == Long.class) return value.longValue();
+        if (type == float.class || type == Float.class) return value.floatValue();
+        if (type == double.class || type == Double.class) return value.doubleValue();
+        if (type == short.class || type == Short.class) return value.shortValue();
+        if (type == byte.class || type == Byte.class) return value.byteValue();
+        if (type == char.class || type == Character.class) return (char) value.intValue();
+        if (type == String.class) return value.toString();
+        return value;
+    }
+}
@@ -0,0 +1,440 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.utils;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.files.FileHandle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Pull parser for the JSON read by {@link JsonReader}, including unquoted
+ * names and values and comments. The input is read through a fixed size
+ * buffer, only the longest name or string is held in memory.
+ */
+public class JsonStreamReader extends JsonPullParser {
+    private final Reader reader;
+    private final char[] buffer;
+    private int position, limit;
+    private boolean eof;
+    private int line = 1;
+
+    private char[] chars = new char[64];
+    private int charCount;
+
+    /**
+     * Names already read, indexed by the low bits of their hash code, so
+     * the names repeated in a document are only allocated once.
+     */
+    private final String[] names = new String[256];
+
+    private boolean[] arrays = new boolean[16];
+    private boolean rootRead;
+
+    public JsonStreamReader(Reader reader) {
+        this(reader, 4096);
+    }
+
+    /**
+     * @param bufferSize the number of chars read at once from the reader.
+     */
+    public JsonStreamReader(Reader reader, int bufferSize) {
+        this.reader = reader;
+        this.buffer = new char[Math.max(16, bufferSize)];
+    }
+
+    public JsonStreamReader(InputStream input) {
+        this(toReader(input));
+    }
+
+    public JsonStreamReader(String json) {
+        this(new StringReader(json), Math.min(4096, json.length() + 1));
+    }
+
+    public JsonStreamReader(FileHandle file) {
+        this(file.reader("UTF-8"));
+    }
+
+    private static Reader toReader(InputStream input) {
+        try {
+            return new InputStreamReader(input, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new SerializationException(ex);
+        }
+    }
+
+    public void close() {
+        StreamUtils.closeQuietly(reader);
+    }
+
+    public Token next() {
+        if (token == Token.end) return token;
+        name = null;
+        int c = skipWhitespace();
+
+        if (depth == 0) {
+            if (c == -1) {
+                if (!rootRead) throw error("Error parsing JSON, empty document.");
+                return token = Token.end;
+            }
+            if (rootRead) throw error("Error parsing JSON, unexpected content after the root value");
+            rootRead = true;
+        } else if (c == -1) {
+            throw error(arrays[depth - 1] ? "Error parsing JSON, unmatched bracket."
+                    : "Error parsing JSON, unmatched brace.");
+        } else if (arrays[depth - 1]) {
+            if (c == ']') {
+                depth--;
+                return token = Token.endArray;
+            }
+        } else {
+            if (c == '}') {
+                depth--;
+                return token = Token.endObject;
+            }
+            if (c == '"') {
+                readQuoted();
+            } else {
+                readUnquoted(c, true);
+            }
+            if (!skipping) name = name();
+            if (skipWhitespace() != ':') throw error("Error parsing JSON, expected ':'");
+            c = skipWhitespace();
+            if (c == -1) throw error("Error parsing JSON, unmatched brace.");
+        }
+
+        switch (c) {
+            case '{':
+                push(false);
+                return token = Token.startObject;
+            case '[':
+                push(true);
+                return token = Token.startArray;
+            case '"':
+                readQuoted();
+                if (!skipping) value.set(new String(chars, 0, charCount));
+                return token = Token.stringValue;
+            case '}':
+            case ']':
+            case ':':
+                throw error("Error parsing JSON, unexpected '" + (char) c + "'");
+        }
+        readUnquoted(c, false);
+        if (skipping) return token = Token.stringValue;
+        return token = unquotedValue();
+    }
+
+    private void push(boolean array) {
+        if (depth == arrays.length) {
+            boolean[] newArrays = new boolean[depth << 1];
+            System.arraycopy(arrays, 0, newArrays, 0, depth);
+            arrays = newArrays;
+        }
+        arrays[depth++] = array;
+    }
+
+    /**
+     * @return the name in chars, from the name cache if it was read before.
+     */
+    private String name() {
+        char[] chars = this.chars;
+        int count = charCount;
+        int hash = 0;
+        for (int i = 0; i < count; i++) hash = 31 * hash + chars[i];
+        int index = (hash ^ hash >>> 8) & (names.length - 1);
+        String name = names[index];
+        if (name != null && name.length() == count) {
+            int i = 0;
+            while (i < count && name.charAt(i) == chars[i]) i++;
+            if (i == count) return name;
+        }
+        name = new String(chars, 0, count);
+        names[index] = name;
+        return name;
+    }
+
+    /**
+     * Same rules as {@link JsonReader} for unquoted values. Numbers are only
+     * parsed from values which can be numbers, a failed parse throws an
+     * exception, which is slow.
+     */
+    private Token unquotedValue() {
+        if (equalsChars("true")) {
+            value.set(true);
+            return Token.booleanValue;
+        } else if (equalsChars("false")) {
+            value.set(false);
+            return Token.booleanValue;
+        } else if (equalsChars("null")) {
+            value.set((String) null);
+            return Token.nullValue;
+        }
+        char first = chars[0];
+        if ((first >= '0' && first <= '9') || first == '-' || first == '+' || first == '.') {
+            int dot = 0;
+            while (dot < charCount && chars[dot] != '.') dot++;
+            if (dot < charCount) {
+                try {
+                    value.set(Double.parseDouble(new String(chars, 0, charCount)));
+                    return Token.doubleValue;
+                } catch (NumberFormatException ignored) {
+                }
+            } else if (parseLong()) {
+                return Token.longValue;
+            }
+        }
+        value.set(new String(chars, 0, charCount));
+        return Token.stringValue;
+    }
+
+    private boolean equalsChars(String string) {
+        int count = charCount;
+        if (string.length() != count) return false;
+        for (int i = 0; i < count; i++)
+            if (chars[i] != string.charAt(i)) return false;
+        return true;
+    }
+
+    /**
+     * Parses chars like {@link Long#parseLong(String)}, without allocating
+     * for the values of up to 18 digits.
+     *
+     * @return false if chars are not a long.
+     */
+    private boolean parseLong() {
+        int count = charCount;
+        int i = 0;
+        boolean negative = false;
+        if (chars[0] == '-' || chars[0] == '+') {
+            negative = chars[0] == '-';
+            i = 1;
+        }
+        if (i == count) return false;
+        if (count - i > 18) {
+            try {
+                value.set(Long.parseLong(new String(chars, 0, count)));
+                return true;
+            } catch (NumberFormatException ignored) {
+                return false;
+            }
+        }
+        long result = 0;
+        for (; i < count; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) return false;
+            result = result * 10 + digit;
+        }
+        value.set(negative ? -result : result);
+        return true;
+    }
+
+    /**
+     * Skips whitespace, commas and comments.
+     *
+     * @return the next char, or -1 at the end of the input.
+     */
+    private int skipWhitespace() {
+        while (true) {
+            int c = read();
+            switch (c) {
+                case '\n':
+                    line++;
+                    continue;
+                case ' ':
+                case '\r':
+                case '\t':
+                case ',':
+                    continue;
+                case '/':
+                    int next = peek();
+                    if (next == '/') {
+                        while (c != -1 && c != '\n') c = read();
+                        if (c == '\n') line++;
+                        continue;
+                    }
+                    if (next == '*') {
+                        read();
+                        int previous = 0;
+                        while (true) {
+                            c = read();
+                            if (c == -1) throw error("Error parsing JSON, unterminated comment.");
+                            if (c == '\n') line++;
+                            if (previous == '*' && c == '/') break;
+                            previous = c;
+                        }
+                        continue;
+                    }
+            }
+            return c;
+        }
+    }
+
+    private void readQuoted() {
+        charCount = 0;
+        while (true) {
+            if (position == limit && !fill()) {
+                throw error("Error parsing JSON, unterminated string.");
+            }
+            // copy the plain chars of the buffer at once
+            char[] buffer = this.buffer;
+            int start = position;
+            int end = start;
+            for (int n = limit; end < n; end++) {
+                char c = buffer[end];
+                if (c == '"' || c == '\\' || c == '\n') break;
+            }
+            append(buffer, start, end - start);
+            position = end;
+            if (end == limit) continue;
+
+            int c = buffer[position++];
+            if (c == '"') return;
+            if (c == '\n') line++;
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        break;
+                    case 'b':
+                        c = '\b';
+                        break;
+                    case 'f':
+                        c = '\f';
+                        break;
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'u':
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(read(), 16);
+                            if (digit < 0) throw error("Error parsing JSON, illegal unicode escape.");
+                            code = (code << 4) | digit;
+                        }
+                        c = code;
+                        break;
+                    default:
+                        throw error("Illegal escaped character: \\" + (char) c);
+                }
+            }
+            append(c);
+        }
+    }
+
+    private void readUnquoted(int first, boolean isName) {
+        charCount = 0;
+        append(first);
+        while (true) {
+            if (position == limit && !fill()) return;
+            // copy the chars of the buffer up to the end of the value at once
+            char[] buffer = this.buffer;
+            int start = position;
+            int i = start;
+            scan:
+            for (int end = limit; i < end; i++) {
+                switch (buffer[i]) {
+                    case ' ':
+                    case '\r':
+                    case '\n':
+                    case '\t':
+                        break scan;
+                    case ':':
+                        if (isName) break scan;
+                        break;
+                    case '}':
+                    case ']':
+                    case ',':
+                        if (!isName) break scan;
+                        break;
+                }
+            }
+            append(buffer, start, i - start);
+            position = i;
+            if (i < limit) return;
+        }
+    }
+
+    private void append(int c) {
+        if (skipping) return;
+        if (charCount == chars.length) {
+            char[] newChars = new char[charCount << 1];
+            System.arraycopy(chars, 0, newChars, 0, charCount);
+            chars = newChars;
+        }
+        chars[charCount++] = (char) c;
+    }
+
+    private void append(char[] source, int offset, int count) {
+        if (skipping || count == 0) return;
+        if (charCount + count > chars.length) {
+            char[] newChars = new char[Math.max(charCount + count, charCount << 1)];
+            System.arraycopy(chars, 0, newChars, 0, charCount);
+            chars = newChars;
+        }
+        System.arraycopy(source, offset, chars, charCount, count);
+        charCount += count;
+    }
+
+    private int read() {
+        if (position == limit && !fill()) return -1;
+        return buffer[position++];
+    }
+
+    private int peek() {
+        if (position == limit && !fill()) return -1;
+        return buffer[position];
+    }
+
+    private boolean fill() {
+        if (eof) return false;
+        try {
+            int count;
+            do {
+                count = reader.read(buffer, 0, buffer.length);
+            } while (count == 0);
+            if (count == -1) {
+                eof = true;
+                return false;
+            }
+            position = 0;
+            limit = count;
+            return true;
+        } catch (IOException ex) {
+            throw new SerializationException(ex);
+        }
+    }
+
+    private SerializationException error(String message) {
+        return new SerializationException(message + " (line " + line + ")");
+    }
+}
@@ -17,6 +17,7 @@
 package com.guidebee.utils;
 
 import com.guidebee.utils.collections.Array;
+import com.guidebee.utils.collections.ObjectMap;
 
 import java.io.IOException;
 import java.io.Writer;
@@ -33,6 +34,10 @@ public class JsonWriter extends Writer {
     private JsonObject current;
     private boolean named;
     private OutputType outputType = OutputType.json;
+    /**
+     * Quoted names, the same field names are written over and over.
+     */
+    private final ObjectMap<String, String> quotedNames = new ObjectMap<String, String>();
 
     public JsonWriter(Writer writer) {
         this.writer = writer;
@@ -43,6 +48,7 @@ public class JsonWriter extends Writer {
     }
 
     public void setOutputType(OutputType outputType) {
+        if (this.outputType != outputType) quotedNames.clear();
         this.outputType = outputType;
     }
 
@@ -52,7 +58,12 @@ public class JsonWriter extends Writer {
             current.needsComma = true;
         else
             writer.write(',');
-        writer.write(outputType.quoteName(name));
+        String quotedName = quotedNames.get(name);
+        if (quotedName == null) {
+            quotedName = outputType.quoteName(name);
+            if (quotedNames.size < 256) quotedNames.put(name, quotedName);
+        }
+        writer.write(quotedName);
         writer.write(':');
         named = true;
         return this;
@@ -26,7 +26,8 @@ import java.io.InputStream;
 /** Lightweight UBJSON parser.<br>
  * <br>
  * The default behavior is to parse the JSON into a DOM containing {@link JsonValue} objects. Extend this class and override
- * methods to perform event driven parsing. When this is done, the parse methods will return null. <br>
+ * methods to perform event driven parsing. When this is done, the parse methods will return null. See
+ * {@link UBJsonStreamReader} to read large documents incrementally. <br>
  * @author Xoppa */
 public class UBJsonReader implements BaseJsonReader {
 	public boolean oldFormat = true;
@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.utils;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.files.FileHandle;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Pull parser for the UBJSON read by {@link UBJsonReader}. Skipped strings
+ * and data are not read into memory.
+ */
+public class UBJsonStreamReader extends JsonPullParser {
+    public boolean oldFormat = true;
+
+    private final DataInputStream din;
+    private byte[] bytes = new byte[64];
+
+    private boolean[] arrays = new boolean[16];
+    private byte[] valueTypes = new byte[16];
+    private long[] remaining = new long[16];
+    private int[] pendingTypes = new int[16];
+    private boolean rootRead;
+
+    /**
+     * For best performance the input should be buffered, see
+     * {@link #UBJsonStreamReader(FileHandle)}.
+     */
+    public UBJsonStreamReader(InputStream input) {
+        din = input instanceof DataInputStream ? (DataInputStream) input : new DataInputStream(input);
+    }
+
+    public UBJsonStreamReader(FileHandle file) {
+        this(new BufferedInputStream(file.read(), 8192));
+    }
+
+    public void close() {
+        StreamUtils.closeQuietly(din);
+    }
+
+    public Token next() {
+        if (token == Token.end) return token;
+        name = null;
+        try {
+            int type;
+            if (depth == 0) {
+                if (rootRead) return token = Token.end;
+                rootRead = true;
+                type = din.read();
+                if (type == -1) throw new SerializationException("Error parsing UBJSON, empty document.");
+                return token = readValue((byte) type);
+            }
+
+            int frame = depth - 1;
+            if (remaining[frame] == 0) return end();
+            if (pendingTypes[frame] != -1) {
+                type = pendingTypes[frame];
+                pendingTypes[frame] = -1;
+            } else if (arrays[frame] && valueTypes[frame] != 0) {
+                type = valueTypes[frame];
+            } else {
+                type = din.read();
+            }
+            // the DOM reader also ends unsized containers at the end of the stream
+            if (type == -1) return end();
+            if (remaining[frame] < 0 && type == (arrays[frame] ? ']' : '}')) return end();
+            if (remaining[frame] > 0) remaining[frame]--;
+
+            if (!arrays[frame]) {
+                long size = parseStringSize((byte) type, true);
+                if (skipping) {
+                    skip(size);
+                } else {
+                    name = readString(size);
+                }
+                type = valueTypes[frame] != 0 ? valueTypes[frame] : din.readByte();
+            }
+            return token = readValue((byte) type);
+        } catch (IOException ex) {
+            throw new SerializationException(ex);
+        }
+    }
+
+    private Token end() {
+        boolean array = arrays[--depth];
+        return token = array ? Token.endArray : Token.endObject;
+    }
+
+    private Token readValue(byte type) throws IOException {
+        switch (type) {
+            case '[':
+                readContainerHeader(true);
+                return Token.startArray;
+            case '{':
+                readContainerHeader(false);
+                return Token.startObject;
+            case 'a':
+            case 'A': {
+                byte dataType = din.readByte();
+                long size = type == 'A' ? readUInt() : (long) readUChar();
+                push(true, dataType, size, -1);
+                return Token.startArray;
+            }
+            case 'Z':
+                value.set((String) null);
+                return Token.nullValue;
+            case 'T':
+                value.set(true);
+                return Token.booleanValue;
+            case 'F':
+                value.set(false);
+                return Token.booleanValue;
+            case 'B':
+            case 'U':
+                value.set((long) readUChar());
+                return Token.longValue;
+            case 'i':
+                value.set(oldFormat ? (long) din.readShort() : (long) din.readByte());
+                return Token.longValue;
+            case 'I':
+                value.set(oldFormat ? (long) din.readInt() : (long) din.readShort());
+                return Token.longValue;
+            case 'l':
+                value.set((long) din.readInt());
+                return Token.longValue;
+            case 'L':
+                value.set(din.readLong());
+                return Token.longValue;
+            case 'd':
+                value.set((double) din.readFloat());
+                return Token.doubleValue;
+            case 'D':
+                value.set(din.readDouble());
+                return Token.doubleValue;
+            case 's':
+            case 'S': {
+                long size = parseStringSize(type, false);
+                if (skipping) {
+                    skip(size);
+                } else {
+                    value.set(readString(size));
+                }
+                return Token.stringValue;
+            }
+        }
+        throw new SerializationException("Error parsing UBJSON, unrecognized data type: " + (char) type);
+    }
+
+    private void readContainerHeader(boolean array) throws IOException {
+        byte type = din.readByte();
+        byte valueType = 0;
+        if (type == '$') {
+            valueType = din.readByte();
+            type = din.readByte();
+        }
+        long size = -1;
+        if (type == '#') {
+            size = parseSize(din.readByte(), false, -1);
+            if (size < 0) throw new SerializationException("Error parsing UBJSON, unrecognized data type");
+            if (size == 0) {
+                push(array, valueType, 0, -1);
+                return;
+            }
+            // a sized array reads its first element type as usual
+            push(array, valueType, size, array ? -1 : din.readByte());
+            return;
+        }
+        push(array, valueType, size, type);
+    }
+
+    private void push(boolean array, byte valueType, long size, int pendingType) {
+        if (depth == arrays.length) {
+            int length = depth << 1;
+            boolean[] newArrays = new boolean[length];
+            System.arraycopy(arrays, 0, newArrays, 0, depth);
+            arrays = newArrays;
+            byte[] newValueTypes = new byte[length];
+            System.arraycopy(valueTypes, 0, newValueTypes, 0, depth);
+            valueTypes = newValueTypes;
+            long[] newRemaining = new long[length];
+            System.arraycopy(remaining, 0, newRemaining, 0, depth);
+            remaining = newRemaining;
+            int[] newPendingTypes = new int[length];
+            System.arraycopy(pendingTypes, 0, newPendingTypes, 0, depth);
+            pendingTypes = newPendingTypes;
+        }
+        arrays[depth] = array;
+        valueTypes[depth] = valueType;
+        remaining[depth] = size;
+        pendingTypes[depth] = pendingType;
+        depth++;
+    }
+
+    private long parseStringSize(byte type, boolean optional) throws IOException {
+        long size = -1;
+        if (type == 'S') {
+            size = parseSize(din.readByte(), true, -1);
+        } else if (type == 's') {
+            size = (long) readUChar();
+        } else if (optional) {
+            size = parseSize(type, false, -1);
+        }
+        if (size < 0) throw new SerializationException("Error parsing UBJSON, unrecognized data type, string expected");
+        return size;
+    }
+
+    private long parseSize(byte type, boolean useIntOnError, long defaultValue) throws IOException {
+        if (type == 'i') return (long) readUChar();
+        if (type == 'I') return (long) (din.readShort() & 0xFFFF);
+        if (type == 'l') return (long) din.readInt() & 0xFFFFFFFFL;
+        if (type == 'L') return din.readLong();
+        if (useIntOnError) {
+            long result = (long) ((short) type & 0xFF) << 24;
+            result |= (long) ((short) din.readByte() & 0xFF) << 16;
+            result |= (long) ((short) din.readByte() & 0xFF) << 8;
+            result |= (long) ((short) din.readByte() & 0xFF);
+            return result;
+        }
+        return defaultValue;
+    }
+
+    private short readUChar() throws IOException {
+        return (short) ((short) din.readByte() & 0xFF);
+    }
+
+    private long readUInt() throws IOException {
+        return (long) din.readInt() & 0xFFFFFFFFL;
+    }
+
+    private String readString(long size) throws IOException {
+        if (size == 0) return "";
+        if (size > bytes.length) bytes = new byte[(int) Math.max(size, bytes.length << 1)];
+        din.readFully(bytes, 0, (int) size);
+        return new String(bytes, 0, (int) size, "UTF-8");
+    }
+
+    private void skip(long size) throws IOException {
+        while (size > 0) {
+            int skipped = din.skipBytes((int) Math.min(size, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                if (din.read() == -1) throw new EOFException();
+                skipped = 1;
+            }
+            size -= skipped;
+        }
+    }
+}
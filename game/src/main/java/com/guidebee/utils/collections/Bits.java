@@ -240,6 +240,21 @@ public class Bits {
         return -1;
     }
 
+    /**
+     * Sets this bit set to a copy of the bit set argument.
+     *
+     * @param other a bit set
+     */
+    public void set(Bits other) {
+        if (bits.length < other.bits.length) {
+            bits = new long[other.bits.length];
+        }
+        System.arraycopy(other.bits, 0, bits, 0, other.bits.length);
+        for (int i = other.bits.length; i < bits.length; i++) {
+            bits[i] = 0;
+        }
+    }
+
     /**
      * Performs a logical <b>AND</b> of this target bit set with the argument
      * bit set. This bit set is modified so that each bit in
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.drawing;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.drawing.geometry.Rectangle;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Checks the dirty rectangles tracked by {@link Graphics2D} cover every
+ * changed pixel, that redrawing only the dirty area gives the same content
+ * as a full redraw, and counts the pixels touched per frame.
+ */
+public class Graphics2DTest {
+
+    private static final int WIDTH = 320;
+
+    private static final int HEIGHT = 240;
+
+    private static final int BACKGROUND = 0xFF203040;
+
+    private static final int SPRITE = 24;
+
+    @Test
+    public void dirtyRectanglesCoverChangedPixels() {
+        Random random = new Random(3);
+        Graphics2D g = new Graphics2D(WIDTH, HEIGHT);
+        g.clear(BACKGROUND);
+        drawBackground(g);
+        for (int round = 0; round < 50; round++) {
+            int[] before = g.getRGB().clone();
+            g.resetDirtyRegion();
+            assertFalse(g.isDirty());
+            assertNull(g.getDirtyBounds());
+            int shapes = 1 + random.nextInt(12);
+            for (int i = 0; i < shapes; i++) {
+                int x = random.nextInt(WIDTH + 40) - 20;
+                int y = random.nextInt(HEIGHT + 40) - 20;
+                int w = 1 + random.nextInt(60);
+                int h = 1 + random.nextInt(60);
+                SolidBrush brush = new SolidBrush(random.nextInt() | 0xFF000000);
+                switch (random.nextInt(3)) {
+                    case 0:
+                        g.fillOval(brush, x, y, w, h);
+                        break;
+                    case 1:
+                        g.fillRectangle(brush, new Rectangle(x, y, w, h));
+                        break;
+                    default:
+                        g.drawLine(new Pen(brush, 1 + random.nextInt(4)),
+                                x, y, x + w, y + h);
+                        break;
+                }
+            }
+            Rectangle[] dirty = g.getDirtyRectangles();
+            assertTrue(dirty.length <= Graphics2D.MAX_DIRTY_RECTANGLES);
+            for (int i = 0; i < dirty.length; i++) {
+                for (int j = i + 1; j < dirty.length; j++) {
+                    assertFalse(dirty[i].intersects(dirty[j]));
+                }
+            }
+            int[] after = g.getRGB();
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    if (before[y * WIDTH + x] != after[y * WIDTH + x]) {
+                        assertTrue("pixel " + x + "," + y,
+                                covered(dirty, x, y));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void dirtyRedrawMatchesFullRedraw() {
+        Graphics2D full = new Graphics2D(WIDTH, HEIGHT);
+        Graphics2D incremental = new Graphics2D(WIDTH, HEIGHT);
+        incremental.clear(BACKGROUND);
+        drawBackground(incremental);
+        for (int frame = 0; frame < 40; frame++) {
+            full.clear(BACKGROUND);
+            drawBackground(full);
+            drawSprite(full, frame);
+
+            redrawSprite(incremental, frame);
+            assertArrayEquals("frame " + frame, full.getRGB(),
+                    incremental.getRGB());
+        }
+    }
+
+    @Test
+    public void dirtyPixelsBenchmark() {
+        Graphics2D full = new Graphics2D(WIDTH, HEIGHT);
+        Graphics2D incremental = new Graphics2D(WIDTH, HEIGHT);
+        incremental.clear(BACKGROUND);
+        drawBackground(incremental);
+        int frames = 200;
+        long fullPixels = 0;
+        long dirtyPixels = 0;
+        long start = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) {
+            full.resetDirtyRegion();
+            full.clear(BACKGROUND);
+            drawBackground(full);
+            drawSprite(full, frame);
+            fullPixels += full.getDirtyPixelCount();
+        }
+        long middle = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) {
+            redrawSprite(incremental, frame);
+            dirtyPixels += incremental.getDirtyPixelCount();
+        }
+        long end = System.nanoTime();
+        assertEquals((long) WIDTH * HEIGHT * frames, fullPixels);
+        assertTrue(dirtyPixels < fullPixels / 20);
+        System.out.println("Graphics2D: full redraw "
+                + fullPixels / frames + " px/frame "
+                + (middle - start) / frames / 1000 + " us/frame, dirty redraw "
+                + dirtyPixels / frames + " px/frame "
+                + (end - middle) / frames / 1000 + " us/frame");
+    }
+
+    /**
+     * moves the sprite to given frame position, redrawing only the area it
+     * left and the area it enters.
+     */
+    private static void redrawSprite(Graphics2D g, int frame) {
+        Rectangle area = spriteBounds(frame);
+        if (frame > 0) {
+            area = area.union(spriteBounds(frame - 1));
+        }
+        g.resetDirtyRegion();
+        g.beginUpdate(area.x, area.y, area.width, area.height, BACKGROUND);
+        drawBackground(g);
+        drawSprite(g, frame);
+        g.endUpdate();
+        Rectangle bounds = g.getDirtyBounds();
+        assertTrue(area.contains(bounds));
+    }
+
+    private static void drawBackground(Graphics2D g) {
+        Random random = new Random(11);
+        for (int i = 0; i < 20; i++) {
+            SolidBrush brush = new SolidBrush(random.nextInt() | 0xFF000000);
+            int x = random.nextInt(WIDTH);
+            int y = random.nextInt(HEIGHT);
+            if (random.nextBoolean()) {
+                g.fillOval(brush, x - 30, y - 20, 60, 40);
+            } else {
+                g.fillRectangle(brush, new Rectangle(x - 25, y - 25, 50, 50));
+            }
+        }
+    }
+
+    private static void drawSprite(Graphics2D g, int frame) {
+        Rectangle bounds = spriteBounds(frame);
+        g.fillOval(new SolidBrush(0xFFFFD000), bounds.x, bounds.y,
+                bounds.width, bounds.height);
+    }
+
+    private static Rectangle spriteBounds(int frame) {
+        int x = (frame * 7) % (WIDTH - SPRITE - 2);
+        int y = 20 + (frame * 3) % (HEIGHT - SPRITE - 40);
+        return new Rectangle(x, y, SPRITE, SPRITE);
+    }
+
+    private static boolean covered(Rectangle[] rectangles, int x, int y) {
+        for (int i = 0; i < rectangles.length; i++) {
+            Rectangle r = rectangles[i];
+            if (x >= r.x && y >= r.y && x < r.x + r.width
+                    && y < r.y + r.height) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.engine.drawing.core;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.drawing.Color;
+import com.guidebee.drawing.Graphics2D;
+import com.guidebee.drawing.SolidBrush;
+import com.guidebee.drawing.VectorFont;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Checks that a {@link FlattenedPathFP} drawn at an offset fills the same
+ * pixels as the path translated by that offset, the memory bound and
+ * counters of {@link GraphicsPathCacheFP}, and the text drawn from the
+ * glyph cache of {@link Graphics2D}.
+ */
+public class GraphicsPathCacheFPTest {
+
+    private static final int ONE = SingleFP.ONE;
+
+    private static final int WIDTH = 160;
+
+    private static final int HEIGHT = 120;
+
+    /**
+     * a random polygon, oval or closed curve translated by (dx, dy).
+     */
+    private static GraphicsPathFP randomPath(int seed, int dx, int dy) {
+        Random r = new Random(seed);
+        int x = r.nextInt(60 * ONE);
+        int y = r.nextInt(40 * ONE);
+        int w = ONE * 4 + r.nextInt(60 * ONE);
+        int h = ONE * 4 + r.nextInt(50 * ONE);
+        switch (r.nextInt(3)) {
+            case 0:
+                return GraphicsPathFP.createOval(x + dx, y + dy, x + w + dx,
+                        y + h + dy);
+            default:
+                PointFP[] points = new PointFP[3 + r.nextInt(6)];
+                for (int i = 0; i < points.length; i++) {
+                    points[i] = new PointFP(x + r.nextInt(w) + dx,
+                            y + r.nextInt(h) + dy);
+                }
+                if (seed % 2 == 0) {
+                    return GraphicsPathFP.createPolygon(points);
+                }
+                return GraphicsPathFP.createSmoothCurves(points, 0,
+                        points.length, ONE / 2, true);
+        }
+    }
+
+    @Test
+    public void flattenedPathMatchesTranslatedPath() {
+        Random random = new Random(2);
+        for (int seed = 0; seed < 200; seed++) {
+            // whole and fractional pixel offsets, some partly out of the clip
+            int dx = random.nextInt(140 * ONE) - 40 * ONE;
+            int dy = random.nextInt(100 * ONE) - 30 * ONE;
+            if (seed % 2 == 0) {
+                dx &= ~(ONE - 1);
+                dy &= ~(ONE - 1);
+            }
+            for (int mode = 0; mode < 2; mode++) {
+                GraphicsFP expected = new GraphicsFP(WIDTH, HEIGHT);
+                GraphicsFP actual = new GraphicsFP(WIDTH, HEIGHT);
+                for (GraphicsFP g : new GraphicsFP[]{expected, actual}) {
+                    g.clear(0xFFFFFFFF);
+                    g.setBrush(new SolidBrushFP(0xC0204080));
+                    g.setPaintMode(mode == 0 ? GraphicsFP.MODE_XOR
+                            : GraphicsFP.MODE_ZERO);
+                }
+                expected.fillPath(randomPath(seed, dx, dy));
+                actual.fillPath(new FlattenedPathFP(randomPath(seed, 0, 0)),
+                        dx, dy);
+                assertArrayEquals("seed " + seed + " mode " + mode,
+                        expected.getRGB(), actual.getRGB());
+            }
+        }
+    }
+
+    @Test
+    public void offsetIsAppliedBeforeTheMatrix() {
+        MatrixFP matrix = new MatrixFP(2 * ONE, ONE + ONE / 2, 0, 0,
+                10 * ONE, 5 * ONE);
+        GraphicsFP expected = new GraphicsFP(WIDTH, HEIGHT);
+        GraphicsFP actual = new GraphicsFP(WIDTH, HEIGHT);
+        for (GraphicsFP g : new GraphicsFP[]{expected, actual}) {
+            g.clear(0xFFFFFFFF);
+            g.setBrush(new SolidBrushFP(0xFF000000));
+            g.setMatrix(matrix);
+        }
+        expected.fillPath(randomPath(3, 12 * ONE, 7 * ONE));
+        actual.fillPath(new FlattenedPathFP(randomPath(3, 0, 0)), 12 * ONE,
+                7 * ONE);
+        assertArrayEquals(expected.getRGB(), actual.getRGB());
+    }
+
+    /**
+     * a path of given number of points, and so of known memory size.
+     */
+    private static FlattenedPathFP path(int points) {
+        PointFP[] polygon = new PointFP[points - 1];
+        for (int i = 0; i < polygon.length; i++) {
+            polygon[i] = new PointFP(i * ONE, (i % 2) * ONE);
+        }
+        FlattenedPathFP path = new FlattenedPathFP(
+                GraphicsPathFP.createPolyline(polygon));
+        return path;
+    }
+
+    @Test
+    public void cacheEvictsLeastRecentlyUsedByMemory() {
+        FlattenedPathFP a = path(10);
+        FlattenedPathFP b = path(20);
+        FlattenedPathFP c = path(30);
+        assertTrue(a.getMemorySize() < b.getMemorySize());
+        GraphicsPathCacheFP cache = new GraphicsPathCacheFP(
+                a.getMemorySize() + b.getMemorySize() + c.getMemorySize());
+        cache.put("a", a);
+        cache.put("b", b);
+        cache.put("c", c);
+        assertEquals(3, cache.size());
+        assertEquals(a.getMemorySize() + b.getMemorySize() + c.getMemorySize(),
+                cache.getMemory());
+        assertEquals(0, cache.getEvictionCount());
+
+        // "a" is used, so "b" is the least recently used
+        assertSame(a, cache.get("a"));
+        cache.put("d", path(5));
+        assertNull(cache.get("b"));
+        assertSame(a, cache.get("a"));
+        assertSame(c, cache.get("c"));
+        assertEquals(1, cache.getEvictionCount());
+        assertTrue(cache.getMemory() <= cache.getMaxMemory());
+
+        // replacing a path only counts the new one
+        FlattenedPathFP smaller = path(4);
+        int memory = cache.getMemory();
+        cache.put("c", smaller);
+        assertEquals(memory - c.getMemorySize() + smaller.getMemorySize(),
+                cache.getMemory());
+
+        // a path larger than the cache is not added, nothing is evicted
+        cache.put("huge", path(1000));
+        assertNull(cache.get("huge"));
+        assertEquals(3, cache.size());
+
+        cache.remove("a");
+        assertNull(cache.get("a"));
+        assertEquals(2, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMemory());
+    }
+
+    @Test
+    public void setMaxMemoryEvicts() {
+        GraphicsPathCacheFP cache = new GraphicsPathCacheFP(1 << 20);
+        FlattenedPathFP[] paths = new FlattenedPathFP[10];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = path(10);
+            cache.put(i, paths[i]);
+        }
+        int size = paths[0].getMemorySize();
+        assertEquals(10 * size, cache.getMemory());
+        cache.get(0);
+
+        cache.setMaxMemory(4 * size);
+        assertEquals(4, cache.size());
+        assertEquals(4 * size, cache.getMemory());
+        assertEquals(6, cache.getEvictionCount());
+        // the most recently used ones are kept
+        assertSame(paths[0], cache.get(0));
+        for (int i = 7; i < 10; i++) {
+            assertSame(paths[i], cache.get(i));
+        }
+        assertNull(cache.get(1));
+
+        cache.setMaxMemory(0);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMemory());
+        try {
+            cache.setMaxMemory(-1);
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void countersCountHitsMissesAndEvictions() {
+        GraphicsPathCacheFP cache = new GraphicsPathCacheFP(1 << 20);
+        FlattenedPathFP path = path(10);
+        assertNull(cache.get("a"));
+        cache.put("a", path);
+        cache.get("a");
+        cache.get("a");
+        assertNull(cache.get("b"));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.getEvictionCount());
+        cache.setMaxMemory(0);
+        assertEquals(1, cache.getEvictionCount());
+
+        // clear keeps the counters, resetCounters resets them
+        cache.clear();
+        assertEquals(2, cache.getHitCount());
+        cache.resetCounters();
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    /**
+     * draws the text glyph by glyph from the shapes of the font, like
+     * drawChars did before the glyph cache.
+     */
+    private static int[] drawGlyphShapes(VectorFont font, int fontSize,
+                                         char[] text, int x, int y, int dir) {
+        Graphics2D g = new Graphics2D(400, 400);
+        g.clear(Color.WHITE);
+        com.guidebee.drawing.geometry.AffineTransform transform
+                = new com.guidebee.drawing.geometry.AffineTransform();
+        transform.translate(x, y);
+        SolidBrush brush = new SolidBrush(Color.BLACK);
+        com.guidebee.drawing.geometry.IShape[] shapes = font.getGlyphArray(
+                fontSize, text, 0, text.length, dir, transform);
+        for (com.guidebee.drawing.geometry.IShape shape : shapes) {
+            if (shape != null) g.fill(brush, shape);
+        }
+        return g.getRGB().clone();
+    }
+
+    private static int[] drawChars(VectorFont font, int fontSize, char[] text,
+                                   int x, int y, int dir) {
+        Graphics2D g = new Graphics2D(400, 400);
+        g.clear(Color.WHITE);
+        g.drawChars(font, new SolidBrush(Color.BLACK), null, fontSize, text, 0,
+                text.length, x, y, dir);
+        return g.getRGB().clone();
+    }
+
+    @Test
+    public void drawCharsMatchesTheGlyphShapes() {
+        VectorFont font = VectorFont.getSystemFont();
+        char[] text = "Ab3".toCharArray();
+        int[] blank = drawChars(font, 128, new char[0], 0, 0,
+                VectorFont.TEXT_DIR_LR);
+        int[] dirs = {VectorFont.TEXT_DIR_LR, VectorFont.TEXT_DIR_RL,
+                VectorFont.TEXT_DIR_TB};
+        Graphics2D.clearPathCache();
+        long misses = Graphics2D.getPathCacheMissCount();
+        for (int dir : dirs) {
+            // twice, the second time from the cache
+            for (int pass = 0; pass < 2; pass++) {
+                int[] expected = drawGlyphShapes(font, 128, text, 20, 10, dir);
+                assertFalse(Arrays.equals(blank, expected));
+                assertArrayEquals("direction " + dir + " pass " + pass,
+                        expected, drawChars(font, 128, text, 20, 10, dir));
+            }
+        }
+        // each glyph is flattened once, for all the directions
+        assertEquals(text.length, Graphics2D.getPathCacheMissCount() - misses);
+        assertTrue(Graphics2D.getPathCacheMemory() > 0);
+    }
+}
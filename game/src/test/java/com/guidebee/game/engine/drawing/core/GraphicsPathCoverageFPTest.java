@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.engine.drawing.core;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Pixel-exact comparison of {@link GraphicsPathCoverageFP} against the scan
+ * buffer rasterizer of {@link GraphicsPathRendererFP}: every scene is drawn
+ * with both rasterizers (and with parallel bands) and the resulting ARGB
+ * buffers must be identical.
+ */
+public class GraphicsPathCoverageFPTest {
+
+    private static final int ONE = SingleFP.ONE;
+
+    private static final int WIDTH = 97;
+
+    private static final int HEIGHT = 61;
+
+    /**
+     * a scene drawn on both rasterizers.
+     */
+    private interface Scene {
+        void draw(GraphicsFP g);
+    }
+
+    @Test
+    public void concavePolygons() {
+        assertSameCoverage(new Scene() {
+            public void draw(GraphicsFP g) {
+                g.setBrush(new SolidBrushFP(0xFF2040C0));
+                // arrow
+                g.fillPolygon(points(5, 30, 40, 5, 40, 20, 90, 20,
+                        90, 40, 40, 40, 40, 56));
+                // comb
+                g.setBrush(new SolidBrushFP(0x80C02040));
+                g.fillPolygon(points(10, 10, 80, 10, 80, 50, 70, 50, 70, 20,
+                        60, 20, 60, 50, 50, 50, 50, 20, 40, 20, 40, 50,
+                        30, 50, 30, 20, 20, 20, 20, 50, 10, 50));
+            }
+        });
+    }
+
+    @Test
+    public void selfIntersectingEvenOddAndNonZero() {
+        final Scene star = new Scene() {
+            public void draw(GraphicsFP g) {
+                g.setBrush(new SolidBrushFP(0xFF000000));
+                // pentagram
+                g.fillPolygon(points(48, 2, 77, 58, 3, 22, 93, 22, 19, 58));
+            }
+        };
+        final Scene bowtie = new Scene() {
+            public void draw(GraphicsFP g) {
+                g.setBrush(new SolidBrushFP(0xFF10A010));
+                g.fillPolygon(points(4, 4, 90, 56, 90, 4, 4, 56));
+                // two subpaths winding the same way
+                GraphicsPathFP path = GraphicsPathFP.createRect(
+                        10 * ONE, 10 * ONE, 60 * ONE, 50 * ONE);
+                path.addPath(GraphicsPathFP.createRect(
+                        30 * ONE, 20 * ONE, 80 * ONE, 40 * ONE));
+                g.setBrush(new SolidBrushFP(0x804080FF));
+                g.fillPath(path);
+            }
+        };
+        int[][] modes = new int[2][];
+        int[] paintModes = {GraphicsFP.MODE_XOR, GraphicsFP.MODE_ZERO};
+        for (int m = 0; m < paintModes.length; m++) {
+            final int mode = paintModes[m];
+            modes[m] = assertSameCoverage(new Scene() {
+                public void draw(GraphicsFP g) {
+                    g.setPaintMode(mode);
+                    star.draw(g);
+                }
+            });
+            assertSameCoverage(new Scene() {
+                public void draw(GraphicsFP g) {
+                    g.setPaintMode(mode);
+                    bowtie.draw(g);
+                }
+            });
+        }
+        // the center of the pentagram is a hole only with the even-odd rule
+        assertFalse(Arrays.equals(modes[0], modes[1]));
+    }
+
+    @Test
+    public void subPixelEdges() {
+        assertSameCoverage(new Scene() {
+            public void draw(GraphicsFP g) {
+                g.setBrush(new SolidBrushFP(0xFF804000));
+                for (int i = 0; i < 12; i++) {
+                    int x = 3 * ONE + i * (7 * ONE + ONE / 7);
+                    int y = ONE / 3 + i * (ONE / 5);
+                    // rectangle with fractional edges
+                    g.fillRect(x, y, x + 5 * ONE + ONE / 3, y + 9 * ONE
+                            + ONE * 2 / 3);
+                    // sliver narrower than a pixel
+                    g.fillPolygon(new PointFP[]{
+                            new PointFP(x + ONE / 8, 15 * ONE),
+                            new PointFP(x + ONE / 8 + ONE / 5, 15 * ONE),
+                            new PointFP(x + ONE, 40 * ONE + i * ONE / 9)});
+                    // shape inside a single pixel
+                    g.fillOval(x + ONE / 4, 50 * ONE + ONE / 4,
+                            x + ONE * 3 / 4, 50 * ONE + ONE * 3 / 4);
+                }
+                // nearly horizontal and nearly vertical edges
+                g.fillPolygon(new PointFP[]{
+                        new PointFP(2 * ONE, 44 * ONE),
+                        new PointFP(95 * ONE, 44 * ONE + ONE / 3),
+                        new PointFP(95 * ONE, 46 * ONE),
+                        new PointFP(2 * ONE + ONE / 2, 47 * ONE)});
+            }
+        });
+    }
+
+    @Test
+    public void shapesClippedAtTheEdges() {
+        final Scene shapes = new Scene() {
+            public void draw(GraphicsFP g) {
+                g.setBrush(new SolidBrushFP(0xC0FF8000));
+                g.fillOval(-20 * ONE, -15 * ONE, 30 * ONE, 25 * ONE);
+                g.fillOval(70 * ONE, 40 * ONE, 130 * ONE, 90 * ONE);
+                g.fillPolygon(points(-10, 30, 50, -10, 110, 30, 50, 80));
+                g.setBrush(new SolidBrushFP(0xFF0000FF));
+                g.fillRect(-5 * ONE, -5 * ONE, 200 * ONE, 2 * ONE);
+                g.fillPie(60 * ONE, -30 * ONE, 120 * ONE, 30 * ONE,
+                        MathFP.PI / 3, MathFP.PI);
+            }
+        };
+        assertSameCoverage(shapes);
+        assertSameCoverage(new Scene() {
+            public void draw(GraphicsFP g) {
+                g.setClip(10, 7, 40, 30);
+                shapes.draw(g);
+            }
+        });
+    }
+
+    @Test
+    public void curvesStrokesAndGradients() {
+        assertSameCoverage(new Scene() {
+            public void draw(GraphicsFP g) {
+                LinearGradientBrushFP linear = new LinearGradientBrushFP(
+                        0, 0, 60 * ONE, 40 * ONE, MathFP.PI / 5);
+                linear.setGradientColor(0, 0xFFFF0000);
+                linear.setGradientColor(ONE, 0xFF0000FF);
+                linear.updateGradientTable();
+                g.setBrush(linear);
+                g.fillOval(5 * ONE, 5 * ONE, 60 * ONE, 50 * ONE);
+                RadialGradientBrushFP radial = new RadialGradientBrushFP(
+                        70 * ONE, 30 * ONE, 25 * ONE, 0);
+                radial.setGradientColor(0, 0xFFFFFF00);
+                radial.setGradientColor(ONE, 0x8000FF00);
+                radial.updateGradientTable();
+                g.setBrush(radial);
+                g.fillPie(45 * ONE, 5 * ONE, 95 * ONE, 55 * ONE, 0,
+                        MathFP.PI * 3 / 2);
+                g.setPen(new PenFP(0xFF000000, ONE * 3 / 2,
+                        PenFP.LINECAP_ROUND, PenFP.LINECAP_ROUND,
+                        PenFP.LINEJOIN_ROUND));
+                g.drawPolyline(points(3, 58, 30, 3, 50, 50, 94, 10));
+            }
+        });
+    }
+
+    @Test
+    public void randomScenes() {
+        for (int seed = 0; seed < 60; seed++) {
+            final Random random = new Random(seed);
+            final int count = 5 + random.nextInt(15);
+            final long sceneSeed = random.nextLong();
+            assertSameCoverage(new Scene() {
+                public void draw(GraphicsFP g) {
+                    Random r = new Random(sceneSeed);
+                    if (r.nextInt(3) == 0) {
+                        g.setClip(r.nextInt(WIDTH), r.nextInt(HEIGHT),
+                                r.nextInt(WIDTH), r.nextInt(HEIGHT));
+                    }
+                    for (int i = 0; i < count; i++) {
+                        g.setPaintMode(r.nextBoolean() ? GraphicsFP.MODE_XOR
+                                : GraphicsFP.MODE_ZERO);
+                        MatrixFP matrix = new MatrixFP(ONE, ONE, 0, 0, 0, 0);
+                        if (r.nextBoolean()) {
+                            matrix.rotate(r.nextInt(2 * MathFP.PI));
+                            matrix.translate(coord(r), coord(r));
+                        }
+                        g.setMatrix(matrix);
+                        g.setBrush(new SolidBrushFP(r.nextInt()));
+                        int x = coord(r);
+                        int y = coord(r);
+                        switch (r.nextInt(4)) {
+                            case 0:
+                                g.fillOval(x, y, x + coord(r) / 2,
+                                        y + coord(r) / 2);
+                                break;
+                            case 1:
+                                g.fillPie(x, y, x + coord(r), y + coord(r),
+                                        r.nextInt(2 * MathFP.PI),
+                                        r.nextInt(2 * MathFP.PI));
+                                break;
+                            case 2:
+                                PointFP[] points = new PointFP[3
+                                        + r.nextInt(6)];
+                                for (int k = 0; k < points.length; k++) {
+                                    points[k] = new PointFP(coord(r),
+                                            coord(r));
+                                }
+                                g.fillPolygon(points);
+                                break;
+                            default:
+                                g.setPen(new PenFP(r.nextInt(),
+                                        ONE / 2 + r.nextInt(4 * ONE)));
+                                g.drawRect(x, y, x + coord(r) / 3,
+                                        y + coord(r) / 3);
+                                break;
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * draws the scene with both rasterizers, with and without parallel
+     * bands, and checks the pixels are the same.
+     *
+     * @return the pixels of the scan buffer rasterizer.
+     */
+    private static int[] assertSameCoverage(Scene scene) {
+        int[] expected = render(scene, GraphicsFP.RASTERIZER_SCANBUFFER, 1);
+        assertArrayEquals(expected,
+                render(scene, GraphicsFP.RASTERIZER_COVERAGE, 1));
+        assertArrayEquals(expected,
+                render(scene, GraphicsFP.RASTERIZER_SCANBUFFER, 3));
+        assertArrayEquals(expected,
+                render(scene, GraphicsFP.RASTERIZER_COVERAGE, 3));
+        return expected;
+    }
+
+    private static int[] render(Scene scene, int rasterizer, int bands) {
+        GraphicsFP g = new GraphicsFP(WIDTH, HEIGHT);
+        g.setRasterizer(rasterizer);
+        g.setParallelism(bands);
+        g.clear(0xFFFFFFFF);
+        scene.draw(g);
+        return g.getRGB().clone();
+    }
+
+    /**
+     * a random coordinate with a fractional part, possibly outside the
+     * canvas.
+     */
+    private static int coord(Random r) {
+        return r.nextInt(WIDTH * 3 / 2 * ONE) - WIDTH / 4 * ONE;
+    }
+
+    private static PointFP[] points(int... xy) {
+        PointFP[] points = new PointFP[xy.length / 2];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new PointFP(xy[2 * i] * ONE, xy[2 * i + 1] * ONE);
+        }
+        return points;
+    }
+}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.engine.drawing.core;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Checks that {@link GraphicsPathRendererFP} instances can rasterize at the
+ * same time and that banded parallel fills give the same pixels as a single
+ * band, and measures the fill rate for different band counts.
+ */
+public class GraphicsPathRendererFPTest {
+
+    private static final int ONE = SingleFP.ONE;
+
+    @Test
+    public void bandedFillsMatchSingleBand() {
+        for (int seed = 0; seed < 20; seed++) {
+            int[] expected = drawScene(seed, 200, 150, 1);
+            for (int bands = 2; bands <= 8; bands *= 2) {
+                assertArrayEquals("seed " + seed + ", " + bands + " bands",
+                        expected, drawScene(seed, 200, 150, bands));
+            }
+        }
+    }
+
+    @Test
+    public void concurrentInstancesMatchSequential() throws Exception {
+        final int threads = 4;
+        final int[][] expected = new int[threads][];
+        for (int i = 0; i < threads; i++) {
+            expected[i] = drawScene(100 + i, 160, 120, 1);
+        }
+        final int[][] actual = new int[threads][];
+        final Throwable[] error = new Throwable[1];
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int index = i;
+            workers[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int round = 0; round < 10; round++) {
+                            actual[index] = drawScene(100 + index, 160, 120,
+                                    1);
+                            if (!Arrays.equals(expected[index],
+                                    actual[index])) {
+                                return;
+                            }
+                        }
+                    } catch (Throwable t) {
+                        synchronized (error) {
+                            error[0] = t;
+                        }
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+        }
+        assertNull(error[0]);
+        for (int i = 0; i < threads; i++) {
+            assertArrayEquals(expected[i], actual[i]);
+        }
+    }
+
+    @Test
+    public void interruptedBandedFillWaitsForAllBands() {
+        for (int seed = 0; seed < 5; seed++) {
+            int[] expected = drawScene(seed, 512, 512, 1);
+            Thread.currentThread().interrupt();
+            int[] actual;
+            try {
+                actual = drawScene(seed, 512, 512, 8);
+            } finally {
+                assertTrue("interrupt flag lost", Thread.interrupted());
+            }
+            assertArrayEquals("seed " + seed, expected, actual);
+        }
+    }
+
+    @Test
+    public void bandedFillBenchmark() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        StringBuilder sb = new StringBuilder("GraphicsPathRendererFP: "
+                + cores + " cores, 1024x1024 complex fills,");
+        for (int bands = 1; bands <= 8; bands *= 2) {
+            drawScene(7, 1024, 1024, bands); // warm up
+            long start = System.nanoTime();
+            int frames = 5;
+            for (int i = 0; i < frames; i++) {
+                drawScene(7, 1024, 1024, bands);
+            }
+            long elapsed = (System.nanoTime() - start) / frames;
+            sb.append(' ').append(bands).append(" bands ")
+                    .append(elapsed / 1000000).append(" ms");
+        }
+        System.out.println(sb);
+    }
+
+    /**
+     * draws a random scene of stars and ovals, mono color fills only.
+     */
+    private static int[] drawScene(int seed, int width, int height,
+                                   int bands) {
+        Random r = new Random(seed);
+        GraphicsFP g = new GraphicsFP(width, height);
+        g.setParallelism(bands);
+        g.clear(0xFFFFFFFF);
+        for (int i = 0; i < 60; i++) {
+            g.setBrush(new SolidBrushFP(r.nextInt()));
+            int cx = r.nextInt(width * ONE);
+            int cy = r.nextInt(height * ONE);
+            int radius = ONE * 4 + r.nextInt(Math.max(width, height) / 3 * ONE);
+            if (r.nextBoolean()) {
+                g.fillOval(cx - radius, cy - radius, cx + radius,
+                        cy + radius / 2);
+            } else {
+                int n = 5 + 2 * r.nextInt(4);
+                PointFP[] points = new PointFP[n];
+                int step = 2 * MathFP.PI * (n / 2) / n;
+                for (int k = 0; k < n; k++) {
+                    int angle = k * step;
+                    points[k] = new PointFP(
+                            cx + MathFP.mul(radius, MathFP.cos(angle)),
+                            cy + MathFP.mul(radius, MathFP.sin(angle)));
+                }
+                g.setPaintMode(r.nextBoolean() ? GraphicsFP.MODE_XOR
+                        : GraphicsFP.MODE_ZERO);
+                g.fillPolygon(points);
+            }
+        }
+        return g.getRGB().clone();
+    }
+}
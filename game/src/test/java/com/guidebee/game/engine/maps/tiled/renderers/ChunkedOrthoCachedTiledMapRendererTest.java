@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.engine.maps.tiled.renderers;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.GameEngineRuntimeException;
+import com.guidebee.game.graphics.GraphicsStubs;
+import com.guidebee.game.graphics.SpriteCache;
+import com.guidebee.game.graphics.Texture;
+import com.guidebee.game.graphics.TextureRegion;
+import com.guidebee.game.maps.tiled.TiledMap;
+import com.guidebee.game.maps.tiled.TiledMapTile;
+import com.guidebee.game.maps.tiled.TiledMapTileLayer;
+import com.guidebee.game.maps.tiled.tiles.StaticTiledMapTile;
+import com.guidebee.math.Matrix4;
+import com.guidebee.utils.collections.IntArray;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Checks which chunk caches {@link ChunkedOrthoCachedTiledMapRenderer} draws
+ * while tiles are added to and removed from its chunks, with a sprite cache
+ * counting the tiles drawn instead of drawing them.
+ */
+public class ChunkedOrthoCachedTiledMapRendererTest {
+
+    private static final int CHUNK_SIZE = 2;
+
+    /**
+     * sprite cache which keeps the number of tiles of each cache instead of
+     * their vertices, and counts the tiles drawn. It follows the rules of
+     * {@link SpriteCache} on redefining caches. Its instances are allocated
+     * without running the constructors, which need OpenGL buffers, so the
+     * fields are set up by {@link #clear()}.
+     */
+    static class CountingSpriteCache extends SpriteCache {
+        IntArray maxCounts;
+        IntArray counts;
+        int current;
+        boolean redefining;
+        int draws;
+        int drawnTiles;
+
+        static CountingSpriteCache create() throws Exception {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Method allocateInstance = unsafeClass.getMethod("allocateInstance", Class.class);
+            CountingSpriteCache cache = (CountingSpriteCache) allocateInstance.invoke(
+                    field.get(null), CountingSpriteCache.class);
+            cache.clear();
+            return cache;
+        }
+
+        private CountingSpriteCache() {
+        }
+
+        @Override
+        public void clear() {
+            maxCounts = new IntArray();
+            counts = new IntArray();
+            current = -1;
+        }
+
+        @Override
+        public void beginCache() {
+            current = counts.size;
+            counts.add(0);
+            maxCounts.add(0);
+            redefining = false;
+        }
+
+        @Override
+        public void beginCache(int cacheID) {
+            if (cacheID == counts.size - 1) {
+                counts.pop();
+                maxCounts.pop();
+                beginCache();
+                return;
+            }
+            current = cacheID;
+            counts.set(cacheID, 0);
+            redefining = true;
+        }
+
+        @Override
+        public void add(Texture texture, float[] vertices, int offset, int length) {
+            counts.incr(current, length / 20);
+        }
+
+        @Override
+        public int endCache() {
+            int count = counts.get(current);
+            if (!redefining) {
+                maxCounts.set(current, count);
+            } else if (count > maxCounts.get(current)) {
+                throw new GameEngineRuntimeException("If a cache is not the last created,"
+                        + " it cannot be redefined with more entries"
+                        + " than when it was first created: "
+                        + count + " (" + maxCounts.get(current) + " max)");
+            }
+            int id = current;
+            current = -1;
+            return id;
+        }
+
+        @Override
+        public void setProjectionMatrix(Matrix4 projection) {
+        }
+
+        @Override
+        public void begin() {
+            draws = 0;
+            drawnTiles = 0;
+        }
+
+        @Override
+        public void end() {
+        }
+
+        @Override
+        public void draw(int cacheID) {
+            draws++;
+            drawnTiles += counts.get(cacheID);
+        }
+
+        @Override
+        public void dispose() {
+        }
+    }
+
+    private TiledMapTile tile;
+    private TiledMapTileLayer layer;
+    private CountingSpriteCache cache;
+    private ChunkedOrthoCachedTiledMapRenderer renderer;
+
+    @Before
+    public void setUp() throws Exception {
+        tile = new StaticTiledMapTile(new TextureRegion(GraphicsStubs.newTexture(32, 32)));
+        TiledMap map = new TiledMap();
+        layer = new TiledMapTileLayer(2 * CHUNK_SIZE, CHUNK_SIZE, 32, 32);
+        map.getLayers().add(layer);
+        cache = CountingSpriteCache.create();
+        renderer = new ChunkedOrthoCachedTiledMapRenderer(map, 1, cache, 64, CHUNK_SIZE);
+        renderer.setView(new Matrix4(), 0, 0, 2 * CHUNK_SIZE * 32, CHUNK_SIZE * 32);
+    }
+
+    private void fill(int chunkX, int tiles) {
+        int done = 0;
+        for (int y = 0; y < CHUNK_SIZE; y++) {
+            for (int x = chunkX * CHUNK_SIZE; x < (chunkX + 1) * CHUNK_SIZE; x++) {
+                TiledMapTileLayer.Cell cell = null;
+                if (done++ < tiles) {
+                    cell = new TiledMapTileLayer.Cell();
+                    cell.setTile(tile);
+                }
+                layer.setCell(x, y, cell);
+            }
+        }
+    }
+
+    private void render(int tiles, int draws) {
+        renderer.render();
+        assertEquals(tiles, renderer.getRenderedTileCount());
+        assertEquals(tiles, cache.drawnTiles);
+        assertEquals(draws, cache.draws);
+    }
+
+    @Test
+    public void emptyChunksAreNotDrawn() {
+        fill(0, 3);
+        render(3, 1);
+        fill(1, 2);
+        render(5, 2);
+        fill(0, 0);
+        render(2, 1);
+    }
+
+    @Test
+    public void chunkBeforeAnEmptiedLastCacheGrows() {
+        fill(0, 2);
+        fill(1, 1);
+        render(3, 2);
+
+        // the last cache is rebuilt with no tile, so the space used ends
+        // where the first chunk's cache does.
+        fill(1, 0);
+        render(2, 1);
+
+        // the first chunk's cache isn't the last one and can't grow.
+        fill(0, 4);
+        render(4, 1);
+        fill(1, 3);
+        render(7, 2);
+    }
+}
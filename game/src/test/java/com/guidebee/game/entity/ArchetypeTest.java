@@ -0,0 +1,301 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.entity;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.entity.directors.ChunkIteratingDirector;
+import com.guidebee.game.entity.directors.IteratingDirector;
+import com.guidebee.game.entity.utils.ImmutableArray;
+import com.guidebee.utils.collections.Array;
+
+import org.junit.Test;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Checks the chunks of each {@link Archetype} stay dense and in step with
+ * the dataTraits of their entities after adding and removing entities and
+ * dataTraits, and compares the iteration speed of an
+ * {@link IteratingDirector} with a {@link ChunkIteratingDirector}.
+ */
+public class ArchetypeTest {
+
+    private static final int ENTITIES = 50000;
+
+    private static final int FRAMES = 100;
+
+    private static final int WARMUP_FRAMES = 20;
+
+    static class Position extends DataTrait {
+        float x;
+        float y;
+    }
+
+    static class Velocity extends DataTrait {
+        float x;
+        float y;
+    }
+
+    static class Health extends DataTrait {
+    }
+
+    static class Tag extends DataTrait {
+    }
+
+    @Test
+    public void chunksFollowChurn() {
+        Random random = new Random(11);
+        EntityEngine engine = new EntityEngine(true);
+        Role all = Role.getFor(Position.class);
+        Array<Entity> live = new Array<Entity>();
+        for (int step = 0; step < 4000; step++) {
+            int op = random.nextInt(6);
+            if (op < 2 || live.size == 0) {
+                Entity entity = new Entity().add(new Position());
+                if (random.nextBoolean()) entity.add(new Velocity());
+                engine.addEntity(entity);
+                live.add(entity);
+            } else if (op == 2) {
+                engine.removeEntity(live.removeIndex(random.nextInt(live.size)));
+            } else {
+                Entity entity = live.get(random.nextInt(live.size));
+                if (op == 3) {
+                    toggle(entity, Velocity.class, new Velocity());
+                } else if (op == 4) {
+                    toggle(entity, Health.class, new Health());
+                } else {
+                    toggle(entity, Tag.class, new Tag());
+                }
+            }
+            if (step % 50 == 0) {
+                assertChunks(engine, all, live);
+            }
+        }
+        assertChunks(engine, all, live);
+
+        Array<Entity> removed = new Array<Entity>(live);
+        engine.removeEntities(removed);
+        for (int i = 0; i < removed.size; i++) {
+            assertNull(removed.get(i).getArchetype());
+        }
+        ImmutableArray<Archetype> archetypes = engine.getArchetypesFor(all);
+        for (int i = 0; i < archetypes.size(); i++) {
+            assertEquals(0, archetypes.get(i).getEntityCount());
+            assertEquals(0, archetypes.get(i).getChunks().size());
+        }
+    }
+
+    @Test
+    public void chunkDirectorMatchesIteratingDirector() {
+        EntityEngine entityEngine = new EntityEngine(false);
+        EntityEngine chunkEngine = new EntityEngine(true);
+        populate(entityEngine, 3000);
+        populate(chunkEngine, 3000);
+        entityEngine.addDirector(new EntityMovement());
+        chunkEngine.addDirector(new ChunkMovement());
+        for (int frame = 0; frame < 10; frame++) {
+            entityEngine.update(0.5f);
+            chunkEngine.update(0.5f);
+        }
+        assertEquals(sumX(entityEngine), sumX(chunkEngine), 0.0);
+    }
+
+    @Test
+    public void iterationBenchmark() {
+        EntityEngine entityEngine = new EntityEngine(false);
+        EntityEngine chunkEngine = new EntityEngine(true);
+        populate(entityEngine, ENTITIES);
+        populate(chunkEngine, ENTITIES);
+        EntityMovement entityMovement = new EntityMovement();
+        ChunkMovement chunkMovement = new ChunkMovement();
+        entityEngine.addDirector(entityMovement);
+        chunkEngine.addDirector(chunkMovement);
+
+        // warm up both directors before timing them
+        for (int frame = 0; frame < WARMUP_FRAMES; frame++) {
+            entityEngine.update(0.016f);
+            chunkEngine.update(0.016f);
+        }
+        long entityTime = 0;
+        long chunkTime = 0;
+        for (int frame = 0; frame < FRAMES; frame++) {
+            long start = System.nanoTime();
+            entityEngine.update(0.016f);
+            entityTime += System.nanoTime() - start;
+            start = System.nanoTime();
+            chunkEngine.update(0.016f);
+            chunkTime += System.nanoTime() - start;
+        }
+        int moving = entityEngine.getEntitiesFor(Role.getFor(Position.class,
+                Velocity.class)).size();
+        assertEquals((long) moving * (WARMUP_FRAMES + FRAMES), entityMovement.processed);
+        assertEquals(entityMovement.processed, chunkMovement.processed);
+        long updates = (long) moving * FRAMES;
+        System.out.println("iterate " + moving + " entities: "
+                + entityTime / updates + "." + entityTime * 10 / updates % 10
+                + " ns/entity with IteratingDirector, "
+                + chunkTime / updates + "." + chunkTime * 10 / updates % 10
+                + " ns/entity with ChunkIteratingDirector");
+    }
+
+    private static class EntityMovement extends IteratingDirector {
+        private final DataTraitMapper<Position> positions =
+                DataTraitMapper.getFor(Position.class);
+        private final DataTraitMapper<Velocity> velocities =
+                DataTraitMapper.getFor(Velocity.class);
+        long processed;
+
+        EntityMovement() {
+            super(Role.getFor(Position.class, Velocity.class));
+        }
+
+        @Override
+        protected void processEntity(Entity entity, float deltaTime) {
+            Position position = positions.get(entity);
+            Velocity velocity = velocities.get(entity);
+            position.x += velocity.x * deltaTime;
+            position.y += velocity.y * deltaTime;
+            processed++;
+        }
+    }
+
+    private static class ChunkMovement extends ChunkIteratingDirector {
+        private final DataTraitMapper<Position> positionMapper =
+                DataTraitMapper.getFor(Position.class);
+        private final DataTraitMapper<Velocity> velocityMapper =
+                DataTraitMapper.getFor(Velocity.class);
+        long processed;
+
+        ChunkMovement() {
+            super(Role.getFor(Position.class, Velocity.class));
+        }
+
+        @Override
+        protected void processChunk(ArchetypeChunk chunk, float deltaTime) {
+            Position[] positions = chunk.getDataTraits(positionMapper);
+            Velocity[] velocities = chunk.getDataTraits(velocityMapper);
+            for (int i = 0, n = chunk.size(); i < n; i++) {
+                positions[i].x += velocities[i].x * deltaTime;
+                positions[i].y += velocities[i].y * deltaTime;
+            }
+            processed += chunk.size();
+        }
+    }
+
+    /**
+     * Adds entities with the same dataTraits and values to both kinds of
+     * engine, spread over a few archetypes.
+     */
+    private static void populate(EntityEngine engine, int count) {
+        for (int i = 0; i < count; i++) {
+            Position position = new Position();
+            position.x = i;
+            Entity entity = new Entity().add(position);
+            if (i % 5 != 0) {
+                Velocity velocity = new Velocity();
+                velocity.x = i % 7;
+                velocity.y = 1;
+                entity.add(velocity);
+            }
+            if (i % 3 == 0) entity.add(new Health());
+            if (i % 4 == 0) entity.add(new Tag());
+            engine.addEntity(entity);
+        }
+    }
+
+    private static double sumX(EntityEngine engine) {
+        ImmutableArray<Entity> entities = engine.getEntitiesFor(Role.getFor(Position.class));
+        double sum = 0;
+        for (int i = 0; i < entities.size(); i++) {
+            sum += entities.get(i).getDataTrait(Position.class).x;
+        }
+        return sum;
+    }
+
+    private static <T extends DataTrait> void toggle(Entity entity, Class<T> type,
+                                                     T dataTrait) {
+        if (entity.getDataTrait(type) != null) {
+            entity.remove(type);
+        } else {
+            entity.add(dataTrait);
+        }
+    }
+
+    /**
+     * Checks every live entity sits in the row its chunk says, the chunk
+     * columns hold its dataTraits, and the chunks hold nothing else.
+     */
+    private static void assertChunks(EntityEngine engine, Role role,
+                                     Array<Entity> live) {
+        Map<Entity, Boolean> seen = new IdentityHashMap<Entity, Boolean>();
+        ImmutableArray<Archetype> archetypes = engine.getArchetypesFor(role);
+        int total = 0;
+        for (int a = 0; a < archetypes.size(); a++) {
+            Archetype archetype = archetypes.get(a);
+            ImmutableArray<ArchetypeChunk> chunks = archetype.getChunks();
+            int count = 0;
+            for (int c = 0; c < chunks.size(); c++) {
+                ArchetypeChunk chunk = chunks.get(c);
+                assertTrue(chunk.size() > 0);
+                assertTrue(chunk.size() <= Archetype.CHUNK_CAPACITY);
+                assertSame(archetype, chunk.getArchetype());
+                Position[] positions = chunk.getDataTraits(Position.class);
+                Velocity[] velocities = chunk.getDataTraits(Velocity.class);
+                Health[] healths = chunk.getDataTraits(Health.class);
+                Tag[] tags = chunk.getDataTraits(Tag.class);
+                for (int row = 0; row < chunk.size(); row++) {
+                    Entity entity = chunk.getEntity(row);
+                    assertNotNull(entity);
+                    assertNull(seen.put(entity, Boolean.TRUE));
+                    assertSame(chunk, entity.chunk);
+                    assertEquals(row, entity.chunkRow);
+                    assertTrue(archetype.getDataTraitBits()
+                            .equals(entity.getDataTraitBits()));
+                    assertSame(entity.getDataTrait(Position.class), positions[row]);
+                    assertSame(entity.getDataTrait(Velocity.class),
+                            velocities == null ? null : velocities[row]);
+                    assertSame(entity.getDataTrait(Health.class),
+                            healths == null ? null : healths[row]);
+                    assertSame(entity.getDataTrait(Tag.class),
+                            tags == null ? null : tags[row]);
+                }
+                count += chunk.size();
+            }
+            // all but the last chunk are full
+            for (int c = 0; c < chunks.size() - 1; c++) {
+                assertEquals(Archetype.CHUNK_CAPACITY, chunks.get(c).size());
+            }
+            assertEquals(count, archetype.getEntityCount());
+            total += count;
+        }
+        assertEquals(live.size, total);
+        for (int i = 0; i < live.size; i++) {
+            assertTrue(seen.containsKey(live.get(i)));
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.entity;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.entity.directors.Director;
+import com.guidebee.game.entity.directors.IteratingDirector;
+import com.guidebee.game.entity.utils.ImmutableArray;
+import com.guidebee.utils.collections.Array;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Checks the director phases built by {@link EntityEngine} from the declared
+ * reads and writes, that updating with several threads and command buffers
+ * leaves the entities in the same state as updating with one, and times a
+ * parallel {@link IteratingDirector}.
+ */
+public class EntityEngineParallelTest {
+
+    private static final int FRAMES = 60;
+
+    private static final int SPAWNS_PER_FRAME = 80;
+
+    static class Position extends DataTrait {
+        float x;
+    }
+
+    static class Velocity extends DataTrait {
+        float x;
+    }
+
+    static class Health extends DataTrait {
+        int value;
+    }
+
+    static class Tag extends DataTrait {
+    }
+
+    static class Id extends DataTrait {
+        int value;
+    }
+
+    /**
+     * Director which only declares its access. The engine keeps one
+     * director per class, so each one is an anonymous subclass.
+     */
+    private static class Declared extends Director {
+        Declared(int priority) {
+            super(priority);
+        }
+
+        Declared reading(Class<? extends DataTrait> type) {
+            reads(type);
+            return this;
+        }
+
+        Declared writing(Class<? extends DataTrait> type) {
+            writes(type);
+            return this;
+        }
+    }
+
+    @Test
+    public void phasesFollowConflicts() {
+        EntityEngine engine = new EntityEngine();
+        Director move = new Declared(0) {}.writing(Position.class).reading(Velocity.class);
+        Director heal = new Declared(1) {}.writing(Health.class);
+        Director draw = new Declared(2) {}.reading(Position.class);
+        Director legacy = new Declared(3) {};
+        Director tag = new Declared(4) {}.writing(Tag.class);
+        Director count = new Declared(5) {}.reading(Health.class);
+        engine.addDirector(move);
+        engine.addDirector(heal);
+        engine.addDirector(draw);
+        engine.addDirector(legacy);
+        engine.addDirector(tag);
+        engine.addDirector(count);
+
+        assertFalse(move.conflictsWith(heal));
+        assertTrue(move.conflictsWith(draw));
+        assertFalse(draw.conflictsWith(new Declared(0) {}.reading(Position.class)));
+        assertTrue(legacy.conflictsWith(tag));
+
+        Array<Director[]> phases = engine.getDirectorPhases();
+        assertEquals(4, phases.size);
+        assertArrayEquals(new Director[]{move, heal}, phases.get(0));
+        assertArrayEquals(new Director[]{draw}, phases.get(1));
+        assertArrayEquals(new Director[]{legacy}, phases.get(2));
+        assertArrayEquals(new Director[]{tag, count}, phases.get(3));
+        assertPhasesOrdered(engine);
+
+        engine.removeDirector(legacy);
+        phases = engine.getDirectorPhases();
+        assertEquals(2, phases.size);
+        assertArrayEquals(new Director[]{move, heal, tag}, phases.get(0));
+        assertArrayEquals(new Director[]{draw, count}, phases.get(1));
+        assertPhasesOrdered(engine);
+    }
+
+    @Test
+    public void parallelUpdateMatchesSequential() {
+        Map<Integer, String> sequential = simulate(1);
+        for (int threads = 2; threads <= 4; threads++) {
+            assertEquals("threads " + threads, sequential, simulate(threads));
+        }
+    }
+
+    @Test
+    public void parallelIteratingDirectorVisitsEachEntityOnce() {
+        EntityEngine engine = new EntityEngine();
+        engine.setParallelism(4);
+        try {
+            final Map<Entity, Integer> visits = new ConcurrentHashMap<Entity, Integer>();
+            IteratingDirector director = new IteratingDirector(Role.getFor(Position.class)) {
+                @Override
+                protected void processEntity(Entity entity, float deltaTime) {
+                    Integer previous = visits.put(entity, 1);
+                    if (previous != null) {
+                        visits.put(entity, previous + 1);
+                    }
+                }
+            };
+            director.setParallel(true);
+            engine.addDirector(director);
+            int count = IteratingDirector.SLICE_SIZE * 7 + 13;
+            for (int i = 0; i < count; i++) {
+                engine.addEntity(new Entity().add(new Position()));
+            }
+            engine.update(1);
+            assertEquals(count, visits.size());
+            for (Integer visit : visits.values()) {
+                assertEquals(1, visit.intValue());
+            }
+        } finally {
+            engine.setParallelism(1);
+        }
+    }
+
+    @Test
+    public void parallelIteratingDirectorBenchmark() {
+        long[] times = new long[2];
+        double[] sums = new double[2];
+        int[] threads = {1, Math.max(2, Runtime.getRuntime().availableProcessors())};
+        for (int run = 0; run < 2; run++) {
+            EntityEngine engine = new EntityEngine();
+            engine.setParallelism(threads[run]);
+            try {
+                IteratingDirector director = new IteratingDirector(
+                        Role.getFor(Position.class, Velocity.class)) {
+                    @Override
+                    protected void processEntity(Entity entity, float deltaTime) {
+                        Position position = entity.getDataTrait(Position.class);
+                        Velocity velocity = entity.getDataTrait(Velocity.class);
+                        // some work per entity, as a steering behaviour would
+                        float x = position.x;
+                        for (int i = 0; i < 50; i++) {
+                            x = (float) Math.sqrt(x * x + velocity.x * deltaTime);
+                        }
+                        position.x = x;
+                    }
+                };
+                director.setParallel(true);
+                engine.addDirector(director);
+                for (int i = 0; i < 20000; i++) {
+                    Velocity velocity = new Velocity();
+                    velocity.x = i % 17;
+                    engine.addEntity(new Entity().add(new Position()).add(velocity));
+                }
+                for (int frame = 0; frame < 5; frame++) {
+                    engine.update(0.016f);
+                }
+                long start = System.nanoTime();
+                for (int frame = 0; frame < 20; frame++) {
+                    engine.update(0.016f);
+                }
+                times[run] = System.nanoTime() - start;
+                ImmutableArray<Entity> entities = engine.getEntitiesFor(Role.getFor(Position.class));
+                for (int i = 0; i < entities.size(); i++) {
+                    sums[run] += entities.get(i).getDataTrait(Position.class).x;
+                }
+            } finally {
+                engine.setParallelism(1);
+            }
+        }
+        assertEquals(sums[0], sums[1], 0.0);
+        System.out.println("parallel directors: " + times[0] / 20000 + " us/frame with 1 thread, "
+                + times[1] / 20000 + " us/frame with " + threads[1] + " threads");
+    }
+
+    /**
+     * Spawns, moves, tags, ages and removes entities for a number of frames,
+     * returning the state of each entity by id.
+     */
+    private static Map<Integer, String> simulate(int threads) {
+        final EntityEngine engine = new EntityEngine();
+        engine.setParallelism(threads);
+        try {
+            engine.addDirector(new Spawner(engine));
+            IteratingDirector move = new IteratingDirector(
+                    Role.getFor(Position.class, Velocity.class), 1) {
+                {
+                    reads(Velocity.class);
+                    writes(Position.class);
+                }
+
+                @Override
+                protected void processEntity(Entity entity, float deltaTime) {
+                    entity.getDataTrait(Position.class).x
+                            += entity.getDataTrait(Velocity.class).x * deltaTime;
+                }
+            };
+            move.setParallel(true);
+            engine.addDirector(move);
+            IteratingDirector tag = new IteratingDirector(Role.getFor(Health.class), 2) {
+                {
+                    writes(Health.class, Tag.class);
+                }
+
+                @Override
+                protected void processEntity(Entity entity, float deltaTime) {
+                    Health health = entity.getDataTrait(Health.class);
+                    health.value--;
+                    if (health.value % 4 == 0 && entity.getDataTrait(Tag.class) == null) {
+                        entity.add(new Tag());
+                    }
+                    if (health.value == 0) {
+                        entity.remove(Health.class);
+                    }
+                }
+            };
+            tag.setParallel(true);
+            engine.addDirector(tag);
+            engine.addDirector(new IteratingDirector(Role.getFor(Position.class), 3) {
+                {
+                    reads(Position.class);
+                    writes(Velocity.class);
+                }
+
+                @Override
+                protected void processEntity(Entity entity, float deltaTime) {
+                    float x = entity.getDataTrait(Position.class).x;
+                    if (x > 40 && entity.getDataTrait(Velocity.class) != null) {
+                        entity.remove(Velocity.class);
+                    }
+                    if (x > 35 && entity.getDataTrait(Health.class) == null) {
+                        engine.removeEntity(entity);
+                    }
+                }
+            });
+            assertEquals(3, engine.getDirectorPhases().size);
+
+            for (int frame = 0; frame < FRAMES; frame++) {
+                engine.update(0.5f);
+            }
+        } finally {
+            engine.setParallelism(1);
+        }
+        Map<Integer, String> state = new TreeMap<Integer, String>();
+        ImmutableArray<Entity> entities = engine.getEntitiesFor(Role.getFor(Id.class));
+        for (int i = 0; i < entities.size(); i++) {
+            Entity entity = entities.get(i);
+            Velocity velocity = entity.getDataTrait(Velocity.class);
+            Health health = entity.getDataTrait(Health.class);
+            state.put(entity.getDataTrait(Id.class).value,
+                    entity.getDataTrait(Position.class).x
+                            + " " + (velocity == null ? "-" : velocity.x)
+                            + " " + (health == null ? "-" : health.value)
+                            + " " + (entity.getDataTrait(Tag.class) != null));
+        }
+        assertEquals(entities.size(), state.size());
+        assertTrue(state.size() > 0);
+        return state;
+    }
+
+    /**
+     * Adds entities each frame, through the command buffer when updating
+     * with several threads.
+     */
+    private static class Spawner extends Director {
+        private final EntityEngine engine;
+        private int next;
+
+        Spawner(EntityEngine engine) {
+            super(0);
+            this.engine = engine;
+            writes(Position.class, Velocity.class, Health.class, Id.class);
+        }
+
+        @Override
+        public void direct(float deltaTime) {
+            for (int i = 0; i < SPAWNS_PER_FRAME; i++) {
+                Id id = new Id();
+                id.value = next++;
+                Velocity velocity = new Velocity();
+                velocity.x = 1 + id.value % 5;
+                Health health = new Health();
+                health.value = 3 + id.value % 11;
+                engine.addEntity(new Entity().add(id).add(new Position())
+                        .add(velocity).add(health));
+            }
+        }
+    }
+
+    /**
+     * Checks no two directors of a phase conflict, and each director comes
+     * after the directors of higher priority it conflicts with.
+     */
+    private static void assertPhasesOrdered(EntityEngine engine) {
+        Array<Director[]> phases = engine.getDirectorPhases();
+        ImmutableArray<Director> directors = engine.getDirectors();
+        int total = 0;
+        for (int p = 0; p < phases.size; p++) {
+            Director[] phase = phases.get(p);
+            total += phase.length;
+            for (int i = 0; i < phase.length; i++) {
+                for (int j = i + 1; j < phase.length; j++) {
+                    assertFalse(phase[i].conflictsWith(phase[j]));
+                }
+            }
+        }
+        assertEquals(directors.size(), total);
+        for (int i = 0; i < directors.size(); i++) {
+            for (int j = i + 1; j < directors.size(); j++) {
+                if (directors.get(i).conflictsWith(directors.get(j))) {
+                    assertTrue(phaseOf(phases, directors.get(i))
+                            < phaseOf(phases, directors.get(j)));
+                }
+            }
+        }
+    }
+
+    private static int phaseOf(Array<Director[]> phases, Director director) {
+        for (int p = 0; p < phases.size; p++) {
+            for (Director member : phases.get(p)) {
+                if (member == director) return p;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.entity;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.entity.utils.ImmutableArray;
+import com.guidebee.utils.collections.Array;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Checks the family membership kept by {@link EntityEngine} matches
+ * {@link Role#matches(Entity)} after adding and removing entities and
+ * dataTraits, including batches whose listeners register families or change
+ * the dataTraits of the entities, and times spawning and despawning.
+ */
+public class EntityEngineTest {
+
+    private static final int ENTITIES = 2000;
+
+    private static final int FRAMES = 200;
+
+    private static final int SPAWNS_PER_FRAME = 500;
+
+    private static final Array<Class<? extends DataTrait>> TYPES =
+            new Array<Class<? extends DataTrait>>();
+
+    static {
+        TYPES.add(Position.class);
+        TYPES.add(Velocity.class);
+        TYPES.add(Health.class);
+        TYPES.add(Tag.class);
+    }
+
+    static class Position extends DataTrait {
+    }
+
+    static class Velocity extends DataTrait {
+    }
+
+    static class Health extends DataTrait {
+    }
+
+    static class Tag extends DataTrait {
+    }
+
+    static class Spawned extends DataTrait {
+    }
+
+    @Test
+    public void membershipMatchesRolesAfterChurn() {
+        for (boolean archetypeStorage : new boolean[]{false, true}) {
+            Random random = new Random(5);
+            EntityEngine engine = new EntityEngine(archetypeStorage);
+            Role[] roles = {
+                    Role.getFor(Position.class),
+                    Role.getFor(Position.class, Velocity.class),
+                    Role.getFor(Health.class),
+                    Role.getFor(Velocity.class, Health.class, Tag.class),
+            };
+            for (Role role : roles) {
+                engine.getEntitiesFor(role);
+            }
+            Array<Entity> live = new Array<Entity>();
+            for (int step = 0; step < 300; step++) {
+                switch (random.nextInt(5)) {
+                    case 0:
+                        Entity entity = randomEntity(random);
+                        engine.addEntity(entity);
+                        live.add(entity);
+                        break;
+                    case 1:
+                        Array<Entity> batch = templateBatch(random);
+                        engine.addEntities(batch);
+                        live.addAll(batch);
+                        break;
+                    case 2:
+                        Array<Entity> removed = new Array<Entity>();
+                        for (int i = live.size - 1; i >= 0 && removed.size < 20; i--) {
+                            if (random.nextInt(3) == 0) {
+                                removed.add(live.removeIndex(i));
+                            }
+                        }
+                        engine.removeEntities(removed);
+                        break;
+                    default:
+                        if (live.size > 0) {
+                            toggleTrait(random, live.get(random.nextInt(live.size)));
+                        }
+                        break;
+                }
+                for (Role role : roles) {
+                    assertMembership(engine, role, live);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void batchListenerRegisteringRole() {
+        final EntityEngine engine = new EntityEngine();
+        final Role late = Role.getFor(Tag.class, Spawned.class);
+        engine.addEntityListener(new EntityListener() {
+            @Override
+            public void entityAdded(Entity entity) {
+                // registers a family in the middle of the batch
+                engine.getEntitiesFor(late);
+            }
+
+            @Override
+            public void entityRemoved(Entity entity) {
+            }
+        });
+        Array<Entity> batch = new Array<Entity>();
+        for (int i = 0; i < 50; i++) {
+            batch.add(new Entity().add(new Tag()).add(new Spawned()));
+        }
+        engine.addEntities(batch);
+
+        assertEquals(50, engine.getEntitiesFor(late).size());
+        assertMembership(engine, late, batch);
+    }
+
+    @Test
+    public void batchListenerChangingDataTraits() {
+        final EntityEngine engine = new EntityEngine(true);
+        Role spawned = Role.getFor(Spawned.class);
+        Role healthy = Role.getFor(Spawned.class, Health.class);
+        engine.getEntitiesFor(healthy);
+        final int[] count = new int[1];
+        engine.addEntityListener(new EntityListener() {
+            @Override
+            public void entityAdded(Entity entity) {
+                // changes the bits the batch matched against
+                if (count[0]++ % 2 == 0) {
+                    entity.add(new Health());
+                }
+            }
+
+            @Override
+            public void entityRemoved(Entity entity) {
+            }
+        });
+        Array<Entity> batch = new Array<Entity>();
+        for (int i = 0; i < 40; i++) {
+            batch.add(new Entity().add(new Spawned()));
+        }
+        engine.addEntities(batch);
+
+        assertEquals(40, engine.getEntitiesFor(spawned).size());
+        assertEquals(20, engine.getEntitiesFor(healthy).size());
+        assertMembership(engine, spawned, batch);
+        assertMembership(engine, healthy, batch);
+        for (int i = 0; i < batch.size; i++) {
+            Entity entity = batch.get(i);
+            assertNotNull(entity.getArchetype());
+            assertTrue(entity.getArchetype().getDataTraitBits()
+                    .equals(entity.getDataTraitBits()));
+        }
+    }
+
+    @Test
+    public void spawnDespawnBenchmark() {
+        for (boolean archetypeStorage : new boolean[]{false, true}) {
+            EntityEngine engine = new EntityEngine(archetypeStorage);
+            Role moving = Role.getFor(Position.class, Velocity.class);
+            Role living = Role.getFor(Health.class);
+            engine.getEntitiesFor(moving);
+            engine.getEntitiesFor(living);
+            for (int i = 0; i < ENTITIES; i++) {
+                engine.addEntity(new Entity().add(new Position()).add(new Health()));
+            }
+            Array<Entity> batch = new Array<Entity>();
+            long single = 0;
+            long batched = 0;
+            for (int frame = 0; frame < FRAMES; frame++) {
+                batch.clear();
+                for (int i = 0; i < SPAWNS_PER_FRAME; i++) {
+                    batch.add(new Entity().add(new Position()).add(new Velocity()));
+                }
+                long start = System.nanoTime();
+                if (frame % 2 == 0) {
+                    for (int i = 0; i < batch.size; i++) {
+                        engine.addEntity(batch.get(i));
+                    }
+                    single += System.nanoTime() - start;
+                } else {
+                    engine.addEntities(batch);
+                    batched += System.nanoTime() - start;
+                }
+                assertEquals(SPAWNS_PER_FRAME, engine.getEntitiesFor(moving).size());
+                engine.removeEntities(batch);
+            }
+            assertEquals(0, engine.getEntitiesFor(moving).size());
+            assertEquals(ENTITIES, engine.getEntitiesFor(living).size());
+            int spawns = FRAMES / 2 * SPAWNS_PER_FRAME;
+            System.out.println("spawn (archetypes " + archetypeStorage + "): "
+                    + single / spawns + " ns/entity with addEntity, "
+                    + batched / spawns + " ns/entity with addEntities");
+        }
+    }
+
+    private static void assertMembership(EntityEngine engine, Role role,
+                                         Array<Entity> entities) {
+        Set<Entity> expected = new HashSet<Entity>();
+        for (int i = 0; i < entities.size; i++) {
+            if (role.matches(entities.get(i))) {
+                expected.add(entities.get(i));
+            }
+        }
+        ImmutableArray<Entity> members = engine.getEntitiesFor(role);
+        Set<Entity> actual = new HashSet<Entity>();
+        for (int i = 0; i < members.size(); i++) {
+            assertTrue("duplicate member", actual.add(members.get(i)));
+        }
+        assertEquals(expected, actual);
+    }
+
+    private static Entity randomEntity(Random random) {
+        Entity entity = new Entity();
+        if (random.nextBoolean()) entity.add(new Position());
+        if (random.nextBoolean()) entity.add(new Velocity());
+        if (random.nextBoolean()) entity.add(new Health());
+        if (random.nextInt(4) == 0) entity.add(new Tag());
+        return entity;
+    }
+
+    private static Array<Entity> templateBatch(Random random) {
+        Array<Entity> batch = new Array<Entity>();
+        Entity template = randomEntity(random);
+        ImmutableArray<DataTrait> traits = template.getDataTraits();
+        for (int i = 0, n = 1 + random.nextInt(30); i < n; i++) {
+            Entity entity = new Entity();
+            for (int j = 0; j < traits.size(); j++) {
+                entity.add(newTrait(traits.get(j).getClass()));
+            }
+            // breaks the run of identical entities now and then
+            if (random.nextInt(8) == 0) {
+                toggleTrait(random, entity);
+            }
+            batch.add(entity);
+        }
+        return batch;
+    }
+
+    private static void toggleTrait(Random random, Entity entity) {
+        Class<? extends DataTrait> type = TYPES.get(random.nextInt(TYPES.size));
+        if (entity.getDataTrait(type) != null) {
+            entity.remove(type);
+        } else {
+            entity.add(newTrait(type));
+        }
+    }
+
+    private static DataTrait newTrait(Class<?> type) {
+        if (type == Position.class) return new Position();
+        if (type == Velocity.class) return new Velocity();
+        if (type == Health.class) return new Health();
+        return new Tag();
+    }
+}
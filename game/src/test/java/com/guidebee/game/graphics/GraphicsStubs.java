@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.graphics;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.GameEngine;
+import com.guidebee.game.Graphics;
+import com.guidebee.game.engine.graphics.opengles.IGL20;
+import com.guidebee.game.graphics.Pixmap.Format;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Textures and a counting {@link Batch} for tests running without an OpenGL
+ * context. The GL calls go to a GL which does nothing.
+ */
+public final class GraphicsStubs {
+
+    private GraphicsStubs() {
+    }
+
+    /**
+     * Sets a GL which does nothing, and a graphics of size 0, when the
+     * engine has none.
+     */
+    public static void installGL() {
+        if (GameEngine.gl == null) {
+            IGL20 gl = stub(IGL20.class);
+            GameEngine.gl = gl;
+            GameEngine.gl20 = gl;
+        }
+        if (GameEngine.graphics == null) GameEngine.graphics = stub(Graphics.class);
+    }
+
+    /**
+     * @return a texture of the given size, without pixels.
+     */
+    public static Texture newTexture(final int width, final int height) {
+        installGL();
+        return new Texture(new TextureData() {
+            public TextureDataType getType() {
+                return TextureDataType.Custom;
+            }
+
+            public boolean isPrepared() {
+                return true;
+            }
+
+            public void prepare() {
+            }
+
+            public Pixmap consumePixmap() {
+                return null;
+            }
+
+            public boolean disposePixmap() {
+                return false;
+            }
+
+            public void consumeCustomData(int target) {
+            }
+
+            public int getWidth() {
+                return width;
+            }
+
+            public int getHeight() {
+                return height;
+            }
+
+            public Format getFormat() {
+                return Format.RGBA8888;
+            }
+
+            public boolean useMipMaps() {
+                return false;
+            }
+
+            public boolean isManaged() {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Records what is drawn to its {@link #batch}: the number of draw calls,
+     * of quads, and the sums of the quad vertex positions.
+     */
+    public static class CountingBatch implements InvocationHandler {
+        public final Batch batch = (Batch) Proxy.newProxyInstance(
+                Batch.class.getClassLoader(), new Class<?>[]{Batch.class}, this);
+        public int draws;
+        public int quads;
+        public double sumX;
+        public double sumY;
+
+        public void reset() {
+            draws = 0;
+            quads = 0;
+            sumX = 0;
+            sumY = 0;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("draw")) {
+                draws++;
+                if (args.length == 4 && args[1] instanceof float[]) {
+                    float[] vertices = (float[]) args[1];
+                    int offset = (Integer) args[2];
+                    int count = (Integer) args[3];
+                    quads += count / Sprite.SPRITE_SIZE;
+                    for (int i = offset; i < offset + count; i += Sprite.VERTEX_SIZE) {
+                        sumX += vertices[i];
+                        sumY += vertices[i + 1];
+                    }
+                } else {
+                    quads++;
+                }
+                return null;
+            }
+            if (method.getName().equals("isDrawing")) return true;
+            return defaultValue(method.getReturnType());
+        }
+    }
+
+    private static <T> T stub(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return defaultValue(method.getReturnType());
+                    }
+                }));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == float.class) return 0f;
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0.0;
+        if (type == byte.class) return (byte) 0;
+        if (type == short.class) return (short) 0;
+        if (type == char.class) return (char) 0;
+        return null;
+    }
+}
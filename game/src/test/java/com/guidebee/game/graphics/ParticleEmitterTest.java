@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.graphics;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Checks that a {@link ParticleEmitter} with array storage draws the same
+ * particles as one with particle objects, and times both at 10k, 50k and
+ * 100k particles.
+ */
+public class ParticleEmitterTest {
+
+    private static final int MAX_PARTICLES = 2000;
+
+    private static final int[] TIMED_PARTICLES = {10000, 50000, 100000};
+
+    private static final int TIMED_FRAMES = 300;
+
+    private static final float DELTA = 1 / 60f;
+
+    /**
+     * @return an emitter whose emission rate keeps it close to maxParticles,
+     * as particles live 0.5 to 1 second.
+     */
+    private static ParticleEmitter newEmitter(Sprite sprite, boolean arrayStorage,
+                                              int maxParticles) {
+        ParticleEmitter emitter = new ParticleEmitter();
+        emitter.setMaxParticleCount(maxParticles);
+        emitter.setArrayStorage(arrayStorage);
+        emitter.setRandom(new Random(42));
+        emitter.setSprite(sprite);
+        emitter.setContinuous(true);
+        emitter.getDuration().setLow(1000);
+        emitter.getEmission().setHigh(maxParticles * 1.5f);
+        emitter.getLife().setHigh(500, 1000);
+        emitter.getScale().setHigh(8, 16);
+        emitter.getVelocity().setActive(true);
+        emitter.getVelocity().setHigh(50, 100);
+        emitter.getAngle().setActive(true);
+        emitter.getAngle().setHigh(0, 360);
+        emitter.getRotation().setActive(true);
+        emitter.getRotation().setHigh(0, 90);
+        emitter.getGravity().setActive(true);
+        emitter.getGravity().setHigh(-20);
+        emitter.getTransparency().setHigh(1);
+        emitter.start();
+        return emitter;
+    }
+
+    @Test
+    public void arrayStorageDrawsTheSameParticles() {
+        Sprite sprite = new Sprite(GraphicsStubs.newTexture(16, 16));
+        ParticleEmitter objects = newEmitter(sprite, false, MAX_PARTICLES);
+        ParticleEmitter arrays = newEmitter(sprite, true, MAX_PARTICLES);
+        GraphicsStubs.CountingBatch objectBatch = new GraphicsStubs.CountingBatch();
+        GraphicsStubs.CountingBatch arrayBatch = new GraphicsStubs.CountingBatch();
+        int maxActive = 0;
+        for (int frame = 0; frame < 120; frame++) {
+            objects.update(DELTA);
+            arrays.update(DELTA);
+            assertEquals(objects.getActiveCount(), arrays.getActiveCount());
+            maxActive = Math.max(maxActive, arrays.getActiveCount());
+
+            objectBatch.reset();
+            arrayBatch.reset();
+            objects.draw(objectBatch.batch);
+            arrays.draw(arrayBatch.batch);
+            assertEquals(objects.getActiveCount(), objectBatch.quads);
+            assertEquals(objectBatch.quads, arrayBatch.quads);
+            assertTrue(arrayBatch.draws <= 1);
+            double tolerance = 0.1 * Math.max(1, arrayBatch.quads);
+            assertEquals(objectBatch.sumX, arrayBatch.sumX, tolerance);
+            assertEquals(objectBatch.sumY, arrayBatch.sumY, tolerance);
+        }
+        assertTrue(maxActive > 0);
+    }
+
+    @Test
+    public void arrayStorageTiming() {
+        Sprite sprite = new Sprite(GraphicsStubs.newTexture(16, 16));
+        GraphicsStubs.CountingBatch batch = new GraphicsStubs.CountingBatch();
+        // warms up both paths before the first timed count
+        time(newEmitter(sprite, false, MAX_PARTICLES), batch);
+        time(newEmitter(sprite, true, MAX_PARTICLES), batch);
+        for (int particles : TIMED_PARTICLES) {
+            batch.reset();
+            ParticleEmitter objects = newEmitter(sprite, false, particles);
+            long objectTime = time(objects, batch);
+            int objectQuads = batch.quads;
+            batch.reset();
+            ParticleEmitter arrays = newEmitter(sprite, true, particles);
+            long arrayTime = time(arrays, batch);
+            assertEquals(objectQuads, batch.quads);
+            assertEquals(objects.getActiveCount(), arrays.getActiveCount());
+            System.out.println("ParticleEmitter " + particles + " max, "
+                    + arrays.getActiveCount() + " active, " + TIMED_FRAMES
+                    + " frames: objects " + objectTime / 1000000
+                    + " ms, arrays " + arrayTime / 1000000 + " ms");
+        }
+    }
+
+    private static long time(ParticleEmitter emitter, GraphicsStubs.CountingBatch batch) {
+        long start = System.nanoTime();
+        for (int frame = 0; frame < TIMED_FRAMES; frame++) {
+            emitter.update(DELTA);
+            emitter.draw(batch.batch);
+        }
+        return System.nanoTime() - start;
+    }
+}
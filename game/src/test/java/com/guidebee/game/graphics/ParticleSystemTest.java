@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.graphics;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.graphics.ParticleEffectPool.PooledEffect;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Checks that a {@link ParticleSystem} draws the same quads whatever the
+ * number of threads, including sliced emitters, that what it draws is one
+ * step behind until {@link ParticleSystem#sync()}, and that completed pooled
+ * effects are freed.
+ */
+public class ParticleSystemTest {
+
+    private static final float DELTA = 1 / 60f;
+
+    private static ParticleEmitter newEmitter(Sprite sprite, int maxParticles,
+                                              boolean arrayStorage,
+                                              boolean continuous) {
+        ParticleEmitter emitter = new ParticleEmitter();
+        emitter.setMaxParticleCount(maxParticles);
+        emitter.setArrayStorage(arrayStorage);
+        emitter.setSprite(sprite);
+        emitter.setContinuous(continuous);
+        emitter.getDuration().setLow(continuous ? 1000 : 100);
+        emitter.getEmission().setHigh(maxParticles * 2);
+        emitter.getLife().setHigh(500, 1000);
+        emitter.getScale().setHigh(8, 16);
+        emitter.getVelocity().setActive(true);
+        emitter.getVelocity().setHigh(50, 100);
+        emitter.getAngle().setActive(true);
+        emitter.getAngle().setHigh(0, 360);
+        emitter.getRotation().setActive(true);
+        emitter.getRotation().setHigh(0, 90);
+        emitter.getGravity().setActive(true);
+        emitter.getGravity().setHigh(-20);
+        emitter.getTransparency().setHigh(1);
+        return emitter;
+    }
+
+    /**
+     * an effect with a small emitter of each storage, and a large array
+     * storage emitter which is sliced.
+     */
+    private static ParticleEffect newEffect(Sprite sprite, float x, float y) {
+        ParticleEffect effect = new ParticleEffect();
+        effect.getEmitters().add(newEmitter(sprite, 500, false, true));
+        effect.getEmitters().add(newEmitter(sprite, 500, true, true));
+        effect.getEmitters().add(newEmitter(sprite,
+                ParticleSystem.SLICE_SIZE * 3, true, true));
+        effect.setPosition(x, y);
+        return effect;
+    }
+
+    private static int activeCount(ParticleSystem system) {
+        int count = 0;
+        for (ParticleEffect effect : system.getEffects()) {
+            for (ParticleEmitter emitter : effect.getEmitters()) {
+                count += emitter.getActiveCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * steps two effects for 60 frames, and returns the quads, the sums of
+     * their x and the sums of their y drawn at each frame.
+     */
+    private static List<double[]> run(int threads) {
+        Sprite sprite = new Sprite(GraphicsStubs.newTexture(16, 16));
+        ParticleSystem system = new ParticleSystem(threads, 1234);
+        GraphicsStubs.CountingBatch batch = new GraphicsStubs.CountingBatch();
+        List<double[]> frames = new ArrayList<double[]>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                ParticleEffect effect = newEffect(sprite, 100 * i, 50 * i);
+                system.add(effect);
+                effect.start();
+            }
+            int maxActive = 0;
+            for (int frame = 0; frame < 60; frame++) {
+                system.update(DELTA);
+                batch.reset();
+                system.draw(batch.batch);
+                frames.add(new double[]{batch.quads, batch.sumX, batch.sumY});
+                system.sync();
+                for (ParticleEffect effect : system.getEffects()) {
+                    maxActive = Math.max(maxActive,
+                            effect.getEmitters().get(2).getActiveCount());
+                }
+            }
+            assertTrue("emitter not sliced",
+                    maxActive > ParticleSystem.SLICE_SIZE * 2);
+        } finally {
+            system.dispose();
+        }
+        return frames;
+    }
+
+    @Test
+    public void sameQuadsWhateverTheNumberOfThreads() {
+        List<double[]> expected = run(0);
+        for (int threads : new int[]{1, 3}) {
+            List<double[]> actual = run(threads);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                String message = threads + " threads, frame " + i;
+                assertEquals(message, expected.get(i)[0], actual.get(i)[0], 0);
+                assertEquals(message, expected.get(i)[1], actual.get(i)[1], 0);
+                assertEquals(message, expected.get(i)[2], actual.get(i)[2], 0);
+            }
+        }
+    }
+
+    @Test
+    public void drawIsOneStepBehindUntilSync() {
+        Sprite sprite = new Sprite(GraphicsStubs.newTexture(16, 16));
+        ParticleSystem system = new ParticleSystem(3, 99);
+        GraphicsStubs.CountingBatch batch = new GraphicsStubs.CountingBatch();
+        try {
+            ParticleEffect effect = newEffect(sprite, 0, 0);
+            system.add(effect);
+            effect.start();
+            int previous = 0;
+            for (int frame = 0; frame < 30; frame++) {
+                system.update(DELTA);
+                batch.reset();
+                system.draw(batch.batch);
+                assertEquals("frame " + frame, previous, batch.quads);
+
+                system.sync();
+                int active = activeCount(system);
+                batch.reset();
+                system.draw(batch.batch);
+                assertEquals("frame " + frame, active, batch.quads);
+                // a second sync doesn't swap again
+                system.sync();
+                batch.reset();
+                system.draw(batch.batch);
+                assertEquals("frame " + frame, active, batch.quads);
+                previous = active;
+            }
+            assertTrue(previous > ParticleSystem.SLICE_SIZE);
+        } finally {
+            system.dispose();
+        }
+    }
+
+    @Test
+    public void removeCompletedFreesPooledEffects() {
+        Sprite sprite = new Sprite(GraphicsStubs.newTexture(16, 16));
+        ParticleEffect template = new ParticleEffect();
+        template.getEmitters().add(newEmitter(sprite, 200, true, false));
+        template.getEmitters().add(newEmitter(sprite, 200, false, false));
+        ParticleEffectPool pool = new ParticleEffectPool(template, 2, 4);
+        ParticleSystem system = new ParticleSystem(2, 5);
+        try {
+            PooledEffect first = pool.obtain();
+            PooledEffect second = pool.obtain();
+            ParticleEffect running = newEffect(sprite, 0, 0);
+            system.add(first);
+            system.add(second);
+            system.add(running);
+            first.start();
+            second.start();
+            running.start();
+            assertEquals(0, pool.getFree());
+
+            system.update(DELTA);
+            system.removeCompleted();
+            assertEquals(3, system.getEffects().size);
+
+            for (int frame = 0; frame < 120; frame++) {
+                system.update(DELTA);
+            }
+            system.sync();
+            assertTrue(first.isComplete());
+            assertTrue(second.isComplete());
+            assertFalse(running.isComplete());
+
+            system.removeCompleted();
+            assertEquals(1, system.getEffects().size);
+            assertTrue(system.getEffects().contains(running, true));
+            assertEquals(2, pool.getFree());
+            PooledEffect reused = pool.obtain();
+            assertTrue(reused == first || reused == second);
+        } finally {
+            system.dispose();
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.maps.tiled;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.engine.maps.tiled.TmxMapLoader;
+import com.guidebee.game.graphics.TextureRegion;
+import com.guidebee.game.maps.tiled.TiledMapTileLayer.Cell;
+import com.guidebee.game.maps.tiled.tiles.StaticTiledMapTile;
+import com.guidebee.utils.Base64Coder;
+import com.guidebee.utils.XmlReader;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Checks a {@link ChunkedTiledMapTileLayer} loaded from TMX data against the
+ * {@link TiledMapTileLayer} the loader creates from the same data, under a
+ * small loaded chunk budget, and the cells set or changed on it.
+ */
+public class ChunkedTiledMapTileLayerTest {
+
+    private static final int TILES = 20;
+
+    private static final int FLAGS[] = {0, 0x80000000, 0x40000000, 0x20000000,
+            0xC0000000, 0xA0000000, 0x60000000, 0xE0000000};
+
+    private static final String[] ENCODINGS = {"csv", "base64", "zlib", "gzip"};
+
+    /**
+     * gives access to the layer loading of the TMX loader.
+     */
+    private static class Loader extends TmxMapLoader {
+
+        TiledMapTileLayer load(TiledMap map, XmlReader.Element layer,
+                               boolean chunked, int chunkSize,
+                               int loadedChunkBudget) {
+            chunkedLayers = chunked;
+            this.chunkSize = chunkSize;
+            this.loadedChunkBudget = loadedChunkBudget;
+            loadTileLayer(map, layer);
+            return (TiledMapTileLayer) map.getLayers()
+                    .get(map.getLayers().getCount() - 1);
+        }
+
+        Cell newCell(boolean flipHorizontally, boolean flipVertically,
+                     boolean flipDiagonally) {
+            return createTileLayerCell(flipHorizontally, flipVertically,
+                    flipDiagonally);
+        }
+    }
+
+    private static TiledMap newMap() {
+        TiledMap map = new TiledMap();
+        TiledMapTileSet tileSet = new TiledMapTileSet();
+        for (int id = 1; id <= TILES; id++) {
+            StaticTiledMapTile tile = new StaticTiledMapTile((TextureRegion) null);
+            tile.setId(id);
+            tileSet.putTile(id, tile);
+        }
+        map.getTileSets().addTileSet(tileSet);
+        return map;
+    }
+
+    /**
+     * random TMX ids with all the flip flags, a third of them empty.
+     */
+    private static int[] randomIds(Random random, int width, int height) {
+        int[] ids = new int[width * height];
+        for (int i = 0; i < ids.length; i++) {
+            if (random.nextInt(3) == 0) continue;
+            ids[i] = (1 + random.nextInt(TILES)) | FLAGS[random.nextInt(FLAGS.length)];
+        }
+        return ids;
+    }
+
+    private static XmlReader.Element layerElement(int[] ids, int width,
+                                                  int height, String encoding)
+            throws IOException {
+        StringBuilder data = new StringBuilder();
+        String attributes;
+        if (encoding.equals("csv")) {
+            attributes = "encoding=\"csv\"";
+            for (int i = 0; i < ids.length; i++) {
+                if (i > 0) data.append(i % width == 0 ? ",\n" : ",");
+                data.append(ids[i] & 0xFFFFFFFFL);
+            }
+        } else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            OutputStream out = bytes;
+            attributes = "encoding=\"base64\"";
+            if (encoding.equals("zlib")) {
+                out = new DeflaterOutputStream(bytes);
+                attributes += " compression=\"zlib\"";
+            } else if (encoding.equals("gzip")) {
+                out = new GZIPOutputStream(bytes);
+                attributes += " compression=\"gzip\"";
+            }
+            for (int id : ids) {
+                out.write(id);
+                out.write(id >> 8);
+                out.write(id >> 16);
+                out.write(id >> 24);
+            }
+            out.close();
+            data.append(Base64Coder.encode(bytes.toByteArray()));
+        }
+        String xml = "<map tilewidth=\"16\" tileheight=\"16\"><layer name=\"ground\""
+                + " width=\"" + width + "\" height=\"" + height + "\"><data "
+                + attributes + ">" + data + "</data></layer></map>";
+        return new XmlReader().parse(xml).getChildByName("layer");
+    }
+
+    private static void assertSameCell(String message, Cell expected, Cell actual) {
+        if (expected == null) {
+            assertNull(message, actual);
+            return;
+        }
+        assertNotNull(message, actual);
+        assertSame(message, expected.getTile(), actual.getTile());
+        assertEquals(message, expected.getFlipHorizontally(), actual.getFlipHorizontally());
+        assertEquals(message, expected.getFlipVertically(), actual.getFlipVertically());
+        assertEquals(message, expected.getRotation(), actual.getRotation());
+    }
+
+    @Test
+    public void getTileIdsMatchesEveryEncoding() throws IOException {
+        int[] ids = randomIds(new Random(3), 37, 11);
+        for (String encoding : ENCODINGS) {
+            assertArrayEquals(encoding, ids, TmxMapHelper.getTileIds(
+                    layerElement(ids, 37, 11, encoding), 37, 11));
+        }
+    }
+
+    @Test
+    public void packedIdsMatchTheLoaderCells() {
+        Loader loader = new Loader();
+        TiledMapTileSets tileSets = newMap().getTileSets();
+        ChunkedTiledMapTileLayer layer = new ChunkedTiledMapTileLayer(
+                FLAGS.length, 1, 16, 16, tileSets, 4, 1);
+        for (int i = 0; i < FLAGS.length; i++) {
+            int flags = FLAGS[i];
+            Cell expected = loader.newCell((flags & 0x80000000) != 0,
+                    (flags & 0x40000000) != 0, (flags & 0x20000000) != 0);
+            expected.setTile(tileSets.getTile(7));
+            int packed = TmxMapHelper.toPackedId(7 | flags);
+            assertEquals("flags " + Integer.toHexString(flags),
+                    ChunkedTiledMapTileLayer.packId(7,
+                            expected.getFlipHorizontally(),
+                            expected.getFlipVertically(),
+                            expected.getRotation()), packed);
+            layer.setChunkIds(i / 4, 0, chunkWith(packed, i % 4, 4));
+            assertSameCell("flags " + Integer.toHexString(flags), expected,
+                    layer.getCell(i, 0));
+        }
+        assertEquals(0, TmxMapHelper.toPackedId(0));
+        assertEquals(0, TmxMapHelper.toPackedId(0xE0000000));
+    }
+
+    private static int[] chunkWith(int packed, int x, int chunkSize) {
+        int[] ids = new int[chunkSize * chunkSize];
+        ids[x] = packed;
+        return ids;
+    }
+
+    @Test
+    public void cellsMatchTheLoaderUnderASmallBudget() throws IOException {
+        Random random = new Random(5);
+        // 21 rows of 4 tile chunks leave a partial band at the top
+        int width = 23;
+        int height = 21;
+        int chunkSize = 4;
+        int budget = 2;
+        int[] ids = randomIds(random, width, height);
+        // an empty chunk
+        for (int y = 0; y < chunkSize; y++)
+            for (int x = 0; x < chunkSize; x++)
+                ids[(height - 1 - y) * width + x] = 0;
+        for (String encoding : ENCODINGS) {
+            XmlReader.Element element = layerElement(ids, width, height, encoding);
+            Loader loader = new Loader();
+            TiledMap map = newMap();
+            TiledMapTileLayer expected = loader.load(map, element, false, 0, 0);
+            ChunkedTiledMapTileLayer chunked = (ChunkedTiledMapTileLayer) loader
+                    .load(map, element, true, chunkSize, budget);
+            assertTrue(chunked.isChunkEmpty(0, 0));
+            assertTrue(!chunked.isChunkEmpty(0, 5));
+            for (int pass = 0; pass < 3; pass++) {
+                for (int i = 0; i < width * height; i++) {
+                    int x = random.nextInt(width);
+                    int y = random.nextInt(height);
+                    String message = encoding + " (" + x + ", " + y + ")";
+                    Cell cell = expected.getCell(x, y);
+                    assertSameCell(message, cell, chunked.getCell(x, y));
+                    assertTrue(chunked.getLoadedChunkCount() <= budget);
+                    int packed = chunked.getPackedId(x, y);
+                    assertEquals(message, cell == null ? 0
+                            : ChunkedTiledMapTileLayer.packId(cell.getTile().getId(),
+                            cell.getFlipHorizontally(), cell.getFlipVertically(),
+                            cell.getRotation()), packed);
+                }
+            }
+            for (int y = 0; y < height; y++)
+                for (int x = 0; x < width; x++)
+                    assertSameCell(encoding + " (" + x + ", " + y + ")",
+                            expected.getCell(x, y), chunked.getCell(x, y));
+        }
+    }
+
+    @Test
+    public void setAndChangedCellsSurviveUnloading() {
+        TiledMapTileSets tileSets = newMap().getTileSets();
+        ChunkedTiledMapTileLayer layer = new ChunkedTiledMapTileLayer(
+                16, 16, 16, 16, tileSets, 4, 1);
+        Cell set = new Cell();
+        set.setTile(tileSets.getTile(3));
+        set.setRotation(Cell.ROTATE_90);
+        layer.setCell(1, 1, set);
+        Cell other = new Cell();
+        other.setTile(tileSets.getTile(4));
+        layer.setCell(10, 10, other);
+        assertEquals(1, layer.getLoadedChunkCount());
+
+        // a Cell read back after an unload is a new one with the same values
+        Cell read = layer.getCell(1, 1);
+        assertNotSame(set, read);
+        assertSameCell("set", set, read);
+
+        read.setTile(tileSets.getTile(7));
+        read.setFlipHorizontally(true);
+        layer.getCell(10, 10);
+        assertSameCell("changed", read, layer.getCell(1, 1));
+
+        layer.setCell(1, 1, null);
+        layer.getCell(10, 10);
+        assertNull(layer.getCell(1, 1));
+        assertEquals(0, layer.getPackedId(1, 1));
+
+        // a chunk with no tile left takes no memory
+        assertTrue(layer.isChunkEmpty(0, 0));
+        layer.setCell(10, 10, null);
+        layer.setCell(5, 5, set);
+        assertTrue(layer.isChunkEmpty(2, 2));
+        assertEquals(1, layer.getLoadedChunkCount());
+    }
+
+    @Test
+    public void unpackableCellKeepsItsChunkLoaded() {
+        TiledMapTileSets tileSets = newMap().getTileSets();
+        ChunkedTiledMapTileLayer layer = new ChunkedTiledMapTileLayer(
+                16, 16, 16, 16, tileSets, 4, 1);
+        StaticTiledMapTile foreign = new StaticTiledMapTile((TextureRegion) null);
+        foreign.setId(999);
+        Cell cell = new Cell();
+        cell.setTile(foreign);
+        layer.setCell(1, 1, cell);
+        for (int chunk = 1; chunk < 4; chunk++) {
+            Cell other = new Cell();
+            other.setTile(tileSets.getTile(chunk));
+            layer.setCell(chunk * 4, chunk * 4, other);
+        }
+        // the budget only evicts the other chunks
+        assertEquals(2, layer.getLoadedChunkCount());
+        assertSame(cell, layer.getCell(1, 1));
+        assertEquals(0, layer.getPackedId(1, 1));
+        for (int chunk = 1; chunk < 4; chunk++) {
+            assertSame(tileSets.getTile(chunk),
+                    layer.getCell(chunk * 4, chunk * 4).getTile());
+        }
+        assertSame(cell, layer.getCell(1, 1));
+
+        // once its tile can be packed, the chunk is unloaded again
+        cell.setTile(tileSets.getTile(9));
+        layer.getCell(4, 4);
+        layer.getCell(8, 8);
+        assertEquals(1, layer.getLoadedChunkCount());
+        assertSame(tileSets.getTile(9), layer.getCell(1, 1).getTile());
+    }
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.maps.tiled;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.Collidable;
+import com.guidebee.game.graphics.TextureRegion;
+import com.guidebee.game.maps.tiled.tiles.StaticTiledMapTile;
+import com.guidebee.math.geometry.Circle;
+import com.guidebee.math.geometry.Polygon;
+import com.guidebee.math.geometry.Rectangle;
+import com.guidebee.utils.collections.Array;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Checks the tiles returned by {@link TiledMapCollisionIndex} against a scan
+ * of the cells of the layer.
+ */
+public class TiledMapCollisionIndexTest {
+
+    private static final int TILE_SIZE = 32;
+
+    @Test
+    public void areaQueryMatchesCellScan() {
+        Random random = new Random(1);
+        TiledMap map = new TiledMap();
+        TiledMapTileLayer layer = new TiledMapTileLayer(100, 80, TILE_SIZE, TILE_SIZE);
+        map.getLayers().add(layer);
+        StaticTiledMapTile[][] tiles = new StaticTiledMapTile[100][80];
+        for (int x = 0; x < 100; x++) {
+            for (int y = 0; y < 80; y++) {
+                if (random.nextInt(3) != 0) continue;
+                tiles[x][y] = setTile(layer, x, y);
+                tiles[x][y].setCollisionEnabled(random.nextInt(5) != 0);
+            }
+        }
+        TiledMapCollisionIndex index = new TiledMapCollisionIndex(map);
+
+        for (int i = 0; i < 500; i++) {
+            if (i == 250) {
+                // the layer index is rebuilt after setCell
+                tiles[3][3] = setTile(layer, 3, 3);
+                tiles[3][3].setCollisionEnabled(true);
+                tiles[4][4] = null;
+                layer.setCell(4, 4, null);
+            }
+            Rectangle area = new Rectangle(random.nextFloat() * 3400 - 100,
+                    random.nextFloat() * 2800 - 100, random.nextFloat() * 700,
+                    random.nextFloat() * 700);
+            Set<Collidable> expected = new HashSet<Collidable>();
+            for (int x = 0; x < 100; x++) {
+                for (int y = 0; y < 80; y++) {
+                    StaticTiledMapTile tile = tiles[x][y];
+                    if (tile == null || !tile.isEnabled()) continue;
+                    if (x * TILE_SIZE > area.x + area.width
+                            || (x + 1) * TILE_SIZE <= area.x
+                            || y * TILE_SIZE > area.y + area.height
+                            || (y + 1) * TILE_SIZE <= area.y) {
+                        continue;
+                    }
+                    expected.add(tile);
+                }
+            }
+            Array<Collidable> out = index.getCollidables(area, new Array<Collidable>());
+            assertEquals(expected.size(), out.size);
+            assertEquals(expected, toSet(out));
+        }
+    }
+
+    @Test
+    public void objectQueryUsesBroadPhaseBounds() {
+        TiledMap map = new TiledMap();
+        TiledMapTileLayer layer = new TiledMapTileLayer(10, 10, TILE_SIZE, TILE_SIZE);
+        map.getLayers().add(layer);
+        StaticTiledMapTile tile = setTile(layer, 5, 5);
+        tile.setCollisionEnabled(true);
+        TiledMapCollisionIndex index = new TiledMapCollisionIndex(map);
+
+        // the AABB is in cell (3, 3), the circle and the polygon reach cell (5, 5).
+        Body body = new Body(new Rectangle(100, 100, 10, 10));
+        body.circle = new Circle(105, 105, 80);
+        body.polygon = new Polygon(new float[]{100, 100, 170, 170, 100, 110});
+        Array<Body> bodies = new Array<Body>();
+        bodies.add(body);
+
+        assertFalse(index.getCollidables(bodies, Collidable.BOUNDING_RECT,
+                new Array<Collidable>()).contains(tile, true));
+        assertTrue(index.getCollidables(bodies, Collidable.BOUNDING_CIRCLE,
+                new Array<Collidable>()).contains(tile, true));
+        assertTrue(index.getCollidables(bodies, Collidable.BOUNDING_AREA,
+                new Array<Collidable>()).contains(tile, true));
+    }
+
+    @Test
+    public void eachTileReturnedOnce() {
+        TiledMap map = new TiledMap();
+        TiledMapTileLayer layer = new TiledMapTileLayer(40, 40, TILE_SIZE, TILE_SIZE);
+        map.getLayers().add(layer);
+        StaticTiledMapTile tile = new StaticTiledMapTile((TextureRegion) null);
+        tile.setCollisionEnabled(true);
+        for (int x = 0; x < 40; x++) {
+            for (int y = 0; y < 40; y++) {
+                TiledMapTileLayer.Cell cell = new TiledMapTileLayer.Cell();
+                cell.setTile(tile);
+                layer.setCell(x, y, cell);
+            }
+        }
+        TiledMapCollisionIndex index = new TiledMapCollisionIndex(map);
+        Array<Body> bodies = new Array<Body>();
+        bodies.add(new Body(new Rectangle(0, 0, 600, 600)));
+        bodies.add(new Body(new Rectangle(300, 300, 600, 600)));
+        assertEquals(1, index.getCollidables(bodies, Collidable.BOUNDING_RECT,
+                new Array<Collidable>()).size);
+        assertEquals(1, index.getAllCollidables(new Array<Collidable>()).size);
+    }
+
+    private static StaticTiledMapTile setTile(TiledMapTileLayer layer, int x, int y) {
+        StaticTiledMapTile tile = new StaticTiledMapTile((TextureRegion) null);
+        TiledMapTileLayer.Cell cell = new TiledMapTileLayer.Cell();
+        cell.setTile(tile);
+        layer.setCell(x, y, cell);
+        return tile;
+    }
+
+    private static Set<Collidable> toSet(Array<Collidable> collidables) {
+        Set<Collidable> set = new HashSet<Collidable>();
+        for (int i = 0; i < collidables.size; i++) {
+            set.add(collidables.get(i));
+        }
+        return set;
+    }
+
+    static class Body implements Collidable {
+        final Rectangle aabb;
+        Circle circle;
+        Polygon polygon;
+
+        Body(Rectangle aabb) {
+            this.aabb = aabb;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return true;
+        }
+
+        @Override
+        public String getName() {
+            return "body";
+        }
+
+        @Override
+        public Rectangle getBoundingAABB() {
+            return aabb;
+        }
+
+        @Override
+        public Polygon getBoundingPolygon() {
+            return polygon;
+        }
+
+        @Override
+        public Circle getBoundingCircle() {
+            return circle;
+        }
+    }
+}
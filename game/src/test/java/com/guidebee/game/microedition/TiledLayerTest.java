@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.microedition;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.graphics.GraphicsStubs;
+import com.guidebee.game.graphics.TextureRegion;
+import com.guidebee.math.geometry.Rectangle;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Checks that {@link TiledLayer#paint} draws one region per non empty cell
+ * overlapping the clip, with a counting batch.
+ */
+public class TiledLayerTest {
+
+    private static final int COLUMNS = 40;
+
+    private static final int ROWS = 30;
+
+    private static final int TILE_SIZE = 16;
+
+    private TiledLayer layer;
+    private GraphicsStubs.CountingBatch batch;
+
+    @Before
+    public void setUp() {
+        TextureRegion image = new TextureRegion(GraphicsStubs.newTexture(32, 32));
+        layer = new TiledLayer(COLUMNS, ROWS, image, TILE_SIZE, TILE_SIZE);
+        int animated = layer.createAnimatedTile(2);
+        int emptyAnimated = layer.createAnimatedTile(0);
+        for (int row = 0; row < ROWS; row++) {
+            for (int col = 0; col < COLUMNS; col++) {
+                int index = (row * 7 + col * 3) % 6;
+                if (index == 5) index = animated;
+                else if (index == 4) index = emptyAnimated;
+                layer.setCell(col, row, index);
+            }
+        }
+        batch = new GraphicsStubs.CountingBatch();
+    }
+
+    /**
+     * @return the number of cells with a tile overlapping the area, in the
+     * layer's parent coordinates.
+     */
+    private int visibleCells(float x, float y, float width, float height) {
+        int count = 0;
+        for (int row = 0; row < ROWS; row++) {
+            for (int col = 0; col < COLUMNS; col++) {
+                int tile = layer.getCell(col, row);
+                if (tile < 0) tile = layer.getAnimatedTile(tile);
+                if (tile == 0) continue;
+                float cellX = (int) layer.getX() + col * TILE_SIZE;
+                float cellY = (int) layer.getY() + row * TILE_SIZE;
+                if (cellX < x + width && cellX + TILE_SIZE > x
+                        && cellY < y + height && cellY + TILE_SIZE > y) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void paintsAllCellsOutsideALayerManager() {
+        layer.paint(batch.batch);
+        int cells = visibleCells(0, 0, COLUMNS * TILE_SIZE, ROWS * TILE_SIZE);
+        assertTrue(cells > 0);
+        assertEquals(cells, batch.draws);
+    }
+
+    @Test
+    public void paintsTheCellsInTheClip() {
+        layer.setPosition(-20.5f, 7.25f);
+        Rectangle clip = new Rectangle(33, 50.5f, 100, 75);
+        layer.paint(batch.batch, clip);
+        assertEquals(visibleCells(clip.x, clip.y, clip.width, clip.height), batch.draws);
+
+        batch.reset();
+        layer.paint(batch.batch, new Rectangle(-500, -500, 100, 100));
+        assertEquals(0, batch.draws);
+
+        // a clip on the cell edges doesn't draw the cells next to it
+        layer.setPosition(0, 0);
+        batch.reset();
+        layer.paint(batch.batch, new Rectangle(TILE_SIZE, TILE_SIZE, 2 * TILE_SIZE,
+                2 * TILE_SIZE));
+        assertEquals(visibleCells(TILE_SIZE, TILE_SIZE, 2 * TILE_SIZE, 2 * TILE_SIZE),
+                batch.draws);
+        assertTrue(batch.draws <= 4);
+    }
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.scene.collision;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.Collidable;
+import com.guidebee.game.scene.collision.UniformGridBroadPhaseTest.Box;
+import com.guidebee.utils.collections.Array;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Checks the states {@link CollisionPairCache} gives to the colliding pairs
+ * from frame to frame, and the reuse of its pooled collisions.
+ */
+public class CollisionPairCacheTest {
+
+    private final Box a = new Box(0, 0, 10, 10);
+    private final Box b = new Box(5, 5, 10, 10);
+    private final Box c = new Box(8, 8, 10, 10);
+
+    @Test
+    public void pairBeginsPersistsAndEnds() {
+        CollisionPairCache cache = new CollisionPairCache();
+
+        cache.begin();
+        Collision collision = cache.add(a, b, Collidable.BOUNDING_RECT);
+        Array<Collision> batch = cache.end();
+        assertEquals(1, batch.size);
+        assertSame(collision, batch.get(0));
+        assertEquals(Collision.BEGIN, collision.getState());
+        assertTrue(collision.isTouching());
+        assertSame(a, collision.getObjectA());
+        assertSame(b, collision.getObjectB());
+        assertEquals(Collidable.BOUNDING_RECT, collision.getCollisionType());
+        assertEquals(1, cache.getActiveCount());
+
+        for (int frame = 0; frame < 3; frame++) {
+            cache.begin();
+            assertSame(collision, cache.add(a, b, Collidable.BOUNDING_RECT));
+            batch = cache.end();
+            assertEquals(1, batch.size);
+            assertEquals(Collision.PERSIST, collision.getState());
+            assertTrue(collision.isTouching());
+        }
+
+        cache.begin();
+        batch = cache.end();
+        assertEquals(1, batch.size);
+        assertSame(collision, batch.get(0));
+        assertEquals(Collision.END, collision.getState());
+        assertFalse(collision.isTouching());
+        assertEquals(0, cache.getActiveCount());
+
+        // reported once
+        cache.begin();
+        assertEquals(0, cache.end().size);
+    }
+
+    @Test
+    public void swappedPairIsTheSameCollision() {
+        CollisionPairCache cache = new CollisionPairCache();
+        cache.begin();
+        Collision collision = cache.add(a, b, Collidable.BOUNDING_RECT);
+        // reported twice in a frame, by both objects
+        assertSame(collision, cache.add(b, a, Collidable.BOUNDING_RECT));
+        assertEquals(1, cache.end().size);
+
+        cache.begin();
+        assertSame(collision, cache.add(b, a, Collidable.BOUNDING_RECT));
+        Array<Collision> batch = cache.end();
+        assertEquals(1, batch.size);
+        assertEquals(Collision.PERSIST, collision.getState());
+        assertSame(a, collision.getObjectA());
+        assertSame(b, collision.getObjectB());
+        assertEquals(1, cache.getActiveCount());
+
+        // other pairs with the same objects are different collisions
+        cache.begin();
+        cache.add(b, a, Collidable.BOUNDING_RECT);
+        Collision other = cache.add(a, c, Collidable.BOUNDING_RECT);
+        Collision third = cache.add(c, b, Collidable.BOUNDING_RECT);
+        assertEquals(3, cache.end().size);
+        assertEquals(Collision.BEGIN, other.getState());
+        assertEquals(Collision.BEGIN, third.getState());
+        assertEquals(3, cache.getActiveCount());
+
+        // only the pair not added again ends
+        cache.begin();
+        cache.add(c, a, Collidable.BOUNDING_RECT);
+        cache.add(b, c, Collidable.BOUNDING_RECT);
+        batch = cache.end();
+        assertEquals(3, batch.size);
+        assertEquals(Collision.END, collision.getState());
+        assertEquals(Collision.PERSIST, other.getState());
+        assertEquals(Collision.PERSIST, third.getState());
+        assertEquals(2, cache.getActiveCount());
+    }
+
+    @Test
+    public void endedCollisionsAreReused() {
+        CollisionPairCache cache = new CollisionPairCache();
+        cache.begin();
+        Collision collision = cache.add(a, b, Collidable.BOUNDING_RECT);
+        cache.end();
+        cache.begin();
+        cache.end(); // ended, still valid during this frame
+
+        // freed at the next frame, and reused for another pair
+        cache.begin();
+        Collision reused = cache.add(c, a, Collidable.BOUNDING_CIRCLE);
+        assertSame(collision, reused);
+        assertEquals(Collision.BEGIN, reused.getState());
+        assertTrue(reused.isTouching());
+        assertSame(c, reused.getObjectA());
+        assertSame(a, reused.getObjectB());
+        assertEquals(Collidable.BOUNDING_CIRCLE, reused.getCollisionType());
+        assertEquals(1, cache.end().size);
+
+        // the old pair begins again with a new object
+        cache.begin();
+        cache.add(c, a, Collidable.BOUNDING_CIRCLE);
+        Collision again = cache.add(a, b, Collidable.BOUNDING_RECT);
+        assertFalse(again == reused);
+        assertEquals(Collision.BEGIN, again.getState());
+        assertEquals(2, cache.end().size);
+    }
+
+    @Test
+    public void clearForgetsThePairsWithoutEndingThem() {
+        CollisionPairCache cache = new CollisionPairCache();
+        cache.begin();
+        Collision first = cache.add(a, b, Collidable.BOUNDING_RECT);
+        Collision second = cache.add(b, c, Collidable.BOUNDING_RECT);
+        cache.end();
+        cache.clear();
+        assertEquals(0, cache.getActiveCount());
+
+        cache.begin();
+        assertEquals(0, cache.end().size);
+
+        // the pairs begin again, with the freed collisions
+        cache.begin();
+        Collision collision = cache.add(b, a, Collidable.BOUNDING_RECT);
+        assertTrue(collision == first || collision == second);
+        assertEquals(Collision.BEGIN, collision.getState());
+        assertSame(b, collision.getObjectA());
+        Array<Collision> batch = cache.end();
+        assertEquals(1, batch.size);
+        assertEquals(1, cache.getActiveCount());
+    }
+
+    @Test
+    public void batchListenerIsACollisionListener() {
+        final Array<Collision> received = new Array<Collision>();
+        CollisionListener listener = new CollisionBatchListener() {
+            @Override
+            public void collisionsDetected(Array<Collision> collisions) {
+                received.addAll(collisions);
+            }
+
+            @Override
+            public void collisionDetected(Collision collision) {
+                received.add(collision);
+            }
+        };
+        listener.collisionDetected(new Collision(a, b, Collidable.BOUNDING_RECT));
+        assertEquals(1, received.size);
+    }
+}
@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.game.scene.collision;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.game.Collidable;
+import com.guidebee.math.geometry.Circle;
+import com.guidebee.math.geometry.Polygon;
+import com.guidebee.math.geometry.Rectangle;
+import com.guidebee.utils.collections.Array;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Checks the pairs reported by {@link UniformGridBroadPhase} against a brute
+ * force test of all the pairs, and measures how many pairs the narrow phase
+ * is left with.
+ */
+public class UniformGridBroadPhaseTest {
+
+    @Test
+    public void pairsMatchBruteForce() {
+        Random random = new Random(1);
+        Array<Collidable> collidables = new Array<Collidable>();
+        for (int i = 0; i < 400; i++) {
+            // some objects span many cells, some have negative coordinates
+            float size = random.nextInt(10) == 0 ? 300 : 10 + random.nextFloat() * 60;
+            collidables.add(new Box(random.nextFloat() * 2000 - 500,
+                    random.nextFloat() * 2000 - 500, size, size));
+        }
+        UniformGridBroadPhase broadPhase = new UniformGridBroadPhase(64);
+        broadPhase.update(collidables, Collidable.BOUNDING_RECT);
+        assertEquals(bruteForcePairs(collidables), reportedPairs(broadPhase));
+        assertEquals(collidables.size, broadPhase.getProxyCount());
+    }
+
+    @Test
+    public void incrementalUpdatesMatchBruteForce() {
+        Random random = new Random(2);
+        Array<Collidable> collidables = new Array<Collidable>();
+        for (int i = 0; i < 300; i++) {
+            collidables.add(new Box(random.nextFloat() * 1000, random.nextFloat() * 1000,
+                    5 + random.nextFloat() * 40, 5 + random.nextFloat() * 40));
+        }
+        UniformGridBroadPhase broadPhase = new UniformGridBroadPhase();
+        for (int frame = 0; frame < 50; frame++) {
+            for (int i = 0; i < collidables.size; i++) {
+                Box box = (Box) collidables.get(i);
+                box.aabb.x += random.nextFloat() * 20 - 10;
+                box.aabb.y += random.nextFloat() * 20 - 10;
+                if (random.nextInt(50) == 0) box.enabled = !box.enabled;
+            }
+            if (frame % 10 == 9) collidables.removeIndex(random.nextInt(collidables.size));
+            broadPhase.update(collidables, Collidable.BOUNDING_RECT);
+
+            Array<Collidable> enabled = new Array<Collidable>();
+            for (int i = 0; i < collidables.size; i++) {
+                if (collidables.get(i).isEnabled()) enabled.add(collidables.get(i));
+            }
+            assertEquals(bruteForcePairs(enabled), reportedPairs(broadPhase));
+            assertEquals(enabled.size, broadPhase.getProxyCount());
+        }
+        broadPhase.clear();
+        assertEquals(0, broadPhase.getProxyCount());
+        assertEquals(0, broadPhase.getCellCount());
+    }
+
+    @Test
+    public void boundsCoverCircleAndPolygon() {
+        Box box = new Box(0, 0, 10, 10);
+        box.circle = new Circle(5, 5, 20);
+        box.polygon = new Polygon(new float[]{0, 0, 40, 0, 40, 10});
+        Rectangle bounds = new Rectangle();
+
+        UniformGridBroadPhase.computeBounds(box, Collidable.BOUNDING_RECT, bounds);
+        assertEquals(new Rectangle(0, 0, 10, 10), bounds);
+        UniformGridBroadPhase.computeBounds(box, Collidable.BOUNDING_CIRCLE, bounds);
+        assertEquals(new Rectangle(-15, -15, 40, 40), bounds);
+        UniformGridBroadPhase.computeBounds(box, Collidable.BOUNDING_AREA, bounds);
+        assertEquals(new Rectangle(0, 0, 40, 10), bounds);
+    }
+
+    /**
+     * Measures the candidate pairs and the time of a frame for 2000 small
+     * objects, against the n * (n - 1) / 2 pairs the full scan tests.
+     */
+    @Test
+    public void candidatePairsBenchmark() {
+        Random random = new Random(3);
+        Array<Collidable> collidables = new Array<Collidable>();
+        int count = 2000;
+        for (int i = 0; i < count; i++) {
+            collidables.add(new Box(random.nextFloat() * 4000, random.nextFloat() * 4000,
+                    16 + random.nextFloat() * 32, 16 + random.nextFloat() * 32));
+        }
+        UniformGridBroadPhase broadPhase = new UniformGridBroadPhase(64);
+        final int[] pairs = new int[1];
+        BroadPhase.PairListener counter = new BroadPhase.PairListener() {
+            @Override
+            public void candidatePair(Collidable objectA, Collidable objectB) {
+                pairs[0]++;
+            }
+        };
+
+        int frames = 100;
+        long start = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) {
+            for (int i = 0; i < count; i++) {
+                ((Box) collidables.get(i)).aabb.x += (frame & 1) == 0 ? 3 : -3;
+            }
+            pairs[0] = 0;
+            broadPhase.update(collidables, Collidable.BOUNDING_RECT);
+            broadPhase.queryPairs(counter);
+        }
+        long gridNanos = (System.nanoTime() - start) / frames;
+
+        start = System.nanoTime();
+        int overlapping = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            overlapping = bruteForcePairs(collidables).size();
+        }
+        long scanNanos = (System.nanoTime() - start) / frames;
+
+        int allPairs = count * (count - 1) / 2;
+        System.out.println("UniformGridBroadPhase: " + count + " objects, "
+                + pairs[0] + " candidate pairs of " + allPairs + ", "
+                + gridNanos / 1000 + " us/frame, full scan "
+                + scanNanos / 1000 + " us/frame");
+        assertEquals(overlapping, pairs[0]);
+        assertTrue(pairs[0] < allPairs / 100);
+    }
+
+    private static Set<String> reportedPairs(UniformGridBroadPhase broadPhase) {
+        final Set<String> pairs = new HashSet<String>();
+        broadPhase.queryPairs(new BroadPhase.PairListener() {
+            @Override
+            public void candidatePair(Collidable objectA, Collidable objectB) {
+                assertTrue("pair reported twice", pairs.add(key(objectA, objectB)));
+            }
+        });
+        return pairs;
+    }
+
+    private static Set<String> bruteForcePairs(Array<Collidable> collidables) {
+        Set<String> pairs = new HashSet<String>();
+        for (int i = 0; i < collidables.size; i++) {
+            Rectangle a = collidables.get(i).getBoundingAABB();
+            for (int j = i + 1; j < collidables.size; j++) {
+                Rectangle b = collidables.get(j).getBoundingAABB();
+                if (a.x > b.x + b.width || b.x > a.x + a.width
+                        || a.y > b.y + b.height || b.y > a.y + a.height) {
+                    continue;
+                }
+                pairs.add(key(collidables.get(i), collidables.get(j)));
+            }
+        }
+        return pairs;
+    }
+
+    private static String key(Collidable a, Collidable b) {
+        int idA = ((Box) a).id;
+        int idB = ((Box) b).id;
+        return Math.min(idA, idB) + ":" + Math.max(idA, idB);
+    }
+
+    static class Box implements Collidable {
+        static int nextId;
+        final int id = nextId++;
+        final Rectangle aabb;
+        Circle circle;
+        Polygon polygon;
+        boolean enabled = true;
+
+        Box(float x, float y, float width, float height) {
+            aabb = new Rectangle(x, y, width, height);
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        @Override
+        public String getName() {
+            return "box";
+        }
+
+        @Override
+        public Rectangle getBoundingAABB() {
+            return aabb;
+        }
+
+        @Override
+        public Polygon getBoundingPolygon() {
+            return polygon;
+        }
+
+        @Override
+        public Circle getBoundingCircle() {
+            return circle;
+        }
+    }
+}
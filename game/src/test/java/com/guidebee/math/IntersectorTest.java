@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.math;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.drawing.geometry.Area;
+import com.guidebee.game.Collidable;
+import com.guidebee.game.scene.Stage;
+import com.guidebee.math.geometry.Circle;
+import com.guidebee.math.geometry.Polygon;
+import com.guidebee.math.geometry.Rectangle;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Checks {@link Intersector#intersectConvexPolygons(float[], float[],
+ * Intersector.MinimumTranslationVector)} against the intersection of
+ * {@link Area}s it replaces for convex polygons, and the polygons
+ * {@link Intersector#isConvexPolygon(float[])} leaves to the Area fallback.
+ */
+public class IntersectorTest {
+
+    private static final float[] SQUARE = {0, 0, 10, 0, 10, 10, 0, 10};
+
+    /**
+     * convex hull of random points with integer coordinates, counter
+     * clockwise.
+     */
+    private static float[] randomConvexPolygon(Random random, int x, int y,
+                                               int size) {
+        int n = 3 + random.nextInt(8);
+        long[] points = new long[n];
+        for (int i = 0; i < n; i++) {
+            points[i] = (long) (x + random.nextInt(size)) << 32
+                    | (y + random.nextInt(size));
+        }
+        Arrays.sort(points);
+        int[] hull = new int[4 * n + 2];
+        int k = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int start = k;
+            for (int j = 0; j < n; j++) {
+                long point = points[pass == 0 ? j : n - 1 - j];
+                int px = (int) (point >> 32);
+                int py = (int) point;
+                while (k - start >= 2 && cross(hull[2 * k - 4], hull[2 * k - 3],
+                        hull[2 * k - 2], hull[2 * k - 1], px, py) <= 0) {
+                    k--;
+                }
+                hull[2 * k] = px;
+                hull[2 * k + 1] = py;
+                k++;
+            }
+            k--;
+        }
+        float[] vertices = new float[2 * k];
+        for (int i = 0; i < vertices.length; i++) vertices[i] = hull[i];
+        return vertices;
+    }
+
+    private static long cross(int ax, int ay, int bx, int by, int cx, int cy) {
+        return (long) (bx - ax) * (cy - ay) - (long) (by - ay) * (cx - ax);
+    }
+
+    private static float[] reverse(float[] vertices) {
+        float[] reversed = new float[vertices.length];
+        for (int i = 0; i < vertices.length; i += 2) {
+            reversed[vertices.length - 2 - i] = vertices[i];
+            reversed[vertices.length - 1 - i] = vertices[i + 1];
+        }
+        return reversed;
+    }
+
+    private static float[] translate(float[] vertices, float dx, float dy) {
+        float[] translated = vertices.clone();
+        for (int i = 0; i < translated.length; i += 2) {
+            translated[i] += dx;
+            translated[i + 1] += dy;
+        }
+        return translated;
+    }
+
+    /**
+     * the intersection test used before for all the polygons.
+     */
+    private static boolean areaIntersects(float[] vertices1, float[] vertices2) {
+        Area area1 = new Area(toPolygon(vertices1));
+        area1.intersect(new Area(toPolygon(vertices2)));
+        return !area1.isEmpty();
+    }
+
+    private static com.guidebee.drawing.geometry.Polygon toPolygon(float[] vertices) {
+        int[] xpoints = new int[vertices.length / 2];
+        int[] ypoints = new int[vertices.length / 2];
+        for (int i = 0; i < xpoints.length; i++) {
+            xpoints[i] = Math.round(vertices[i * 2]);
+            ypoints[i] = Math.round(vertices[i * 2 + 1]);
+        }
+        return new com.guidebee.drawing.geometry.Polygon(xpoints, ypoints,
+                xpoints.length);
+    }
+
+    @Test
+    public void randomConvexPairsMatchArea() {
+        Random random = new Random(11);
+        Intersector.MinimumTranslationVector mtv
+                = new Intersector.MinimumTranslationVector();
+        int overlaps = 0;
+        int pairs = 0;
+        while (pairs < 2000) {
+            float[] polygon1 = randomConvexPolygon(random, 0, 0, 40);
+            float[] polygon2 = randomConvexPolygon(random, random.nextInt(60) - 30,
+                    random.nextInt(60) - 30, 40);
+            // degenerate hulls, all points on a line
+            if (!Intersector.isConvexPolygon(polygon1)
+                    || !Intersector.isConvexPolygon(polygon2)) continue;
+            pairs++;
+            boolean expected = areaIntersects(polygon1, polygon2);
+            if (expected) overlaps++;
+            String message = Arrays.toString(polygon1) + " "
+                    + Arrays.toString(polygon2);
+            assertTrue(message, Intersector.isConvexPolygon(reverse(polygon1)));
+            assertEquals(message, expected,
+                    Intersector.intersectConvexPolygons(polygon1, polygon2, mtv));
+            if (expected) {
+                // moving the first polygon by the MTV separates them, up to
+                // rounding, and moving it less doesn't
+                assertTrue(message, mtv.depth > 0);
+                assertEquals(message, 1, mtv.normal.len(), 1e-5f);
+                float depth = mtv.depth * 1.0001f + 1e-4f;
+                float[] moved = translate(polygon1, mtv.normal.x * depth,
+                        mtv.normal.y * depth);
+                assertFalse(message, Intersector.intersectConvexPolygons(
+                        moved, polygon2, null));
+                float[] notEnough = translate(polygon1,
+                        mtv.normal.x * mtv.depth * 0.9f,
+                        mtv.normal.y * mtv.depth * 0.9f);
+                assertTrue(message, Intersector.intersectConvexPolygons(
+                        notEnough, polygon2, null));
+            }
+            // both windings
+            assertEquals(message, expected, Intersector.intersectConvexPolygons(
+                    reverse(polygon1), polygon2, null));
+            assertEquals(message, expected, Intersector.intersectConvexPolygons(
+                    polygon1, reverse(polygon2), null));
+            assertEquals(message, expected, Intersector.intersectConvexPolygons(
+                    reverse(polygon2), reverse(polygon1), null));
+        }
+        // both outcomes are covered
+        assertTrue(overlaps > 200);
+        assertTrue(overlaps < pairs - 200);
+    }
+
+    @Test
+    public void touchingPolygonsDoNotOverlap() {
+        // shared edge
+        float[] right = translate(SQUARE, 10, 0);
+        assertFalse(Intersector.intersectConvexPolygons(SQUARE, right, null));
+        assertFalse(areaIntersects(SQUARE, right));
+        // shared vertex
+        float[] corner = translate(SQUARE, 10, 10);
+        assertFalse(Intersector.intersectConvexPolygons(SQUARE, corner, null));
+        // vertex on an edge
+        float[] diamond = {10, 5, 15, 0, 20, 5, 15, 10};
+        assertFalse(Intersector.intersectConvexPolygons(SQUARE, diamond, null));
+        assertFalse(Intersector.intersectConvexPolygons(diamond, reverse(SQUARE), null));
+        // barely overlapping
+        assertTrue(Intersector.intersectConvexPolygons(SQUARE,
+                translate(SQUARE, 9.5f, 0), null));
+    }
+
+    @Test
+    public void mtvPointsFromTheSecondPolygonToTheFirst() {
+        Intersector.MinimumTranslationVector mtv
+                = new Intersector.MinimumTranslationVector();
+        // the first square overlaps the left side of the second by 2
+        assertTrue(Intersector.intersectConvexPolygons(translate(SQUARE, -8, 1),
+                SQUARE, mtv));
+        assertEquals(-1, mtv.normal.x, 1e-6f);
+        assertEquals(0, mtv.normal.y, 1e-6f);
+        assertEquals(2, mtv.depth, 1e-5f);
+
+        // the first square overlaps the top of the second by 3, clockwise
+        assertTrue(Intersector.intersectConvexPolygons(
+                reverse(translate(SQUARE, 1, 7)), reverse(SQUARE), mtv));
+        assertEquals(0, mtv.normal.x, 1e-6f);
+        assertEquals(1, mtv.normal.y, 1e-6f);
+        assertEquals(3, mtv.depth, 1e-5f);
+
+        // a triangle poking into the right side
+        float[] triangle = {9, 5, 20, 0, 20, 10};
+        assertTrue(Intersector.intersectConvexPolygons(triangle, SQUARE, mtv));
+        assertEquals(1, mtv.normal.x, 1e-6f);
+        assertEquals(0, mtv.normal.y, 1e-6f);
+        assertEquals(1, mtv.depth, 1e-5f);
+    }
+
+    @Test
+    public void offsetAndCountSelectThePolygons() {
+        Intersector.MinimumTranslationVector mtv
+                = new Intersector.MinimumTranslationVector();
+        float[] packed = new float[3 + SQUARE.length * 2];
+        packed[0] = packed[1] = packed[2] = Float.NaN;
+        System.arraycopy(translate(SQUARE, -8, 1), 0, packed, 3, SQUARE.length);
+        System.arraycopy(translate(SQUARE, 100, 100), 0, packed, 3 + SQUARE.length,
+                SQUARE.length);
+        float[] other = new float[SQUARE.length + 4];
+        System.arraycopy(SQUARE, 0, other, 2, SQUARE.length);
+
+        assertTrue(Intersector.isConvexPolygon(packed, 3, SQUARE.length));
+        assertTrue(Intersector.intersectConvexPolygons(packed, 3, SQUARE.length,
+                other, 2, SQUARE.length, mtv));
+        assertEquals(-1, mtv.normal.x, 1e-6f);
+        assertEquals(2, mtv.depth, 1e-5f);
+        assertFalse(Intersector.intersectConvexPolygons(packed,
+                3 + SQUARE.length, SQUARE.length, other, 2, SQUARE.length, null));
+        // fewer than 3 vertices
+        assertFalse(Intersector.intersectConvexPolygons(packed, 3, 4,
+                other, 2, SQUARE.length, null));
+        assertFalse(Intersector.isConvexPolygon(packed, 3, 4));
+    }
+
+    @Test
+    public void concaveAndSelfIntersectingPolygonsAreRejected() {
+        float[] pentagram = new float[10];
+        for (int i = 0; i < 5; i++) {
+            double angle = Math.PI / 2 + i * 4 * Math.PI / 5;
+            pentagram[2 * i] = (float) (20 * Math.cos(angle));
+            pentagram[2 * i + 1] = (float) (20 * Math.sin(angle));
+        }
+        float[] arrow = {0, 0, 10, 5, 0, 10, 3, 5};
+        float[] bowtie = {0, 0, 10, 10, 10, 0, 0, 10};
+        float[] line = {0, 0, 5, 5, 10, 10};
+        assertFalse(Intersector.isConvexPolygon(pentagram));
+        assertFalse(Intersector.isConvexPolygon(reverse(pentagram)));
+        assertFalse(Intersector.isConvexPolygon(arrow));
+        assertFalse(Intersector.isConvexPolygon(reverse(arrow)));
+        assertFalse(Intersector.isConvexPolygon(bowtie));
+        assertFalse(Intersector.isConvexPolygon(line));
+        // collinear vertices are allowed
+        assertTrue(Intersector.isConvexPolygon(new float[]{0, 0, 5, 0, 10, 0,
+                10, 10, 0, 10}));
+
+        // the hole in the middle of the pentagram is inside for the
+        // separating axis test, but the Area fallback sees it is empty, so a
+        // small square there doesn't collide.
+        float[] center = {-2, -2, 2, -2, 2, 2, -2, 2};
+        Shape star = new Shape(pentagram);
+        Shape square = new Shape(center);
+        assertTrue(Intersector.intersectConvexPolygons(pentagram, center, null));
+        assertFalse(areaIntersects(pentagram, center));
+        assertFalse(Stage.collisionQuery(star, square, Collidable.BOUNDING_AREA,
+                null));
+        // a square over a point of the star does
+        Shape tip = new Shape(translate(center, 0, 18));
+        assertTrue(Stage.collisionQuery(star, tip, Collidable.BOUNDING_AREA, null));
+        Shape away = new Shape(translate(center, 50, 50));
+        assertFalse(Stage.collisionQuery(star, away, Collidable.BOUNDING_AREA, null));
+    }
+
+    static class Shape implements Collidable {
+        final Polygon polygon;
+
+        Shape(float[] vertices) {
+            polygon = new Polygon(vertices);
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return true;
+        }
+
+        @Override
+        public String getName() {
+            return "shape";
+        }
+
+        @Override
+        public Rectangle getBoundingAABB() {
+            return polygon.getBoundingRectangle();
+        }
+
+        @Override
+        public Polygon getBoundingPolygon() {
+            return polygon;
+        }
+
+        @Override
+        public Circle getBoundingCircle() {
+            return null;
+        }
+    }
+}
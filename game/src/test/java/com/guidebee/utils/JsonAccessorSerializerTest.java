@@ -0,0 +1,279 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.utils;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.utils.collections.Array;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Checks objects written and read by {@link Json.AccessorSerializer} match
+ * the reflection based serialization, and times both.
+ */
+public class JsonAccessorSerializerTest {
+
+    private static final int OBJECTS = 5000;
+
+    private static final int ROUNDS = 10;
+
+    public static class Item {
+        public int id;
+        public long stamp;
+        public float x;
+        public double weight = 1;
+        public boolean active = true;
+        public String name;
+        public Array<String> tags;
+        public Item child;
+    }
+
+    /**
+     * All the fields of an {@link Item} but its name, read by reflection.
+     */
+    static Json.AccessorSerializer<Item> newItemSerializer() {
+        return new Json.AccessorSerializer<Item>(Item.class,
+                new Json.IntAccessor<Item>("id") {
+                    public int getInt(Item object) {
+                        return object.id;
+                    }
+
+                    public void setInt(Item object, int value) {
+                        object.id = value;
+                    }
+                },
+                new Json.LongAccessor<Item>("stamp") {
+                    public long getLong(Item object) {
+                        return object.stamp;
+                    }
+
+                    public void setLong(Item object, long value) {
+                        object.stamp = value;
+                    }
+                },
+                new Json.FloatAccessor<Item>("x") {
+                    public float getFloat(Item object) {
+                        return object.x;
+                    }
+
+                    public void setFloat(Item object, float value) {
+                        object.x = value;
+                    }
+                },
+                new Json.DoubleAccessor<Item>("weight") {
+                    public double getDouble(Item object) {
+                        return object.weight;
+                    }
+
+                    public void setDouble(Item object, double value) {
+                        object.weight = value;
+                    }
+                },
+                new Json.BooleanAccessor<Item>("active") {
+                    public boolean getBoolean(Item object) {
+                        return object.active;
+                    }
+
+                    public void setBoolean(Item object, boolean value) {
+                        object.active = value;
+                    }
+                },
+                new Json.FieldAccessor<Item>("tags", Array.class, String.class) {
+                    public Object get(Item object) {
+                        return object.tags;
+                    }
+
+                    @SuppressWarnings("unchecked")
+                    public void set(Item object, Object value) {
+                        object.tags = (Array<String>) value;
+                    }
+                },
+                new Json.FieldAccessor<Item>("child", Item.class) {
+                    public Object get(Item object) {
+                        return object.child;
+                    }
+
+                    public void set(Item object, Object value) {
+                        object.child = (Item) value;
+                    }
+                }) {
+            @Override
+            protected Item newObject() {
+                return new Item();
+            }
+        };
+    }
+
+    @Test
+    public void accessorsReadReflectionOutput() {
+        Json reflection = new Json();
+        Json accessors = new Json();
+        accessors.setSerializer(Item.class, newItemSerializer());
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            Item item = randomItem(random, 2);
+            String text = reflection.toJson(item);
+            assertItem(item, accessors.fromJson(Item.class, text));
+            assertItem(item, reflection.fromJson(Item.class, text));
+        }
+    }
+
+    @Test
+    public void reflectionReadsAccessorOutput() {
+        Json reflection = new Json();
+        Json accessors = new Json();
+        accessors.setSerializer(Item.class, newItemSerializer());
+        Random random = new Random(2);
+        for (int i = 0; i < 200; i++) {
+            // the name has no accessor, so it is not written
+            Item item = clearNames(randomItem(random, 2));
+            String text = accessors.toJson(item);
+            assertItem(item, reflection.fromJson(Item.class, text));
+            assertItem(item, accessors.fromJson(Item.class, text));
+        }
+    }
+
+    @Test
+    public void defaultValuesAreSkipped() {
+        Json json = new Json();
+        json.setSerializer(Item.class, newItemSerializer());
+        String text = json.toJson(new Item());
+        assertEquals("{}", text);
+
+        Item item = new Item();
+        item.weight = 2;
+        item.active = false;
+        text = json.toJson(item);
+        assertTrue(text, text.contains("weight"));
+        assertTrue(text, text.contains("active"));
+        assertFalse(text, text.contains("stamp"));
+
+        json.setUsePrototypes(false);
+        text = json.toJson(new Item());
+        assertTrue(text, text.contains("stamp"));
+        assertTrue(text, text.contains("child"));
+    }
+
+    @Test
+    public void unknownFieldsUseReflection() {
+        Json json = new Json();
+        json.setSerializer(Item.class, newItemSerializer());
+        Item item = json.fromJson(Item.class, "{id:3,name:crate}");
+        assertEquals(3, item.id);
+        assertEquals("crate", item.name);
+
+        try {
+            json.fromJson(Item.class, "{id:3,colour:red}");
+            throw new AssertionError("unknown field was read");
+        } catch (SerializationException expected) {
+        }
+        json.setIgnoreUnknownFields(true);
+        item = json.fromJson(Item.class, "{id:4,colour:red}");
+        assertEquals(4, item.id);
+        assertNull(item.name);
+    }
+
+    @Test
+    public void serializerBenchmark() {
+        Random random = new Random(3);
+        Array<Item> items = new Array<Item>();
+        for (int i = 0; i < OBJECTS; i++) {
+            items.add(clearNames(randomItem(random, 1)));
+        }
+        Json reflection = new Json();
+        Json accessors = new Json();
+        accessors.setSerializer(Item.class, newItemSerializer());
+        JsonValue tree = new JsonReader().parse(reflection.toJson(items));
+
+        long[] write = new long[2];
+        long[] read = new long[2];
+        for (int round = 0; round < ROUNDS; round++) {
+            Json[] jsons = {reflection, accessors};
+            for (int j = 0; j < 2; j++) {
+                long start = System.nanoTime();
+                String text = jsons[j].toJson(items);
+                long written = System.nanoTime();
+                Array<?> copy = jsons[j].readValue(Array.class, Item.class, tree);
+                long end = System.nanoTime();
+                assertEquals(OBJECTS, copy.size);
+                assertTrue(text.length() > OBJECTS);
+                if (round >= ROUNDS / 2) {
+                    write[j] += written - start;
+                    read[j] += end - written;
+                }
+            }
+        }
+        int timed = ROUNDS - ROUNDS / 2;
+        System.out.println("json " + OBJECTS + " objects: write "
+                + write[0] / timed / 1000 + " us with reflection, "
+                + write[1] / timed / 1000 + " us with accessors; read "
+                + read[0] / timed / 1000 + " us with reflection, "
+                + read[1] / timed / 1000 + " us with accessors");
+    }
+
+    private static Item randomItem(Random random, int depth) {
+        Item item = new Item();
+        item.id = random.nextInt(1000) - 500;
+        item.stamp = random.nextInt(3) == 0 ? 0 : random.nextLong();
+        item.x = random.nextInt(4) == 0 ? 0 : random.nextInt(2000) / 8f;
+        item.weight = random.nextInt(3) == 0 ? 1 : random.nextInt(1000) / 16.0;
+        item.active = random.nextBoolean();
+        item.name = random.nextBoolean() ? null : "item" + random.nextInt(100);
+        if (random.nextBoolean()) {
+            item.tags = new Array<String>();
+            for (int i = 0, n = random.nextInt(4); i < n; i++) {
+                item.tags.add("tag" + random.nextInt(10));
+            }
+        }
+        if (depth > 0 && random.nextBoolean()) {
+            item.child = randomItem(random, depth - 1);
+        }
+        return item;
+    }
+
+    private static Item clearNames(Item item) {
+        for (Item i = item; i != null; i = i.child) {
+            i.name = null;
+        }
+        return item;
+    }
+
+    private static void assertItem(Item expected, Item actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.stamp, actual.stamp);
+        assertEquals(expected.x, actual.x, 0);
+        assertEquals(expected.weight, actual.weight, 0);
+        assertEquals(expected.active, actual.active);
+        assertEquals(expected.name, actual.name);
+        assertEquals(expected.tags, actual.tags);
+        assertItem(expected.child, actual.child);
+    }
+}
@@ -0,0 +1,487 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.utils;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.utils.JsonPullParser.Token;
+import com.guidebee.utils.JsonValue.ValueType;
+import com.guidebee.utils.collections.Array;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Checks {@link JsonStreamReader} and {@link UBJsonStreamReader} read the
+ * same values as {@link JsonReader} and {@link UBJsonReader}, that skipped
+ * and partially read subtrees leave the parser in the right place, and times
+ * binding from the parser against binding from a DOM, and compares the heap
+ * both need.
+ */
+public class JsonPullParserTest {
+
+    private static final String[] NAMES = {"id", "name", "x", "tags", "child",
+            "weight", "on"};
+
+    public static class Item {
+        public int id;
+        public String name;
+        public float x;
+        public Array<String> tags;
+        public Item child;
+    }
+
+    @Test
+    public void streamMatchesJsonReader() {
+        Random random = new Random(7);
+        for (int i = 0; i < 300; i++) {
+            JsonValue expected = randomValue(random, 4);
+            if (!expected.isObject() && !expected.isArray()) continue;
+            String text = random.nextBoolean()
+                    ? expected.toString()
+                    : expected.prettyPrint(JsonWriter.OutputType.minimal, 0);
+            JsonValue parsed = new JsonReader().parse(text);
+            // a small buffer makes tokens span buffer refills
+            int bufferSize = 16 + random.nextInt(64);
+            assertJson(text, parsed, readAll(new JsonStreamReader(new StringReader(text),
+                    bufferSize)));
+            assertJson(text, parsed, readAll(new JsonStreamReader(text)));
+        }
+    }
+
+    @Test
+    public void streamReadsLenientJson() {
+        String text = "{ name: unquoted // settings\n"
+                + ", \"quoted name\": 'x' /* block\n comment */,\n"
+                + "  list: [1, -2.5e3, true, null, \"a\\n\\u00e9\",],\n"
+                + "  nested: {a:{b:[]}}, trailing: {}, }";
+        JsonValue expected = new JsonReader().parse(text);
+        assertJson(text, expected, readAll(new JsonStreamReader(text)));
+        assertJson(text, expected, readAll(new JsonStreamReader(new StringReader(text), 16)));
+
+        // comments are also skipped where JsonReader doesn't allow them
+        String commented = "// settings\n{ /* a */ a:1, // b\n b:[ /* c */ 2] }";
+        assertJson(commented, new JsonReader().parse("{a:1,b:[2]}"),
+                readAll(new JsonStreamReader(commented)));
+    }
+
+    @Test
+    public void unquotedValuesMatchJsonReader() {
+        String[] values = {"0", "-0", "+7", "-", "+", "12", "-123456789012345678",
+                "999999999999999999", "9223372036854775807", "-9223372036854775808",
+                "9223372036854775808", "1.5", "-.5", ".", "1.2.3", "1e5", "12a",
+                "a12", "true", "truex", "nul", "null", "false", "-x", "1-2"};
+        for (String value : values) {
+            String text = "{a:" + value + ",b:[" + value + "]}";
+            JsonValue expected = new JsonReader().parse(text);
+            assertJson(text, expected, readAll(new JsonStreamReader(text)));
+            assertJson(text, expected, readAll(new JsonStreamReader(
+                    new StringReader(text), 16)));
+        }
+    }
+
+    @Test
+    public void ubjsonStreamMatchesUBJsonReader() throws IOException {
+        Random random = new Random(8);
+        for (int i = 0; i < 200; i++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            UBJsonWriter writer = new UBJsonWriter(bytes);
+            writeUBJson(writer, random, 4);
+            writer.close();
+
+            UBJsonReader reader = new UBJsonReader();
+            reader.oldFormat = false;
+            JsonValue expected = reader.parse(new ByteArrayInputStream(bytes.toByteArray()));
+            UBJsonStreamReader parser = new UBJsonStreamReader(
+                    new ByteArrayInputStream(bytes.toByteArray()));
+            parser.oldFormat = false;
+            assertJson("document " + i, expected, readAll(parser));
+        }
+    }
+
+    @Test
+    public void skipAndReadSubtrees() {
+        String text = "{a:1,skip:{x:[1,2,{y:3}],z:\"s\"},keep:[4,{k:5}],b:true}";
+        JsonPullParser parser = new JsonStreamReader(text);
+        assertSame(Token.startObject, parser.next());
+        assertSame(Token.longValue, parser.next());
+        assertEquals("a", parser.getName());
+        assertEquals(1, parser.asInt());
+
+        assertSame(Token.startObject, parser.next());
+        assertEquals("skip", parser.getName());
+        parser.skipValue();
+        assertSame(Token.endObject, parser.getToken());
+        assertEquals(1, parser.getDepth());
+
+        assertSame(Token.startArray, parser.next());
+        assertEquals("keep", parser.getName());
+        JsonValue keep = parser.readValue();
+        assertEquals("keep", keep.name());
+        assertEquals(2, keep.size);
+        assertEquals(5, keep.get(1).getInt("k"));
+        assertEquals(1, parser.getDepth());
+
+        assertSame(Token.booleanValue, parser.next());
+        assertEquals("b", parser.getName());
+        assertEquals(true, parser.asBoolean());
+        assertSame(Token.endObject, parser.next());
+        assertSame(Token.end, parser.next());
+        assertSame(Token.end, parser.next());
+    }
+
+    @Test
+    public void malformedDocumentsThrow() {
+        String[] documents = {"", "{a:1", "[1,2", "{a:[1,2}", "{a 1}", "{a:1}}",
+                "[1] 2", "\"open", "{a:/* open"};
+        for (String document : documents) {
+            try {
+                readAll(new JsonStreamReader(document));
+                fail("parsed: " + document);
+            } catch (SerializationException expected) {
+            }
+        }
+        byte[] truncated = {'{', 'i', 1, 'a', 'i'};
+        try {
+            readAll(new UBJsonStreamReader(new ByteArrayInputStream(truncated)));
+            fail("parsed a truncated ubjson document");
+        } catch (SerializationException expected) {
+        }
+    }
+
+    @Test
+    public void bindFromParser() {
+        Json json = new Json();
+        Random random = new Random(9);
+        for (int i = 0; i < 100; i++) {
+            Array<Item> items = new Array<Item>();
+            for (int j = 0, n = random.nextInt(5); j < n; j++) {
+                items.add(randomItem(random, 2));
+            }
+            String text = json.toJson(items);
+            Array<?> fromDom = json.fromJson(Array.class, Item.class, text);
+            Array<?> fromStream = json.fromJson(Array.class, Item.class,
+                    new JsonStreamReader(new StringReader(text), 32));
+            assertEquals(items.size, fromDom.size);
+            assertEquals(items.size, fromStream.size);
+            for (int j = 0; j < items.size; j++) {
+                assertItem(items.get(j), (Item) fromDom.get(j));
+                assertItem(items.get(j), (Item) fromStream.get(j));
+            }
+        }
+    }
+
+    @Test
+    public void parserBenchmark() {
+        Json json = new Json();
+        Random random = new Random(10);
+        Array<Item> items = new Array<Item>();
+        for (int i = 0; i < 10000; i++) {
+            items.add(randomItem(random, 1));
+        }
+        String text = json.toJson(items);
+        long[] times = new long[3];
+        // the first rounds warm up the JIT
+        for (int round = 0; round < 15; round++) {
+            long start = System.nanoTime();
+            Array<?> fromDom = json.fromJson(Array.class, Item.class, text);
+            long dom = System.nanoTime();
+            Array<?> fromStream = json.fromJson(Array.class, Item.class,
+                    new JsonStreamReader(text));
+            long stream = System.nanoTime();
+            int tokens = 0;
+            JsonPullParser parser = new JsonStreamReader(text);
+            while (parser.next() != Token.end) tokens++;
+            long end = System.nanoTime();
+            assertEquals(items.size, fromDom.size);
+            assertEquals(items.size, fromStream.size);
+            assertEquals(true, tokens > items.size * 4);
+            if (round >= 10) {
+                times[0] += dom - start;
+                times[1] += stream - dom;
+                times[2] += end - stream;
+            }
+        }
+        System.out.println("json " + text.length() / 1024 + " KB: bind "
+                + times[0] / 5000000 + " ms from a DOM, "
+                + times[1] / 5000000 + " ms from a JsonStreamReader, tokens only "
+                + times[2] / 5000000 + " ms");
+    }
+
+    /**
+     * Binds a JSON file from a DOM or from a {@link JsonStreamReader}, in a
+     * JVM started by {@link #parserPeakHeap()} with a bounded heap.
+     */
+    public static class HeapProbe {
+        public static void main(String[] args) throws IOException {
+            Reader reader = new BufferedReader(new FileReader(args[1]));
+            try {
+                Json json = new Json();
+                Array<?> items = args[0].equals("dom")
+                        ? json.fromJson(Array.class, Item.class, reader)
+                        : json.fromJson(Array.class, Item.class,
+                        new JsonStreamReader(reader));
+                System.exit(items.size == Integer.parseInt(args[2]) ? 0 : 1);
+            } catch (OutOfMemoryError e) {
+                System.exit(2);
+            }
+        }
+    }
+
+    @Test
+    public void parserPeakHeap() throws Exception {
+        Json json = new Json();
+        json.setOutputType(JsonWriter.OutputType.minimal);
+        Random random = new Random(11);
+        int count = 40000;
+        File file = File.createTempFile("items", ".json");
+        try {
+            Writer writer = new FileWriter(file);
+            writer.write('[');
+            for (int i = 0; i < count; i++) {
+                if (i > 0) writer.write(",\n");
+                writer.write(json.toJson(randomItem(random, 1), Item.class));
+            }
+            writer.write(']');
+            writer.close();
+            int dom = minimumHeap("dom", file, count);
+            int stream = minimumHeap("stream", file, count);
+            System.out.println("json " + file.length() / 1024 + " KB file, "
+                    + count + " items bound with -Xmx" + dom + "m from a DOM, -Xmx"
+                    + stream + "m from a JsonStreamReader");
+            assertTrue(stream < dom);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * @return the smallest -Xmx, in MB, a {@link HeapProbe} binds the file
+     * with.
+     */
+    private static int minimumHeap(String mode, File file, int count)
+            throws Exception {
+        int low = 1; // fails
+        int high = 256; // succeeds
+        assertEquals(0, probe(mode, file, count, high));
+        while (high - low > 1) {
+            int middle = (low + high) / 2;
+            if (probe(mode, file, count, middle) == 0) {
+                high = middle;
+            } else {
+                low = middle;
+            }
+        }
+        return high;
+    }
+
+    private static int probe(String mode, File file, int count, int heap)
+            throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-Xms" + heap + "m",
+                "-Xmx" + heap + "m", "-XX:+UseSerialGC", "-cp",
+                System.getProperty("java.class.path"),
+                HeapProbe.class.getName(), mode, file.getPath(), "" + count)
+                .redirectErrorStream(true).start();
+        // drains the output, a heap too small for the JVM fails to start
+        while (process.getInputStream().read() != -1) ;
+        return process.waitFor();
+    }
+
+    private static JsonValue readAll(JsonPullParser parser) {
+        parser.next();
+        JsonValue value = parser.readValue();
+        assertSame(Token.end, parser.next());
+        assertEquals(0, parser.getDepth());
+        return value;
+    }
+
+    private static void assertJson(String message, JsonValue expected, JsonValue actual) {
+        assertEquals(message, expected.type(), actual.type());
+        assertEquals(message, expected.name(), actual.name());
+        switch (expected.type()) {
+            case object:
+            case array:
+                assertEquals(message, expected.size, childCount(actual));
+                JsonValue a = actual.child;
+                for (JsonValue e = expected.child; e != null; e = e.next, a = a.next) {
+                    assertJson(message, e, a);
+                }
+                break;
+            case doubleValue:
+                assertEquals(message, expected.asDouble(), actual.asDouble(), 0);
+                break;
+            case nullValue:
+                assertNull(message, actual.asString());
+                break;
+            default:
+                assertEquals(message, expected.asString(), actual.asString());
+                break;
+        }
+    }
+
+    private static int childCount(JsonValue value) {
+        int count = 0;
+        for (JsonValue child = value.child; child != null; child = child.next) count++;
+        return count;
+    }
+
+    private static JsonValue randomValue(Random random, int depth) {
+        int kind = random.nextInt(depth > 0 ? 8 : 6);
+        switch (kind) {
+            case 0:
+                return new JsonValue(randomString(random));
+            case 1:
+                return new JsonValue((long) (random.nextInt(2000000) - 1000000));
+            case 2:
+                return new JsonValue(random.nextInt(100000) / 64.0 - 500);
+            case 3:
+                return new JsonValue(random.nextBoolean());
+            case 4:
+                return new JsonValue(ValueType.nullValue);
+            case 5:
+                return new JsonValue(random.nextLong());
+            default:
+                JsonValue container = new JsonValue(kind == 6 ? ValueType.object
+                        : ValueType.array);
+                JsonValue last = null;
+                for (int i = 0, n = random.nextInt(5); i < n; i++) {
+                    JsonValue child = randomValue(random, depth - 1);
+                    if (kind == 6) child.setName(NAMES[i] + (random.nextBoolean() ? "" : " 2"));
+                    if (last == null) {
+                        container.child = child;
+                    } else {
+                        last.next = child;
+                        child.prev = last;
+                    }
+                    last = child;
+                    container.size++;
+                }
+                return container;
+        }
+    }
+
+    private static String randomString(Random random) {
+        String chars = "ab z09_-\"\\/\n\t\u00e9{}[],:";
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0, n = random.nextInt(12); i < n; i++) {
+            builder.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return builder.toString();
+    }
+
+    private static void writeUBJson(UBJsonWriter writer, Random random, int depth)
+            throws IOException {
+        int kind = random.nextInt(depth > 0 ? 11 : 8);
+        switch (kind) {
+            case 0:
+                writer.value(randomString(random));
+                break;
+            case 1:
+                writer.value((byte) random.nextInt());
+                break;
+            case 2:
+                writer.value((short) random.nextInt());
+                break;
+            case 3:
+                writer.value(random.nextInt());
+                break;
+            case 4:
+                writer.value(random.nextLong());
+                break;
+            case 5:
+                writer.value(random.nextFloat());
+                break;
+            case 6:
+                writer.value(random.nextDouble());
+                break;
+            case 7:
+                writer.value(random.nextBoolean());
+                break;
+            case 8:
+                writer.object();
+                for (int i = 0, n = random.nextInt(5); i < n; i++) {
+                    writer.name(NAMES[i]);
+                    writeUBJson(writer, random, depth - 1);
+                }
+                writer.pop();
+                break;
+            case 9:
+                writer.array();
+                for (int i = 0, n = random.nextInt(5); i < n; i++) {
+                    writeUBJson(writer, random, depth - 1);
+                }
+                writer.pop();
+                break;
+            default:
+                // optimized, typed arrays
+                int[] ints = new int[random.nextInt(6)];
+                for (int i = 0; i < ints.length; i++) ints[i] = random.nextInt();
+                writer.value(ints);
+                break;
+        }
+    }
+
+    private static Item randomItem(Random random, int depth) {
+        Item item = new Item();
+        item.id = random.nextInt(10000);
+        item.name = random.nextBoolean() ? null : "item " + random.nextInt(100);
+        item.x = random.nextInt(1000) / 4f;
+        if (random.nextBoolean()) {
+            item.tags = new Array<String>();
+            for (int i = 0, n = random.nextInt(3); i < n; i++) {
+                item.tags.add("t" + i);
+            }
+        }
+        if (depth > 0 && random.nextInt(3) == 0) {
+            item.child = randomItem(random, depth - 1);
+        }
+        return item;
+    }
+
+    private static void assertItem(Item expected, Item actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.name, actual.name);
+        assertEquals(expected.x, actual.x, 0);
+        assertEquals(expected.tags, actual.tags);
+        assertItem(expected.child, actual.child);
+    }
+}
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright 2014 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+//--------------------------------- PACKAGE ------------------------------------
+package com.guidebee.utils;
+
+//--------------------------------- IMPORTS ------------------------------------
+
+import com.guidebee.utils.collections.Array;
+import com.guidebee.utils.collections.ObjectMap;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+//[------------------------------ MAIN CLASS ----------------------------------]
+
+/**
+ * Checks {@link JsonSnapshot} round trips full and delta snapshots, and that
+ * truncated or corrupt snapshots fail with a {@link SerializationException}
+ * without breaking the delta chain.
+ */
+public class JsonSnapshotTest {
+
+    public enum Kind {
+        PLAYER, ENEMY, ITEM
+    }
+
+    public static class Unit {
+        public int id;
+        public String name;
+        public float x;
+        public double y;
+        public long score;
+        public boolean alive = true;
+        public Kind kind = Kind.ENEMY;
+        public Array<String> tags;
+        public ObjectMap<String, Integer> stats;
+        public int[] slots;
+    }
+
+    public static class World {
+        public String level;
+        public Array<Unit> units = new Array<Unit>();
+    }
+
+    @Test
+    public void fullAndDeltaRoundTrip() {
+        Random random = new Random(4);
+        World world = randomWorld(random);
+        JsonSnapshot writer = new JsonSnapshot(new Json());
+        JsonSnapshot reader = new JsonSnapshot(new Json());
+        assertWorld(world, reader.read(World.class, writer.write(world)));
+        for (int frame = 0; frame < 50; frame++) {
+            mutate(random, world);
+            byte[] delta = writer.writeDelta(world);
+            assertWorld(world, reader.read(World.class, delta));
+        }
+    }
+
+    @Test
+    public void truncatedSnapshotsThrow() {
+        World world = randomWorld(new Random(5));
+        byte[] data = new JsonSnapshot(new Json()).write(world);
+        for (int length = 0; length < data.length; length++) {
+            byte[] truncated = new byte[length];
+            System.arraycopy(data, 0, truncated, 0, length);
+            try {
+                new JsonSnapshot(new Json()).read(World.class, truncated);
+                fail("read a snapshot truncated to " + length + " of " + data.length + " bytes");
+            } catch (SerializationException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void corruptSnapshotsThrowOrRead() {
+        Random random = new Random(6);
+        World world = randomWorld(random);
+        byte[] data = new JsonSnapshot(new Json()).write(world);
+        for (int i = 0; i < 3000; i++) {
+            byte[] corrupt = data.clone();
+            for (int j = 0, n = 1 + random.nextInt(3); j < n; j++) {
+                // keep the header so the body is decoded
+                corrupt[4 + random.nextInt(corrupt.length - 4)] = (byte) random.nextInt(256);
+            }
+            try {
+                new JsonSnapshot(new Json()).read(World.class, corrupt);
+            } catch (SerializationException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void corruptDeltaKeepsChain() {
+        Random random = new Random(7);
+        World world = randomWorld(random);
+        JsonSnapshot writer = new JsonSnapshot(new Json());
+        JsonSnapshot reader = new JsonSnapshot(new Json());
+        reader.read(World.class, writer.write(world));
+
+        mutate(random, world);
+        byte[] delta = writer.writeDelta(world);
+        byte[] truncated = new byte[delta.length - 1];
+        System.arraycopy(delta, 0, truncated, 0, truncated.length);
+        try {
+            reader.read(World.class, truncated);
+            fail("read a truncated delta");
+        } catch (SerializationException expected) {
+        }
+        // the failed read didn't replace the base, the delta still applies
+        assertWorld(world, reader.read(World.class, delta));
+    }
+
+    @Test
+    public void failedWriteKeepsChain() {
+        Random random = new Random(8);
+        World world = randomWorld(random);
+        Json json = new Json();
+        JsonSnapshot writer = new JsonSnapshot(json);
+        JsonSnapshot reader = new JsonSnapshot(new Json());
+        reader.read(World.class, writer.write(world));
+
+        json.setSerializer(Unit.class, new Json.Serializer<Unit>() {
+            public void write(Json json, Unit object, Class knownType) {
+                throw new SerializationException("write failed");
+            }
+
+            public Unit read(Json json, JsonValue jsonData, Class type) {
+                return null;
+            }
+        });
+        mutate(random, world);
+        try {
+            writer.writeDelta(world);
+            fail("wrote a snapshot with a failing serializer");
+        } catch (SerializationException expected) {
+        }
+        json.setSerializer(Unit.class, null);
+        mutate(random, world);
+        assertWorld(world, reader.read(World.class, writer.writeDelta(world)));
+    }
+
+    private static World randomWorld(Random random) {
+        World world = new World();
+        world.level = "level " + random.nextInt(10);
+        for (int i = 0; i < 20; i++) {
+            Unit unit = new Unit();
+            unit.id = i;
+            unit.name = random.nextBoolean() ? null : "unit é" + random.nextInt(5);
+            unit.x = random.nextFloat() * 100;
+            unit.y = random.nextDouble();
+            unit.score = random.nextLong();
+            unit.alive = random.nextBoolean();
+            unit.kind = Kind.values()[random.nextInt(3)];
+            if (random.nextBoolean()) {
+                unit.tags = new Array<String>();
+                unit.tags.add("tag" + random.nextInt(3));
+            }
+            if (random.nextBoolean()) {
+                unit.stats = new ObjectMap<String, Integer>();
+                unit.stats.put("hp", random.nextInt(100));
+            }
+            if (random.nextBoolean()) unit.slots = new int[]{random.nextInt(), -1};
+            world.units.add(unit);
+        }
+        return world;
+    }
+
+    private static void mutate(Random random, World world) {
+        for (int i = 0, n = random.nextInt(4); i < n; i++) {
+            Unit unit = world.units.get(random.nextInt(world.units.size));
+            unit.x += 1;
+            unit.alive = !unit.alive;
+            if (random.nextBoolean()) unit.name = "renamed" + random.nextInt(3);
+        }
+        if (random.nextInt(4) == 0) world.units.pop();
+    }
+
+    private static void assertWorld(World expected, World actual) {
+        assertEquals(expected.level, actual.level);
+        assertEquals(expected.units.size, actual.units.size);
+        for (int i = 0; i < expected.units.size; i++) {
+            Unit e = expected.units.get(i);
+            Unit a = actual.units.get(i);
+            assertEquals(e.id, a.id);
+            assertEquals(e.name, a.name);
+            assertEquals(e.x, a.x, 0);
+            assertEquals(e.y, a.y, 0);
+            assertEquals(e.score, a.score);
+            assertEquals(e.alive, a.alive);
+            assertEquals(e.kind, a.kind);
+            assertEquals(e.tags, a.tags);
+            if (e.stats == null) {
+                assertNull(a.stats);
+            } else {
+                assertEquals(e.stats.size, a.stats.size);
+                assertEquals(e.stats.get("hp"), a.stats.get("hp"));
+            }
+            if (e.slots == null) {
+                assertNull(a.slots);
+            } else {
+                assertEquals(e.slots.length, a.slots.length);
+                for (int j = 0; j < e.slots.length; j++) assertEquals(e.slots[j], a.slots[j]);
+            }
+        }
+    }
+}
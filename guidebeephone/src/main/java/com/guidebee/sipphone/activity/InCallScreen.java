@@ -55,6 +55,7 @@ import com.guidebee.sipphone.phone.Call;
 import com.guidebee.sipphone.phone.SlidingCardManager;
 import com.guidebee.sipphone.receiver.Receiver;
 
+import org.sipdroid.media.JitterBuffer;
 import org.sipdroid.media.RtpStreamReceiver;
 import org.sipdroid.media.RtpStreamSender;
 
@@ -269,18 +270,19 @@ public class InCallScreen extends CallScreen
     			break;
     		case MSG_TICK:
     			mCodec.setText(RtpStreamReceiver.getCodec());
-    			if (RtpStreamReceiver.good != 0) {
+    			JitterBuffer jb = RtpStreamReceiver.getJitterBuffer();
+    			if (jb.getReceived() != 0) {
     				if (RtpStreamReceiver.timeout != 0)
     					mStats.setText("no data");
     				else if (RtpStreamSender.m > 1)
-	    				mStats.setText(Math.round(RtpStreamReceiver.loss/RtpStreamReceiver.good*100)+"%loss, "+
-	    						Math.round(RtpStreamReceiver.lost/RtpStreamReceiver.good*100)+"%lost, "+
-	    						Math.round(RtpStreamReceiver.late/RtpStreamReceiver.good*100)+"%late (>"+
-	    						(RtpStreamReceiver.jitter-250*RtpStreamReceiver.mu)/8/RtpStreamReceiver.mu+"ms)");
+	    				mStats.setText(Math.round(jb.getRawLossRate()*100)+"%loss, "+
+	    						Math.round(jb.getLossRate()*100)+"%lost, "+
+	    						Math.round(jb.getLateRate()*100)+"%late (>"+
+	    						jb.getTargetDelay()+"ms)");
     				else
-	    				mStats.setText(Math.round(RtpStreamReceiver.lost/RtpStreamReceiver.good*100)+"%lost, "+
-	    						Math.round(RtpStreamReceiver.late/RtpStreamReceiver.good*100)+"%late (>"+
-	    						(RtpStreamReceiver.jitter-250*RtpStreamReceiver.mu)/8/RtpStreamReceiver.mu+"ms)");
+	    				mStats.setText(Math.round(jb.getLossRate()*100)+"%lost, "+
+	    						Math.round(jb.getLateRate()*100)+"%late (>"+
+	    						jb.getTargetDelay()+"ms)");
     				mStats.setVisibility(View.VISIBLE);
     			} else
     				mStats.setVisibility(View.GONE);
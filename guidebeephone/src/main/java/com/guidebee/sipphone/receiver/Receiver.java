@@ -191,8 +191,7 @@ public class Receiver extends BroadcastReceiver {
             switch (call_state) {
                 case UserAgent.UA_STATE_INCOMING_CALL:
                     enable_wifi(true);
-                    RtpStreamReceiver.good = RtpStreamReceiver.lost
-                            = RtpStreamReceiver.loss = RtpStreamReceiver.late = 0;
+                    RtpStreamReceiver.getJitterBuffer().resetStatistics();
                     RtpStreamReceiver.speakermode = speakermode();
                     bluetooth = -1;
                     String text = caller.toString();
@@ -247,7 +246,7 @@ public class Receiver extends BroadcastReceiver {
                     Checkin.checkin(true);
                     break;
                 case UserAgent.UA_STATE_OUTGOING_CALL:
-                    RtpStreamReceiver.good = RtpStreamReceiver.lost = RtpStreamReceiver.loss = RtpStreamReceiver.late = 0;
+                    RtpStreamReceiver.getJitterBuffer().resetStatistics();
                     RtpStreamReceiver.speakermode = speakermode();
                     bluetooth = -1;
                     onText(MISSED_CALL_NOTIFICATION, null, 0, 0);
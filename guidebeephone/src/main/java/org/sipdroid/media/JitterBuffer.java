@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2009 The Sipdroid Open Source Project
+ * 
+ * This file is part of Sipdroid (http://www.sipdroid.org)
+ * 
+ * Sipdroid is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.sipdroid.media;
+import org.sipdroid.net.RtpPacket;
+
+/**
+ * JitterBuffer reorders the received RTP packets by sequence number, and
+ * decides when a missing packet has to be given up and concealed.
+ * <p>
+ * The interarrival jitter is estimated as in RFC 3550 (A.8) from the arrival
+ * times and the RTP timestamps. A missing packet is waited for, at most, the
+ * target delay, that follows the estimated jitter between a minimum and a
+ * maximum delay. Packets arriving after their turn are counted as late and
+ * discarded, further copies of a packet as duplicates.
+ * <p>
+ * The buffer does not depend on any clock nor on the audio device: arrival
+ * times are passed by the caller, so that it can be driven offline by
+ * replaying packet traces.
+ */
+public class JitterBuffer {
+
+	/** get() result: a packet has been returned. */
+	public static final int PACKET = 0;
+
+	/** get() result: the next packet has been lost and has to be concealed. */
+	public static final int LOST = 1;
+
+	/** get() result: no packet is ready to be played yet. */
+	public static final int EMPTY = 2;
+
+	/** Max number of consecutive lost packets reported as LOST. */
+	public static final int MAX_CONCEALED = 3;
+
+	/** Number of packets after which the copies of a packet are counted. */
+	static final int COPIES_DELAY = 4;
+
+	/** Slot states */
+	static final int FREE = 0, BUFFERED = 1, PLAYED = 2, SKIPPED = 3;
+
+	/** A buffered packet */
+	static class Slot {
+		byte[] data;
+		int len;
+		int seq;
+		long arrival;
+		int copies;
+		int state;
+	}
+
+	final Slot[] slots;
+	final int mask;
+
+	int clock_rate = 8000;
+	int min_delay, max_delay;
+	int redundancy = 1;
+
+	boolean started;
+	int next_seq;
+	int highest_seq;
+	int count;
+	int concealed;
+
+	boolean has_transit;
+	long last_transit;
+	double jitter;
+
+	float received, lost, late, duplicate, reordered, raw_loss;
+
+	/**
+	 * Creates a new JitterBuffer.
+	 * 
+	 * @param capacity
+	 *            max number of buffered packets (rounded up to a power of 2)
+	 * @param packet_size
+	 *            max size of a packet, including the RTP header
+	 * @param min_delay
+	 *            min target delay (in milliseconds)
+	 * @param max_delay
+	 *            max target delay (in milliseconds)
+	 */
+	public JitterBuffer(int capacity, int packet_size, int min_delay,
+			int max_delay) {
+		int n = 1;
+		while (n < capacity)
+			n <<= 1;
+		slots = new Slot[n];
+		for (int i = 0; i < n; i++) {
+			slots[i] = new Slot();
+			slots[i].data = new byte[packet_size];
+		}
+		mask = n - 1;
+		this.min_delay = min_delay;
+		this.max_delay = max_delay;
+	}
+
+	/** Sets the RTP clock rate of the stream (in Hz). */
+	public void setClockRate(int clock_rate) {
+		if (clock_rate != this.clock_rate) {
+			this.clock_rate = clock_rate;
+			has_transit = false;
+		}
+	}
+
+	/**
+	 * Sets the number of copies the peer sends of each packet; missing
+	 * copies are counted by getRawLoss().
+	 */
+	public void setRedundancy(int redundancy) {
+		this.redundancy = redundancy;
+	}
+
+	/** Removes all the packets, the next packet received restarts the stream. */
+	public synchronized void clear() {
+		for (int i = 0; i <= mask; i++)
+			slots[i].state = FREE;
+		started = false;
+		has_transit = false;
+		count = 0;
+		concealed = 0;
+	}
+
+	/**
+	 * Puts a received packet.
+	 * 
+	 * @param packet
+	 *            the packet, it is copied
+	 * @param arrival
+	 *            arrival time (in milliseconds)
+	 * @return whether the packet has been buffered (false if it was late, a
+	 *         duplicate, or too long)
+	 */
+	public synchronized boolean put(RtpPacket packet, long arrival) {
+		int len = packet.getLength();
+		if (len > slots[0].data.length)
+			return false;
+		int seq = packet.getSequenceNumber();
+		if (!started) {
+			started = true;
+			next_seq = highest_seq = seq;
+		}
+		int d = (short) (seq - next_seq);
+		Slot slot = slots[seq & mask];
+		if (d < 0) {
+			if (slot.seq == seq && slot.state == PLAYED) {
+				slot.copies++;
+				duplicate++;
+			} else
+				late++;
+			return false;
+		}
+		if (d > mask) { // too far ahead, restart from this packet
+			for (int i = 0; i <= mask; i++)
+				slots[i].state = FREE;
+			count = 0;
+			next_seq = highest_seq = seq;
+			concealed = 0;
+		}
+		if (slot.state == BUFFERED) {
+			if (slot.seq == seq) {
+				slot.copies++;
+				duplicate++;
+				return false;
+			}
+			count--; // should not happen, the slot is overwritten
+		}
+		updateJitter(arrival, packet.getTimestamp());
+		System.arraycopy(packet.getPacket(), 0, slot.data, 0, len);
+		slot.len = len;
+		slot.seq = seq;
+		slot.arrival = arrival;
+		slot.copies = 1;
+		slot.state = BUFFERED;
+		count++;
+		if ((short) (seq - highest_seq) < 0)
+			reordered++;
+		else
+			highest_seq = seq;
+		received++;
+		if (received > 110) {
+			received *= 0.99;
+			lost *= 0.99;
+			late *= 0.99;
+			duplicate *= 0.99;
+			reordered *= 0.99;
+			raw_loss *= 0.99;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the next packet to be played.
+	 * 
+	 * @param packet
+	 *            the packet the next packet is copied to, its buffer must be
+	 *            as large as the packet size
+	 * @param now
+	 *            current time (in milliseconds)
+	 * @return PACKET if a packet has been copied, LOST if the next packet has
+	 *         to be concealed, EMPTY if no packet is ready
+	 */
+	public synchronized int get(RtpPacket packet, long now) {
+		while (count > 0) {
+			Slot slot = slots[next_seq & mask];
+			if (slot.state == BUFFERED && slot.seq == next_seq) {
+				System.arraycopy(slot.data, 0, packet.getPacket(), 0, slot.len);
+				packet.setPayloadLength(slot.len - packet.getHeaderLength());
+				slot.state = PLAYED;
+				count--;
+				next_seq = (next_seq + 1) & 0xffff;
+				concealed = 0;
+				// further copies of a packet may arrive after it has been
+				// played, count the missing ones a few packets later
+				int old_seq = (next_seq - COPIES_DELAY) & 0xffff;
+				Slot old = slots[old_seq & mask];
+				if (old.state == PLAYED && old.seq == old_seq
+						&& old.copies < redundancy)
+					raw_loss++;
+				return PACKET;
+			}
+			// the next packet is missing: wait for it at most the target
+			// delay after the oldest buffered packet has arrived
+			if (count <= mask / 2 && now - oldestArrival() < getTargetDelay())
+				return EMPTY;
+			if (slot.state == BUFFERED)
+				count--; // should not happen, the slot is overwritten
+			slot.seq = next_seq;
+			slot.state = SKIPPED;
+			next_seq = (next_seq + 1) & 0xffff;
+			lost++;
+			raw_loss++;
+			if (++concealed <= MAX_CONCEALED)
+				return LOST;
+		}
+		return EMPTY;
+	}
+
+	/** Gets the arrival time of the packet buffered for the longest time */
+	private long oldestArrival() {
+		long oldest = Long.MAX_VALUE;
+		for (int i = 0; i <= mask; i++)
+			if (slots[i].state == BUFFERED && slots[i].arrival < oldest)
+				oldest = slots[i].arrival;
+		return oldest;
+	}
+
+	/** Updates the interarrival jitter estimate (RFC 3550, A.8). */
+	private void updateJitter(long arrival, long timestamp) {
+		long transit = arrival * clock_rate / 1000 - timestamp;
+		if (has_transit) {
+			long d = transit - last_transit;
+			if (d < 0)
+				d = -d;
+			// ignore steps (e.g. timestamp jumps after silence)
+			if (d < clock_rate)
+				jitter += (d - jitter) / 16;
+		}
+		last_transit = transit;
+		has_transit = true;
+	}
+
+	// ****************************** Statistics ******************************
+
+	/** Gets the interarrival jitter (in milliseconds). */
+	public int getJitter() {
+		return (int) (jitter * 1000 / clock_rate);
+	}
+
+	/** Gets the current target delay (in milliseconds). */
+	public int getTargetDelay() {
+		int delay = (int) (jitter * 4 * 1000 / clock_rate);
+		if (delay < min_delay)
+			delay = min_delay;
+		if (delay > max_delay)
+			delay = max_delay;
+		return delay;
+	}
+
+	/** Gets the number of buffered packets. */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the (recent) number of received packets. Statistics are decayed by
+	 * 1% for each packet after the first 110, so they follow the current
+	 * conditions of the stream.
+	 */
+	public float getReceived() {
+		return received;
+	}
+
+	/** Gets the (recent) number of lost packets. */
+	public float getLost() {
+		return lost;
+	}
+
+	/** Gets the (recent) number of packets arrived too late to be played. */
+	public float getLate() {
+		return late;
+	}
+
+	/** Gets the (recent) number of duplicated packets. */
+	public float getDuplicate() {
+		return duplicate;
+	}
+
+	/** Gets the (recent) number of packets arrived out of order. */
+	public float getReordered() {
+		return reordered;
+	}
+
+	/**
+	 * Gets the (recent) number of lost packets, including the missing copies
+	 * of packets the peer sends more times.
+	 */
+	public float getRawLoss() {
+		return raw_loss;
+	}
+
+	/** Gets the ratio of lost packets to received packets. */
+	public float getLossRate() {
+		return (received == 0) ? 0 : lost / received;
+	}
+
+	/** Gets the ratio of late packets to received packets. */
+	public float getLateRate() {
+		return (received == 0) ? 0 : late / received;
+	}
+
+	/** Gets the ratio of raw lost packets to received packets. */
+	public float getRawLossRate() {
+		return (received == 0) ? 0 : raw_loss / received;
+	}
+
+	/** Resets the statistics. */
+	public synchronized void resetStatistics() {
+		received = lost = late = duplicate = reordered = raw_loss = 0;
+	}
+}
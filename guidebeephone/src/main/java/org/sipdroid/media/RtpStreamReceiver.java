@@ -423,11 +423,17 @@ public class RtpStreamReceiver extends Thread {
 		restoreMode();
 	}
 
-	public static float good, late, lost, loss, loss2;
+	/** Reorders the received packets and tracks the loss statistics */
+	static JitterBuffer jitter_buffer = new JitterBuffer(32, BUFFER_SIZE+12, 40, 400);
+
+	/** Gets the jitter buffer of the incoming stream. */
+	public static JitterBuffer getJitterBuffer() {
+		return jitter_buffer;
+	}
+
 	double avgheadroom,devheadroom;
 	int avgcnt;
 	public static int timeout;
-	int seq;
 	
 	void empty() {
 		try {
@@ -443,7 +449,7 @@ public class RtpStreamReceiver extends Thread {
 		} catch (SocketException e2) {
 			if (!Sipdroid.release) e2.printStackTrace();
 		}
-		seq = 0;
+		jitter_buffer.clear();
 	}
 	
 	RtpPacket rtp_packet;
@@ -459,6 +465,8 @@ public class RtpStreamReceiver extends Thread {
 			p_type.codec.init();
 			codec = p_type.codec.getTitle();
 			mu = p_type.codec.samp_rate()/8000;
+			// G.722 uses an 8 kHz RTP clock for historical reasons
+			jitter_buffer.setClockRate(p_type.codec.number() == 9 ? 8000 : p_type.codec.samp_rate());
 			maxjitter = AudioTrack.getMinBufferSize(p_type.codec.samp_rate(), 
 					AudioFormat.CHANNEL_CONFIGURATION_MONO, 
 					AudioFormat.ENCODING_PCM_16BIT);
@@ -534,7 +542,7 @@ public class RtpStreamReceiver extends Thread {
 	}
 
 	void newjitter(boolean inc) {
-		 if (good == 0 || lost/good > 0.01 || call_recorder != null)
+		 if (jitter_buffer.getReceived() == 0 || jitter_buffer.getLossRate() > 0.01 || call_recorder != null)
 			 return;
 		 int newjitter = (int)Math.sqrt(devheadroom)*7 + (inc?minjitteradjust:0);
 		 if (newjitter < minjitter)
@@ -546,7 +554,6 @@ public class RtpStreamReceiver extends Thread {
 		 if (inc && newjitter <= jitter)
 			 return;
 		 jitter = newjitter;
-		 late = 0;
 		 avgcnt = 0;
 		 luser2 = user;
 	}
@@ -587,7 +594,8 @@ public class RtpStreamReceiver extends Thread {
 		setCodec();
 		short lin[] = new short[BUFFER_SIZE];
 		short lin2[] = new short[BUFFER_SIZE];
-		int server, headroom, todo, len = 0, m = 1, expseq, getseq, vm = 1, gap, gseq;
+		int server, headroom, todo, len = 0, status;
+		RtpPacket play_packet = new RtpPacket(new byte[BUFFER_SIZE+12], 0);
 		ToneGenerator tg = new ToneGenerator(AudioManager.STREAM_VOICE_CALL,(int)(ToneGenerator.MAX_VOLUME*2* Configurations.getEarGain()));
 		track.play();
 		System.gc();
@@ -632,113 +640,84 @@ public class RtpStreamReceiver extends Thread {
 					break;
 				}
 			}
-			if (running && timeout == 0) {		
-				 gseq = rtp_packet.getSequenceNumber();
-				 if (seq == gseq) {
-					 m++;
-					 continue;
-				 }
-				 gap = (gseq - seq) & 0xff;
-				 if (gap > 240)
-					 continue;
-				 server = track.getPlaybackHeadPosition();
-				 headroom = user-server;
+			if (running && timeout == 0) {
+				 jitter_buffer.setRedundancy(RtpStreamSender.m);
+				 jitter_buffer.put(rtp_packet, SystemClock.elapsedRealtime());
+				 while (running && (status = jitter_buffer.get(play_packet, SystemClock.elapsedRealtime())) != JitterBuffer.EMPTY) {
+					 server = track.getPlaybackHeadPosition();
+					 headroom = user-server;
 				 
-				 if (headroom > 2*jitter)
-					 cnt += len;
-				 else
-					 cnt = 0;
+					 if (headroom > 2*jitter)
+						 cnt += len;
+					 else
+						 cnt = 0;
 				 
-				 if (lserver == server)
-					 cnt2++;
-				 else
-					 cnt2 = 0;
-
-				 if (cnt <= 500*mu || cnt2 >= 2 || headroom - jitter < len ||
-						 p_type.codec.number() != 8 || p_type.codec.number() != 0) {
-					 if (rtp_packet.getPayloadType() != p_type.number && p_type.change(rtp_packet.getPayloadType())) {
-						 saveVolume();
-						 setCodec();
-						 restoreVolume();
-						 codec = p_type.codec.getTitle();
-					 }
-					 len = p_type.codec.decode(buffer, lin, rtp_packet.getPayloadLength());
+					 if (lserver == server)
+						 cnt2++;
+					 else
+						 cnt2 = 0;
+
+					 if (status == JitterBuffer.LOST) {
+						 // Conceal the lost packet: repeat the last frame, fading out.
+						 for (int i = 0; i < len; i++)
+							 lin[i] >>= 1;
+						 if (call_recorder != null)
+							 call_recorder.writeIncoming(lin, 0, len);
+					 } else if (cnt <= 500*mu || cnt2 >= 2 || headroom - jitter < len ||
+							 p_type.codec.number() != 8 || p_type.codec.number() != 0) {
+						 if (play_packet.getPayloadType() != p_type.number && p_type.change(play_packet.getPayloadType())) {
+							 saveVolume();
+							 setCodec();
+							 restoreVolume();
+							 codec = p_type.codec.getTitle();
+						 }
+						 len = p_type.codec.decode(play_packet.getPacket(), lin, play_packet.getPayloadLength());
 					 
-					 // Call recording: Save incoming.
-					 // Data is in buffer lin, from 0 to len.
-					 if (call_recorder != null)
-					 	call_recorder.writeIncoming(lin, 0, len);
+						 // Call recording: Save incoming.
+						 // Data is in buffer lin, from 0 to len.
+						 if (call_recorder != null)
+						 	call_recorder.writeIncoming(lin, 0, len);
 					 
-		 			 if (speakermode == AudioManager.MODE_NORMAL)
-		 				 calc(lin,0,len);
-		 			 else if (gain > 1)
-		 				 calc2(lin,0,len);
-				 }
+			 			 if (speakermode == AudioManager.MODE_NORMAL)
+			 				 calc(lin,0,len);
+			 			 else if (gain > 1)
+			 				 calc2(lin,0,len);
+					 }
 				 
-				 if (cnt == 0)
-					 avgheadroom = avgheadroom * 0.99 + (double)headroom * 0.01;
-				 if (avgcnt++ > 300)
-					 devheadroom = devheadroom * 0.999 + Math.pow(Math.abs(headroom - avgheadroom),2) * 0.001;
-
-				 if (headroom < 250*mu) { 
-	 				 late++;
-	 				 avgcnt += 10;
-	 				 if (avgcnt > 400)
-	 					 newjitter(true);
-					 todo = jitter - headroom;
-					 write(lin2,0,todo>BUFFER_SIZE?BUFFER_SIZE:todo);
-				 }
+					 if (cnt == 0)
+						 avgheadroom = avgheadroom * 0.99 + (double)headroom * 0.01;
+					 if (avgcnt++ > 300)
+						 devheadroom = devheadroom * 0.999 + Math.pow(Math.abs(headroom - avgheadroom),2) * 0.001;
+
+					 if (headroom < 250*mu) { 
+		 				 avgcnt += 10;
+		 				 if (avgcnt > 400)
+		 					 newjitter(true);
+						 todo = jitter - headroom;
+						 write(lin2,0,todo>BUFFER_SIZE?BUFFER_SIZE:todo);
+					 }
 
-				 if (cnt > 500*mu && cnt2 < 2) {
-					 todo = headroom - jitter;
-					 if (todo < len)
-						 write(lin,todo,len-todo);
-				 } else
-					 write(lin,0,len);
-				 				 
-				 if (seq != 0) {
-					 getseq = gseq&0xff;
-					 expseq = ++seq&0xff;
-					 if (m == RtpStreamSender.m) vm = m;
-					 gap = (getseq - expseq) & 0xff;
-					 if (gap > 0) {
-						 if (gap > 100) gap = 1;
-						 loss += gap;
-						 System.out.println("debug packet lost");
-						 lost += gap;
-						 good += gap - 1;
-						 loss2++;
-					 } else {
-						 if (m < vm) {
-							 loss++;
-							 loss2++;
+					 if (cnt > 500*mu && cnt2 < 2) {
+						 todo = headroom - jitter;
+						 if (todo < len)
+							 write(lin,todo,len-todo);
+					 } else
+						 write(lin,0,len);
+
+					 if (user >= luser + 8000*mu && (
+							 Receiver.call_state == UserAgent.UA_STATE_INCALL ||
+							 Receiver.call_state == UserAgent.UA_STATE_OUTGOING_CALL)) {
+						 if (luser == -8000*mu || getMode() != speakermode) {
+							 saveVolume();
+							 setMode(speakermode);
+							 restoreVolume();
 						 }
+						 luser = user;
+						 if (user >= luser2 + 160000*mu)
+							 newjitter(false);
 					 }
-					 good++;
-					 if (good > 110) {
-						 good *= 0.99;
-						 lost *= 0.99;
-						 loss *= 0.99;
-						 loss2 *= 0.99;
-						 late *= 0.99;
-					 }
-				 }
-				 m = 1;
-				 seq = gseq;
-
-				 if (user >= luser + 8000*mu && (
-						 Receiver.call_state == UserAgent.UA_STATE_INCALL ||
-						 Receiver.call_state == UserAgent.UA_STATE_OUTGOING_CALL)) {
-					 if (luser == -8000*mu || getMode() != speakermode) {
-						 saveVolume();
-						 setMode(speakermode);
-						 restoreVolume();
-					 }
-					 luser = user;
-					 if (user >= luser2 + 160000*mu)
-						 newjitter(false);
+					 lserver = server;
 				 }
-				 lserver = server;
 			}
 		}
 		lock(false);
@@ -484,8 +484,8 @@ public class RtpStreamSender extends Thread {
  				 time += frame_size/2;
  			 else
  				 time += frame_size;
- 			 if (RtpStreamReceiver.good != 0 &&
- 					 RtpStreamReceiver.loss2/RtpStreamReceiver.good > 0.01) {
+ 			 if (RtpStreamReceiver.getJitterBuffer().getReceived() != 0 &&
+ 					 RtpStreamReceiver.getJitterBuffer().getRawLossRate() > 0.01) {
  				 if (selectWifi && Receiver.on_wlan && now-lastscan > 10000) {
  					 wm.startScan();
  					 lastscan = now;
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2009 The Sipdroid Open Source Project
+ * 
+ * This file is part of Sipdroid (http://www.sipdroid.org)
+ * 
+ * Sipdroid is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.sipdroid.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * RtpBufferPool keeps a stack of direct ByteBuffers of the same size, to be
+ * borrowed for a single read or write on a RtpChannel and then given back.
+ * <p>
+ * Since a buffer is only held for the duration of one I/O call, the number of
+ * allocated buffers is bounded by the number of threads doing I/O, not by the
+ * number of streams.
+ */
+public class RtpBufferPool {
+	/** Default buffer size, large enough for any RTP packet over UDP */
+	public static final int DEFAULT_BUFFER_SIZE = 2048;
+
+	/** The shared pool */
+	static RtpBufferPool pool = null;
+
+	/** Gets the shared pool, creating it at first use. */
+	public static synchronized RtpBufferPool getInstance() {
+		if (pool == null)
+			pool = new RtpBufferPool(DEFAULT_BUFFER_SIZE);
+		return pool;
+	}
+
+	/** Size of the buffers */
+	int buffer_size;
+
+	/** The free buffers */
+	ByteBuffer[] free;
+
+	/** Number of free buffers */
+	int count;
+
+	/** Number of buffers allocated so far */
+	int allocated;
+
+	/** Creates a new pool of buffers of <i>buffer_size</i> bytes */
+	public RtpBufferPool(int buffer_size) {
+		this.buffer_size = buffer_size;
+		free = new ByteBuffer[4];
+		count = 0;
+		allocated = 0;
+	}
+
+	/** Gets the size of the buffers */
+	public int getBufferSize() {
+		return buffer_size;
+	}
+
+	/** Gets the number of buffers allocated so far */
+	public synchronized int getAllocated() {
+		return allocated;
+	}
+
+	/** Borrows a cleared buffer from the pool, allocating it if none is free */
+	public synchronized ByteBuffer get() {
+		if (count == 0) {
+			allocated++;
+			return ByteBuffer.allocateDirect(buffer_size);
+		}
+		ByteBuffer buffer = free[--count];
+		free[count] = null;
+		buffer.clear();
+		return buffer;
+	}
+
+	/** Gives a buffer back to the pool */
+	public synchronized void release(ByteBuffer buffer) {
+		if (buffer == null || buffer.capacity() != buffer_size)
+			return;
+		if (count == free.length) {
+			ByteBuffer[] new_free = new ByteBuffer[count * 2];
+			System.arraycopy(free, 0, new_free, 0, count);
+			free = new_free;
+		}
+		free[count++] = buffer;
+	}
+
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2009 The Sipdroid Open Source Project
+ * 
+ * This file is part of Sipdroid (http://www.sipdroid.org)
+ * 
+ * Sipdroid is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.sipdroid.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+
+/**
+ * RtpChannel sends and receives RTP packets through a non-blocking
+ * DatagramChannel, in place of a RtpSocket.
+ * <p>
+ * Packets are copied in and out of direct buffers borrowed from a
+ * RtpBufferPool, no DatagramPacket is involved. As for RtpSocket, packets are
+ * sent to the source of the first received packet. The channel is never
+ * connected, since connecting a DatagramChannel may discard the datagrams
+ * already queued. Receiving and sending do not allocate any buffer or
+ * DatagramPacket.
+ * <p>
+ * A RtpChannel can be read directly, or added to a RtpChannelSelector that
+ * serves many channels from one thread.
+ */
+public class RtpChannel {
+	/** The UDP channel */
+	DatagramChannel channel;
+
+	/** The buffer pool */
+	RtpBufferPool pool;
+
+	/** Remote address */
+	InetSocketAddress r_addr;
+
+	/** Whether the remote address has been taken from a received packet */
+	boolean latched;
+
+	/** Number of received packets */
+	long received_packets;
+
+	/** Number of sent packets */
+	long sent_packets;
+
+	/** Number of received bytes */
+	long received_bytes;
+
+	/** Number of sent bytes */
+	long sent_bytes;
+
+	/** Number of received packets dropped because they were too long */
+	long dropped_packets;
+
+	/** Selector serving this channel, if any */
+	RtpChannelSelector selector;
+
+	/** Selection key, when registered */
+	SelectionKey key;
+
+	/** Channel listener, when registered */
+	RtpChannelListener listener;
+
+	/** The packet passed to the listener */
+	RtpPacket packet;
+
+	/** Whether the channel has to be closed */
+	volatile boolean stop;
+
+	/** Whether the channel has been closed */
+	boolean terminated;
+
+	/** Creates a new RTP channel (only receiver) bound to <i>port</i> */
+	public RtpChannel(int port, RtpBufferPool pool) throws IOException {
+		init(port, null, pool);
+	}
+
+	/** Creates a new RTP channel (sender and receiver) bound to <i>port</i> */
+	public RtpChannel(int port, InetAddress remote_address, int remote_port,
+			RtpBufferPool pool) throws IOException {
+		init(port, new InetSocketAddress(remote_address, remote_port), pool);
+	}
+
+	/** Inits the RtpChannel */
+	private void init(int port, InetSocketAddress remote_address,
+			RtpBufferPool pool) throws IOException {
+		this.pool = (pool != null) ? pool : RtpBufferPool.getInstance();
+		r_addr = remote_address;
+		latched = false;
+		channel = DatagramChannel.open();
+		try {
+			channel.socket().bind(new InetSocketAddress(port));
+			channel.configureBlocking(false);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/** Gets the local port */
+	public int getLocalPort() {
+		return channel.socket().getLocalPort();
+	}
+
+	/** Gets the remote address, or null */
+	public InetSocketAddress getRemoteAddress() {
+		return r_addr;
+	}
+
+	/** Gets the number of received packets */
+	public long getReceivedPackets() {
+		return received_packets;
+	}
+
+	/** Gets the number of sent packets */
+	public long getSentPackets() {
+		return sent_packets;
+	}
+
+	/** Gets the number of received bytes */
+	public long getReceivedBytes() {
+		return received_bytes;
+	}
+
+	/** Gets the number of sent bytes */
+	public long getSentBytes() {
+		return sent_bytes;
+	}
+
+	/**
+	 * Gets the number of received packets dropped because they did not fit
+	 * in the RtpPacket or in the pool buffers.
+	 */
+	public long getDroppedPackets() {
+		return dropped_packets;
+	}
+
+	/**
+	 * Receives a RTP packet from this channel, if any. Packets longer than
+	 * <i>rtpp</i>, or filling a whole pool buffer (and so possibly truncated),
+	 * are dropped and counted by getDroppedPackets().
+	 * 
+	 * @return false if no packet is available
+	 */
+	public boolean receive(RtpPacket rtpp) throws IOException {
+		ByteBuffer buffer = pool.get();
+		try {
+			while (true) {
+				buffer.clear();
+				SocketAddress source = channel.receive(buffer);
+				if (source == null)
+					return false;
+				if (!latched) {
+					r_addr = (InetSocketAddress) source;
+					latched = true;
+				}
+				buffer.flip();
+				int len = buffer.remaining();
+				if (len > rtpp.packet.length || len == buffer.capacity()) {
+					dropped_packets++;
+					continue;
+				}
+				buffer.get(rtpp.packet, 0, len);
+				rtpp.packet_len = len;
+				received_packets++;
+				received_bytes += len;
+				return true;
+			}
+		} finally {
+			pool.release(buffer);
+		}
+	}
+
+	/**
+	 * Sends a RTP packet from this channel.
+	 * 
+	 * @return false if the packet could not be sent without blocking
+	 */
+	public boolean send(RtpPacket rtpp) throws IOException {
+		if (r_addr == null)
+			throw new IOException("RtpChannel: no remote address");
+		if (rtpp.packet_len >= pool.getBufferSize())
+			throw new IOException("RtpChannel: packet too long ("
+					+ rtpp.packet_len + " bytes)");
+		ByteBuffer buffer = pool.get();
+		try {
+			buffer.put(rtpp.packet, 0, rtpp.packet_len);
+			buffer.flip();
+			int len = channel.send(buffer, r_addr);
+			if (len == 0)
+				return false;
+			sent_packets++;
+			sent_bytes += len;
+			return true;
+		} finally {
+			pool.release(buffer);
+		}
+	}
+
+	/** Closes this channel */
+	public void close() {
+		stop = true;
+		if (selector != null)
+			selector.update(this);
+		else
+			try {
+				channel.close();
+			} catch (IOException e) {
+			}
+	}
+
+	/** Gets a String representation of the Object */
+	public String toString() {
+		return "rtp:" + getLocalPort() + "<->" + r_addr;
+	}
+
+}
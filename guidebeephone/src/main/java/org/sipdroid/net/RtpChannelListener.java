@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2009 The Sipdroid Open Source Project
+ * 
+ * This file is part of Sipdroid (http://www.sipdroid.org)
+ * 
+ * Sipdroid is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.sipdroid.net;
+
+/**
+ * Listener of the RTP channels served by a RtpChannelSelector.
+ */
+public interface RtpChannelListener {
+	/**
+	 * When a new RTP packet is received. The packet is reused for the next
+	 * packet of the same channel, it must be consumed before returning.
+	 */
+	public void onReceivedPacket(RtpChannel channel, RtpPacket packet);
+
+	/** When the channel has been closed, because of an error or not. */
+	public void onChannelTerminated(RtpChannel channel, Exception error);
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2009 The Sipdroid Open Source Project
+ * 
+ * This file is part of Sipdroid (http://www.sipdroid.org)
+ * 
+ * Sipdroid is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.sipdroid.net;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * RtpChannelSelector receives the packets of many RTP channels from a single
+ * thread, by means of a java.nio Selector.
+ * <p>
+ * Each ready channel is read in batches of at most MAX_BATCH packets per
+ * selection, so that a busy stream cannot starve the others. Every channel has
+ * its own RtpPacket, reused for all its packets, so no packet or buffer is
+ * allocated per received packet.
+ */
+public class RtpChannelSelector extends Thread {
+	/** Max number of packets read from a channel per selection */
+	public static final int MAX_BATCH = 16;
+
+	/** Size of the packets passed to the listeners */
+	static final int PACKET_SIZE = 1024 + 12;
+
+	/** The selector */
+	Selector selector;
+
+	/** Channels to be registered or closed */
+	ConcurrentLinkedQueue<RtpChannel> pending;
+
+	/** Number of registered channels */
+	volatile int channel_count;
+
+	/** Number of received packets */
+	volatile long received_packets;
+
+	/** Number of channel reads */
+	volatile long reads;
+
+	/** Whether it has been halted */
+	volatile boolean stop;
+
+	/** Whether it is running */
+	boolean is_running;
+
+	/** Costructs and starts a new RtpChannelSelector */
+	public RtpChannelSelector() throws IOException {
+		selector = Selector.open();
+		pending = new ConcurrentLinkedQueue<RtpChannel>();
+		channel_count = 0;
+		received_packets = 0;
+		reads = 0;
+		stop = false;
+		is_running = true;
+		setName("RtpChannelSelector");
+		setDaemon(true);
+		start();
+	}
+
+	/** Gets the number of registered channels */
+	public int getChannelCount() {
+		return channel_count;
+	}
+
+	/** Gets the number of packets received on all the channels */
+	public long getReceivedPackets() {
+		return received_packets;
+	}
+
+	/** Gets the average number of packets received per channel read */
+	public double getAverageBatch() {
+		long n = reads;
+		return (n == 0) ? 0 : (double) received_packets / n;
+	}
+
+	/** Whether the service is running */
+	public boolean isRunning() {
+		return is_running;
+	}
+
+	/** Stops running, closing all the channels */
+	public void halt() {
+		stop = true;
+		selector.wakeup();
+	}
+
+	/**
+	 * Adds a channel to be served, the received packets are passed to
+	 * <i>listener</i> from the selector thread.
+	 */
+	public void add(RtpChannel channel, RtpChannelListener listener)
+			throws IOException {
+		if (stop)
+			throw new IOException("RtpChannelSelector halted");
+		if (channel.selector != null)
+			throw new IOException("RtpChannel already registered");
+		channel.selector = this;
+		channel.listener = listener;
+		channel.packet = new RtpPacket(new byte[PACKET_SIZE], 0);
+		update(channel);
+	}
+
+	/** Asks the selector thread to register or close the channel. */
+	void update(RtpChannel channel) {
+		pending.add(channel);
+		selector.wakeup();
+	}
+
+	/** Runs the selector */
+	public void run() {
+		try {
+			while (!stop) {
+				selector.select();
+				RtpChannel channel;
+				while ((channel = pending.poll()) != null)
+					process(channel);
+				Iterator<SelectionKey> i = selector.selectedKeys().iterator();
+				while (i.hasNext()) {
+					SelectionKey key = i.next();
+					i.remove();
+					if (!key.isValid() || !key.isReadable())
+						continue;
+					channel = (RtpChannel) key.attachment();
+					// a failure only terminates this channel
+					try {
+						read(channel);
+					} catch (IOException e) {
+						terminate(channel, e);
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+						terminate(channel, e);
+					}
+				}
+			}
+		} catch (Exception e) {
+			if (!stop)
+				e.printStackTrace();
+		}
+		stop = true;
+		is_running = false;
+		Object[] keys = selector.keys().toArray();
+		for (int i = 0; i < keys.length; i++) {
+			Object attachment = ((SelectionKey) keys[i]).attachment();
+			if (attachment != null)
+				terminate((RtpChannel) attachment, null);
+		}
+		RtpChannel channel;
+		while ((channel = pending.poll()) != null)
+			terminate(channel, null);
+		try {
+			selector.close();
+		} catch (IOException e) {
+		}
+	}
+
+	/** Registers or closes a channel */
+	private void process(RtpChannel channel) {
+		if (channel.terminated)
+			return;
+		if (channel.stop) {
+			terminate(channel, null);
+			return;
+		}
+		if (channel.key != null)
+			return;
+		try {
+			channel.key = channel.channel.register(selector,
+					SelectionKey.OP_READ, channel);
+			channel_count++;
+		} catch (IOException e) {
+			terminate(channel, e);
+		}
+	}
+
+	/** Reads a batch of packets of a channel */
+	private void read(RtpChannel channel) throws IOException {
+		RtpPacket packet = channel.packet;
+		int n = 0;
+		while (n < MAX_BATCH && !channel.stop && channel.receive(packet)) {
+			n++;
+			RtpChannelListener l = channel.listener;
+			if (l != null)
+				l.onReceivedPacket(channel, packet);
+		}
+		received_packets += n;
+		reads++;
+	}
+
+	/** Closes a channel and notifies its listener */
+	private void terminate(RtpChannel channel, Exception error) {
+		if (channel.terminated)
+			return;
+		channel.terminated = true;
+		channel.stop = true;
+		if (channel.key != null) {
+			channel.key.cancel();
+			channel_count--;
+		}
+		try {
+			channel.channel.close();
+		} catch (IOException e) {
+		}
+		RtpChannelListener l = channel.listener;
+		channel.listener = null;
+		if (l != null) {
+			try {
+				l.onChannelTerminated(channel, error);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.net;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+
+/**
+ * NioTcpConnection provides a TCP connection oriented transport service over a
+ * non-blocking SocketChannel. Differently from TcpConnection, it has no
+ * thread of its own: the data are read by the TcpSelector the connection
+ * belongs to, that serves all its connections from a single thread.
+ * <p>
+ * Data are written directly by the sending thread; what the channel can not
+ * accept at once is queued and written by the selector as soon as the
+ * channel becomes writable again.
+ */
+public class NioTcpConnection {
+	/** The TcpSelector serving this connection */
+	TcpSelector selector;
+
+	/** The socket channel */
+	SocketChannel channel;
+
+	/** The selection key (set by the selector at registration) */
+	SelectionKey key;
+
+	/** The remote IP address */
+	IpAddress remote_ipaddr;
+
+	/** The remote port */
+	int remote_port;
+
+	/** Data not yet written */
+	LinkedList<ByteBuffer> out_queue;
+
+	/** Whether it has been halted */
+	volatile boolean stop;
+
+	/** Whether it has terminated */
+	volatile boolean terminated;
+
+	/**
+	 * Whether the connection is being established (changed with out_queue
+	 * locked)
+	 */
+	volatile boolean connecting;
+
+	/** Time by which the connection must be established (in milliseconds) */
+	long connect_deadline;
+
+	/** NioTcpConnection listener */
+	volatile NioTcpConnectionListener listener;
+
+	/** Costructs a new NioTcpConnection for an accepted channel */
+	NioTcpConnection(TcpSelector selector, SocketChannel channel,
+			NioTcpConnectionListener listener) {
+		Socket socket = channel.socket();
+		init(selector, channel, new IpAddress(socket.getInetAddress()), socket
+				.getPort(), listener);
+	}
+
+	/**
+	 * Costructs a new NioTcpConnection for a channel that is connecting to
+	 * <i>remote_ipaddr</i>:<i>remote_port</i>
+	 */
+	NioTcpConnection(TcpSelector selector, SocketChannel channel,
+			IpAddress remote_ipaddr, int remote_port,
+			NioTcpConnectionListener listener) {
+		init(selector, channel, remote_ipaddr, remote_port, listener);
+	}
+
+	/** Inits the NioTcpConnection */
+	private void init(TcpSelector selector, SocketChannel channel,
+			IpAddress remote_ipaddr, int remote_port,
+			NioTcpConnectionListener listener) {
+		this.selector = selector;
+		this.channel = channel;
+		this.listener = listener;
+		this.remote_ipaddr = remote_ipaddr;
+		this.remote_port = remote_port;
+		out_queue = new LinkedList<ByteBuffer>();
+		stop = false;
+		terminated = false;
+		connecting = false;
+	}
+
+	/** Sets the NioTcpConnection listener */
+	public void setListener(NioTcpConnectionListener listener) {
+		this.listener = listener;
+	}
+
+	/** Whether the connection is running */
+	public boolean isRunning() {
+		return !terminated;
+	}
+
+	/** Gets the remote IP address */
+	public IpAddress getRemoteAddress() {
+		return remote_ipaddr;
+	}
+
+	/** Gets the remote port */
+	public int getRemotePort() {
+		return remote_port;
+	}
+
+	/** Stops running */
+	public void halt() {
+		stop = true;
+		selector.update(this);
+	}
+
+	/**
+	 * Sends data. While the connection is being established, the data are
+	 * queued and written as soon as it is connected.
+	 */
+	public void send(byte[] buff, int offset, int len) throws IOException {
+		if (stop)
+			return;
+		synchronized (out_queue) {
+			ByteBuffer buf = ByteBuffer.wrap(buff, offset, len);
+			if (out_queue.isEmpty() && !connecting) {
+				channel.write(buf);
+				if (!buf.hasRemaining())
+					return;
+			}
+			// the buffer may be reused by the caller, keep a copy
+			ByteBuffer copy = ByteBuffer.allocate(buf.remaining());
+			copy.put(buf);
+			copy.flip();
+			out_queue.addLast(copy);
+		}
+		selector.update(this);
+	}
+
+	/** Sends data */
+	public void send(byte[] buff) throws IOException {
+		send(buff, 0, buff.length);
+	}
+
+	/**
+	 * Completes the connection establishment. Returns true if the connection
+	 * has been established, false if it is still in progress.
+	 */
+	boolean finishConnect() throws IOException {
+		if (!channel.finishConnect())
+			return false;
+		synchronized (out_queue) {
+			connecting = false;
+		}
+		return true;
+	}
+
+	/** Whether there are data not yet written */
+	boolean hasPendingData() {
+		synchronized (out_queue) {
+			return !out_queue.isEmpty();
+		}
+	}
+
+	/**
+	 * Writes the queued data, as much as the channel can accept. Returns true
+	 * if all the data have been written.
+	 */
+	boolean flush() throws IOException {
+		synchronized (out_queue) {
+			while (!out_queue.isEmpty()) {
+				ByteBuffer buf = out_queue.getFirst();
+				channel.write(buf);
+				if (buf.hasRemaining())
+					return false;
+				out_queue.removeFirst();
+			}
+			return true;
+		}
+	}
+
+	/** Gets a String representation of the Object */
+	public String toString() {
+		return "tcp:" + remote_ipaddr + ":" + remote_port;
+	}
+
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.zoolu.tools.Log;
+import org.zoolu.tools.LogLevel;
+
+/**
+ * TcpSelector serves many TCP connections from a single thread, by means of
+ * a java.nio Selector. It may also accept incoming connections on a server
+ * channel, in place of a TcpServer.
+ * <p>
+ * All the connections share one direct reading buffer; received data are
+ * passed to the connection listeners from the selector thread, through a
+ * reused byte array.
+ * <p>
+ * A failure while accepting, or an exception thrown by a listener, only
+ * affects the connection being served: it is printed to the Log set with
+ * setLog(), the connection is terminated, and the selector keeps running.
+ */
+public class TcpSelector extends Thread {
+	/** The reading buffer size */
+	static final int BUFFER_SIZE = 65535;
+
+	/** Timeout for establishing outgoing connections (in milliseconds) */
+	public static final int CONNECT_TIMEOUT = 10000;
+
+	/** Default ServerSocket backlog value */
+	static int socket_backlog = 50;
+
+	/** The selector */
+	Selector selector;
+
+	/** The server channel, or null if not accepting connections */
+	ServerSocketChannel server_channel;
+
+	/** The reading buffer */
+	ByteBuffer read_buffer;
+
+	/** The data passed to the connection listeners */
+	byte[] read_data;
+
+	/** Connections to be registered, updated, or closed */
+	ConcurrentLinkedQueue<NioTcpConnection> pending;
+
+	/** Registered connections still being established */
+	ArrayList<NioTcpConnection> connecting;
+
+	/** Number of registered connections */
+	volatile int connection_count;
+
+	/** Whether it has been halted */
+	volatile boolean stop;
+
+	/** Whether it is running */
+	boolean is_running;
+
+	/** TcpSelector listener */
+	TcpSelectorListener listener;
+
+	/** Log where the connection failures are printed, or null */
+	volatile Log log;
+
+	/** Costructs a new TcpSelector that does not accept connections */
+	public TcpSelector(TcpSelectorListener listener) throws IOException {
+		init(-1, null, listener);
+		start();
+	}
+
+	/** Costructs a new TcpSelector accepting connections on port <i>port</i> */
+	public TcpSelector(int port, TcpSelectorListener listener)
+			throws IOException {
+		init(port, null, listener);
+		start();
+	}
+
+	/** Costructs a new TcpSelector accepting connections on port <i>port</i> */
+	public TcpSelector(int port, IpAddress bind_ipaddr,
+			TcpSelectorListener listener) throws IOException {
+		init(port, bind_ipaddr, listener);
+		start();
+	}
+
+	/** Inits the TcpSelector */
+	private void init(int port, IpAddress bind_ipaddr,
+			TcpSelectorListener listener) throws IOException {
+		this.listener = listener;
+		selector = Selector.open();
+		server_channel = null;
+		if (port >= 0) {
+			server_channel = ServerSocketChannel.open();
+			InetSocketAddress addr = (bind_ipaddr == null) ? new InetSocketAddress(
+					port)
+					: new InetSocketAddress(bind_ipaddr.getInetAddress(), port);
+			server_channel.socket().bind(addr, socket_backlog);
+			server_channel.configureBlocking(false);
+			server_channel.register(selector, SelectionKey.OP_ACCEPT);
+		}
+		read_buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		read_data = new byte[BUFFER_SIZE];
+		pending = new ConcurrentLinkedQueue<NioTcpConnection>();
+		connecting = new ArrayList<NioTcpConnection>();
+		connection_count = 0;
+		stop = false;
+		is_running = true;
+		setName("TcpSelector");
+		setDaemon(true);
+	}
+
+	/** Gets the local port accepting connections, or 0 */
+	public int getPort() {
+		if (server_channel == null)
+			return 0;
+		return server_channel.socket().getLocalPort();
+	}
+
+	/** Sets the Log where the connection failures are printed */
+	public void setLog(Log log) {
+		this.log = log;
+	}
+
+	/** Gets the number of open connections */
+	public int getConnectionCount() {
+		return connection_count;
+	}
+
+	/** Whether the service is running */
+	public boolean isRunning() {
+		return is_running;
+	}
+
+	/** Stops running, closing all the connections */
+	public void halt() {
+		stop = true;
+		selector.wakeup();
+	}
+
+	/**
+	 * Opens a new connection to <i>ipaddr</i>:<i>port</i>. The connection is
+	 * established without blocking, so it can be opened also from the
+	 * selector thread (e.g. within a listener callback): the selector
+	 * completes it, and the data sent meanwhile are queued. If it is not
+	 * established within CONNECT_TIMEOUT milliseconds, the connection is
+	 * terminated and its listener is notified.
+	 */
+	public NioTcpConnection connect(IpAddress ipaddr, int port,
+			NioTcpConnectionListener listener) throws IOException {
+		if (stop)
+			throw new IOException("TcpSelector halted");
+		SocketChannel channel = SocketChannel.open();
+		NioTcpConnection conn;
+		try {
+			channel.configureBlocking(false);
+			conn = new NioTcpConnection(this, channel, ipaddr, port, listener);
+			conn.connecting = !channel.connect(new InetSocketAddress(ipaddr
+					.getInetAddress(), port));
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		conn.connect_deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+		update(conn);
+		return conn;
+	}
+
+	/**
+	 * Asks the selector thread to register, update the interest set, or
+	 * close the connection.
+	 */
+	void update(NioTcpConnection conn) {
+		pending.add(conn);
+		selector.wakeup();
+	}
+
+	/** Runs the selector */
+	public void run() {
+		Exception error = null;
+		try {
+			long timeout = 0;
+			while (!stop) {
+				selector.select(timeout);
+				NioTcpConnection conn;
+				while ((conn = pending.poll()) != null)
+					process(conn);
+				Iterator<SelectionKey> i = selector.selectedKeys().iterator();
+				while (i.hasNext()) {
+					SelectionKey key = i.next();
+					i.remove();
+					if (!key.isValid())
+						continue;
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+					conn = (NioTcpConnection) key.attachment();
+					// a failure only terminates this connection
+					try {
+						if (key.isConnectable()) {
+							if (conn.finishConnect()) {
+								connecting.remove(conn);
+								process(conn);
+							}
+							continue;
+						}
+						if (key.isReadable())
+							read(conn);
+						if (key.isValid() && key.isWritable()
+								&& conn.flush())
+							key.interestOps(SelectionKey.OP_READ);
+					} catch (IOException e) {
+						terminate(conn, e);
+					} catch (RuntimeException e) {
+						printException(e);
+						terminate(conn, e);
+					}
+				}
+				timeout = checkConnectTimeouts();
+			}
+		} catch (Exception e) {
+			error = e;
+		}
+		stop = true;
+		is_running = false;
+		Object[] keys = selector.keys().toArray();
+		for (int i = 0; i < keys.length; i++) {
+			Object attachment = ((SelectionKey) keys[i]).attachment();
+			if (attachment != null)
+				terminate((NioTcpConnection) attachment, null);
+		}
+		NioTcpConnection conn;
+		while ((conn = pending.poll()) != null)
+			terminate(conn, null);
+		try {
+			if (server_channel != null)
+				server_channel.close();
+			selector.close();
+		} catch (IOException e) {
+		}
+		if (listener != null)
+			listener.onSelectorTerminated(this, error);
+		listener = null;
+	}
+
+	/**
+	 * Accepts the pending incoming connections. A failure (e.g. too many open
+	 * files) is printed, and the remaining connections are accepted at the
+	 * next selection.
+	 */
+	private void accept() {
+		while (true) {
+			SocketChannel channel = null;
+			try {
+				channel = server_channel.accept();
+				if (channel == null)
+					return;
+				channel.configureBlocking(false);
+			} catch (IOException e) {
+				printException(e);
+				if (channel == null)
+					return;
+				try {
+					channel.close();
+				} catch (IOException e2) {
+				}
+				continue;
+			}
+			NioTcpConnection conn = new NioTcpConnection(this, channel, null);
+			try {
+				if (listener != null)
+					listener.onIncomingConnection(this, conn);
+			} catch (RuntimeException e) {
+				printException(e);
+				terminate(conn, e);
+				continue;
+			}
+			process(conn);
+		}
+	}
+
+	/**
+	 * Terminates the connections not established in time. Returns the time
+	 * to wait for the next connection timeout, or 0 if there are no
+	 * connections being established.
+	 */
+	private long checkConnectTimeouts() {
+		long timeout = 0;
+		long now = System.currentTimeMillis();
+		for (int i = connecting.size() - 1; i >= 0; i--) {
+			NioTcpConnection conn = connecting.get(i);
+			long remaining = conn.connect_deadline - now;
+			if (remaining <= 0)
+				terminate(conn, new IOException("Connection to "
+						+ conn.remote_ipaddr + ":" + conn.remote_port
+						+ " timed out"));
+			else if (timeout == 0 || remaining < timeout)
+				timeout = remaining;
+		}
+		return timeout;
+	}
+
+	/** Registers, updates, or closes a connection */
+	private void process(NioTcpConnection conn) {
+		if (conn.terminated)
+			return;
+		if (conn.stop) {
+			terminate(conn, null);
+			return;
+		}
+		int ops;
+		if (conn.connecting)
+			ops = SelectionKey.OP_CONNECT;
+		else {
+			ops = SelectionKey.OP_READ;
+			if (conn.hasPendingData())
+				ops |= SelectionKey.OP_WRITE;
+		}
+		try {
+			if (conn.key == null) {
+				conn.key = conn.channel.register(selector, ops, conn);
+				connection_count++;
+				if (conn.connecting)
+					connecting.add(conn);
+			} else if (conn.key.isValid())
+				conn.key.interestOps(ops);
+		} catch (IOException e) {
+			terminate(conn, e);
+		}
+	}
+
+	/** Reads the available data of a connection */
+	private void read(NioTcpConnection conn) throws IOException {
+		read_buffer.clear();
+		int len = conn.channel.read(read_buffer);
+		if (len < 0) { // connection closed by the remote peer
+			terminate(conn, null);
+			return;
+		}
+		if (len > 0 && conn.listener != null) {
+			read_buffer.flip();
+			read_buffer.get(read_data, 0, len);
+			conn.listener.onReceivedData(conn, read_data, len);
+		}
+	}
+
+	/** Closes a connection and notifies its listener */
+	private void terminate(NioTcpConnection conn, Exception error) {
+		if (conn.terminated)
+			return;
+		conn.terminated = true;
+		conn.stop = true;
+		if (conn.connecting)
+			connecting.remove(conn);
+		if (conn.key != null) {
+			conn.key.cancel();
+			connection_count--;
+		}
+		try {
+			conn.channel.close();
+		} catch (IOException e) {
+		}
+		NioTcpConnectionListener l = conn.listener;
+		conn.listener = null;
+		if (l != null) {
+			try {
+				l.onConnectionTerminated(conn, error);
+			} catch (RuntimeException e) {
+				printException(e);
+			}
+		}
+	}
+
+	/** Adds the Exception message to the Log */
+	private void printException(Exception e) {
+		Log log = this.log;
+		if (log != null)
+			log.printException(e, LogLevel.HIGH);
+	}
+
+	/** Gets a String representation of the Object */
+	public String toString() {
+		return "tcp-nio:" + getPort();
+	}
+
+}
@@ -97,6 +97,12 @@ public abstract class BaseMessage {
 	/** The message string */
 	private String message;
 
+	/** Header index of the message string */
+	private SipMessageIndex header_index;
+
+	/** The message string indexed by header_index */
+	private String indexed_message;
+
 	/** Inits empty Message */
 	private void init() { // message="";
 		remote_addr = null;
@@ -114,14 +120,13 @@ public abstract class BaseMessage {
 	/** Costructs a new Message */
 	public BaseMessage(byte[] data, int offset, int len) {
 		init();
-		message = new String(data, offset, len);
+		setMessage(data, offset, len);
 	}
 
 	/** Costructs a new Message */
 	public BaseMessage(UdpPacket packet) {
 		init();
-		message = new String(packet.getData(), packet.getOffset(), packet
-				.getLength());
+		setMessage(packet.getData(), packet.getOffset(), packet.getLength());
 	}
 
 	/** Costructs a new Message */
@@ -133,6 +138,8 @@ public abstract class BaseMessage {
 	/** Costructs a new Message */
 	public BaseMessage(BaseMessage msg) { // message=new String(msg.message);
 		message = msg.message;
+		header_index = msg.header_index;
+		indexed_message = msg.indexed_message;
 		remote_addr = msg.remote_addr;
 		remote_port = msg.remote_port;
 		transport_proto = msg.transport_proto;
@@ -151,6 +158,30 @@ public abstract class BaseMessage {
 		this.message = message;
 	}
 
+	/**
+	 * Sets the entire message from received bytes. The bytes are copied (the
+	 * receiving buffer may be reused) and indexed in place.
+	 */
+	private void setMessage(byte[] data, int offset, int len) {
+		byte[] buf = new byte[len];
+		System.arraycopy(data, offset, buf, 0, len);
+		message = new String(buf);
+		header_index = new SipMessageIndex(buf);
+		indexed_message = message;
+	}
+
+	/**
+	 * Gets the header index of the current message, indexing the message
+	 * again if it has been changed since the last time.
+	 */
+	private SipMessageIndex getHeaderIndex() {
+		if (header_index == null || indexed_message != message) {
+			header_index = new SipMessageIndex(message.getBytes());
+			indexed_message = message;
+		}
+		return header_index;
+	}
+
 	/** Gets string representation of Message */
 	public String toString() {
 		return message;
@@ -243,19 +274,9 @@ public abstract class BaseMessage {
 		// SIP-URL ' '
 		// "SIP/2.0"
 		// CRLF
-		if (message == null || isResponse())
-			return false;
-		String firstline = (new SipParser(message)).getLine();
-		String version = (new SipParser(firstline)).skipString().skipString()
-				.getString();
-		if (version == null || version.length() < 4)
+		if (message == null)
 			return false;
-		version = version.substring(0, 4);
-		String target = "SIP/";
-		// if (version.compareToIgnoreCase(target)==0) return true;
-		if (version.equalsIgnoreCase(target))
-			return true;
-		return false;
+		return getHeaderIndex().isRequest();
 	}
 
 	/** Whether Message is a <i>method</i> request */
@@ -329,7 +350,7 @@ public abstract class BaseMessage {
 			// request message\n",1);
 			return null;
 		}
-		SipParser par = new SipParser(message);
+		SipParser par = new SipParser(getHeaderIndex().getFirstLine());
 		String method = par.getString();
 		par.skipWSP();
 		par = new SipParser(par.subParser(par.indexOfEOH() - par.getPos()));
@@ -360,15 +381,9 @@ public abstract class BaseMessage {
 		// 'Reason-Phrase"
 		// CRLF
 		// if (message==null) return false;
-		if (message == null || message.length() < 4)
+		if (message == null)
 			return false;
-		String version = message.substring(0, 4);
-		String target = "SIP/";
-		// if (version.compareToIgnoreCase(target)==0) return true;
-		if (version.equalsIgnoreCase(target))
-			return true;
-
-		return false;
+		return getHeaderIndex().isResponse();
 	}
 
 	/** Whether Message has Status-line */
@@ -385,12 +400,12 @@ public abstract class BaseMessage {
 			// response message\n",1);
 			return null;
 		}
-		SipParser par = new SipParser(message);
+		String first_line = getHeaderIndex().getFirstLine();
+		SipParser par = new SipParser(first_line);
 		par.skipString().skipWSP(); // "SIP/2.0 "
 		int code = par.getInt();
 		int begin = par.getPos();
-		int end = par.indexOfEOH();
-		String reason = message.substring(begin, end).trim();
+		String reason = first_line.substring(begin).trim();
 		return new StatusLine(code, reason);
 	}
 
@@ -438,11 +453,7 @@ public abstract class BaseMessage {
 
 	/** Whether Message has any headers of specified name */
 	public boolean hasHeader(String name) {
-		Header hd = getHeader(name);
-		if (hd == null)
-			return false;
-		else
-			return true;
+		return getHeaderIndex().indexOf(name) >= 0;
 	}
 
 	/**
@@ -450,8 +461,7 @@ public abstract class BaseMessage {
 	 * found)
 	 */
 	public Header getHeader(String hname) {
-		SipParser par = new SipParser(message);
-		return par.getHeader(hname);
+		return getHeaderIndex().getHeader(hname);
 	}
 
 	/**
@@ -460,11 +470,7 @@ public abstract class BaseMessage {
 	 */
 	public Vector<Header> getHeaders(String hname) {
 		Vector<Header> v = new Vector<Header>();
-		SipParser par = new SipParser(message);
-		Header h;
-		while ((h = par.getHeader(hname)) != null) {
-			v.addElement(h);
-		}
+		getHeaderIndex().getHeaders(hname, v);
 		return v;
 	}
 
@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.sip.message;
+
+import org.zoolu.sip.header.Header;
+import org.zoolu.sip.header.SipHeaders;
+
+import java.util.Vector;
+
+/**
+ * Class SipMessageIndex is a one-pass index of the first line and of the
+ * header fields of a SIP message, built directly on the message bytes.
+ * <p>
+ * Only the offsets of header names and values are recorded while scanning;
+ * the header values are decoded into Strings just when they are requested
+ * (and then kept), so looking up a header does not rescan the message.
+ * The index does not copy the data, that must not be modified while the
+ * index is in use.
+ */
+public class SipMessageIndex {
+	/** The message data */
+	final byte[] data;
+
+	/** Begin of the message within data */
+	final int offset;
+
+	/** End of the message within data */
+	final int end;
+
+	/** Whether the first line is a Status-Line */
+	boolean is_response;
+
+	/** Whether the first line is a Request-Line */
+	boolean is_request;
+
+	/** End of the first line (excluding CRLF), if it is a Request/Status-Line */
+	int first_line_end;
+
+	/** Begin of the body, or -1 if the empty line has not been found */
+	int body_begin;
+
+	/** Number of indexed headers */
+	int count;
+
+	/** Begin of the header names */
+	int[] name_begin;
+
+	/** End of the header names */
+	int[] name_end;
+
+	/** Begin of the header values (after the colon) */
+	int[] value_begin;
+
+	/** End of the header values (excluding CRLF) */
+	int[] value_end;
+
+	/** The header values already decoded */
+	String[] values;
+
+	/** Costructs a new SipMessageIndex of all the data */
+	public SipMessageIndex(byte[] data) {
+		this(data, 0, data.length);
+	}
+
+	/** Costructs a new SipMessageIndex of <i>len</i> bytes from <i>offset</i> */
+	public SipMessageIndex(byte[] data, int offset, int len) {
+		this.data = data;
+		this.offset = offset;
+		this.end = offset + len;
+		int size = 16;
+		name_begin = new int[size];
+		name_end = new int[size];
+		value_begin = new int[size];
+		value_end = new int[size];
+		values = new String[size];
+		parse();
+	}
+
+	/** Scans the first line and the headers, until the empty line. */
+	private void parse() {
+		body_begin = -1;
+		int pos = offset;
+		int eol = indexOfCRLF(pos);
+		if (isVersion(pos, eol))
+			is_response = true;
+		else {
+			// Request-Line = Method SP Request-URI SP SIP-Version CRLF
+			int i = pos;
+			for (int n = 0; n < 2 && i < eol; n++) {
+				while (i < eol && !isWSP(data[i]))
+					i++;
+				while (i < eol && isWSP(data[i]))
+					i++;
+			}
+			is_request = isVersion(i, eol);
+		}
+		if (is_request || is_response) {
+			first_line_end = eol;
+			pos = nextLine(eol);
+		} else
+			first_line_end = offset;
+
+		while (pos < end) {
+			if (data[pos] == '\r' || data[pos] == '\n') { // empty line
+				body_begin = nextLine(pos);
+				return;
+			}
+			// find the end of the header, including folded lines
+			int eoh = indexOfCRLF(pos);
+			int next = nextLine(eoh);
+			while (next < end && isWSP(data[next])) {
+				eoh = indexOfCRLF(next);
+				next = nextLine(eoh);
+			}
+			int colon = pos;
+			while (colon < eoh && data[colon] != ':')
+				colon++;
+			if (colon < eoh) {
+				int ne = colon;
+				while (ne > pos && isWSP(data[ne - 1]))
+					ne--;
+				add(pos, ne, colon + 1, eoh);
+			}
+			pos = next;
+		}
+	}
+
+	/** Adds a header entry */
+	private void add(int nb, int ne, int vb, int ve) {
+		if (count == name_begin.length) {
+			int size = count << 1;
+			name_begin = grow(name_begin, size);
+			name_end = grow(name_end, size);
+			value_begin = grow(value_begin, size);
+			value_end = grow(value_end, size);
+			String[] v = new String[size];
+			System.arraycopy(values, 0, v, 0, count);
+			values = v;
+		}
+		name_begin[count] = nb;
+		name_end[count] = ne;
+		value_begin[count] = vb;
+		value_end[count] = ve;
+		count++;
+	}
+
+	private static int[] grow(int[] a, int size) {
+		int[] b = new int[size];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+
+	/** Gets the index of the first CR or LF from <i>pos</i>, or the end */
+	private int indexOfCRLF(int pos) {
+		while (pos < end && data[pos] != '\r' && data[pos] != '\n')
+			pos++;
+		return pos;
+	}
+
+	/** Skips the line end at <i>pos</i> (i.e. '\r' OR '\n' OR '\r\n') */
+	private int nextLine(int pos) {
+		if (pos < end) {
+			if (data[pos] == '\r' && pos + 1 < end && data[pos + 1] == '\n')
+				pos += 2;
+			else
+				pos++;
+		}
+		return pos;
+	}
+
+	/** Whether the bytes from <i>pos</i> start with "SIP/" (ignoring case) */
+	private boolean isVersion(int pos, int limit) {
+		return pos + 4 <= limit && (data[pos] | 0x20) == 's'
+				&& (data[pos + 1] | 0x20) == 'i'
+				&& (data[pos + 2] | 0x20) == 'p' && data[pos + 3] == '/';
+	}
+
+	private static boolean isWSP(byte b) {
+		return b == ' ' || b == '\t';
+	}
+
+	/** Whether the header at position <i>i</i> has name <i>hname</i> */
+	private boolean nameEquals(int i, String hname) {
+		int nb = name_begin[i];
+		int len = name_end[i] - nb;
+		if (len != hname.length())
+			return false;
+		for (int k = 0; k < len; k++) {
+			int c1 = data[nb + k];
+			int c2 = hname.charAt(k);
+			if (c1 != c2) {
+				if (c1 >= 'A' && c1 <= 'Z')
+					c1 += 32;
+				if (c2 >= 'A' && c2 <= 'Z')
+					c2 += 32;
+				if (c1 != c2)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/** Whether the first line is a Request-Line */
+	public boolean isRequest() {
+		return is_request;
+	}
+
+	/** Whether the first line is a Status-Line */
+	public boolean isResponse() {
+		return is_response;
+	}
+
+	/**
+	 * Gets the Request/Status-Line (without CRLF), or null if the message
+	 * starts with no Request/Status-Line
+	 */
+	public String getFirstLine() {
+		if (!is_request && !is_response)
+			return null;
+		return new String(data, offset, first_line_end - offset);
+	}
+
+	/** Gets the number of indexed headers */
+	public int getHeaderCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the position of the first header of name <i>hname</i>, starting
+	 * from position <i>from</i>, or -1 if not found
+	 */
+	public int indexOf(String hname, int from) {
+		for (int i = from; i < count; i++)
+			if (nameEquals(i, hname))
+				return i;
+		return -1;
+	}
+
+	/** Gets the position of the first header of name <i>hname</i>, or -1 */
+	public int indexOf(String hname) {
+		return indexOf(hname, 0);
+	}
+
+	/** Gets the name of the header at position <i>i</i> */
+	public String getName(int i) {
+		return new String(data, name_begin[i], name_end[i] - name_begin[i]);
+	}
+
+	/** Gets the (trimmed) value of the header at position <i>i</i> */
+	public String getValue(int i) {
+		String value = values[i];
+		if (value == null) {
+			value = new String(data, value_begin[i], value_end[i]
+					- value_begin[i]).trim();
+			values[i] = value;
+		}
+		return value;
+	}
+
+	/**
+	 * Gets the first Header of name <i>hname</i> (Returns null if no Header is
+	 * found)
+	 */
+	public Header getHeader(String hname) {
+		int i = indexOf(hname, 0);
+		if (i < 0)
+			return null;
+		return new Header(hname, getValue(i));
+	}
+
+	/** Adds to Vector <i>v</i> all the Headers of name <i>hname</i> */
+	public void getHeaders(String hname, Vector<Header> v) {
+		for (int i = indexOf(hname, 0); i >= 0; i = indexOf(hname, i + 1))
+			v.addElement(new Header(hname, getValue(i)));
+	}
+
+	/**
+	 * Gets the value of the first Content-Length header, or -1 if there is no
+	 * Content-Length header or its value is not a valid number
+	 */
+	public int getContentLength() {
+		int i = indexOf(SipHeaders.Content_Length, 0);
+		if (i < 0)
+			return -1;
+		int pos = value_begin[i];
+		int ve = value_end[i];
+		while (pos < ve && (isWSP(data[pos]) || data[pos] == '\r' || data[pos] == '\n'))
+			pos++;
+		if (pos == ve || data[pos] < '0' || data[pos] > '9')
+			return -1;
+		int len = 0;
+		while (pos < ve && data[pos] >= '0' && data[pos] <= '9')
+			len = len * 10 + (data[pos++] - '0');
+		return len;
+	}
+
+	/**
+	 * Gets the begin of the body within the data, or -1 if the empty line
+	 * ending the headers has not been found
+	 */
+	public int getBodyBegin() {
+		return body_begin;
+	}
+
+	/**
+	 * Gets the length of the first complete SIP message in <i>len</i> bytes
+	 * of <i>data</i> from <i>offset</i>, that is the headers, the empty line
+	 * and the number of body bytes given by the Content-Length header. Returns
+	 * -1 if the message is not complete yet (or it has no Content-Length).
+	 */
+	public static int getMessageLength(byte[] data, int offset, int len) {
+		SipMessageIndex index = new SipMessageIndex(data, offset, len);
+		if (index.body_begin < 0)
+			return -1;
+		int body_len = index.getContentLength();
+		if (body_len < 0)
+			return -1;
+		int msg_len = index.body_begin - offset + body_len;
+		return (msg_len <= len) ? msg_len : -1;
+	}
+}
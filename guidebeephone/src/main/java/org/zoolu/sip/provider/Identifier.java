@@ -25,11 +25,18 @@ package org.zoolu.sip.provider;
 
 /**
  * Generic Identifier.
+ * <p>
+ * The id is set once at construction; its hash code is computed at first use
+ * and then kept, so that the identifier can be looked up in hash tables
+ * without rehashing the (often long) id string.
  */
 public class Identifier {
 	/** The actual id */
 	String id;
 
+	/** The hash code of the id (0 if not computed yet) */
+	private int hash;
+
 	/** Costructs a new void Identifier. */
 	Identifier() {
 	}
@@ -42,21 +49,31 @@ public class Identifier {
 	/** Costructs a new Identifier. */
 	Identifier(Identifier i) {
 		this.id = i.id;
+		this.hash = i.hash;
 	}
 
 	/** Whether the Identifier equals to <i>obj</i>. */
 	public boolean equals(Object obj) {
-		try {
-			Identifier i = (Identifier) obj;
-			return id.equals(i.id);
-		} catch (Exception e) {
+		if (obj == this)
+			return true;
+		if (!(obj instanceof Identifier))
 			return false;
-		}
+		Identifier i = (Identifier) obj;
+		if (id == null || i.id == null)
+			return false;
+		if (hashCode() != i.hashCode())
+			return false;
+		return id.equals(i.id);
 	}
 
 	/** Gets an int hashCode for the Identifier. */
 	public int hashCode() {
-		return id.hashCode();
+		int h = hash;
+		if (h == 0) {
+			h = id.hashCode();
+			hash = h;
+		}
+		return h;
 	}
 
 	/** Gets a String value for the Identifier */
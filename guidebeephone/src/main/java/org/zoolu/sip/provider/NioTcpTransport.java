@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.sip.provider;
+
+import org.zoolu.net.IpAddress;
+import org.zoolu.net.NioTcpConnection;
+import org.zoolu.net.NioTcpConnectionListener;
+import org.zoolu.net.TcpSelector;
+import org.zoolu.sip.message.Message;
+
+import java.io.IOException;
+
+/**
+ * NioTcpTransport provides a TCP trasport service for SIP, served by a shared
+ * TcpSelector instead of a thread per connection.
+ */
+class NioTcpTransport implements ConnectedTransport, NioTcpConnectionListener {
+	/** TCP protocol type */
+	public static final String PROTO_TCP = "tcp";
+
+	/**
+	 * TCP connection, or null once terminated. It is set by the thread
+	 * creating the transport and cleared by the selector thread.
+	 */
+	volatile NioTcpConnection tcp_conn;
+
+	/** Whether the connection has terminated */
+	volatile boolean terminated;
+
+	/** TCP connection */
+	ConnectionIdentifier connection_id;
+
+	/** The last time that has been used (in milliseconds) */
+	long last_time;
+
+	/** the current received data, not yet delivered as message. */
+	SipMessageBuffer buffer;
+
+	/** Transport listener */
+	TransportListener listener;
+
+	/** Creates a new NioTcpTransport */
+	public NioTcpTransport(IpAddress remote_ipaddr, int remote_port,
+			TransportListener listener, TcpSelector selector)
+			throws IOException {
+		this.listener = listener;
+		buffer = new SipMessageBuffer();
+		last_time = System.currentTimeMillis();
+		// set before the selector may deliver data to this listener
+		connection_id = new ConnectionIdentifier(PROTO_TCP, remote_ipaddr,
+				remote_port);
+		tcp_conn = selector.connect(remote_ipaddr, remote_port, this);
+		// the selector may have terminated the connection before it was set
+		if (terminated)
+			tcp_conn = null;
+	}
+
+	/** Costructs a new NioTcpTransport for an accepted connection */
+	public NioTcpTransport(NioTcpConnection conn, TransportListener listener) {
+		this.listener = listener;
+		buffer = new SipMessageBuffer();
+		last_time = System.currentTimeMillis();
+		tcp_conn = conn;
+		tcp_conn.setListener(this);
+		connection_id = null;
+	}
+
+	/** Gets protocol type */
+	public String getProtocol() {
+		return PROTO_TCP;
+	}
+
+	/** Gets the remote IpAddress */
+	public IpAddress getRemoteAddress() {
+		NioTcpConnection conn = tcp_conn;
+		if (conn != null)
+			return conn.getRemoteAddress();
+		else
+			return null;
+	}
+
+	/** Gets the remote port */
+	public int getRemotePort() {
+		NioTcpConnection conn = tcp_conn;
+		if (conn != null)
+			return conn.getRemotePort();
+		else
+			return 0;
+	}
+
+	/** Gets the last time the Connection has been used (in millisconds) */
+	public long getLastTimeMillis() {
+		return last_time;
+	}
+
+	/**
+	 * Sends a Message through the connection. Parameters <i>dest_addr</i>/<i>dest_addr</i>
+	 * are not used, and the message is addressed to the connection remote peer.
+	 * <p>
+	 * Better use sendMessage(Message msg) method instead.
+	 */
+	public void sendMessage(Message msg, IpAddress dest_ipaddr, int dest_port)
+			throws IOException {
+		sendMessage(msg);
+	}
+
+	/** Sends a Message */
+	public void sendMessage(Message msg) throws IOException {
+		NioTcpConnection conn = tcp_conn;
+		if (conn != null) {
+			last_time = System.currentTimeMillis();
+			byte[] data = msg.toString().getBytes();
+			conn.send(data);
+		}
+	}
+
+	/** Stops running */
+	public void halt() {
+		NioTcpConnection conn = tcp_conn;
+		if (conn != null)
+			conn.halt();
+	}
+
+	/** Gets a String representation of the Object */
+	public String toString() {
+		NioTcpConnection conn = tcp_conn;
+		if (conn != null)
+			return conn.toString();
+		else
+			return null;
+	}
+
+	// ************************* Callback methods *************************
+
+	/** When new data is received through the NioTcpConnection. */
+	public void onReceivedData(NioTcpConnection tcp_conn, byte[] data, int len) {
+		last_time = System.currentTimeMillis();
+
+		buffer.append(data, 0, len);
+		Message msg;
+		while ((msg = buffer.nextMessage()) != null) {
+			msg.setRemoteAddress(tcp_conn.getRemoteAddress().toString());
+			msg.setRemotePort(tcp_conn.getRemotePort());
+			msg.setTransport(PROTO_TCP);
+			msg.setConnectionId(connection_id);
+			if (listener != null)
+				listener.onReceivedMessage(this, msg);
+		}
+	}
+
+	/** When NioTcpConnection terminates. */
+	public void onConnectionTerminated(NioTcpConnection tcp_conn,
+			Exception error) {
+		terminated = true;
+		this.tcp_conn = null;
+		if (listener != null)
+			listener.onTransportTerminated(this, error);
+		this.listener = null;
+	}
+
+}
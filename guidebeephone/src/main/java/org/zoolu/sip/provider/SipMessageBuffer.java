@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.sip.provider;
+
+import org.zoolu.sip.message.Message;
+import org.zoolu.sip.message.SipMessageIndex;
+
+/**
+ * SipMessageBuffer collects the data received through a stream transport
+ * (e.g. TCP) and splits them into SIP messages. Each message is framed by
+ * its Content-Length header; CRLF sequences between messages are skipped.
+ */
+class SipMessageBuffer {
+	/** Initial size of the buffer */
+	static final int BUFFER_SIZE = 4096;
+
+	/** The received data */
+	byte[] buffer;
+
+	/** Begin of the data not yet returned as message */
+	int pos;
+
+	/** End of the received data */
+	int len;
+
+	/** Costructs a new SipMessageBuffer */
+	public SipMessageBuffer() {
+		buffer = new byte[BUFFER_SIZE];
+		pos = 0;
+		len = 0;
+	}
+
+	/** Appends new received data */
+	public void append(byte[] data, int offset, int n) {
+		if (pos > 0) { // discard the data already returned
+			len -= pos;
+			System.arraycopy(buffer, pos, buffer, 0, len);
+			pos = 0;
+		}
+		if (len + n > buffer.length) {
+			byte[] buf = new byte[Math.max(buffer.length << 1, len + n)];
+			System.arraycopy(buffer, 0, buf, 0, len);
+			buffer = buf;
+		}
+		System.arraycopy(data, offset, buffer, len, n);
+		len += n;
+	}
+
+	/**
+	 * Gets the next complete SIP message, or null if no complete message has
+	 * been received yet.
+	 */
+	public Message nextMessage() {
+		// skip any CRLF sequence
+		while (pos < len && (buffer[pos] == '\r' || buffer[pos] == '\n'))
+			pos++;
+		int msg_len = SipMessageIndex.getMessageLength(buffer, pos, len - pos);
+		if (msg_len < 0)
+			return null;
+		Message msg = new Message(buffer, pos, msg_len);
+		pos += msg_len;
+		return msg;
+	}
+}
@@ -32,7 +32,10 @@ import com.guidebee.sipphone.activity.Sipdroid;
 import com.guidebee.sipphone.receiver.Receiver;
 
 import org.zoolu.net.IpAddress;
+import org.zoolu.net.NioTcpConnection;
 import org.zoolu.net.SocketAddress;
+import org.zoolu.net.TcpSelector;
+import org.zoolu.net.TcpSelectorListener;
 import org.zoolu.net.TcpServer;
 import org.zoolu.net.TcpServerListener;
 import org.zoolu.net.TcpSocket;
@@ -51,11 +54,13 @@ import org.zoolu.tools.Parser;
 import org.zoolu.tools.Random;
 import org.zoolu.tools.RotatingLog;
 import org.zoolu.tools.SimpleDigest;
+import org.zoolu.tools.Timer;
 
 import java.io.IOException;
 import java.util.Date;
 import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * SipProvider implements the SIP transport layer, that is the layer responsable
@@ -91,7 +96,7 @@ import java.util.Hashtable;
  * not properly match any ongoing transactions, dialogs, nor method types.
  */
 public class SipProvider implements Configurable, TransportListener,
-		TcpServerListener {
+		TcpServerListener, TcpSelectorListener {
 
 	// **************************** Constants ****************************
 
@@ -210,7 +215,7 @@ public class SipProvider implements Configurable, TransportListener,
 	boolean force_rport = false;
 
 	/** List of provider listeners */
-	Hashtable<Identifier, SipProviderListener> listeners = null;
+	ConcurrentHashMap<Identifier, SipProviderListener> listeners = null;
 
 	/** List of exception listeners */
 	HashSet exception_listeners = null;
@@ -221,8 +226,20 @@ public class SipProvider implements Configurable, TransportListener,
 	/** Tcp server */
 	TcpServer tcp_server = null;
 
+	/** Tcp selector (used in place of tcp_server if SipStack.tcp_nio) */
+	TcpSelector tcp_selector = null;
+
 	/** Connections */
-	Hashtable<ConnectionIdentifier, ConnectedTransport> connections = null;
+	ConcurrentHashMap<ConnectionIdentifier, ConnectedTransport> connections = null;
+
+	/** Number of received messages passed to a listener */
+	AtomicLong routed_messages = new AtomicLong();
+
+	/** Total time spent routing the received messages (in nanoseconds) */
+	AtomicLong routing_time = new AtomicLong();
+
+	/** Maximum time spent routing a received message (in nanoseconds) */
+	AtomicLong max_routing_time = new AtomicLong();
 
 	// *************************** Costructors ***************************
 
@@ -318,9 +335,9 @@ public class SipProvider implements Configurable, TransportListener,
 		force_rport = SipStack.force_rport;
 
 		exception_listeners = new HashSet();
-		listeners = new Hashtable<Identifier, SipProviderListener>(10);
+		listeners = newTable();
 
-		connections = new Hashtable<ConnectionIdentifier, ConnectedTransport>(10);
+		connections = newTable();
 	}
 
 	/** Inits logs. */
@@ -336,6 +353,7 @@ public class SipProvider implements Configurable, TransportListener,
 					SipStack.debug_level, SipStack.max_logsize * 1024,
 					SipStack.log_rotations, SipStack.rotation_scale,
 					SipStack.rotation_time);
+			Timer.setTimingWheelLog(event_log);
 		}
 		printLog("Date: " + DateFormat.formatHHMMSS(new Date()), LogLevel.HIGH);
 		printLog("SipStack: " + SipStack.release, LogLevel.HIGH);
@@ -360,11 +378,17 @@ public class SipProvider implements Configurable, TransportListener,
 		// start tcp
 		if (transport_tcp) {
 			try {
-				if (host_ipaddr == null)
-					tcp_server = new TcpServer(host_port, this);
-				else
-					tcp_server = new TcpServer(host_port, host_ipaddr, this);
-				host_port = tcp_server.getPort();
+				if (SipStack.tcp_nio) {
+					tcp_selector = new TcpSelector(host_port, host_ipaddr, this);
+					tcp_selector.setLog(event_log);
+					host_port = tcp_selector.getPort();
+				} else {
+					if (host_ipaddr == null)
+						tcp_server = new TcpServer(host_port, this);
+					else
+						tcp_server = new TcpServer(host_port, host_ipaddr, this);
+					host_port = tcp_server.getPort();
+				}
 				printLog("tcp is up", LogLevel.MEDIUM);
 			} catch (Exception e) {
 				printException(e, LogLevel.HIGH);
@@ -387,6 +411,11 @@ public class SipProvider implements Configurable, TransportListener,
 			tcp_server.halt();
 			tcp_server = null;
 		}
+		if (tcp_selector != null) {
+			printLog("tcp is going down", LogLevel.LOWER);
+			tcp_selector.halt();
+			tcp_selector = null;
+		}
 		haltConnections();
 		connections = null;
 	}
@@ -399,7 +428,7 @@ public class SipProvider implements Configurable, TransportListener,
 				ConnectedTransport c = e.nextElement();
 				c.halt();
 			}
-			connections = new Hashtable<ConnectionIdentifier, ConnectedTransport>(10);
+			connections = newTable();
 		}
 	}
 	
@@ -407,7 +436,7 @@ public class SipProvider implements Configurable, TransportListener,
 	public void halt() {
 		printLog("halt: SipProvider is going down", LogLevel.MEDIUM);
 		stopTrasport();
-		listeners = new Hashtable<Identifier, SipProviderListener>(10);
+		listeners = newTable();
 		exception_listeners = new HashSet();
 	}
 
@@ -602,11 +631,57 @@ public class SipProvider implements Configurable, TransportListener,
 		return event_log;
 	}
 
-	/** Returns the list (Hashtable) of active listener_IDs. */
-	public Hashtable<Identifier, SipProviderListener> getListeners() {
+	/** Returns the list (ConcurrentHashMap) of active listener_IDs. */
+	public ConcurrentHashMap<Identifier, SipProviderListener> getListeners() {
 		return listeners;
 	}
 
+	/**
+	 * Creates a new table for listeners or connections. Tables are striped in
+	 * 16 segments, so that the transport threads looking up listeners do not
+	 * contend with the transaction threads adding and removing them.
+	 */
+	private static <K, V> ConcurrentHashMap<K, V> newTable() {
+		return new ConcurrentHashMap<K, V>(16, 0.75f, 16);
+	}
+
+	/** Gets the number of received messages passed to a listener. */
+	public long getRoutedMessageCount() {
+		return routed_messages.get();
+	}
+
+	/**
+	 * Gets the average time spent routing a received message, from the
+	 * beginning of its processing to the listener lookup (in nanoseconds).
+	 */
+	public long getAverageRoutingTime() {
+		long n = routed_messages.get();
+		return (n > 0) ? routing_time.get() / n : 0;
+	}
+
+	/** Gets the maximum time spent routing a received message (in nanoseconds). */
+	public long getMaxRoutingTime() {
+		return max_routing_time.get();
+	}
+
+	/** Resets the routing time counters. */
+	public void resetRoutingStats() {
+		routed_messages.set(0);
+		routing_time.set(0);
+		max_routing_time.set(0);
+	}
+
+	/** Updates the routing time counters of a message processed since <i>start</i>. */
+	private void updateRoutingStats(long start) {
+		long time = System.nanoTime() - start;
+		routed_messages.incrementAndGet();
+		routing_time.addAndGet(time);
+		long max;
+		while (time > (max = max_routing_time.get()))
+			if (max_routing_time.compareAndSet(max, time))
+				break;
+	}
+
 	/**
 	 * Adds a new listener to the SipProvider for caputering any message in
 	 * PROMISQUE mode. It is the same as using method
@@ -660,15 +735,13 @@ public class SipProvider implements Configurable, TransportListener,
 		printLog("adding SipProviderListener: " + id, LogLevel.MEDIUM);
 		boolean ret;
 		Identifier key = id;
-		if (listeners.containsKey(key)) {
+		if (listeners.putIfAbsent(key, listener) != null) {
 			printWarning(
 					"trying to add a SipProviderListener with a id that is already in use.",
 					LogLevel.HIGH);
 			ret = false;
-		} else {
-			listeners.put(key, listener);
+		} else
 			ret = true;
-		}
 
 		/*
 		if (listeners != null) {
@@ -694,16 +767,14 @@ public class SipProvider implements Configurable, TransportListener,
 		printLog("removing SipProviderListener: " + id, LogLevel.MEDIUM);
 		boolean ret;
 		Identifier key = id;
-		if (!listeners.containsKey(key)) {
+		if (listeners.remove(key) == null) {
 			printWarning("trying to remove a missed SipProviderListener.",
 					LogLevel.HIGH);
 			ret = false;
-		} else {
-			listeners.remove(key);
+		} else
 			ret = true;
-		}
 
-		if (listeners != null) {
+		if (listeners != null && !Sipdroid.release && event_log != null) {
 			String list = "";
 			for (Enumeration<Identifier> e = listeners.keys(); e
 					.hasMoreElements();)
@@ -817,9 +888,15 @@ public class SipProvider implements Configurable, TransportListener,
 						LogLevel.MEDIUM);
 				printLog("open " + proto + " connection to " + dest_ipaddr
 						+ ":" + dest_port, LogLevel.MEDIUM);
-				TcpTransport conn = null;
+				ConnectedTransport conn = null;
 				try {
-					conn = new TcpTransport(dest_ipaddr, dest_port, this, server);
+					// TLS connections are not served by the selector
+					if (tcp_selector != null && server == null)
+						conn = new NioTcpTransport(dest_ipaddr, dest_port,
+								this, tcp_selector);
+					else
+						conn = new TcpTransport(dest_ipaddr, dest_port, this,
+								server);
 				} catch (Exception e) {
 					printLog("connection setup FAILED", LogLevel.HIGH);
 					return null;
@@ -986,6 +1063,7 @@ public class SipProvider implements Configurable, TransportListener,
 	 * processing.
 	 */
 	protected void processReceivedMessage(Message msg) {
+		long start = System.nanoTime();
 		try { // logs
 			printMessageLog(msg.getTransportProtocol(), msg.getRemoteAddress(),
 					msg.getRemotePort(), msg.getLength(), msg, "received");
@@ -1047,10 +1125,10 @@ public class SipProvider implements Configurable, TransportListener,
 			}
 
 			// try to look for a UA in promisque mode
-			if (listeners.containsKey(PROMISQUE)) {
+			SipProviderListener sip_listener = listeners.get(PROMISQUE);
+			if (sip_listener != null) {
 				printLog("message passed to uas: " + PROMISQUE, LogLevel.MEDIUM);
-				((SipProviderListener) listeners.get(PROMISQUE))
-						.onReceivedMessage(this, msg);
+				sip_listener.onReceivedMessage(this, msg);
 			}
 
 			// after the callback check if the message is still valid
@@ -1066,39 +1144,39 @@ public class SipProvider implements Configurable, TransportListener,
 			// try to look for a transaction
 			Identifier key = msg.getTransactionId();
 			printLog("DEBUG: transaction-id: " + key, LogLevel.MEDIUM);
-			if (listeners.containsKey(key)) {
+			sip_listener = listeners.get(key);
+			if (sip_listener != null) {
 				printLog("message passed to transaction: " + key,
 						LogLevel.MEDIUM);
-				SipProviderListener sip_listener = (SipProviderListener) listeners.get(key);
-				if (sip_listener != null)
-				{
-					sip_listener.onReceivedMessage(
-						this, msg);
-				}
+				updateRoutingStats(start);
+				sip_listener.onReceivedMessage(this, msg);
 				return;
 			}
 			// try to look for a dialog
 			key = msg.getDialogId();
 			printLog("DEBUG: dialog-id: " + key, LogLevel.MEDIUM);
-			if (listeners.containsKey(key)) {
+			sip_listener = listeners.get(key);
+			if (sip_listener != null) {
 				printLog("message passed to dialog: " + key, LogLevel.MEDIUM);
-				((SipProviderListener) listeners.get(key)).onReceivedMessage(
-						this, msg);
+				updateRoutingStats(start);
+				sip_listener.onReceivedMessage(this, msg);
 				return;
 			}
 			// try to look for a UAS
 			key = msg.getMethodId();
-			if (listeners.containsKey(key)) {
+			sip_listener = listeners.get(key);
+			if (sip_listener != null) {
 				printLog("message passed to uas: " + key, LogLevel.MEDIUM);
-				((SipProviderListener) listeners.get(key)).onReceivedMessage(
-						this, msg);
+				updateRoutingStats(start);
+				sip_listener.onReceivedMessage(this, msg);
 				return;
 			}
 			// try to look for a default UA
-			if (listeners.containsKey(ANY)) {
+			sip_listener = listeners.get(ANY);
+			if (sip_listener != null) {
 				printLog("message passed to uas: " + ANY, LogLevel.MEDIUM);
-				((SipProviderListener) listeners.get(ANY)).onReceivedMessage(
-						this, msg);
+				updateRoutingStats(start);
+				sip_listener.onReceivedMessage(this, msg);
 				return;
 			}
 
@@ -1164,24 +1242,26 @@ public class SipProvider implements Configurable, TransportListener,
 		conn_id = new ConnectionIdentifier(conn);
 		conn = (ConnectedTransport) connections.get(conn_id);
 		// DEBUG log:
+		if (Sipdroid.release || event_log == null)
+			return;
 		printLog("active connenctions:", LogLevel.LOW);
 		for (Enumeration<ConnectionIdentifier> e = connections.keys(); e
 				.hasMoreElements();) {
 			ConnectionIdentifier id = (ConnectionIdentifier) e.nextElement();
-			printLog("conn-id=" + id + ": "
-					+ ((ConnectedTransport) connections.get(id)).toString(),
+			printLog("conn-id=" + id + ": " + connections.get(id),
 					LogLevel.LOW);
 		}
 	}
 
 	/** Removes a Connection */
 	private void removeConnection(ConnectionIdentifier conn_id) {
-		if (connections != null && connections.containsKey(conn_id)) { // modified
-			ConnectedTransport conn = (ConnectedTransport) connections
-					.get(conn_id);
-			if (conn != null) conn.halt();
-			connections.remove(conn_id);
+		ConnectedTransport conn = (connections != null) ? connections
+				.remove(conn_id) : null;
+		if (conn != null) { // modified
+			conn.halt();
 			// DEBUG log:
+			if (Sipdroid.release || event_log == null)
+				return;
 			printLog("active connenctions:", LogLevel.LOW);
 			for (Enumeration<ConnectedTransport> e = connections.elements(); e
 					.hasMoreElements();) {
@@ -1234,6 +1314,24 @@ public class SipProvider implements Configurable, TransportListener,
 		printLog("tcp server " + tcp_server + " terminated", LogLevel.MEDIUM);
 	}
 
+	/** When a new incoming connection is accepted by the TcpSelector */
+	public void onIncomingConnection(TcpSelector tcp_selector,
+			NioTcpConnection tcp_conn) {
+		printLog("incoming connection from " + tcp_conn.getRemoteAddress()
+				+ ":" + tcp_conn.getRemotePort(), LogLevel.MEDIUM);
+		ConnectedTransport conn = new NioTcpTransport(tcp_conn, this);
+		printLog("tcp connection " + conn + " opened", LogLevel.MEDIUM);
+		addConnection(conn);
+	}
+
+	/** When TcpSelector terminates. */
+	public void onSelectorTerminated(TcpSelector tcp_selector, Exception error) {
+		printLog("tcp selector " + tcp_selector + " terminated",
+				LogLevel.MEDIUM);
+		if (error != null)
+			printException(error, LogLevel.HIGH);
+	}
+
 	// ************************** Other methods ***************************
 
 	/**
@@ -68,6 +68,11 @@ public class SipStack extends Configure {
 			SipProvider.PROTO_UDP, SipProvider.PROTO_TCP };
 	/** Default max number of contemporary open transport connections. */
 	public static int default_nmax_connections = 32;
+	/**
+	 * Whether serving TCP connections from a single java.nio selector thread,
+	 * instead of a thread per connection.
+	 */
+	public static boolean tcp_nio = false;
 	/**
 	 * Whether adding 'rport' parameter on via header fields of outgoing
 	 * requests.
@@ -101,6 +106,15 @@ public class SipStack extends Configure {
 	/** Whether using only one thread for all timer instances. */
 	public static boolean single_timer = false;
 
+	/**
+	 * Whether using a shared timing wheel for all timer instances (it
+	 * overrides single_timer).
+	 */
+	public static boolean timer_wheel = true;
+
+	/** Number of threads firing the timeouts of the timing wheel. */
+	public static int timer_threads = 1;
+
 	/**
 	 * Whether 1xx responses create an "early dialog" for methods that create
 	 * dialog.
@@ -192,6 +206,10 @@ public class SipStack extends Configure {
 			default_nmax_connections = par.getInt();
 			return;
 		}
+		if (attribute.equals("tcp_nio")) {
+			tcp_nio = (par.getString().toLowerCase().startsWith("y"));
+			return;
+		}
 		if (attribute.equals("use_rport")) {
 			use_rport = (par.getString().toLowerCase().startsWith("y"));
 			return;
@@ -224,6 +242,14 @@ public class SipStack extends Configure {
 			single_timer = (par.getString().toLowerCase().startsWith("y"));
 			return;
 		}
+		if (attribute.equals("timer_wheel")) {
+			timer_wheel = (par.getString().toLowerCase().startsWith("y"));
+			return;
+		}
+		if (attribute.equals("timer_threads")) {
+			timer_threads = par.getInt();
+			return;
+		}
 		if (attribute.equals("early_dialog")) {
 			early_dialog = (par.getString().toLowerCase().startsWith("y"));
 			return;
@@ -308,6 +334,8 @@ public class SipStack extends Configure {
 
 		// timers
 		Timer.SINGLE_THREAD = single_timer;
+		Timer.TIMING_WHEEL = timer_wheel;
+		Timer.setTimingWheelThreads(timer_threads);
 
 		// logs
 		if (debug_level > 0) {
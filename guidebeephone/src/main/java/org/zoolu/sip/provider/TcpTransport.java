@@ -47,8 +47,8 @@ class TcpTransport implements ConnectedTransport, TcpConnectionListener {
 	/** The last time that has been used (in milliseconds) */
 	long last_time;
 
-	/** the current received text. */
-	String text;
+	/** the current received data, not yet delivered as message. */
+	SipMessageBuffer buffer;
 
 	/** Transport listener */
 	TransportListener listener;
@@ -61,7 +61,7 @@ class TcpTransport implements ConnectedTransport, TcpConnectionListener {
 		tcp_conn = new TcpConnection(socket, this);
 		connection_id = new ConnectionIdentifier(this);
 		last_time = System.currentTimeMillis();
-		text = "";
+		buffer = new SipMessageBuffer();
 	}
 
 	/** Costructs a new TcpTransport */
@@ -70,7 +70,7 @@ class TcpTransport implements ConnectedTransport, TcpConnectionListener {
 		tcp_conn = new TcpConnection(socket, this);
 		connection_id = null;
 		last_time = System.currentTimeMillis();
-		text = "";
+		buffer = new SipMessageBuffer();
 	}
 
 	/** Gets protocol type */
@@ -139,22 +139,15 @@ class TcpTransport implements ConnectedTransport, TcpConnectionListener {
 	public void onReceivedData(TcpConnection tcp_conn, byte[] data, int len) {
 		last_time = System.currentTimeMillis();
 
-		text += new String(data, 0, len);
-		SipParser par = new SipParser(text);
-		Message msg = par.getSipMessage();
-		while (msg != null) { // System.out.println("DEBUG: message len:
-			// "+msg.getLength());
+		buffer.append(data, 0, len);
+		Message msg;
+		while ((msg = buffer.nextMessage()) != null) {
 			msg.setRemoteAddress(tcp_conn.getRemoteAddress().toString());
 			msg.setRemotePort(tcp_conn.getRemotePort());
 			msg.setTransport(PROTO_TCP);
 			msg.setConnectionId(connection_id);
 			if (listener != null)
 				listener.onReceivedMessage(this, msg);
-
-			text = par.getRemainingString();
-			// System.out.println("DEBUG: text left: "+text.length());
-			par = new SipParser(text);
-			msg = par.getSipMessage();
 		}
 	}
 
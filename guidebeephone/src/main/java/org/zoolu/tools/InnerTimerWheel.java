@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.tools;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Class InnerTimerWheel implements a hashed timing wheel shared by all timer
+ * instances. Pending timeouts are kept in the slots of a circular wheel, each
+ * slot covering TICK milliseconds; timeouts longer than a whole wheel turn
+ * carry the number of remaining rounds. Scheduling and cancelling a timeout
+ * are O(1). A single thread advances the wheel, while the expired timeouts
+ * are fired by a bounded pool of worker threads.
+ */
+class InnerTimerWheel implements Runnable {
+	/** Duration of a tick (in milliseconds). */
+	static final long TICK = 10;
+
+	/** Number of slots of the wheel (must be a power of 2). */
+	static final int WHEEL_SIZE = 512;
+
+	/** Number of threads firing the expired timeouts. */
+	static int WORKER_THREADS = 1;
+
+	/** Log where the exceptions thrown by the listeners are printed. */
+	static Log log = null;
+
+	/** The shared wheel */
+	static InnerTimerWheel wheel = null;
+
+	/** Gets the shared wheel, creating it at first use. */
+	static synchronized InnerTimerWheel getInstance() {
+		if (wheel == null)
+			wheel = new InnerTimerWheel(WORKER_THREADS);
+		return wheel;
+	}
+
+	/** A pending timeout, linked in a slot of the wheel. */
+	static class Timeout implements Runnable {
+		static final AtomicReferenceFieldUpdater<Timeout, InnerTimerListener> LISTENER = AtomicReferenceFieldUpdater
+				.newUpdater(Timeout.class, InnerTimerListener.class, "listener");
+
+		final InnerTimerWheel wheel;
+		/** Cleared atomically by whichever of cancel() and run() comes first. */
+		volatile InnerTimerListener listener;
+		long rounds;
+		int slot = -1;
+		Timeout prev;
+		Timeout next;
+
+		Timeout(InnerTimerWheel wheel, InnerTimerListener listener) {
+			this.wheel = wheel;
+			this.listener = listener;
+		}
+
+		/** Cancels the timeout, the listener will not be fired. */
+		void cancel() {
+			LISTENER.set(this, null);
+			synchronized (wheel) {
+				wheel.remove(this);
+			}
+		}
+
+		public void run() {
+			InnerTimerListener l = LISTENER.getAndSet(this, null);
+			if (l != null) {
+				try {
+					l.onInnerTimeout();
+				} catch (Exception e) {
+					printException(e, LogLevel.HIGH);
+				}
+			}
+		}
+	}
+
+	final Timeout[] slots = new Timeout[WHEEL_SIZE];
+	final long start_time = System.nanoTime();
+	final ExecutorService workers;
+	long tick = 0;
+	int size = 0;
+
+	InnerTimerWheel(int worker_threads) {
+		ThreadFactory factory = new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "InnerTimerWheel-worker");
+				t.setDaemon(true);
+				return t;
+			}
+		};
+		workers = new ThreadPoolExecutor(worker_threads, worker_threads, 0L,
+				TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				factory);
+		Thread ticker = new Thread(this, "InnerTimerWheel");
+		ticker.setDaemon(true);
+		ticker.start();
+	}
+
+	/** Gets the number of pending timeouts. */
+	synchronized int getPendingCount() {
+		return size;
+	}
+
+	/** Schedules <i>listener</i> to be fired after <i>timeout</i> msecs. */
+	synchronized Timeout schedule(long timeout, InnerTimerListener listener) {
+		long now = currentTick();
+		// the wheel is not advanced while empty, catch up before scheduling
+		if (size == 0 && tick < now)
+			tick = now;
+		long deadline = (elapsed() + timeout + TICK - 1) / TICK;
+		long ticks = deadline - tick;
+		if (ticks < 1)
+			ticks = 1;
+		Timeout t = new Timeout(this, listener);
+		t.rounds = (ticks - 1) / WHEEL_SIZE;
+		t.slot = (int) ((tick + ticks) & (WHEEL_SIZE - 1));
+		t.next = slots[t.slot];
+		if (t.next != null)
+			t.next.prev = t;
+		slots[t.slot] = t;
+		if (size++ == 0)
+			notify();
+		return t;
+	}
+
+	/** Unlinks a timeout from its slot, if still pending. */
+	void remove(Timeout t) {
+		if (t.slot < 0)
+			return;
+		if (t.prev != null)
+			t.prev.next = t.next;
+		else
+			slots[t.slot] = t.next;
+		if (t.next != null)
+			t.next.prev = t.prev;
+		t.prev = null;
+		t.next = null;
+		t.slot = -1;
+		size--;
+	}
+
+	/** Adds the Exception message to the default Log */
+	static final void printException(Exception e, int level) {
+		if (log != null)
+			log.printException(e, level);
+	}
+
+	/** Gets the milliseconds elapsed since the wheel was created. */
+	long elapsed() {
+		return (System.nanoTime() - start_time) / 1000000L;
+	}
+
+	long currentTick() {
+		return elapsed() / TICK;
+	}
+
+	/** Advances the wheel, one slot per tick. */
+	public void run() {
+		while (true) {
+			Timeout expired = null;
+			Timeout last = null;
+			try {
+				synchronized (this) {
+					while (size == 0)
+						wait();
+					long now = currentTick();
+					if (now <= tick) {
+						wait(Math.max(1, (tick + 1) * TICK - elapsed()));
+						continue;
+					}
+					while (tick < now && size > 0) {
+						tick++;
+						int slot = (int) (tick & (WHEEL_SIZE - 1));
+						Timeout t = slots[slot];
+						while (t != null) {
+							Timeout next = t.next;
+							if (t.rounds == 0) {
+								remove(t);
+								if (last == null)
+									expired = t;
+								else
+									last.next = t;
+								last = t;
+							} else
+								t.rounds--;
+							t = next;
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				return;
+			}
+			while (expired != null) {
+				Timeout next = expired.next;
+				expired.next = null;
+				workers.execute(expired);
+				expired = next;
+			}
+		}
+	}
+}
@@ -33,11 +33,18 @@ public class Timer implements InnerTimerListener {
 	/** Whether using single thread for all timer instances. */
 	public static boolean SINGLE_THREAD = true;
 
+	/**
+	 * Whether using the shared timing wheel for all timer instances. When
+	 * set, it takes precedence over SINGLE_THREAD.
+	 */
+	public static boolean TIMING_WHEEL = true;
+
 	// HashSet listener_list=null;
 	TimerListener listener;
 	long time;
 	String label;
 	boolean active;
+	InnerTimerWheel.Timeout timeout;
 
 	void init(long t_msec, String t_label, TimerListener t_listener) { // listener_list=new
 		// HashSet();
@@ -110,12 +117,20 @@ public class Timer implements InnerTimerListener {
 		// (CHANGE-040421) now it can free the link to Timer listeners
 		// listener_list=null;
 		listener = null;
+		if (timeout != null) {
+			timeout.cancel();
+			timeout = null;
+		}
 	}
 
 	/** Starts the timer */
 	public void start() {
 		active = true;
-		if (SINGLE_THREAD)
+		if (TIMING_WHEEL) {
+			if (timeout != null)
+				timeout.cancel();
+			timeout = InnerTimerWheel.getInstance().schedule(time, this);
+		} else if (SINGLE_THREAD)
 			new InnerTimerST(time, this);
 		else
 			new InnerTimer(time, this);
@@ -127,5 +142,29 @@ public class Timer implements InnerTimerListener {
 			listener.onTimeout(this);
 		listener = null;
 		active = false;
+		timeout = null;
+	}
+
+	/**
+	 * Sets the number of threads firing the timeouts of the timing wheel. It
+	 * has effect only if called before the first timer is started.
+	 */
+	public static void setTimingWheelThreads(int n) {
+		if (n > 0)
+			InnerTimerWheel.WORKER_THREADS = n;
+	}
+
+	/**
+	 * Sets the Log where the exceptions thrown by the listeners fired by the
+	 * timing wheel are printed.
+	 */
+	public static void setTimingWheelLog(Log log) {
+		InnerTimerWheel.log = log;
+	}
+
+	/** Gets the number of timers pending in the timing wheel. */
+	public static int getTimingWheelPendingCount() {
+		return InnerTimerWheel.wheel != null ? InnerTimerWheel.wheel
+				.getPendingCount() : 0;
 	}
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2009 The Sipdroid Open Source Project
+ * 
+ * This file is part of Sipdroid (http://www.sipdroid.org)
+ * 
+ * Sipdroid is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.sipdroid.media;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.Test;
+import org.sipdroid.net.RtpPacket;
+
+/**
+ * Replays packet traces with loss, reordering, late and duplicated packets
+ * through a JitterBuffer, and checks its play-out decisions.
+ */
+public class JitterBufferTest {
+
+	static final int PACKET_SIZE = 160 + 12;
+
+	/** Period of the play-out (in milliseconds) */
+	static final int PTIME = 20;
+
+	/** Creates a packet of sequence number <i>seq</i>, 20 ms of 8 kHz audio */
+	static RtpPacket packet(int seq) {
+		RtpPacket p = new RtpPacket(new byte[PACKET_SIZE], 0);
+		p.init(8, seq, seq * 160L, 1);
+		p.setPayloadLength(160);
+		return p;
+	}
+
+	/**
+	 * Replays a trace of "seq@arrival" entries: every play-out period the
+	 * packets arrived so far are put, then the packets ready are got. Returns
+	 * the decisions, "P" and the sequence number for played packets, "L" for
+	 * concealed ones.
+	 */
+	static String replay(JitterBuffer jb, String trace) {
+		String[] entries = trace.split(" ");
+		StringBuilder sb = new StringBuilder();
+		RtpPacket play = new RtpPacket(new byte[PACKET_SIZE], 0);
+		int next = 0;
+		long end = 0;
+		for (int i = 0; i < entries.length; i++)
+			end = Math.max(end, Long.parseLong(entries[i].split("@")[1]));
+		for (long now = 0; now <= end + 10 * PTIME; now += PTIME) {
+			while (next < entries.length) {
+				String[] e = entries[next].split("@");
+				long arrival = Long.parseLong(e[1]);
+				if (arrival > now)
+					break;
+				jb.put(packet(Integer.parseInt(e[0])), arrival);
+				next++;
+			}
+			int status;
+			while ((status = jb.get(play, now)) != JitterBuffer.EMPTY) {
+				if (sb.length() > 0)
+					sb.append(' ');
+				if (status == JitterBuffer.LOST)
+					sb.append('L');
+				else
+					sb.append('P').append(play.getSequenceNumber());
+			}
+		}
+		return sb.toString();
+	}
+
+	static JitterBuffer newBuffer() {
+		return new JitterBuffer(32, PACKET_SIZE, 40, 400);
+	}
+
+	@Test
+	public void inOrder() {
+		JitterBuffer jb = newBuffer();
+		assertEquals("P0 P1 P2 P3", replay(jb, "0@0 1@20 2@40 3@60"));
+		assertEquals(0, jb.getJitter());
+		assertEquals(40, jb.getTargetDelay());
+	}
+
+	@Test
+	public void reorderedPacketIsWaitedFor() {
+		JitterBuffer jb = newBuffer();
+		assertEquals("P0 P1 P2 P3", replay(jb, "0@0 2@20 1@25 3@60"));
+		assertEquals(1f, jb.getReordered(), 0f);
+		assertEquals(0f, jb.getLost(), 0f);
+	}
+
+	@Test
+	public void lostPacketIsConcealedAfterTargetDelay() {
+		JitterBuffer jb = newBuffer();
+		assertEquals("P0 P1 L P3 P4 P5",
+				replay(jb, "0@0 1@20 3@60 4@80 5@100"));
+		assertEquals(1f, jb.getLost(), 0f);
+	}
+
+	@Test
+	public void latePacketIsDiscarded() {
+		JitterBuffer jb = newBuffer();
+		assertEquals("P0 P1 L P3 P4 P5",
+				replay(jb, "0@0 1@20 3@60 4@80 5@100 2@120"));
+		assertEquals(1f, jb.getLost(), 0f);
+		assertEquals(1f, jb.getLate(), 0f);
+		RtpPacket p = packet(2);
+		assertFalse(jb.put(p, 200));
+	}
+
+	@Test
+	public void burstLossConcealsAtMostMaxConcealed() {
+		JitterBuffer jb = newBuffer();
+		assertEquals("P0 P1 L L L P7 P8", replay(jb, "0@0 1@20 7@140 8@160"));
+		assertEquals(5f, jb.getLost(), 0f);
+	}
+
+	@Test
+	public void duplicatesAreCounted() {
+		JitterBuffer jb = newBuffer();
+		jb.setRedundancy(2);
+		assertEquals("P0 P1", replay(jb, "0@0 0@5 1@20 1@21"));
+		assertEquals(2f, jb.getDuplicate(), 0f);
+	}
+
+	@Test
+	public void sequenceNumbersWrapAround() {
+		JitterBuffer jb = newBuffer();
+		assertEquals("P65534 P65535 P0 P1", replay(jb,
+				"65534@0 65535@20 0@40 1@60"));
+		assertEquals(0f, jb.getLost(), 0f);
+	}
+
+	@Test
+	public void jitterRaisesTargetDelay() {
+		JitterBuffer jb = newBuffer();
+		StringBuilder trace = new StringBuilder();
+		for (int seq = 0; seq < 200; seq++)
+			trace.append(seq == 0 ? "" : " ").append(seq).append('@').append(
+					seq * PTIME + (seq % 2) * 30);
+		replay(jb, trace.toString());
+		assertTrue(jb.getJitter() > 20);
+		assertTrue(jb.getTargetDelay() > 40);
+		assertTrue(jb.getTargetDelay() <= 400);
+	}
+
+	/**
+	 * Replays a random trace (loss, reordering, duplicates) and checks that
+	 * each buffered packet is played exactly once, in sequence order.
+	 */
+	@Test
+	public void randomTraceReplay() {
+		Random random = new Random(1);
+		int n = 5000;
+		ArrayList<long[]> events = new ArrayList<long[]>();
+		for (int seq = 0; seq < n; seq++) {
+			if (random.nextInt(100) < 5)
+				continue; // lost
+			long arrival = seq * PTIME + random.nextInt(60);
+			events.add(new long[] { arrival, seq & 0xffff });
+			if (random.nextInt(100) < 3) // duplicated
+				events.add(new long[] { arrival + random.nextInt(40),
+						seq & 0xffff });
+		}
+		Collections.sort(events, new Comparator<long[]>() {
+			public int compare(long[] a, long[] b) {
+				return a[0] < b[0] ? -1 : (a[0] > b[0] ? 1 : 0);
+			}
+		});
+		JitterBuffer jb = newBuffer();
+		RtpPacket play = new RtpPacket(new byte[PACKET_SIZE], 0);
+		boolean[] buffered = new boolean[n];
+		boolean[] played = new boolean[n];
+		int last_played = -1;
+		int next = 0;
+		long start = System.nanoTime();
+		for (long now = 0; next < events.size() || jb.getCount() > 0; now += PTIME) {
+			while (next < events.size() && events.get(next)[0] <= now) {
+				int seq = (int) events.get(next)[1];
+				if (jb.put(packet(seq), events.get(next)[0]))
+					buffered[seq] = true;
+				next++;
+			}
+			int status;
+			while ((status = jb.get(play, now)) != JitterBuffer.EMPTY) {
+				if (status != JitterBuffer.PACKET)
+					continue;
+				int seq = play.getSequenceNumber();
+				assertTrue(seq > last_played);
+				assertFalse(played[seq]);
+				played[seq] = true;
+				last_played = seq;
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		int count = 0;
+		for (int seq = 0; seq < n; seq++) {
+			assertEquals("seq " + seq, buffered[seq], played[seq]);
+			if (played[seq])
+				count++;
+		}
+		assertTrue(count > n * 9 / 10);
+		System.out.println("JitterBuffer: " + events.size()
+				+ " packets replayed in " + elapsed / 1000000 + " ms");
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2009 The Sipdroid Open Source Project
+ * 
+ * This file is part of Sipdroid (http://www.sipdroid.org)
+ * 
+ * Sipdroid is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.sipdroid.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Runs a conference of many RTP streams received by one RtpChannelSelector
+ * over loopback, checking every packet arrives in order, and measures the
+ * packets received per second and the bytes allocated by the selector thread.
+ * Also checks oversized packets are dropped and a failing listener only
+ * closes its channel.
+ */
+public class RtpChannelSelectorTest {
+
+	static final int PACKET_SIZE = 160 + 12;
+
+	static final InetAddress LOCALHOST;
+	static {
+		try {
+			LOCALHOST = InetAddress.getByName("127.0.0.1");
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Listener checking the sequence numbers of one stream */
+	static class Stream implements RtpChannelListener {
+		int next_seq;
+		volatile boolean out_of_order;
+		volatile int received;
+		final CountDownLatch terminated = new CountDownLatch(1);
+		volatile Exception error;
+
+		public void onReceivedPacket(RtpChannel channel, RtpPacket packet) {
+			if (packet.getSequenceNumber() != next_seq
+					|| packet.getPayloadLength() != 160)
+				out_of_order = true;
+			next_seq = (next_seq + 1) & 0xffff;
+			received++;
+		}
+
+		public void onChannelTerminated(RtpChannel channel, Exception error) {
+			this.error = error;
+			terminated.countDown();
+		}
+	}
+
+	/** Gets the bytes allocated so far by a thread, or -1 if unknown */
+	static long allocatedBytes(Thread thread) {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) bean)
+					.getThreadAllocatedBytes(thread.getId());
+		return -1;
+	}
+
+	/** Waits until the selector has received <i>n</i> packets */
+	static void awaitPackets(RtpChannelSelector selector, long n)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (selector.getReceivedPackets() < n) {
+			if (System.currentTimeMillis() > deadline)
+				fail("received " + selector.getReceivedPackets() + " of " + n
+						+ " packets");
+			Thread.sleep(1);
+		}
+	}
+
+	@Test
+	public void conferenceOfManyStreams() throws Exception {
+		int streams = 300;
+		int rounds = 100;
+		int burst = 10;
+		RtpBufferPool pool = new RtpBufferPool(RtpBufferPool.DEFAULT_BUFFER_SIZE);
+		RtpChannelSelector selector = new RtpChannelSelector();
+		RtpChannel[] receivers = new RtpChannel[streams];
+		RtpChannel[] senders = new RtpChannel[streams];
+		RtpPacket[] packets = new RtpPacket[streams];
+		Stream[] listeners = new Stream[streams];
+		try {
+			for (int i = 0; i < streams; i++) {
+				receivers[i] = new RtpChannel(0, pool);
+				listeners[i] = new Stream();
+				selector.add(receivers[i], listeners[i]);
+				senders[i] = new RtpChannel(0, LOCALHOST, receivers[i]
+						.getLocalPort(), pool);
+				packets[i] = new RtpPacket(new byte[PACKET_SIZE], 0);
+				packets[i].init(8, 0, 0, i);
+				packets[i].setPayloadLength(160);
+			}
+			// a first round connects the receivers to their senders
+			int seq = 0;
+			for (int i = 0; i < streams; i++)
+				assertTrue(senders[i].send(packets[i]));
+			seq++;
+			awaitPackets(selector, streams);
+
+			long allocated = allocatedBytes(selector);
+			long start = System.nanoTime();
+			for (int r = 0; r < rounds; r++) {
+				for (int b = 0; b < burst; b++, seq++) {
+					for (int i = 0; i < streams; i++) {
+						packets[i].setSequenceNumber(seq & 0xffff);
+						packets[i].setTimestamp(seq * 160L);
+						assertTrue(senders[i].send(packets[i]));
+					}
+				}
+				awaitPackets(selector, (long) seq * streams);
+			}
+			long time = System.nanoTime() - start;
+			if (allocated >= 0)
+				allocated = allocatedBytes(selector) - allocated;
+
+			long packets_received = (long) rounds * burst * streams;
+			for (int i = 0; i < streams; i++) {
+				assertFalse(listeners[i].out_of_order);
+				assertEquals(seq, listeners[i].received);
+				assertEquals(seq, receivers[i].getReceivedPackets());
+				assertEquals(0, receivers[i].getDroppedPackets());
+			}
+			assertEquals(streams, selector.getChannelCount());
+			// the buffers are only held for one call, by the selector thread
+			// and by this one
+			assertTrue(pool.getAllocated() <= 2);
+			System.out.println("RtpChannelSelector: " + streams + " streams, "
+					+ packets_received * 1000000000L / time
+					+ " packets/s received on one thread, average batch "
+					+ (int) selector.getAverageBatch() + ", "
+					+ (allocated < 0 ? "?" : "" + allocated / streams)
+					+ " bytes allocated per stream ("
+					+ (allocated < 0 ? "?" : "" + allocated * 100
+							/ packets_received / 100.0) + " per packet), "
+					+ pool.getAllocated() + " pooled buffers");
+		} finally {
+			selector.halt();
+			for (int i = 0; i < streams; i++)
+				if (senders[i] != null)
+					senders[i].close();
+		}
+	}
+
+	@Test
+	public void oversizedPacketsAreDropped() throws Exception {
+		RtpChannel channel = new RtpChannel(0, new RtpBufferPool(512));
+		DatagramSocket socket = new DatagramSocket();
+		try {
+			int port = channel.getLocalPort();
+			socket.send(new DatagramPacket(new byte[600], 600, LOCALHOST, port));
+			socket.send(new DatagramPacket(new byte[300], 300, LOCALHOST, port));
+			socket.send(new DatagramPacket(new byte[100], 100, LOCALHOST, port));
+			RtpPacket packet = new RtpPacket(new byte[200], 0);
+			long deadline = System.currentTimeMillis() + 5000;
+			while (!channel.receive(packet)) {
+				assertTrue(System.currentTimeMillis() < deadline);
+				Thread.sleep(1);
+			}
+			assertEquals(100, packet.getLength());
+			assertEquals(2, channel.getDroppedPackets());
+			assertEquals(1, channel.getReceivedPackets());
+
+			packet = new RtpPacket(new byte[600], 600);
+			try {
+				channel.send(packet);
+				fail("sent a packet longer than the pool buffers");
+			} catch (IOException e) {
+			}
+		} finally {
+			socket.close();
+			channel.close();
+		}
+	}
+
+	@Test
+	public void failingListenerOnlyClosesItsChannel() throws Exception {
+		RtpChannelSelector selector = new RtpChannelSelector();
+		RtpBufferPool pool = new RtpBufferPool(RtpBufferPool.DEFAULT_BUFFER_SIZE);
+		RtpChannel failing = new RtpChannel(0, pool);
+		RtpChannel good = new RtpChannel(0, pool);
+		Stream failing_stream = new Stream() {
+			public void onReceivedPacket(RtpChannel channel, RtpPacket packet) {
+				throw new IllegalStateException("listener failure");
+			}
+		};
+		Stream good_stream = new Stream();
+		DatagramSocket socket = new DatagramSocket();
+		try {
+			selector.add(failing, failing_stream);
+			selector.add(good, good_stream);
+			RtpPacket packet = new RtpPacket(new byte[PACKET_SIZE], 0);
+			packet.init(8, 0, 0, 1);
+			packet.setPayloadLength(160);
+			byte[] data = packet.getPacket();
+			socket.send(new DatagramPacket(data, PACKET_SIZE, LOCALHOST, failing
+					.getLocalPort()));
+			assertTrue(failing_stream.terminated.await(5, TimeUnit.SECONDS));
+			assertTrue(failing_stream.error instanceof IllegalStateException);
+			socket.send(new DatagramPacket(data, PACKET_SIZE, LOCALHOST, good
+					.getLocalPort()));
+			long deadline = System.currentTimeMillis() + 5000;
+			while (good_stream.received == 0) {
+				assertTrue(System.currentTimeMillis() < deadline);
+				Thread.sleep(1);
+			}
+			assertTrue(selector.isRunning());
+			assertEquals(1, selector.getChannelCount());
+		} finally {
+			socket.close();
+			selector.halt();
+		}
+	}
+}
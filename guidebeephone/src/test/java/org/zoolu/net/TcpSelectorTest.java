@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Checks TcpSelector connections are established without blocking, also when
+ * opened from the selector thread, and that data sent while connecting are
+ * delivered. A load test exchanges Content-Length framed messages with many
+ * loopback clients, and listener failures must only terminate their own
+ * connection.
+ */
+public class TcpSelectorTest {
+
+	static final IpAddress LOCALHOST = new IpAddress("127.0.0.1");
+
+	/** Connection listener collecting the received data */
+	static class Receiver implements NioTcpConnectionListener {
+		final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		final CountDownLatch received;
+		final CountDownLatch terminated = new CountDownLatch(1);
+		final AtomicReference<Exception> error = new AtomicReference<Exception>();
+
+		Receiver(int len) {
+			received = new CountDownLatch(len);
+		}
+
+		public void onReceivedData(NioTcpConnection conn, byte[] buff, int len) {
+			synchronized (data) {
+				data.write(buff, 0, len);
+			}
+			for (int i = 0; i < len; i++)
+				received.countDown();
+		}
+
+		public void onConnectionTerminated(NioTcpConnection conn,
+				Exception error) {
+			this.error.set(error);
+			terminated.countDown();
+		}
+	}
+
+	/** Selector listener setting a Receiver to the accepted connections */
+	static class Acceptor implements TcpSelectorListener {
+		final Receiver receiver;
+
+		Acceptor(Receiver receiver) {
+			this.receiver = receiver;
+		}
+
+		public void onIncomingConnection(TcpSelector tcp_selector,
+				NioTcpConnection tcp_conn) {
+			tcp_conn.setListener(receiver);
+		}
+
+		public void onSelectorTerminated(TcpSelector tcp_selector,
+				Exception error) {
+		}
+	}
+
+	@Test
+	public void dataSentWhileConnectingIsDelivered() throws Exception {
+		String message = "INVITE sip:bob@127.0.0.1 SIP/2.0\r\n\r\n";
+		Receiver server_receiver = new Receiver(message.length());
+		TcpSelector server = new TcpSelector(0, LOCALHOST, new Acceptor(
+				server_receiver));
+		TcpSelector client = new TcpSelector(null);
+		try {
+			NioTcpConnection conn = client.connect(LOCALHOST,
+					server.getPort(), new Receiver(0));
+			assertEquals(server.getPort(), conn.getRemotePort());
+			conn.send(message.getBytes());
+			assertTrue(server_receiver.received.await(5, TimeUnit.SECONDS));
+			assertEquals(message, server_receiver.data.toString());
+			assertTrue(conn.isRunning());
+		} finally {
+			client.halt();
+			server.halt();
+		}
+	}
+
+	@Test
+	public void connectsFromTheSelectorThread() throws Exception {
+		final ServerSocket target = new ServerSocket(0);
+		final TcpSelector[] server = new TcpSelector[1];
+		final AtomicReference<NioTcpConnection> opened = new AtomicReference<NioTcpConnection>();
+		final CountDownLatch connected = new CountDownLatch(1);
+		// when the first byte arrives, opens a new connection from within the
+		// selector callback
+		Receiver server_receiver = new Receiver(1) {
+			public void onReceivedData(NioTcpConnection conn, byte[] buff,
+					int len) {
+				try {
+					if (Thread.currentThread() == server[0])
+						opened.set(server[0].connect(LOCALHOST, target
+								.getLocalPort(), new Receiver(0)));
+				} catch (Exception e) {
+					error.set(e);
+				}
+				connected.countDown();
+			}
+		};
+		server[0] = new TcpSelector(0, LOCALHOST, new Acceptor(server_receiver));
+		TcpSelector client = new TcpSelector(null);
+		try {
+			NioTcpConnection conn = client.connect(LOCALHOST, server[0]
+					.getPort(), new Receiver(0));
+			conn.send(new byte[] { 1 });
+			assertTrue(connected.await(5, TimeUnit.SECONDS));
+			assertEquals(null, server_receiver.error.get());
+			assertNotNull(opened.get());
+			target.setSoTimeout(5000);
+			target.accept().close();
+		} finally {
+			client.halt();
+			server[0].halt();
+			target.close();
+		}
+	}
+
+	@Test
+	public void refusedConnectionIsTerminated() throws Exception {
+		ServerSocket closed = new ServerSocket(0);
+		int port = closed.getLocalPort();
+		closed.close();
+		TcpSelector client = new TcpSelector(null);
+		try {
+			Receiver receiver = new Receiver(0);
+			NioTcpConnection conn;
+			try {
+				conn = client.connect(LOCALHOST, port, receiver);
+			} catch (IOException e) {
+				return; // refused at once
+			}
+			conn.send(new byte[] { 1, 2, 3 });
+			assertTrue(receiver.terminated.await(5, TimeUnit.SECONDS));
+			assertNotNull(receiver.error.get());
+			assertTrue(!conn.isRunning());
+			assertEquals(0, client.getConnectionCount());
+		} finally {
+			client.halt();
+		}
+	}
+
+	/** Builds a message framed by its Content-Length header */
+	static byte[] frame(String body) {
+		return ("MESSAGE sip:load@127.0.0.1 SIP/2.0\r\nContent-Length: "
+				+ body.length() + "\r\n\r\n" + body).getBytes();
+	}
+
+	/**
+	 * Connection listener splitting the received data into Content-Length
+	 * framed messages, as SipMessageBuffer does.
+	 */
+	static abstract class Framer implements NioTcpConnectionListener {
+		final StringBuilder buffer = new StringBuilder();
+		final AtomicReference<Exception> error = new AtomicReference<Exception>();
+
+		public void onReceivedData(NioTcpConnection conn, byte[] buff, int len) {
+			buffer.append(new String(buff, 0, len));
+			while (true) {
+				int end = buffer.indexOf("\r\n\r\n");
+				if (end < 0)
+					return;
+				String head = buffer.substring(0, end);
+				int start = head.indexOf("Content-Length: ");
+				int length = Integer.parseInt(head.substring(
+						start + "Content-Length: ".length()).trim());
+				if (buffer.length() < end + 4 + length)
+					return;
+				String body = buffer.substring(end + 4, end + 4 + length);
+				buffer.delete(0, end + 4 + length);
+				onMessage(conn, body);
+			}
+		}
+
+		public void onConnectionTerminated(NioTcpConnection conn,
+				Exception error) {
+			this.error.set(error);
+		}
+
+		abstract void onMessage(NioTcpConnection conn, String body);
+	}
+
+	/** Server side: answers each message with its body reversed */
+	static class Echo extends Framer {
+		final AtomicInteger messages;
+
+		Echo(AtomicInteger messages) {
+			this.messages = messages;
+		}
+
+		void onMessage(NioTcpConnection conn, String body) {
+			messages.incrementAndGet();
+			try {
+				conn.send(frame(new StringBuilder(body).reverse().toString()));
+			} catch (IOException e) {
+				error.set(e);
+			}
+		}
+	}
+
+	/** Client side: checks the answers come back in order */
+	static class Client extends Framer {
+		final ArrayList<String> expected = new ArrayList<String>();
+		final CountDownLatch answered;
+		volatile boolean mismatch;
+
+		Client(CountDownLatch answered) {
+			this.answered = answered;
+		}
+
+		void onMessage(NioTcpConnection conn, String body) {
+			String next;
+			synchronized (expected) {
+				next = expected.isEmpty() ? null : expected.remove(0);
+			}
+			if (!body.equals(next))
+				mismatch = true;
+			answered.countDown();
+		}
+	}
+
+	@Test
+	public void manyClientsExchangeFramedMessages() throws Exception {
+		final int clients = 400;
+		final int messages = 20;
+		final AtomicInteger server_messages = new AtomicInteger();
+		final AtomicInteger accepted = new AtomicInteger();
+		TcpSelector server = new TcpSelector(0, LOCALHOST,
+				new TcpSelectorListener() {
+					public void onIncomingConnection(TcpSelector tcp_selector,
+							NioTcpConnection tcp_conn) {
+						accepted.incrementAndGet();
+						tcp_conn.setListener(new Echo(server_messages));
+					}
+
+					public void onSelectorTerminated(TcpSelector tcp_selector,
+							Exception error) {
+					}
+				});
+		TcpSelector client_selector = new TcpSelector(null);
+		CountDownLatch answered = new CountDownLatch(clients * messages);
+		try {
+			long start = System.nanoTime();
+			Client[] client = new Client[clients];
+			NioTcpConnection[] conn = new NioTcpConnection[clients];
+			for (int i = 0; i < clients; i++) {
+				client[i] = new Client(answered);
+				conn[i] = client_selector.connect(LOCALHOST, server.getPort(),
+						client[i]);
+				// keeps the connections not yet accepted within the backlog
+				while (i + 1 - accepted.get() >= 25)
+					Thread.sleep(1);
+			}
+			// bodies of growing size, some split over several sends
+			for (int m = 0; m < messages; m++) {
+				for (int i = 0; i < clients; i++) {
+					StringBuilder body = new StringBuilder();
+					for (int k = 0; k <= m * 13 % 97; k++)
+						body.append((char) ('a' + (i + k + m) % 26));
+					synchronized (client[i].expected) {
+						client[i].expected.add(body.reverse().toString());
+					}
+					byte[] data = frame(body.reverse().toString());
+					int half = m % 3 == 0 ? data.length / 2 : data.length;
+					conn[i].send(data, 0, half);
+					if (half < data.length)
+						conn[i].send(data, half, data.length - half);
+				}
+			}
+			assertTrue(answered.await(60, TimeUnit.SECONDS));
+
+			long time = System.nanoTime() - start;
+			assertEquals(clients * messages, server_messages.get());
+			for (int i = 0; i < clients; i++) {
+				assertTrue(!client[i].mismatch);
+				assertEquals(null, client[i].error.get());
+				assertTrue(conn[i].isRunning());
+			}
+			assertEquals(clients, client_selector.getConnectionCount());
+			assertEquals(clients, server.getConnectionCount());
+			assertEquals(clients, accepted.get());
+			System.out.println("TcpSelector: " + clients + " clients, "
+					+ clients * messages * 2 + " messages in " + time / 1000000
+					+ " ms");
+		} finally {
+			client_selector.halt();
+			server.halt();
+		}
+	}
+
+	@Test
+	public void listenerFailureOnlyTerminatesItsConnection() throws Exception {
+		final CountDownLatch answered = new CountDownLatch(2);
+		final AtomicInteger incoming = new AtomicInteger();
+		TcpSelector server = new TcpSelector(0, LOCALHOST,
+				new TcpSelectorListener() {
+					public void onIncomingConnection(TcpSelector tcp_selector,
+							NioTcpConnection tcp_conn) {
+						// the first connection fails while being accepted
+						if (incoming.getAndIncrement() == 0)
+							throw new IllegalStateException("accept failure");
+						tcp_conn.setListener(new Echo(new AtomicInteger()) {
+							void onMessage(NioTcpConnection conn, String body) {
+								if (body.equals("fail"))
+									throw new IllegalStateException(
+											"listener failure");
+								super.onMessage(conn, body);
+							}
+						});
+					}
+
+					public void onSelectorTerminated(TcpSelector tcp_selector,
+							Exception error) {
+					}
+				});
+		TcpSelector client_selector = new TcpSelector(null);
+		try {
+			Receiver rejected = new Receiver(0);
+			client_selector.connect(LOCALHOST, server.getPort(), rejected);
+			assertTrue(rejected.terminated.await(5, TimeUnit.SECONDS));
+
+			Client failing = new Client(new CountDownLatch(1));
+			NioTcpConnection failing_conn = client_selector.connect(LOCALHOST,
+					server.getPort(), failing);
+			Client good = new Client(answered);
+			NioTcpConnection good_conn = client_selector.connect(LOCALHOST,
+					server.getPort(), good);
+			good.expected.add("olleh");
+			good_conn.send(frame("hello"));
+			failing_conn.send(frame("fail"));
+			good.expected.add("dlrow");
+			good_conn.send(frame("world"));
+			assertTrue(answered.await(5, TimeUnit.SECONDS));
+			assertTrue(!good.mismatch);
+			long deadline = System.currentTimeMillis() + 5000;
+			while (failing_conn.isRunning()
+					&& System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+			assertTrue(!failing_conn.isRunning());
+			assertTrue(good_conn.isRunning());
+			assertTrue(server.isRunning());
+			assertEquals(1, server.getConnectionCount());
+		} finally {
+			client_selector.halt();
+			server.halt();
+		}
+	}
+}
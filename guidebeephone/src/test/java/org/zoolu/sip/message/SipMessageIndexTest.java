@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+
+package org.zoolu.sip.message;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Vector;
+
+import org.junit.Test;
+import org.zoolu.sip.header.Header;
+import org.zoolu.sip.header.SipHeaders;
+import org.zoolu.sip.provider.SipParser;
+
+/**
+ * Checks the header lookups of SipMessageIndex against the SipParser scans
+ * they replace, and times both on the same messages.
+ */
+public class SipMessageIndexTest {
+
+	static final String INVITE = "INVITE sip:bob@biloxi.com SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP pc33.atlanta.com;branch=z9hG4bK776asdhds\r\n"
+			+ "Via: SIP/2.0/UDP proxy.atlanta.com;branch=z9hG4bK1\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "To: Bob <sip:bob@biloxi.com>\r\n"
+			+ "From: Alice <sip:alice@atlanta.com>;tag=1928301774\r\n"
+			+ "Call-ID: a84b4c76e66710@pc33.atlanta.com\r\n"
+			+ "CSeq: 314159 INVITE\r\n"
+			+ "Contact: <sip:alice@pc33.atlanta.com>\r\n"
+			+ "Record-Route: <sip:p1.example.com;lr>,\r\n"
+			+ " <sip:p2.example.com;lr>\r\n"
+			+ "Content-Type: application/sdp\r\n"
+			+ "Content-Length: 4\r\n" + "\r\n" + "v=0\n";
+
+	static final String RESPONSE = "SIP/2.0 180 Ringing\n"
+			+ "via: SIP/2.0/UDP pc33.atlanta.com;branch=z9hG4bK776asdhds\n"
+			+ "To: Bob <sip:bob@biloxi.com>;tag=a6c85cf\n"
+			+ "From: Alice <sip:alice@atlanta.com>;tag=1928301774\n"
+			+ "Call-ID: a84b4c76e66710@pc33.atlanta.com\n"
+			+ "CSeq: 314159 INVITE\n" + "Content-Length: 0\n" + "\n";
+
+	static final String[] NAMES = { SipHeaders.Via, SipHeaders.Max_Forwards,
+			SipHeaders.To, SipHeaders.From, SipHeaders.Call_ID,
+			SipHeaders.CSeq, SipHeaders.Contact, SipHeaders.Record_Route,
+			SipHeaders.Content_Type, SipHeaders.Content_Length,
+			SipHeaders.User_Agent };
+
+	/** Gets all the headers <i>hname</i> the way SipParser finds them */
+	static Vector<Header> parserHeaders(String message, String hname) {
+		Vector<Header> v = new Vector<Header>();
+		SipParser par = new SipParser(message);
+		Header h;
+		while ((h = par.getHeader(hname)) != null)
+			v.addElement(h);
+		return v;
+	}
+
+	static void assertSameHeaders(String message) {
+		SipMessageIndex index = new SipMessageIndex(message.getBytes());
+		for (int i = 0; i < NAMES.length; i++) {
+			Vector<Header> expected = parserHeaders(message, NAMES[i]);
+			Vector<Header> actual = new Vector<Header>();
+			index.getHeaders(NAMES[i], actual);
+			assertEquals(NAMES[i], expected.size(), actual.size());
+			for (int k = 0; k < expected.size(); k++)
+				assertEquals(NAMES[i], expected.elementAt(k).getValue(),
+						actual.elementAt(k).getValue());
+			Header first = index.getHeader(NAMES[i]);
+			if (expected.isEmpty())
+				assertNull(first);
+			else
+				assertEquals(expected.elementAt(0).getValue(), first
+						.getValue());
+		}
+	}
+
+	@Test
+	public void requestHeadersMatchParser() {
+		assertSameHeaders(INVITE);
+		SipMessageIndex index = new SipMessageIndex(INVITE.getBytes());
+		assertTrue(index.isRequest());
+		assertFalse(index.isResponse());
+		assertEquals("INVITE sip:bob@biloxi.com SIP/2.0", index.getFirstLine());
+		assertEquals(11, index.getHeaderCount());
+		assertEquals("<sip:p1.example.com;lr>,\r\n <sip:p2.example.com;lr>",
+				index.getHeader(SipHeaders.Record_Route).getValue());
+		assertEquals(4, index.getContentLength());
+		assertEquals(INVITE.length() - 4, index.getBodyBegin());
+	}
+
+	@Test
+	public void responseHeadersMatchParser() {
+		assertSameHeaders(RESPONSE);
+		SipMessageIndex index = new SipMessageIndex(RESPONSE.getBytes());
+		assertTrue(index.isResponse());
+		assertFalse(index.isRequest());
+		assertEquals("SIP/2.0 180 Ringing", index.getFirstLine());
+		assertEquals(0, index.getContentLength());
+		assertEquals(RESPONSE.length(), index.getBodyBegin());
+	}
+
+	@Test
+	public void framesMessagesOfAStream() {
+		byte[] stream = (INVITE + RESPONSE).getBytes();
+		int first = SipMessageIndex.getMessageLength(stream, 0, stream.length);
+		assertEquals(INVITE.length(), first);
+		assertEquals(RESPONSE.length(), SipMessageIndex.getMessageLength(
+				stream, first, stream.length - first));
+		// incomplete headers or body
+		for (int len = 0; len < INVITE.length(); len++)
+			assertEquals(-1, SipMessageIndex.getMessageLength(stream, 0, len));
+		// no Content-Length
+		byte[] no_length = "SIP/2.0 200 OK\r\nCSeq: 1 BYE\r\n\r\n".getBytes();
+		assertEquals(-1, SipMessageIndex.getMessageLength(no_length, 0,
+				no_length.length));
+	}
+
+	@Test
+	public void lookupBenchmark() {
+		byte[] data = INVITE.getBytes();
+		int rounds = 20000;
+		int found = 0;
+		long start = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			SipParser par;
+			for (int i = 0; i < NAMES.length; i++) {
+				par = new SipParser(new String(data));
+				if (par.getHeader(NAMES[i]) != null)
+					found++;
+			}
+		}
+		long parser = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			SipMessageIndex index = new SipMessageIndex(data);
+			for (int i = 0; i < NAMES.length; i++)
+				if (index.getHeader(NAMES[i]) != null)
+					found--;
+		}
+		long indexed = System.nanoTime();
+		assertEquals(0, found);
+		System.out.println("SipMessageIndex: " + rounds + " x "
+				+ NAMES.length + " lookups, SipParser "
+				+ (parser - start) / 1000000 + " ms, index "
+				+ (indexed - parser) / 1000000 + " ms");
+	}
+}
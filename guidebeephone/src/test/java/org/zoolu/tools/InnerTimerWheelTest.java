@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2005 Luca Veltri - University of Parma - Italy
+ *
+ * This file is part of MjSip (http://www.mjsip.org)
+ *
+ * MjSip is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * MjSip is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MjSip; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Author(s):
+ * Luca Veltri (luca.veltri@unipr.it)
+ */
+
+package org.zoolu.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Checks the timeouts of InnerTimerWheel are fired once and only if not
+ * cancelled, times scheduling and cancelling a large number of timers, and
+ * measures the heap taken by a pending timer.
+ */
+public class InnerTimerWheelTest {
+
+	/** Listener counting the number of times it is fired. */
+	static class Counter implements InnerTimerListener {
+		final AtomicInteger fired = new AtomicInteger();
+		final CountDownLatch latch;
+
+		Counter(CountDownLatch latch) {
+			this.latch = latch;
+		}
+
+		public void onInnerTimeout() {
+			fired.incrementAndGet();
+			if (latch != null)
+				latch.countDown();
+		}
+	}
+
+	@Test
+	public void firesOnlyNotCancelledTimeouts() throws Exception {
+		InnerTimerWheel wheel = new InnerTimerWheel(2);
+		int n = 200;
+		CountDownLatch latch = new CountDownLatch(n / 2);
+		Counter[] counters = new Counter[n];
+		InnerTimerWheel.Timeout[] timeouts = new InnerTimerWheel.Timeout[n];
+		for (int i = 0; i < n; i++) {
+			counters[i] = new Counter(i % 2 == 0 ? latch : null);
+			timeouts[i] = wheel.schedule(20 + i % 50, counters[i]);
+		}
+		for (int i = 1; i < n; i += 2)
+			timeouts[i].cancel();
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		Thread.sleep(100);
+		for (int i = 0; i < n; i++)
+			assertEquals(i % 2 == 0 ? 1 : 0, counters[i].fired.get());
+		assertEquals(0, wheel.getPendingCount());
+	}
+
+	@Test
+	public void cancelAndRunFireAtMostOnce() throws Exception {
+		InnerTimerWheel wheel = new InnerTimerWheel(1);
+		Counter counter = new Counter(null);
+		InnerTimerWheel.Timeout cancelled = new InnerTimerWheel.Timeout(wheel,
+				counter);
+		cancelled.cancel();
+		cancelled.run();
+		assertEquals(0, counter.fired.get());
+
+		InnerTimerWheel.Timeout twice = new InnerTimerWheel.Timeout(wheel,
+				counter);
+		twice.run();
+		twice.run();
+		twice.cancel();
+		assertEquals(1, counter.fired.get());
+
+		// run() racing against cancel() from another thread
+		final int rounds = 2000;
+		final Counter raced = new Counter(null);
+		final InnerTimerWheel.Timeout[] racing = new InnerTimerWheel.Timeout[rounds];
+		for (int i = 0; i < rounds; i++)
+			racing[i] = new InnerTimerWheel.Timeout(wheel, raced);
+		Thread canceller = new Thread() {
+			public void run() {
+				for (int i = 0; i < rounds; i++)
+					racing[i].cancel();
+			}
+		};
+		canceller.start();
+		for (int i = 0; i < rounds; i++)
+			racing[i].run();
+		canceller.join();
+		int fired = raced.fired.get();
+		for (int i = 0; i < rounds; i++) {
+			racing[i].run();
+			racing[i].cancel();
+		}
+		assertTrue(fired <= rounds);
+		assertEquals(fired, raced.fired.get());
+	}
+
+	@Test
+	public void longTimeoutsCarryRounds() {
+		InnerTimerWheel wheel = new InnerTimerWheel(1);
+		long turn = InnerTimerWheel.TICK * InnerTimerWheel.WHEEL_SIZE;
+		InnerTimerWheel.Timeout t = wheel.schedule(3 * turn,
+				new Counter(null));
+		assertEquals(2, t.rounds);
+		assertEquals(1, wheel.getPendingCount());
+		t.cancel();
+		assertEquals(0, wheel.getPendingCount());
+	}
+
+	@Test
+	public void listenerExceptionIsLogged() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Log saved = InnerTimerWheel.log;
+		InnerTimerWheel.log = new Log(new PrintStream(out, true), "timer",
+				LogLevel.HIGH);
+		try {
+			InnerTimerWheel wheel = new InnerTimerWheel(1);
+			final CountDownLatch latch = new CountDownLatch(1);
+			wheel.schedule(10, new InnerTimerListener() {
+				public void onInnerTimeout() {
+					latch.countDown();
+					throw new IllegalStateException("listener failure");
+				}
+			});
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+			long deadline = System.currentTimeMillis() + 5000;
+			while (out.size() == 0 && System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+			assertTrue(out.toString().contains("listener failure"));
+		} finally {
+			InnerTimerWheel.log = saved;
+		}
+	}
+
+	@Test
+	public void scheduleAndCancelBenchmark() {
+		InnerTimerWheel wheel = new InnerTimerWheel(1);
+		int n = 100000;
+		Counter counter = new Counter(null);
+		InnerTimerWheel.Timeout[] timeouts = new InnerTimerWheel.Timeout[n];
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			timeouts[i] = wheel.schedule(60000 + i, counter);
+		long scheduled = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			timeouts[i].cancel();
+		long cancelled = System.nanoTime();
+		assertEquals(0, wheel.getPendingCount());
+		assertEquals(0, counter.fired.get());
+		System.out.println("InnerTimerWheel: " + n + " timers scheduled in "
+				+ (scheduled - start) / 1000000 + " ms, cancelled in "
+				+ (cancelled - scheduled) / 1000000 + " ms");
+	}
+
+	/** Gets the used heap, after collecting the garbage */
+	static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			Thread.sleep(20);
+			used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+		}
+		return used;
+	}
+
+	@Test
+	public void heapPerPendingTimer() throws Exception {
+		InnerTimerWheel wheel = new InnerTimerWheel(1);
+		int n = 100000;
+		Counter counter = new Counter(null);
+		InnerTimerWheel.Timeout[] timeouts = new InnerTimerWheel.Timeout[n];
+		long before = usedHeap();
+		for (int i = 0; i < n; i++)
+			timeouts[i] = wheel.schedule(60000 + i, counter);
+		long wheel_bytes = (usedHeap() - before) / n;
+		assertEquals(n, wheel.getPendingCount());
+		for (int i = 0; i < n; i++)
+			timeouts[i].cancel();
+
+		// one thread per timer, as InnerTimer does; the thread stacks are
+		// not in the heap and come in addition
+		int threads = 1000;
+		Thread[] timers = new Thread[threads];
+		before = usedHeap();
+		for (int i = 0; i < threads; i++)
+			timers[i] = new InnerTimer(60000, counter);
+		long thread_bytes = (usedHeap() - before) / threads;
+		// the interrupted timers print their exception
+		PrintStream err = System.err;
+		System.setErr(new PrintStream(new ByteArrayOutputStream()));
+		try {
+			for (int i = 0; i < threads; i++)
+				timers[i].interrupt();
+			for (int i = 0; i < threads; i++)
+				timers[i].join();
+		} finally {
+			System.setErr(err);
+		}
+		assertEquals(0, counter.fired.get());
+
+		assertTrue(wheel_bytes < thread_bytes);
+		System.out.println("InnerTimerWheel: " + wheel_bytes
+				+ " heap bytes per pending timer, InnerTimer: " + thread_bytes
+				+ " heap bytes per pending timer plus a thread stack");
+	}
+}